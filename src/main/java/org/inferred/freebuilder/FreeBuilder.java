@@ -54,5 +54,122 @@ import java.lang.annotation.Target;
  */
 @Target(ElementType.TYPE)
 @Retention(RetentionPolicy.SOURCE)
-public @interface FreeBuilder {}
+public @interface FreeBuilder {
 
+  /**
+   * Stores {@code List<Integer>}, {@code List<Long>} and {@code List<Double>} properties in
+   * unboxed, growable arrays rather than lists of boxed values. The value type will hold a compact,
+   * immutable, array-backed list, and bulk operations between builders and values will copy
+   * arrays rather than boxing and unboxing each element.
+   *
+   * <p>Properties declared as {@code ImmutableList} are unaffected.
+   */
+  boolean primitiveLists() default false;
+
+  /**
+   * Caches the hash code of each value instance the first time it is computed, and uses the
+   * cached hash codes of both instances, where available, to reject unequal values early in
+   * {@code equals}. Recommended for values used as hash keys, especially if they hold large
+   * collections.
+   *
+   * <p>Has no effect if the type provides its own {@code hashCode} implementation.
+   */
+  boolean cacheHashCode() default false;
+
+  /**
+   * Whether {@code clear()} and {@code mergeFrom(value)} may take default property values from a
+   * single builder, created with your {@code Builder} constructor the first time it is needed and
+   * shared thereafter, rather than constructing a new builder on every call.
+   *
+   * <p>Set this to false if your {@code Builder} constructor is not deterministic, e.g. if it
+   * initializes a property with the current time or a freshly-allocated mutable object. Has no
+   * effect on generic types.
+   */
+  boolean snapshotDefaults() default true;
+
+  /**
+   * Adds a {@code buildAndReset()} method to the builder, which returns a new value and then
+   * resets the builder as {@code clear()} would. Suits builders that are filled, built once and
+   * then discarded or refilled with fresh data.
+   *
+   * <p>With Guava, list properties keep their elements in an array that {@code buildAndReset()}
+   * hands over to the value's {@code ImmutableList} instead of copying, provided the array is
+   * exactly full, e.g. after {@code ensureFooCapacity(n)} or a single {@code addAllFoo} call;
+   * otherwise it is trimmed with one copy, as {@code build()} would make. Other collections are
+   * copied as by {@code build()}. Collection views previously returned by the builder's getters
+   * may no longer reflect its contents.
+   */
+  boolean buildAndReset() default false;
+
+  /**
+   * Whether {@code build()} should return the same value instance until the builder is next
+   * modified, rather than constructing and copying into a new value on every call. Suits builders
+   * that are built repeatedly with few or no changes in between.
+   *
+   * <p>Every builder method that modifies a property, including {@code mergeFrom} and
+   * {@code clear}, discards the memoized value. Changes the builder cannot see are not detected:
+   * do not retain collections passed to {@code mutateFoo} consumers after they return. Once
+   * {@code getFooBuilder()} has handed out a nested builder, {@code build()} always constructs a
+   * new value.
+   */
+  boolean memoizeBuild() default false;
+
+  /**
+   * Adds a static {@code diff(a, b)} method to the builder, returning a bit mask of the properties
+   * whose values differ, and a {@code mergeFrom(value, changed)} method copying only the properties
+   * in such a mask. Lets callers ship or apply just the properties that changed between two values.
+   *
+   * <p>Bit <i>n</i> of the mask corresponds to the <i>n</i>th property, in declaration order. The
+   * mask is an {@code int} for up to 32 properties, a {@code long} for up to 64, and a
+   * {@code long[]} beyond that.
+   */
+  boolean diff() default false;
+
+  /**
+   * Whether {@code build()} should canonicalize values through a weak interner shared by all
+   * builders of the type, so that equal values built or deserialized while one is still reachable
+   * are the same instance. Suits large numbers of equal, long-lived values; pairs well with
+   * {@link #cacheHashCode()}, as every intern call hashes the value.
+   *
+   * <p>Uses Guava's {@code Interners.newWeakInterner()} if Guava is available, or a generated
+   * table of weak references otherwise. Serializable values are interned on deserialization,
+   * unless your type declares its own {@code readResolve} method. Setting this on a
+   * {@code @GwtCompatible} type is a compilation error, as GWT has no weak references.
+   */
+  boolean intern() default false;
+
+  /**
+   * Names the properties, in order, by which to compare values (e.g. {@code "name"} for
+   * {@code getName()}), adding a static {@code comparator()} method to the builder. The comparator
+   * reads the fields of built values directly, comparing primitives and primitive optionals
+   * without boxing, and other properties by their natural ordering. Absent optional and null
+   * nullable properties sort first.
+   *
+   * <p>If your type extends {@code Comparable} of itself, {@code compareTo} will be implemented
+   * with this comparator. Its order should be consistent with {@code equals}, so list every
+   * property unless some are deliberately ignored.
+   */
+  String[] comparator() default {};
+
+  /**
+   * Whether {@code Set} properties of an enum type should be stored in an {@code EnumSet}, a
+   * single bit set for enums of up to 64 constants, rather than a hash set. The value type holds
+   * Guava's {@code Sets.immutableEnumSet} if Guava is available, or an unmodifiable
+   * {@code EnumSet} otherwise.
+   *
+   * <p>These sets iterate in the order the enum constants are declared, not insertion order. Set
+   * this to false to keep insertion order. The generated methods are unchanged either way.
+   */
+  boolean enumSets() default true;
+
+  /**
+   * Whether {@code Map} properties keyed by an enum type should be stored in an {@code EnumMap},
+   * an array indexed by ordinal, rather than a hash map. The value type holds Guava's
+   * {@code Maps.immutableEnumMap} if Guava is available, or an unmodifiable {@code EnumMap}
+   * otherwise.
+   *
+   * <p>These maps iterate in the order the enum constants are declared, not insertion order. Set
+   * this to false to keep insertion order. The generated methods are unchanged either way.
+   */
+  boolean enumMaps() default true;
+}
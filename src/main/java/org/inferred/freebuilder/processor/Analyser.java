@@ -32,10 +32,13 @@ import static org.inferred.freebuilder.processor.GwtSupport.gwtMetadata;
 import static org.inferred.freebuilder.processor.MethodFinder.methodsOn;
 import static org.inferred.freebuilder.processor.naming.NamingConventions.determineNamingConvention;
 import static org.inferred.freebuilder.processor.util.ModelUtils.asElement;
+import static org.inferred.freebuilder.processor.util.ModelUtils.findAnnotationMirror;
+import static org.inferred.freebuilder.processor.util.ModelUtils.findProperty;
 import static org.inferred.freebuilder.processor.util.ModelUtils.getReturnType;
 import static org.inferred.freebuilder.processor.util.ModelUtils.maybeAsTypeElement;
 import static org.inferred.freebuilder.processor.util.ModelUtils.maybeType;
 
+import com.google.common.annotations.GwtCompatible;
 import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
@@ -43,6 +46,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 
+import org.inferred.freebuilder.FreeBuilder;
 import org.inferred.freebuilder.processor.Metadata.Property;
 import org.inferred.freebuilder.processor.Metadata.StandardMethod;
 import org.inferred.freebuilder.processor.Metadata.UnderrideLevel;
@@ -54,12 +58,14 @@ import org.inferred.freebuilder.processor.util.QualifiedName;
 
 import java.io.Serializable;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import javax.annotation.processing.Messager;
 import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Modifier;
@@ -70,6 +76,7 @@ import javax.lang.model.element.TypeParameterElement;
 import javax.lang.model.type.ArrayType;
 import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.ErrorType;
+import javax.lang.model.type.ExecutableType;
 import javax.lang.model.type.PrimitiveType;
 import javax.lang.model.type.TypeMirror;
 import javax.lang.model.type.WildcardType;
@@ -101,13 +108,17 @@ class Analyser {
    */
   private static final List<PropertyCodeGenerator.Factory> PROPERTY_FACTORIES = ImmutableList.of(
       new NullablePropertyFactory(), // Must be first, as no other factory supports nulls
+      new PrimitiveListPropertyFactory(), // Must precede ListPropertyFactory
       new ListPropertyFactory(),
+      new EnumSetPropertyFactory(), // Must precede SetPropertyFactory
       new SetPropertyFactory(),
       new SortedSetPropertyFactory(),
+      new EnumMapPropertyFactory(), // Must precede MapPropertyFactory
       new MapPropertyFactory(),
       new MultisetPropertyFactory(),
       new ListMultimapPropertyFactory(),
       new SetMultimapPropertyFactory(),
+      new PrimitiveOptionalPropertyFactory(),
       new OptionalPropertyFactory(),
       new BuildablePropertyFactory(),
       new DefaultPropertyFactory()); // Must be last, as it will always return a CodeGenerator
@@ -146,7 +157,7 @@ class Analyser {
     QualifiedName propertyType = generatedBuilder.nestedType("Property");
     List<? extends TypeParameterElement> typeParameters = type.getTypeParameters();
     Map<ExecutableElement, Property> properties =
-        findProperties(type, removeNonGetterMethods(builder, methods));
+        findProperties(type, removeNonGetterMethods(type, builder, methods));
     Metadata.Builder metadataBuilder = new Metadata.Builder()
         .setType(QualifiedName.of(type).withParameters(typeParameters))
         .setInterfaceType(type.getKind().isInterface())
@@ -162,14 +173,28 @@ class Analyser {
         .addAllVisibleNestedTypes(visibleTypesIn(type))  // Because we inherit from type
         .putAllStandardMethodUnderrides(findUnderriddenMethods(methods))
         .setHasToBuilderMethod(hasToBuilderMethod(builder, builderFactory, methods))
+        .setHasCompareToMethod(hasCompareToMethod(type, methods))
         .setBuilderSerializable(shouldBuilderBeSerializable(builder))
+        .setUsingPrimitiveLists(freeBuilderAttribute(type, "primitiveLists", false))
+        .setHashCodeCached(freeBuilderAttribute(type, "cacheHashCode", false))
+        .setSnapshottingDefaults(freeBuilderAttribute(type, "snapshotDefaults", true))
+        .setHasBuildAndResetMethod(freeBuilderAttribute(type, "buildAndReset", false))
+        .setBuildMemoized(freeBuilderAttribute(type, "memoizeBuild", false))
+        .setHasDiffMethods(freeBuilderAttribute(type, "diff", false))
+        .setValueInterned(shouldValueBeInterned(type))
+        .setValueSerializable(isValueSerializable(type))
+        .setUsingEnumSets(freeBuilderAttribute(type, "enumSets", true))
+        .setUsingEnumMaps(freeBuilderAttribute(type, "enumMaps", true))
         .addAllProperties(properties.values());
     Metadata baseMetadata = metadataBuilder.build();
     metadataBuilder.mergeFrom(gwtMetadata(type, baseMetadata));
     if (builder.isPresent()) {
+      List<Property> propertiesWithCodeGenerators =
+          codeGenerators(properties, baseMetadata, builder.get());
       metadataBuilder
           .clearProperties()
-          .addAllProperties(codeGenerators(properties, baseMetadata, builder.get()));
+          .addAllProperties(propertiesWithCodeGenerators)
+          .setComparatorOrder(comparatorOrder(type, propertiesWithCodeGenerators));
     }
     return metadataBuilder.build();
   }
@@ -344,14 +369,70 @@ class Analyser {
       return false;
   }
 
-  private static Set<ExecutableElement> removeNonGetterMethods(
-      Optional<TypeElement> builder, Iterable<ExecutableElement> methods) {
+  private boolean hasCompareToMethod(TypeElement type, Iterable<ExecutableElement> methods) {
+    for (ExecutableElement method : methods) {
+      if (isCompareToMethod(type, method)) {
+        if (freeBuilderStringsAttribute(type, "comparator").isEmpty()) {
+          messager.printMessage(ERROR,
+              "Add @FreeBuilder(comparator = {...}) to generate compareTo, listing the properties"
+                  + " to compare in order",
+              method);
+        }
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isCompareToMethod(TypeElement type, ExecutableElement method) {
+    if (method.getSimpleName().contentEquals("compareTo")
+        && method.getModifiers().contains(Modifier.ABSTRACT)
+        && method.getParameters().size() == 1) {
+      // Resolve the parameter type as inherited, e.g. T in Comparable<T>
+      ExecutableType methodType =
+          (ExecutableType) types.asMemberOf((DeclaredType) type.asType(), method);
+      Optional<TypeElement> parameterType =
+          ModelUtils.maybeAsTypeElement(methodType.getParameterTypes().get(0));
+      if (parameterType.isPresent() && parameterType.get().equals(type)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the property names listed in {@link FreeBuilder#comparator()}, issuing an error for,
+   * and dropping, any that are unknown, repeated or not comparable.
+   */
+  private ImmutableList<String> comparatorOrder(TypeElement type, List<Property> properties) {
+    Map<String, Property> propertiesByName = new LinkedHashMap<String, Property>();
+    for (Property property : properties) {
+      propertiesByName.put(property.getName(), property);
+    }
+    Set<String> order = new LinkedHashSet<String>();
+    for (String name : freeBuilderStringsAttribute(type, "comparator")) {
+      Property property = propertiesByName.get(name);
+      if (property == null) {
+        messager.printMessage(ERROR, "No property named '" + name + "' to compare", type);
+      } else if (!order.add(name)) {
+        messager.printMessage(ERROR, "Property '" + name + "' listed twice in comparator", type);
+      } else if (!property.getCodeGenerator().fieldsCompare("a", "b").isPresent()) {
+        messager.printMessage(ERROR, "Property '" + name + "' is not comparable", type);
+        order.remove(name);
+      }
+    }
+    return ImmutableList.copyOf(order);
+  }
+
+  private Set<ExecutableElement> removeNonGetterMethods(
+      TypeElement type, Optional<TypeElement> builder, Iterable<ExecutableElement> methods) {
     ImmutableSet.Builder<ExecutableElement> nonUnderriddenMethods = ImmutableSet.builder();
     for (ExecutableElement method : methods) {
       boolean isAbstract = method.getModifiers().contains(Modifier.ABSTRACT);
       boolean isStandardMethod = maybeStandardMethod(method).isPresent();
       boolean isToBuilderMethod = builder.isPresent() && isToBuilderMethod(builder.get(), method);
-      if (isAbstract && !isStandardMethod && !isToBuilderMethod) {
+      boolean isCompareToMethod = isCompareToMethod(type, method);
+      if (isAbstract && !isStandardMethod && !isToBuilderMethod && !isCompareToMethod) {
         nonUnderriddenMethods.add(method);
       }
     }
@@ -625,6 +706,57 @@ class Analyser {
     return any(builder.get().getInterfaces(), isEqualTo(Serializable.class));
   }
 
+  private boolean shouldValueBeInterned(TypeElement type) {
+    if (!freeBuilderAttribute(type, "intern", false)) {
+      return false;
+    }
+    if (findAnnotationMirror(type, GwtCompatible.class).isPresent()) {
+      // GWT has no WeakReference, so Guava's weak interner is unavailable to GWT clients.
+      messager.printMessage(
+          ERROR, "@FreeBuilder(intern = true) is not supported on @GwtCompatible types", type);
+      return false;
+    }
+    return true;
+  }
+
+  private boolean isValueSerializable(TypeElement type) {
+    TypeMirror serializable = elements.getTypeElement(Serializable.class.getName()).asType();
+    return types.isAssignable(types.erasure(type.asType()), serializable);
+  }
+
+  /**
+   * Returns the value of the boolean {@code attribute} of the &#64;{@link FreeBuilder} annotation
+   * on {@code type}, or {@code defaultValue} if it has not been explicitly set.
+   */
+  private static boolean freeBuilderAttribute(
+      TypeElement type, String attribute, boolean defaultValue) {
+    Optional<AnnotationMirror> annotation = findAnnotationMirror(type, FreeBuilder.class);
+    if (!annotation.isPresent()) {
+      return defaultValue;
+    }
+    Optional<AnnotationValue> value = findProperty(annotation.get(), attribute);
+    if (!value.isPresent()) {
+      return defaultValue;
+    }
+    return value.get().getValue().equals(Boolean.TRUE);
+  }
+
+  private static List<String> freeBuilderStringsAttribute(TypeElement type, String attribute) {
+    Optional<AnnotationMirror> annotation = findAnnotationMirror(type, FreeBuilder.class);
+    if (!annotation.isPresent()) {
+      return ImmutableList.of();
+    }
+    Optional<AnnotationValue> value = findProperty(annotation.get(), attribute);
+    if (!value.isPresent() || !(value.get().getValue() instanceof List)) {
+      return ImmutableList.of();
+    }
+    ImmutableList.Builder<String> strings = ImmutableList.builder();
+    for (Object element : (List<?>) value.get().getValue()) {
+      strings.add(((AnnotationValue) element).getValue().toString());
+    }
+    return strings.build();
+  }
+
   /** Returns whether a method is one of the {@link StandardMethod}s, and if so, which. */
   private static Optional<StandardMethod> maybeStandardMethod(ExecutableElement method) {
     String methodName = method.getSimpleName().toString();
@@ -647,6 +779,12 @@ class Analyser {
       } else {
         return Optional.absent();
       }
+    } else if (methodName.equals("readResolve")) {
+      if (method.getParameters().isEmpty()) {
+        return Optional.of(StandardMethod.READ_RESOLVE);
+      } else {
+        return Optional.absent();
+      }
     } else {
       return Optional.absent();
     }
@@ -19,13 +19,16 @@ import static com.google.common.collect.Iterables.any;
 import static com.google.common.collect.Iterables.tryFind;
 import static javax.lang.model.element.Modifier.PUBLIC;
 import static javax.lang.model.util.ElementFilter.typesIn;
+import static org.inferred.freebuilder.processor.BuilderFactory.TypeInference.EXPLICIT_TYPES;
 import static org.inferred.freebuilder.processor.BuilderFactory.TypeInference.INFERRED_TYPES;
 import static org.inferred.freebuilder.processor.BuilderMethods.getBuilderMethod;
 import static org.inferred.freebuilder.processor.BuilderMethods.mutator;
 import static org.inferred.freebuilder.processor.BuilderMethods.setter;
 import static org.inferred.freebuilder.processor.util.ModelUtils.asElement;
 import static org.inferred.freebuilder.processor.util.ModelUtils.findAnnotationMirror;
+import static org.inferred.freebuilder.processor.util.ModelUtils.findProperty;
 import static org.inferred.freebuilder.processor.util.ModelUtils.maybeDeclared;
+import static org.inferred.freebuilder.processor.util.StaticExcerpt.Type.METHOD;
 import static org.inferred.freebuilder.processor.util.feature.FunctionPackage.FUNCTION_PACKAGE;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -33,15 +36,23 @@ import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableSet;
 
 import org.inferred.freebuilder.processor.Metadata.Property;
 import org.inferred.freebuilder.processor.PropertyCodeGenerator.Config;
 import org.inferred.freebuilder.processor.util.Block;
+import org.inferred.freebuilder.processor.util.Excerpt;
+import org.inferred.freebuilder.processor.util.Excerpts;
 import org.inferred.freebuilder.processor.util.ParameterizedType;
+import org.inferred.freebuilder.processor.util.QualifiedName;
 import org.inferred.freebuilder.processor.util.SourceBuilder;
+import org.inferred.freebuilder.processor.util.StaticExcerpt;
 
 import java.util.List;
+import java.util.Set;
 
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
@@ -92,8 +103,10 @@ public class BuildablePropertyFactory implements PropertyCodeGenerator.Factory {
       return Optional.absent();
     }
 
+    Optional<AnnotationMirror> freeBuilderAnnotation =
+        findAnnotationMirror(element, "org.inferred.freebuilder.FreeBuilder");
     MergeBuilderMethod mergeFromBuilderMethod;
-    if (findAnnotationMirror(element, "org.inferred.freebuilder.FreeBuilder").isPresent()) {
+    if (freeBuilderAnnotation.isPresent()) {
       /*
        * If the element is annotated @FreeBuilder, assume the necessary methods will be added. We
        * can't check directly as the builder superclass may not have been generated yet. To be
@@ -155,13 +168,34 @@ public class BuildablePropertyFactory implements PropertyCodeGenerator.Factory {
       partialToBuilderMethod = PartialToBuilderMethod.MERGE_DIRECTLY;
     }
 
+    // Only a @FreeBuilder type's generated builder can tell its own values, which are complete
+    // and immutable, from partials and other implementations; values it does not recognise, and
+    // all values of other types, are merged into a nested builder rather than stored directly.
+    Optional<QualifiedName> valueChecker =
+        ValueAppender.generatedBuilderOf(type, config.getMetadata());
+
+    // A @FreeBuilder type's default value can be built once and shared, as its builder's
+    // constructor is assumed deterministic unless the type opts out of snapshotDefaults. Static
+    // fields cannot reference type parameters, so generic types are built afresh each time.
+    ParameterizedType builderType = ParameterizedType.from(builder.get());
+    boolean sharesDefaultValue = freeBuilderAnnotation.isPresent()
+        && snapshotsDefaults(freeBuilderAnnotation.get())
+        && !builderType.isParameterized();
+
     return Optional.of(new CodeGenerator(
         config.getMetadata(),
         config.getProperty(),
-        ParameterizedType.from(builder.get()),
+        builderType,
         builderFactory.get(),
         mergeFromBuilderMethod,
-        partialToBuilderMethod));
+        partialToBuilderMethod,
+        valueChecker,
+        sharesDefaultValue));
+  }
+
+  private static boolean snapshotsDefaults(AnnotationMirror freeBuilderAnnotation) {
+    Optional<AnnotationValue> value = findProperty(freeBuilderAnnotation, "snapshotDefaults");
+    return !value.isPresent() || value.get().getValue().equals(Boolean.TRUE);
   }
 
   @VisibleForTesting static class CodeGenerator extends PropertyCodeGenerator {
@@ -170,6 +204,9 @@ public class BuildablePropertyFactory implements PropertyCodeGenerator.Factory {
     private final BuilderFactory builderFactory;
     private final MergeBuilderMethod mergeFromBuilderMethod;
     private final PartialToBuilderMethod partialToBuilderMethod;
+    private final Optional<QualifiedName> valueChecker;
+    private final boolean storesBuiltValues;
+    private final boolean sharesDefaultValue;
 
     private CodeGenerator(
         Metadata metadata,
@@ -177,18 +214,46 @@ public class BuildablePropertyFactory implements PropertyCodeGenerator.Factory {
         ParameterizedType builderType,
         BuilderFactory builderFactory,
         MergeBuilderMethod mergeFromBuilderMethod,
-        PartialToBuilderMethod partialToBuilderMethod) {
+        PartialToBuilderMethod partialToBuilderMethod,
+        Optional<QualifiedName> valueChecker,
+        boolean sharesDefaultValue) {
       super(metadata, property);
       this.builderType = builderType;
       this.builderFactory = builderFactory;
       this.mergeFromBuilderMethod = mergeFromBuilderMethod;
       this.partialToBuilderMethod = partialToBuilderMethod;
+      this.valueChecker = valueChecker;
+      this.storesBuiltValues = valueChecker.isPresent();
+      this.sharesDefaultValue = sharesDefaultValue;
     }
 
     @Override
     public void addBuilderFieldDeclaration(SourceBuilder code) {
-      code.addLine("private final %s %s = %s;",
-          builderType, property.getName(), builderFactory.newBuilder(builderType, INFERRED_TYPES));
+      if (storesBuiltValues) {
+        addValueFieldDeclarations(code);
+      } else {
+        code.addLine("private %s %s = null;", builderType, property.getName());
+      }
+      if (metadata.isBuildMemoized()) {
+        code.addLine("// Once handed out, the nested builder can be modified without our knowledge")
+            .addLine("private boolean %s = false;", handedOutField());
+      }
+    }
+
+    private void addValueFieldDeclarations(SourceBuilder code) {
+      code.addLine("// At most one is non-null; if neither is, the property is at its default")
+          .addLine("private %s %s = null;", builderType, property.getName())
+          .addLine("private %s %s = null;", property.getType(), valueField());
+    }
+
+    /** Returns the name of the field holding a nested value set without a nested builder. */
+    private String valueField() {
+      return "_" + property.getName() + "Value";
+    }
+
+    /** Returns the name of the field recording that the nested builder has been handed out. */
+    private String handedOutField() {
+      return "_" + property.getName() + "BuilderHandedOut";
     }
 
     @Override
@@ -214,9 +279,30 @@ public class BuildablePropertyFactory implements PropertyCodeGenerator.Factory {
               setter(property),
               property.getType(),
               property.getName())
-          .addLine("  this.%s.clear();", property.getName())
-          .addLine("  this.%1$s.mergeFrom(%2$s.checkNotNull(%1$s));",
-              property.getName(), Preconditions.class)
+          .add(MemoizedBuild.invalidate(metadata));
+      if (!storesBuiltValues) {
+        addLazyBuilderAllocation(code, "  ");
+        code.addLine("  this.%s.clear();", property.getName())
+            .addLine("  this.%1$s.mergeFrom(%2$s.checkNotNull(%1$s));",
+                property.getName(), Preconditions.class)
+            .addLine("  return (%s) this;", metadata.getBuilder())
+            .addLine("}");
+        return;
+      }
+      code.addLine("  %s.checkNotNull(%s);", Preconditions.class, property.getName())
+          .addLine("  if (this.%s == null && %s.isValue(%s)) {",
+              property.getName(), valueChecker.get(), property.getName())
+          .addLine("    %s = %s;", valueField(), property.getName())
+          .addLine("  } else {")
+          .addLine("    if (this.%s == null) {", property.getName())
+          .addLine("      this.%s = %s;",
+              property.getName(), builderFactory.newBuilder(builderType, INFERRED_TYPES))
+          .addLine("      %s = null;", valueField())
+          .addLine("    }")
+          .addLine("    // Keep any builder returned by %s up to date", getBuilderMethod(property))
+          .addLine("    this.%s.clear();", property.getName())
+          .addLine("    this.%1$s.mergeFrom(%1$s);", property.getName())
+          .addLine("  }")
           .addLine("  return (%s) this;", metadata.getBuilder())
           .addLine("}");
     }
@@ -234,6 +320,7 @@ public class BuildablePropertyFactory implements PropertyCodeGenerator.Factory {
               metadata.getBuilder(),
               setter(property),
               builderType)
+          .add(MemoizedBuild.invalidate(metadata))
           .addLine("  return %s(builder.build());", setter(property))
           .addLine("}");
     }
@@ -260,7 +347,10 @@ public class BuildablePropertyFactory implements PropertyCodeGenerator.Factory {
               mutator(property),
               consumer.getQualifiedName(),
               builderType)
-          .addLine("  mutator.accept(%s);", property.getName())
+          .add(MemoizedBuild.invalidate(metadata));
+      addLazyBuilderAllocation(code, "  ");
+      addHandOut(code);
+      code.addLine("  mutator.accept(this.%s);", property.getName())
           .addLine("  return (%s) this;", metadata.getBuilder())
           .addLine("}");
     }
@@ -271,41 +361,107 @@ public class BuildablePropertyFactory implements PropertyCodeGenerator.Factory {
           .addLine(" * Returns a builder for the value that will be returned by %s.",
               metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
           .addLine(" */")
-          .addLine("public %s %s() {", builderType, getBuilderMethod(property))
-          .addLine("  return %s;", property.getName())
+          .addLine("public %s %s() {", builderType, getBuilderMethod(property));
+      addLazyBuilderAllocation(code, "  ");
+      addHandOut(code);
+      code.addLine("  return this.%s;", property.getName())
           .addLine("}");
     }
 
+    private void addHandOut(SourceBuilder code) {
+      if (metadata.isBuildMemoized()) {
+        code.addLine("  %s = true;", handedOutField());
+      }
+    }
+
+    private void addLazyBuilderAllocation(SourceBuilder code, String indent) {
+      code.addLine("%sif (this.%s == null) {", indent, property.getName())
+          .addLine("%s  this.%s = %s;",
+              indent, property.getName(), builderFactory.newBuilder(builderType, INFERRED_TYPES));
+      if (storesBuiltValues) {
+        code.addLine("%s  if (%s != null) {", indent, valueField())
+            .addLine("%s    this.%s.clear();", indent, property.getName())
+            .addLine("%s    this.%s.mergeFrom(%s);", indent, property.getName(), valueField())
+            .addLine("%s    %s = null;", indent, valueField())
+            .addLine("%s  }", indent);
+      }
+      code.addLine("%s}", indent);
+    }
+
+    @Override
+    public Optional<Excerpt> memoizedBuildGuard() {
+      return Optional.of(Excerpts.add("!%s", handedOutField()));
+    }
+
     @Override
     public void addFinalFieldAssignment(SourceBuilder code, String finalField, String builder) {
-      code.addLine("%s = %s.%s.build();", finalField, builder, property.getName());
+      addBuildOrDefault(code, finalField, builder, "build");
     }
 
     @Override
     public void addPartialFieldAssignment(SourceBuilder code, String finalField, String builder) {
-      code.addLine("%s = %s.%s.buildPartial();", finalField, builder, property.getName());
+      addBuildOrDefault(code, finalField, builder, "buildPartial");
+    }
+
+    private void addBuildOrDefault(
+        SourceBuilder code, String finalField, String builder, String buildMethod) {
+      if (storesBuiltValues) {
+        code.addLine("if (%s.%s != null) {", builder, valueField())
+            .addLine("  %s = %s.%s;", finalField, builder, valueField())
+            .add("} else ");
+      }
+      code.addLine("if (%s.%s == null) {", builder, property.getName());
+      if (sharesDefaultValue) {
+        code.addLine("  %s = %s();", finalField, defaultValueMethod(buildMethod));
+      } else {
+        code.addLine("  %s = %s.%s();",
+            finalField, builderFactory.newBuilder(builderType, EXPLICIT_TYPES), buildMethod);
+      }
+      code.addLine("} else {")
+          .addLine("  %s = %s.%s.%s();", finalField, builder, property.getName(), buildMethod)
+          .addLine("}");
     }
 
     @Override
     public void addMergeFromValue(Block code, String value) {
-      String propertyName = property.getName();
-      if (propertyName.equals(value)) {
-        propertyName = "this." + propertyName;  // see issue #78
+      if (!storesBuiltValues) {
+        addLazyBuilderAllocation(code, "");
+        code.addLine("this.%s.mergeFrom(%s.%s());",
+            property.getName(), value, property.getGetterName());
+        return;
       }
-      code.addLine("%s.mergeFrom(%s.%s());", propertyName, value, property.getGetterName());
+      code.addLine("if (this.%s == null && %s == null", property.getName(), valueField())
+          .addLine("    && %s.isValue(%s.%s())) {",
+              valueChecker.get(), value, property.getGetterName())
+          .addLine("  %s = %s.%s();", valueField(), value, property.getGetterName())
+          .addLine("} else {");
+      addLazyBuilderAllocation(code, "  ");
+      code.addLine("  this.%s.mergeFrom(%s.%s());",
+              property.getName(), value, property.getGetterName())
+          .addLine("}");
     }
 
     @Override
     public void addMergeFromBuilder(Block code, String builder) {
-      String propertyName = property.getName();
-      if (propertyName.equals(builder)) {
-        propertyName = "this." + propertyName;  // see issue #78
+      Excerpt base = Declarations.upcastToGeneratedBuilder(code, metadata, builder);
+      if (storesBuiltValues) {
+        code.addLine("if (%s.%s != null) {", base, valueField())
+            .addLine("  if (this.%s == null && %s == null) {", property.getName(), valueField())
+            .addLine("    %s = %s.%s;", valueField(), base, valueField())
+            .addLine("  } else {");
+        addLazyBuilderAllocation(code, "    ");
+        code.addLine("    this.%s.mergeFrom(%s.%s);", property.getName(), base, valueField())
+            .addLine("  }")
+            .add("} else ");
       }
-      code.add("%s.mergeFrom(%s.%s()", propertyName, builder, getBuilderMethod(property));
+      code.addLine("if (%s.%s != null) {", base, property.getName());
+      addLazyBuilderAllocation(code, "  ");
+      code.add("  this.%s.mergeFrom(%s.%s", property.getName(), base, property.getName());
       if (mergeFromBuilderMethod == MergeBuilderMethod.BUILD_PARTIAL_AND_MERGE) {
         code.add(".buildPartial()");
       }
-      code.add(");\n");
+      code.add(");\n")
+          .addLine("}");
     }
 
     @Override
@@ -319,6 +475,18 @@ public class BuildablePropertyFactory implements PropertyCodeGenerator.Factory {
       }
     }
 
+    @Override
+    public void addAppendToString(SourceBuilder code, String result, String finalField) {
+      Optional<QualifiedName> appender =
+          ValueAppender.generatedBuilderOf(property.getType(), metadata);
+      if (appender.isPresent()) {
+        code.addLine("%s.%s(%s.append(\"%s=\"), %s);", appender.get(),
+            ValueAppender.METHOD_NAME, result, property.getName(), finalField);
+      } else {
+        super.addAppendToString(code, result, finalField);
+      }
+    }
+
     @Override
     public void addSetFromResult(SourceBuilder code, String builder, String variable) {
       code.addLine("%s.%s(%s);", builder, setter(property), variable);
@@ -326,7 +494,82 @@ public class BuildablePropertyFactory implements PropertyCodeGenerator.Factory {
 
     @Override
     public void addClearField(Block code) {
-      code.addLine("%s.clear();", property.getName());
+      if (storesBuiltValues) {
+        code.addLine("%s = null;", valueField());
+      }
+      code.addLine("if (%s != null) {", property.getName())
+          .addLine("  %s.clear();", property.getName())
+          .addLine("}");
+    }
+
+    /**
+     * Returns the name of the static method returning the shared value {@code buildMethod}
+     * creates for this property when it is never touched.
+     */
+    private String defaultValueMethod(String buildMethod) {
+      return "_" + property.getName()
+          + (buildMethod.equals("build") ? "Default" : "PartialDefault");
+    }
+
+    @Override
+    public Set<StaticExcerpt> getStaticExcerpts() {
+      if (!sharesDefaultValue) {
+        return ImmutableSet.of();
+      }
+      ParameterizedType valueType = ParameterizedType.from((DeclaredType) property.getType());
+      Excerpt newBuilder = builderFactory.newBuilder(builderType, EXPLICIT_TYPES);
+      return ImmutableSet.<StaticExcerpt>of(
+          new DefaultValueExcerpt(defaultValueMethod("build"), valueType, newBuilder, "build"),
+          new DefaultValueExcerpt(
+              defaultValueMethod("buildPartial"), valueType, newBuilder, "buildPartial"));
+    }
+  }
+
+  /**
+   * Declares a static method returning the value of an untouched buildable property, built on
+   * first use and shared thereafter, so building does not allocate a nested builder each time.
+   */
+  private static class DefaultValueExcerpt extends StaticExcerpt {
+
+    private final ParameterizedType valueType;
+    private final Excerpt newBuilder;
+    private final String buildMethod;
+
+    DefaultValueExcerpt(
+        String name, ParameterizedType valueType, Excerpt newBuilder, String buildMethod) {
+      super(METHOD, name);
+      this.valueType = valueType;
+      this.newBuilder = newBuilder;
+      this.buildMethod = buildMethod;
+    }
+
+    @Override
+    public void addTo(SourceBuilder code) {
+      code.addLine("")
+          .addLine("private static volatile %s %sSnapshot;", valueType, getName())
+          .addLine("")
+          .addLine("/**")
+          .addLine(" * Returns the result of calling {@code %s()} on a fresh builder. It is",
+              buildMethod)
+          .addLine(" * created on first use and shared thereafter.")
+          .addLine(" */")
+          .addLine("private static %s %s() {", valueType, getName())
+          .addLine("  %s value = %sSnapshot;", valueType, getName())
+          .addLine("  if (value == null) {")
+          .addLine("    // Benign race: at worst, concurrent callers each build an equal value.")
+          .addLine("    value = %s.%s();", newBuilder, buildMethod)
+          .addLine("    %sSnapshot = value;", getName())
+          .addLine("  }")
+          .addLine("  return value;")
+          .addLine("}");
+    }
+
+    @Override
+    protected void addFields(FieldReceiver fields) {
+      super.addFields(fields);
+      fields.add("valueType", valueType);
+      fields.add("newBuilder", newBuilder);
+      fields.add("buildMethod", buildMethod);
     }
   }
 
@@ -77,6 +77,10 @@ public class BuilderMethods {
     return "mutate" + property.getCapitalizedName();
   }
 
+  public static String ensureCapacityMethod(Property property) {
+    return "ensure" + property.getCapitalizedName() + "Capacity";
+  }
+
   public static String clearMethod(Property property) {
     return "clear" + property.getCapitalizedName();
   }
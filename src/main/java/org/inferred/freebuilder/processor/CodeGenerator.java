@@ -16,8 +16,6 @@
 package org.inferred.freebuilder.processor;
 
 import static com.google.common.collect.Iterables.any;
-import static com.google.common.collect.Iterables.getLast;
-import static com.google.common.collect.Iterables.getOnlyElement;
 import static org.inferred.freebuilder.processor.BuilderFactory.TypeInference.EXPLICIT_TYPES;
 import static org.inferred.freebuilder.processor.Metadata.GET_CODE_GENERATOR;
 import static org.inferred.freebuilder.processor.Metadata.UnderrideLevel.ABSENT;
@@ -29,10 +27,10 @@ import static org.inferred.freebuilder.processor.util.feature.SourceLevel.SOURCE
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
-import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
-import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 
@@ -40,16 +38,18 @@ import org.inferred.freebuilder.FreeBuilder;
 import org.inferred.freebuilder.processor.Metadata.Property;
 import org.inferred.freebuilder.processor.Metadata.StandardMethod;
 import org.inferred.freebuilder.processor.PropertyCodeGenerator.Type;
+import org.inferred.freebuilder.processor.excerpt.WeakInterner;
 import org.inferred.freebuilder.processor.util.Block;
 import org.inferred.freebuilder.processor.util.Excerpt;
 import org.inferred.freebuilder.processor.util.Excerpts;
 import org.inferred.freebuilder.processor.util.ObjectsExcerpts;
-import org.inferred.freebuilder.processor.util.PreconditionExcerpts;
 import org.inferred.freebuilder.processor.util.SourceBuilder;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.EnumSet;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -69,7 +69,6 @@ public class CodeGenerator {
     addBuilderTypeDeclaration(code, metadata);
     code.addLine(" {");
     addStaticFromMethod(code, metadata);
-    addConstantDeclarations(metadata, code);
     if (any(metadata.getProperties(), IS_REQUIRED)) {
       addPropertyEnum(metadata, code);
     }
@@ -79,19 +78,41 @@ public class CodeGenerator {
     addAccessors(metadata, code);
     addMergeFromValueMethod(code, metadata);
     addMergeFromBuilderMethod(code, metadata);
+    addDiffMethods(code, metadata);
+    addComparatorMethods(code, metadata);
     addClearMethod(code, metadata);
     addBuildMethod(code, metadata);
+    addBuildAndResetMethod(code, metadata);
     addBuildPartialMethod(code, metadata);
 
     addValueType(code, metadata);
     addPartialType(code, metadata);
+    addValueComparatorType(code, metadata);
     for (Function<Metadata, Excerpt> nestedClass : metadata.getNestedClasses()) {
       code.add(nestedClass.apply(metadata));
     }
+    ValueAppender.addStaticAppendToMethod(
+        code, metadata, hasValueAppendTo(metadata), hasPartialAppendTo(metadata));
+    addStaticIsValueMethod(code, metadata);
     addStaticMethods(code, metadata);
     code.addLine("}");
   }
 
+  /**
+   * Adds a package-private static {@code isValue(Object)} method, which other generated builders
+   * in the same package call to recognise values that can be shared rather than copied.
+   */
+  private static void addStaticIsValueMethod(SourceBuilder code, Metadata metadata) {
+    code.addLine("")
+        .addLine("/**")
+        .addLine(" * Returns whether {@code value} was built by this type's builder, and so is")
+        .addLine(" * complete and immutable.")
+        .addLine(" */")
+        .addLine("static boolean isValue(Object value) {")
+        .addLine("  return value instanceof %s;", metadata.getValueType().getQualifiedName())
+        .addLine("}");
+  }
+
   private void addBuilderTypeDeclaration(SourceBuilder code, Metadata metadata) {
     code.addLine("/**")
         .addLine(" * Auto-generated superclass of %s,", metadata.getBuilder().javadocLink())
@@ -125,14 +146,6 @@ public class CodeGenerator {
         .addLine("}");
   }
 
-  private static void addConstantDeclarations(Metadata metadata, SourceBuilder body) {
-    if (body.feature(GUAVA).isAvailable() && metadata.getProperties().size() > 1) {
-      body.addLine("")
-          .addLine("private static final %1$s COMMA_JOINER = %1$s.on(\", \").skipNulls();",
-              Joiner.class);
-    }
-  }
-
   private static void addFieldDeclarations(SourceBuilder code, Metadata metadata) {
     code.addLine("");
     for (Property property : metadata.getProperties()) {
@@ -141,10 +154,10 @@ public class CodeGenerator {
     }
     // Unset properties
     if (any(metadata.getProperties(), IS_REQUIRED)) {
-      code.addLine("private final %s<%s> _unsetProperties =",
-              EnumSet.class, metadata.getPropertyEnum())
-          .addLine("    %s.allOf(%s.class);", EnumSet.class, metadata.getPropertyEnum());
+      code.addLine("private %s _unsetProperties = %s;",
+          UnsetProperties.fieldType(metadata), UnsetProperties.allUnset(metadata));
     }
+    MemoizedBuild.addFieldDeclaration(code, metadata);
   }
 
   private static void addAccessors(Metadata metadata, SourceBuilder body) {
@@ -165,11 +178,56 @@ public class CodeGenerator {
     }
     code.addLine(" */")
         .addLine("public %s build() {", metadata.getType());
+    if (metadata.isBuildMemoized()) {
+      code.addLine("  if (%s) {", MemoizedBuild.isValid(metadata))
+          .addLine("    return _lastBuilt;")
+          .addLine("  }");
+    }
     if (hasRequiredProperties) {
-      code.add(PreconditionExcerpts.checkState(
-          "_unsetProperties.isEmpty()", "Not set: %s", "_unsetProperties"));
+      // The names of unset properties are only decoded on the failure path.
+      code.addLine("  if (%s) {", UnsetProperties.anyUnset("_unsetProperties", metadata))
+          .addLine("    throw new %s(\"Not set: \" + %s);",
+              IllegalStateException.class, UnsetProperties.names("_unsetProperties", metadata))
+          .addLine("  }");
+    }
+    Excerpt value = Excerpts.add("%s(this)%s",
+        metadata.getValueType().constructor(), metadata.isValueInterned() ? ".intern()" : "");
+    if (metadata.isBuildMemoized()) {
+      code.addLine("  _lastBuilt = %s;", value)
+          .addLine("  return _lastBuilt;");
+    } else {
+      code.addLine("  return %s;", value);
+    }
+    code.addLine("}");
+  }
+
+  private static void addBuildAndResetMethod(SourceBuilder code, Metadata metadata) {
+    if (!metadata.getHasBuildAndResetMethod()) {
+      return;
+    }
+    code.addLine("")
+        .addLine("/**")
+        .addLine(" * Returns a newly-created %s based on the contents of the {@code %s},",
+            metadata.getType().javadocLink(), metadata.getBuilder().getSimpleName())
+        .addLine(" * then resets the builder as {@link #clear()} would.")
+        .addLine(" *")
+        .addLine(" * <p>Lists are handed over to the value rather than copied, so prefer this to")
+        .addLine(" * {@code build()} followed by {@code clear()} if the builder is about to be")
+        .addLine(" * discarded or refilled.");
+    if (any(metadata.getProperties(), IS_REQUIRED)) {
+      code.addLine(" *")
+          .addLine(" * @throws IllegalStateException if any field has not been set");
+    }
+    code.addLine(" */")
+        .addLine("public %s buildAndReset() {", metadata.getType());
+    Block body = new Block(code);
+    for (Property property : metadata.getProperties()) {
+      property.getCodeGenerator().addHandOverField(body);
     }
-    code.addLine("  return %s(this);", metadata.getValueType().constructor())
+    code.add(body)
+        .addLine("  %s result = build();", metadata.getType())
+        .addLine("  clear();")
+        .addLine("  return result;")
         .addLine("}");
   }
 
@@ -179,7 +237,8 @@ public class CodeGenerator {
         .addLine(" * Sets all property values using the given {@code %s} as a template.",
             metadata.getType().getQualifiedName())
         .addLine(" */")
-        .addLine("public %s mergeFrom(%s value) {", metadata.getBuilder(), metadata.getType());
+        .addLine("public %s mergeFrom(%s value) {", metadata.getBuilder(), metadata.getType())
+        .add(MemoizedBuild.invalidate(metadata));
     Block body = new Block(code);
     for (Property property : metadata.getProperties()) {
       property.getCodeGenerator().addMergeFromValue(body, "value");
@@ -196,7 +255,8 @@ public class CodeGenerator {
             metadata.getBuilder().getSimpleName())
         .addLine(" * Does not affect any properties not set on the input.")
         .addLine(" */")
-        .addLine("public %1$s mergeFrom(%1$s template) {", metadata.getBuilder());
+        .addLine("public %1$s mergeFrom(%1$s template) {", metadata.getBuilder())
+        .add(MemoizedBuild.invalidate(metadata));
     Block body = new Block(code);
     for (Property property : metadata.getProperties()) {
       property.getCodeGenerator().addMergeFromBuilder(body, "template");
@@ -206,12 +266,202 @@ public class CodeGenerator {
         .addLine("}");
   }
 
+  private static void addDiffMethods(SourceBuilder code, Metadata metadata) {
+    if (!metadata.getHasDiffMethods()) {
+      return;
+    }
+    String maskType = UnsetProperties.fieldType(metadata);
+    code.addLine("")
+        .addLine("/**")
+        .addLine(" * Returns a mask of the properties whose values differ between {@code a} and")
+        .addLine(" * {@code b}, for {@link #mergeFrom(%s, %s)}:",
+            metadata.getType().getQualifiedName(), maskType)
+        .addLine(" * <ul>");
+    for (int i = 0; i < metadata.getProperties().size(); i++) {
+      code.addLine(" * <li>bit %s: %s", i, metadata.getType().javadocNoArgMethodLink(
+          metadata.getProperties().get(i).getGetterName()));
+    }
+    code.addLine(" * </ul>")
+        .addLine(" */")
+        .addLine("public static %s%s diff(%s a, %s b) {",
+            metadata.getBuilder().declarationParameters(),
+            maskType,
+            metadata.getType(),
+            metadata.getType())
+        .addLine("  %s changed = %s;", maskType, UnsetProperties.noBits(metadata))
+        .addLine("  if (a == b) {")
+        .addLine("    return changed;")
+        .addLine("  }");
+    for (Property property : metadata.getProperties()) {
+      Excerpt a = Excerpts.add("a.%s()", property.getGetterName());
+      Excerpt b = Excerpts.add("b.%s()", property.getGetterName());
+      Excerpt differ = ObjectsExcerpts.notEquals(a, b, property.getType().getKind(),
+          (property.getCodeGenerator().getType() == Type.OPTIONAL) ? NULLABLE : NOT_NULLABLE);
+      if (property.getType().getKind().isPrimitive()) {
+        code.addLine("  if (%s) {", differ);
+      } else {
+        // Identity first: values sharing an immutable collection compare in constant time
+        code.addLine("  if (%s != %s && %s) {", a, b, differ);
+      }
+      code.addLine("    %s", UnsetProperties.setBit("changed", metadata, property))
+          .addLine("  }");
+    }
+    code.addLine("  return changed;")
+        .addLine("}");
+
+    code.addLine("")
+        .addLine("/**")
+        .addLine(" * Sets each property flagged in {@code changed} to its value in {@code value}.")
+        .addLine(" * Unlike {@link #mergeFrom(%s)}, collection properties are replaced rather than",
+            metadata.getType().getQualifiedName())
+        .addLine(" * added to, so {@code mergeFrom(b, diff(a, b))} on a builder holding {@code a}")
+        .addLine(" * leaves it holding {@code b}.")
+        .addLine(" */")
+        .addLine("public %s mergeFrom(%s value, %s changed) {",
+            metadata.getBuilder(), metadata.getType(), maskType)
+        .add(MemoizedBuild.invalidate(metadata));
+    Block body = new Block(code);
+    for (Property property : metadata.getProperties()) {
+      body.addLine("if (%s) {", UnsetProperties.hasBit("changed", metadata, property));
+      property.getCodeGenerator().addClearField(body);
+      property.getCodeGenerator().addMergeFromValue(body, "value");
+      body.addLine("}");
+    }
+    code.add(body)
+        .addLine("  return (%s) this;", metadata.getBuilder())
+        .addLine("}");
+  }
+
+  private static boolean hasComparator(Metadata metadata) {
+    return !metadata.getComparatorOrder().isEmpty() || metadata.getHasCompareToMethod();
+  }
+
+  /** Returns the properties named in the comparator order, most significant first. */
+  private static List<Property> inComparatorOrder(Metadata metadata) {
+    List<Property> properties = new ArrayList<Property>();
+    for (String name : metadata.getComparatorOrder()) {
+      for (Property property : metadata.getProperties()) {
+        if (property.getName().equals(name)) {
+          properties.add(property);
+        }
+      }
+    }
+    return properties;
+  }
+
+  private static void addComparatorMethods(SourceBuilder code, Metadata metadata) {
+    if (!hasComparator(metadata)) {
+      return;
+    }
+    List<Property> properties = inComparatorOrder(metadata);
+    code.addLine("")
+        .addLine("/**")
+        .addLine(" * Returns a comparator ordering %s instances by",
+            metadata.getType().javadocLink());
+    for (int i = 0; i < properties.size(); i++) {
+      code.addLine(" * %s%s%s",
+          (i == 0) ? "" : "then ",
+          metadata.getType().javadocNoArgMethodLink(properties.get(i).getGetterName()),
+          (i == properties.size() - 1) ? "." : ",");
+    }
+    code.addLine(" * Absent optional and null nullable properties sort first.")
+        .addLine(" */")
+        .addLine("public static %s%s<%s> comparator() {",
+            metadata.getBuilder().declarationParameters(), Comparator.class, metadata.getType());
+    if (metadata.getType().isParameterized()) {
+      code.addLine("  return new ValueComparator%s();", metadata.getBuilder().typeParameters());
+    } else {
+      code.addLine("  return ValueComparator.INSTANCE;");
+    }
+    code.addLine("}");
+
+    code.addLine("")
+        .addLine("private static %sint compareValues(%s a, %s b) {",
+            metadata.getBuilder().declarationParameters(),
+            metadata.getType(),
+            metadata.getType());
+    if (properties.isEmpty()) {
+      code.addLine("  return 0;")
+          .addLine("}");
+      return;
+    }
+    code.addLine("  int result;")
+        .addLine("  if (a instanceof %1$s && b instanceof %1$s) {",
+            metadata.getValueType().getQualifiedName())
+        .addLine("    // Compare fields directly, without boxing or allocating optionals")
+        .addLine("    %1$s valueA = (%1$s) a;", metadata.getValueType())
+        .addLine("    %1$s valueB = (%1$s) b;", metadata.getValueType());
+    List<Excerpt> fieldComparisons = new ArrayList<Excerpt>();
+    List<Excerpt> getterComparisons = new ArrayList<Excerpt>();
+    for (Property property : properties) {
+      fieldComparisons.add(property.getCodeGenerator().fieldsCompare(
+          "valueA." + property.getName(), "valueB." + property.getName()).get());
+      getterComparisons.add(property.getCodeGenerator().gettersCompare(
+          "a." + property.getGetterName() + "()", "b." + property.getGetterName() + "()").get());
+    }
+    addComparisonChain(code, "    ", fieldComparisons);
+    code.addLine("  }");
+    addComparisonChain(code, "  ", getterComparisons);
+    code.addLine("}");
+  }
+
+  /** Adds statements returning the first non-zero comparison, or the last comparison. */
+  private static void addComparisonChain(
+      SourceBuilder code, String indent, List<Excerpt> comparisons) {
+    for (Excerpt comparison : comparisons.subList(0, comparisons.size() - 1)) {
+      code.addLine("%sresult = %s;", indent, comparison)
+          .addLine("%sif (result != 0) {", indent)
+          .addLine("%s  return result;", indent)
+          .addLine("%s}", indent);
+    }
+    code.addLine("%sreturn %s;", indent, comparisons.get(comparisons.size() - 1));
+  }
+
+  private static void addValueComparatorType(SourceBuilder code, Metadata metadata) {
+    if (!hasComparator(metadata)) {
+      return;
+    }
+    code.addLine("")
+        .addLine("private static final class ValueComparator%s",
+            metadata.getBuilder().declarationParameters())
+        .addLine("    implements %s<%s>, %s {",
+            Comparator.class, metadata.getType(), Serializable.class)
+        .addLine("")
+        .addLine("  private static final long serialVersionUID = 1L;");
+    if (!metadata.getType().isParameterized()) {
+      code.addLine("")
+          .addLine("  private static final ValueComparator INSTANCE = new ValueComparator();")
+          .addLine("")
+          .addLine("  private Object readResolve() {")
+          .addLine("    return INSTANCE;")
+          .addLine("  }");
+    }
+    code.addLine("")
+        .addLine("  @%s", Override.class)
+        .addLine("  public int compare(%s a, %s b) {", metadata.getType(), metadata.getType())
+        .addLine("    return compareValues(a, b);")
+        .addLine("  }")
+        .addLine("}");
+  }
+
+  private static void addCompareToMethod(SourceBuilder code, Metadata metadata) {
+    if (!metadata.getHasCompareToMethod()) {
+      return;
+    }
+    code.addLine("")
+        .addLine("  @%s", Override.class)
+        .addLine("  public int compareTo(%s other) {", metadata.getType())
+        .addLine("    return compareValues(this, other);")
+        .addLine("  }");
+  }
+
   private static void addClearMethod(SourceBuilder code, Metadata metadata) {
     code.addLine("")
         .addLine("/**")
         .addLine(" * Resets the state of this builder.")
         .addLine(" */")
-        .addLine("public %s clear() {", metadata.getBuilder());
+        .addLine("public %s clear() {", metadata.getBuilder())
+        .add(MemoizedBuild.invalidate(metadata));
     Block body = new Block(code);
     List<PropertyCodeGenerator> codeGenerators =
         Lists.transform(metadata.getProperties(), GET_CODE_GENERATOR);
@@ -222,8 +472,8 @@ public class CodeGenerator {
     if (any(metadata.getProperties(), IS_REQUIRED)) {
       Optional<Excerpt> defaults = Declarations.freshBuilder(body, metadata);
       if (defaults.isPresent()) {
-        code.addLine("  _unsetProperties.clear();")
-            .addLine("  _unsetProperties.addAll(%s._unsetProperties);", defaults.get());
+        code.addLine("  %s", UnsetProperties.assignFrom(
+            Excerpts.add("%s._unsetProperties", defaults.get()), metadata));
       }
     }
     code.addLine("  return (%s) this;", metadata.getBuilder())
@@ -268,22 +518,26 @@ public class CodeGenerator {
         .addLine("private enum %s {", metadata.getPropertyEnum().getSimpleName());
     for (Property property : metadata.getProperties()) {
       if (property.getCodeGenerator().getType() == Type.REQUIRED) {
-        code.addLine("  %s(\"%s\"),", property.getAllCapsName(), property.getName());
+        code.addLine("  %s(\"%s\", %s),", property.getAllCapsName(), property.getName(),
+            UnsetProperties.bit(metadata, property));
       }
     }
     code.addLine("  ;")
         .addLine("")
         .addLine("  private final %s name;", String.class)
+        .addLine("  private final int bit;")
         .addLine("")
-        .addLine("  private %s(%s name) {",
+        .addLine("  private %s(%s name, int bit) {",
             metadata.getPropertyEnum().getSimpleName(), String.class)
         .addLine("    this.name = name;")
+        .addLine("    this.bit = bit;")
         .addLine("  }")
         .addLine("")
         .addLine("  @%s public %s toString() {", Override.class, String.class)
         .addLine("    return name;")
-        .addLine("  }")
-        .addLine("}");
+        .addLine("  }");
+    UnsetProperties.addPropertyEnumMethods(code, metadata);
+    code.addLine("}");
   }
 
   private static void addValueType(SourceBuilder code, Metadata metadata) {
@@ -299,6 +553,18 @@ public class CodeGenerator {
     for (Property property : metadata.getProperties()) {
       property.getCodeGenerator().addValueFieldDeclaration(code, property.getName());
     }
+    if (isHashCodeCached(metadata)) {
+      code.addLine("  private transient int _cachedHashCode;");
+    }
+    if (metadata.isValueInterned()) {
+      if (code.feature(GUAVA).isAvailable()) {
+        code.addLine("  private static final %s<Object> _interner = %s.newWeakInterner();",
+            Interner.class, Interners.class);
+      } else {
+        code.addLine("  private static final %1$s<Object> _interner = new %1$s<Object>();",
+            WeakInterner.TYPE_NAME);
+      }
+    }
     // Constructor
     code.addLine("")
         .addLine("  private %s(%s builder) {",
@@ -335,6 +601,10 @@ public class CodeGenerator {
       }
       code.addLine("  }");
     }
+    if (metadata.isValueInterned()) {
+      addValueTypeIntern(code, metadata);
+    }
+    addCompareToMethod(code, metadata);
     // Equals
     switch (metadata.standardMethodUnderride(StandardMethod.EQUALS)) {
       case ABSENT:
@@ -357,51 +627,72 @@ public class CodeGenerator {
     }
     // Hash code
     if (metadata.standardMethodUnderride(StandardMethod.HASH_CODE) == ABSENT) {
-      String properties = Joiner.on(", ").join(getNames(metadata.getProperties()));
-      code.addLine("")
-          .addLine("  @%s", Override.class)
-          .addLine("  public int hashCode() {");
-      if (code.feature(SOURCE_LEVEL).javaUtilObjects().isPresent()) {
-        code.addLine("    return %s.hash(%s);",
-            code.feature(SOURCE_LEVEL).javaUtilObjects().get(), properties);
-      } else {
-        code.addLine("    return %s.hashCode(new Object[] { %s });", Arrays.class, properties);
-      }
-      code.addLine("  }");
+      addValueTypeHashCode(code, metadata);
     }
     // toString
-    if (metadata.standardMethodUnderride(StandardMethod.TO_STRING) == ABSENT) {
-      addValueTypeToString(code, metadata);
+    if (hasValueAppendTo(metadata)) {
+      addAppendToAndToString(code, metadata, false);
     }
     code.addLine("}");
   }
 
+  private static void addValueTypeIntern(SourceBuilder code, Metadata metadata) {
+    code.addLine("")
+        .addLine("  /**")
+        .addLine("   * Returns the canonical instance equal to this value, which is this value")
+        .addLine("   * itself unless an equal value has been interned and is still reachable.")
+        .addLine("   */");
+    if (metadata.getValueType().isParameterized()) {
+      code.addLine("  @%s(\"unchecked\")", SuppressWarnings.class);
+    }
+    code.addLine("  %s intern() {", metadata.getValueType())
+        .addLine("    return (%s) _interner.intern(this);", metadata.getValueType())
+        .addLine("  }");
+    if (metadata.isValueSerializable()
+        && metadata.standardMethodUnderride(StandardMethod.READ_RESOLVE) == ABSENT) {
+      code.addLine("")
+          .addLine("  private Object readResolve() {")
+          .addLine("    return intern();")
+          .addLine("  }");
+    }
+  }
+
   private static void addValueTypeEquals(SourceBuilder code, Metadata metadata) {
     // Default implementation if no user implementation exists.
     code.addLine("")
         .addLine("  @%s", Override.class)
         .addLine("  public boolean equals(Object obj) {")
+        .addLine("    if (obj == this) {")
+        .addLine("      return true;")
+        .addLine("    }")
         .addLine("    if (!(obj instanceof %s)) {", metadata.getValueType().getQualifiedName())
         .addLine("      return false;")
         .addLine("    }")
         .addLine("    %1$s other = (%1$s) obj;", metadata.getValueType().withWildcards());
+    if (isHashCodeCached(metadata)) {
+      code.addLine("    if (_cachedHashCode != 0 && other._cachedHashCode != 0")
+          .addLine("        && _cachedHashCode != other._cachedHashCode) {")
+          .addLine("      return false;")
+          .addLine("    }");
+    }
     if (metadata.getProperties().isEmpty()) {
       code.addLine("    return true;");
     } else if (code.feature(SOURCE_LEVEL).javaUtilObjects().isPresent()) {
       String prefix = "    return ";
-      for (Property property : metadata.getProperties()) {
+      for (Property property : inEqualsOrder(metadata)) {
         code.add(prefix);
-        code.add("%1$s.equals(%2$s, other.%2$s)",
-            code.feature(SOURCE_LEVEL).javaUtilObjects().get(), property.getName());
+        code.add(property.getCodeGenerator().fieldsEqual(
+            property.getName(),
+            "other." + property.getName(),
+            (property.getCodeGenerator().getType() == Type.OPTIONAL) ? NULLABLE : NOT_NULLABLE));
         prefix = "\n        && ";
       }
       code.add(";\n");
     } else {
-      for (Property property : metadata.getProperties()) {
-        code.addLine("    if (%s) {", ObjectsExcerpts.notEquals(
+      for (Property property : inEqualsOrder(metadata)) {
+        code.addLine("    if (%s) {", property.getCodeGenerator().fieldsNotEqual(
                 property.getName(),
                 "other." + property.getName(),
-                property.getType().getKind(),
                 (property.getCodeGenerator().getType() == Type.OPTIONAL) ? NULLABLE : NOT_NULLABLE))
             .addLine("      return false;")
             .addLine("    }");
@@ -411,72 +702,70 @@ public class CodeGenerator {
     code.addLine("  }");
   }
 
-  private static void addValueTypeToString(SourceBuilder code, Metadata metadata) {
-    code.addLine("")
-        .addLine("  @%s", Override.class)
-        .addLine("  public %s toString() {", String.class);
-    switch (metadata.getProperties().size()) {
-      case 0: {
-        code.addLine("    return \"%s{}\";", metadata.getType().getSimpleName());
-        break;
-      }
-
-      case 1: {
-        code.add("    return \"%s{", metadata.getType().getSimpleName());
-        Property property = getOnlyElement(metadata.getProperties());
-        if (property.getCodeGenerator().getType() == Type.OPTIONAL) {
-          code.add("\" + (%1$s != null ? \"%1$s=\" + %1$s : \"\") + \"}\";\n",
-              property.getName());
-        } else {
-          code.add("%1$s=\" + %1$s + \"}\";\n", property.getName());
-        }
-        break;
+  /**
+   * Returns the properties in the order {@code equals} should compare them: cheapest first, as
+   * ranked by {@link PropertyCodeGenerator#getEqualsCost()}, else in declaration order.
+   */
+  private static List<Property> inEqualsOrder(Metadata metadata) {
+    List<Property> properties = new ArrayList<Property>(metadata.getProperties());
+    Collections.sort(properties, new Comparator<Property>() {
+      @Override
+      public int compare(Property a, Property b) {
+        return a.getCodeGenerator().getEqualsCost().compareTo(b.getCodeGenerator().getEqualsCost());
       }
+    });
+    return properties;
+  }
 
-      default: {
-        if (!any(metadata.getProperties(), IS_OPTIONAL)) {
-          // If none of the properties are optional, use string concatenation for performance.
-          code.addLine("    return \"%s{\"", metadata.getType().getSimpleName());
-          Property lastProperty = getLast(metadata.getProperties());
-          for (Property property : metadata.getProperties()) {
-            code.add("        + \"%1$s=\" + %1$s", property.getName());
-            if (property != lastProperty) {
-              code.add(" + \", \"\n");
-            } else {
-              code.add(" + \"}\";\n");
-            }
-          }
-        } else if (code.feature(GUAVA).isAvailable()) {
-          // If Guava is available, use COMMA_JOINER for readability.
-          code.addLine("    return \"%s{\"", metadata.getType().getSimpleName())
-              .addLine("        + COMMA_JOINER.join(");
-          Property lastProperty = getLast(metadata.getProperties());
-          for (Property property : metadata.getProperties()) {
-            code.add("            ");
-            if (property.getCodeGenerator().getType() == Type.OPTIONAL) {
-              code.add("(%s != null ? ", property.getName());
-            }
-            code.add("\"%1$s=\" + %1$s", property.getName());
-            if (property.getCodeGenerator().getType() == Type.OPTIONAL) {
-              code.add(" : null)");
-            }
-            if (property != lastProperty) {
-              code.add(",\n");
-            } else {
-              code.add(")\n");
-            }
-          }
-          code.addLine("        + \"}\";");
-        } else {
-          // Use StringBuilder if no better choice is available.
-          writeToStringWithBuilder(code, metadata, false);
-        }
-        break;
-      }
+  private static void addValueTypeHashCode(SourceBuilder code, Metadata metadata) {
+    code.addLine("")
+        .addLine("  @%s", Override.class)
+        .addLine("  public int hashCode() {");
+    if (isHashCodeCached(metadata)) {
+      // Racy single-check idiom: int writes are atomic, so at worst the hash code is recomputed.
+      code.addLine("    int _hashCode = _cachedHashCode;")
+          .addLine("    if (_hashCode == 0) {")
+          .addLine("      _hashCode = 1;");
+      addHashCodeUpdates(code, "      ", metadata.getProperties(), Type.OPTIONAL);
+      code.addLine("      _cachedHashCode = _hashCode;")
+          .addLine("    }")
+          .addLine("    return _hashCode;");
+    } else if (metadata.getProperties().isEmpty()) {
+      code.addLine("    return 1;");
+    } else {
+      // Unrolled equivalent of Arrays.hashCode(Object[]) that neither allocates nor boxes.
+      code.addLine("    int _hashCode = 1;");
+      addHashCodeUpdates(code, "    ", metadata.getProperties(), Type.OPTIONAL);
+      code.addLine("    return _hashCode;");
     }
     code.addLine("  }");
   }
 
+  /**
+   * Adds a {@code _hashCode = 31 * _hashCode + ...} line per property, hashing each field by kind
+   * so no boxing or varargs array is needed. Fields of the given {@code nullableTypes} are hashed
+   * null-safely.
+   */
+  private static void addHashCodeUpdates(
+      SourceBuilder code,
+      String indent,
+      Iterable<Property> properties,
+      Type... nullableTypes) {
+    List<Type> nullable = Arrays.asList(nullableTypes);
+    for (Property property : properties) {
+      boolean isNullable = nullable.contains(property.getCodeGenerator().getType());
+      code.addLine("%s_hashCode = 31 * _hashCode + %s;", indent,
+          property.getCodeGenerator().fieldHashCode(
+              property.getName(), isNullable ? NULLABLE : NOT_NULLABLE));
+    }
+  }
+
+  /** Returns whether the generated value type caches its hash code. */
+  private static boolean isHashCodeCached(Metadata metadata) {
+    return metadata.isHashCodeCached()
+        && metadata.standardMethodUnderride(StandardMethod.HASH_CODE) == ABSENT;
+  }
+
   private static void addPartialType(SourceBuilder code, Metadata metadata) {
     boolean hasRequiredProperties = any(metadata.getProperties(), IS_REQUIRED);
     code.addLine("")
@@ -488,8 +777,7 @@ public class CodeGenerator {
       property.getCodeGenerator().addValueFieldDeclaration(code, property.getName());
     }
     if (hasRequiredProperties) {
-      code.addLine("  private final %s<%s> _unsetProperties;",
-          EnumSet.class, metadata.getPropertyEnum());
+      code.addLine("  private final %s _unsetProperties;", UnsetProperties.fieldType(metadata));
     }
     // Constructor
     code.addLine("")
@@ -501,7 +789,8 @@ public class CodeGenerator {
           .addPartialFieldAssignment(code, "this." + property.getName(), "builder");
     }
     if (hasRequiredProperties) {
-      code.addLine("    this._unsetProperties = builder._unsetProperties.clone();");
+      code.addLine("    this._unsetProperties = %s;",
+          UnsetProperties.copyOf("builder._unsetProperties", metadata));
     }
     code.addLine("  }");
     // Getters
@@ -512,8 +801,8 @@ public class CodeGenerator {
       property.getCodeGenerator().addGetterAnnotations(code);
       code.addLine("  public %s %s() {", property.getType(), property.getGetterName());
       if (property.getCodeGenerator().getType() == Type.REQUIRED) {
-        code.addLine("    if (_unsetProperties.contains(%s.%s)) {",
-                metadata.getPropertyEnum(), property.getAllCapsName())
+        code.addLine("    if (%s) {",
+                UnsetProperties.isUnset("_unsetProperties", metadata, property))
             .addLine("      throw new %s(\"%s not set\");",
                 UnsupportedOperationException.class, property.getName())
             .addLine("    }");
@@ -524,11 +813,15 @@ public class CodeGenerator {
       code.addLine("  }");
     }
     addPartialToBuilderMethod(code, metadata);
+    addCompareToMethod(code, metadata);
     // Equals
     if (metadata.standardMethodUnderride(StandardMethod.EQUALS) != FINAL) {
       code.addLine("")
           .addLine("  @%s", Override.class)
           .addLine("  public boolean equals(Object obj) {")
+          .addLine("    if (obj == this) {")
+          .addLine("      return true;")
+          .addLine("    }")
           .addLine("    if (!(obj instanceof %s)) {", metadata.getPartialType().getQualifiedName())
           .addLine("      return false;")
           .addLine("    }")
@@ -537,44 +830,38 @@ public class CodeGenerator {
         code.addLine("    return true;");
       } else if (code.feature(SOURCE_LEVEL).javaUtilObjects().isPresent()) {
         String prefix = "    return ";
-        for (Property property : metadata.getProperties()) {
+        for (Property property : inEqualsOrder(metadata)) {
+          // Required properties may be unset, and hence null, in a partial.
+          boolean isNullable = !property.getType().getKind().isPrimitive()
+              && property.getCodeGenerator().getType() != Type.HAS_DEFAULT;
           code.add(prefix);
-          code.add("%1$s.equals(%2$s, other.%2$s)",
-              code.feature(SOURCE_LEVEL).javaUtilObjects().get(), property.getName());
+          code.add(property.getCodeGenerator().fieldsEqual(
+              property.getName(),
+              "other." + property.getName(),
+              isNullable ? NULLABLE : NOT_NULLABLE));
           prefix = "\n        && ";
         }
         if (hasRequiredProperties) {
           code.add(prefix);
-          code.add("%1$s.equals(_unsetProperties, other._unsetProperties)",
-              code.feature(SOURCE_LEVEL).javaUtilObjects().get());
+          code.add(UnsetProperties.equal(
+              "_unsetProperties", "other._unsetProperties", metadata));
         }
         code.add(";\n");
       } else {
-        for (Property property : metadata.getProperties()) {
-          switch (property.getType().getKind()) {
-            case FLOAT:
-            case DOUBLE:
-              code.addLine("    if (%s.doubleToLongBits(%s)", Double.class, property.getName())
-                  .addLine("        != %s.doubleToLongBits(other.%s)) {",
-                      Double.class, property.getName());
-              break;
-
-            default:
-              if (property.getType().getKind().isPrimitive()) {
-                code.addLine("    if (%1$s != other.%1$s) {", property.getName());
-              } else if (property.getCodeGenerator().getType() == Type.HAS_DEFAULT) {
-                code.addLine("    if (!%1$s.equals(other.%1$s)) {", property.getName());
-              } else {
-                code.addLine("    if (%1$s != other.%1$s", property.getName())
-                    .addLine("        && (%1$s == null || !%1$s.equals(other.%1$s))) {",
-                        property.getName());
-              }
-          }
-          code.addLine("      return false;")
+        for (Property property : inEqualsOrder(metadata)) {
+          // Required properties may be unset, and hence null, in a partial.
+          boolean isNullable = !property.getType().getKind().isPrimitive()
+              && property.getCodeGenerator().getType() != Type.HAS_DEFAULT;
+          code.addLine("    if (%s) {", property.getCodeGenerator().fieldsNotEqual(
+                  property.getName(),
+                  "other." + property.getName(),
+                  isNullable ? NULLABLE : NOT_NULLABLE))
+              .addLine("      return false;")
               .addLine("    }");
         }
         if (hasRequiredProperties) {
-          code.addLine("    return _unsetProperties.equals(other._unsetProperties);");
+          code.addLine("    return %s;", UnsetProperties.equal(
+              "_unsetProperties", "other._unsetProperties", metadata));
         } else {
           code.addLine("    return true;");
         }
@@ -587,32 +874,20 @@ public class CodeGenerator {
           .addLine("  @%s", Override.class)
           .addLine("  public int hashCode() {");
 
-      List<String> namesList = getNames(metadata.getProperties());
+      // Unrolled equivalent of Arrays.hashCode(Object[]) that neither allocates nor boxes.
+      code.addLine("    int _hashCode = 1;");
+      // Required properties may be unset, and hence null, in a partial.
+      addHashCodeUpdates(code, "    ", metadata.getProperties(), Type.OPTIONAL, Type.REQUIRED);
       if (hasRequiredProperties) {
-        namesList =
-            ImmutableList.<String>builder().addAll(namesList).add("_unsetProperties").build();
+        code.addLine("    _hashCode = 31 * _hashCode + %s;",
+            UnsetProperties.hashCode("_unsetProperties", metadata));
       }
-      String properties = Joiner.on(", ").join(namesList);
-
-      if (code.feature(SOURCE_LEVEL).javaUtilObjects().isPresent()) {
-        code.addLine("    return %s.hash(%s);",
-            code.feature(SOURCE_LEVEL).javaUtilObjects().get(), properties);
-      } else {
-        code.addLine("    return %s.hashCode(new Object[] { %s });", Arrays.class, properties);
-      }
-      code.addLine("  }");
+      code.addLine("    return _hashCode;")
+          .addLine("  }");
     }
     // toString
-    if (metadata.standardMethodUnderride(StandardMethod.TO_STRING) != FINAL) {
-      code.addLine("")
-          .addLine("  @%s", Override.class)
-          .addLine("  public %s toString() {", String.class);
-      if (metadata.getProperties().size() > 1 && !code.feature(GUAVA).isAvailable()) {
-        writeToStringWithBuilder(code, metadata, true);
-      } else {
-        writePartialToStringWithConcatenation(code, metadata);
-      }
-      code.addLine("  }");
+    if (hasPartialAppendTo(metadata)) {
+      addAppendToAndToString(code, metadata, true);
     }
     code.addLine("}");
   }
@@ -649,12 +924,46 @@ public class CodeGenerator {
     code.addLine("  }");
   }
 
-  private static void writeToStringWithBuilder(
+  /** Returns whether the generated value type has an {@code appendTo} method. */
+  private static boolean hasValueAppendTo(Metadata metadata) {
+    return metadata.standardMethodUnderride(StandardMethod.TO_STRING) == ABSENT;
+  }
+
+  /** Returns whether the generated partial type has an {@code appendTo} method. */
+  private static boolean hasPartialAppendTo(Metadata metadata) {
+    return metadata.standardMethodUnderride(StandardMethod.TO_STRING) != FINAL;
+  }
+
+  /**
+   * Adds an {@code appendTo(StringBuilder)} method writing the value's string representation into
+   * the caller's buffer, so nested values need no intermediate strings, and a {@code toString}
+   * method delegating to it.
+   */
+  private static void addAppendToAndToString(
       SourceBuilder code, Metadata metadata, boolean isPartial) {
-    code.addLine("%1$s result = new %1$s(\"%2$s%3$s{\");",
-        StringBuilder.class, isPartial ? "partial " : "", metadata.getType().getSimpleName());
+    code.addLine("")
+        .addLine("  %1$s %2$s(%1$s result) {", StringBuilder.class, ValueAppender.METHOD_NAME);
+    String typeName = (isPartial ? "partial " : "") + metadata.getType().getSimpleName();
+    if (metadata.getProperties().isEmpty()) {
+      code.addLine("    return result.append(\"%s{}\");", typeName);
+    } else {
+      code.addLine("    result.append(\"%s{\");", typeName);
+      writeAppendToBody(code, metadata, isPartial);
+      code.addLine("    return result.append(\"}\");");
+    }
+    code.addLine("  }")
+        .addLine("")
+        .addLine("  @%s", Override.class)
+        .addLine("  public %s toString() {", String.class)
+        .addLine("    return %s(new %s()).toString();",
+            ValueAppender.METHOD_NAME, StringBuilder.class)
+        .addLine("  }");
+  }
+
+  private static void writeAppendToBody(SourceBuilder code, Metadata metadata, boolean isPartial) {
     boolean noDefaults = !any(metadata.getProperties(), HAS_DEFAULT);
-    if (noDefaults) {
+    boolean needsSeparator = noDefaults && metadata.getProperties().size() > 1;
+    if (needsSeparator) {
       // We need to keep track of whether to output a separator
       code.addLine("String separator = \"\";");
     }
@@ -669,13 +978,14 @@ public class CodeGenerator {
           break;
 
         case OPTIONAL:
-          code.addLine("if (%s != null) {", property.getName());
+          code.addLine("if (%s) {",
+              property.getCodeGenerator().presenceCheck(property.getName()));
           break;
 
         case REQUIRED:
           if (isPartial) {
-            code.addLine("if (!_unsetProperties.contains(%s.%s)) {",
-                    metadata.getPropertyEnum(), property.getAllCapsName());
+            code.addLine("if (%s) {",
+                UnsetProperties.isSet("_unsetProperties", metadata, property));
           }
           break;
       }
@@ -684,10 +994,10 @@ public class CodeGenerator {
       } else if (!noDefaults && hadSeenDefault) {
         code.addLine("result.append(\", \");");
       }
-      code.addLine("result.append(\"%1$s=\").append(%1$s);", property.getName());
+      property.getCodeGenerator().addAppendToString(code, "result", property.getName());
       if (!noDefaults && !seenDefault) {
         code.addLine("result.append(\", \");");
-      } else if (noDefaults && property != last) {
+      } else if (needsSeparator && property != last) {
         code.addLine("separator = \", \";");
       }
       switch (property.getCodeGenerator().getType()) {
@@ -705,74 +1015,6 @@ public class CodeGenerator {
           break;
       }
     }
-    code.addLine("result.append(\"}\");")
-        .addLine("return result.toString();");
-  }
-
-  private static void writePartialToStringWithConcatenation(SourceBuilder code, Metadata metadata) {
-    code.add("    return \"partial %s{", metadata.getType().getSimpleName());
-    switch (metadata.getProperties().size()) {
-      case 0: {
-        code.add("}\";\n");
-        break;
-      }
-
-      case 1: {
-        Property property = getOnlyElement(metadata.getProperties());
-        switch (property.getCodeGenerator().getType()) {
-          case HAS_DEFAULT:
-            code.add("%1$s=\" + %1$s + \"}\";\n", property.getName());
-            break;
-
-          case OPTIONAL:
-            code.add("\"\n")
-                .addLine("        + (%1$s != null ? \"%1$s=\" + %1$s : \"\")",
-                    property.getName())
-                .addLine("        + \"}\";");
-            break;
-
-          case REQUIRED:
-            code.add("\"\n")
-                .addLine("        + (!_unsetProperties.contains(%s.%s)",
-                    metadata.getPropertyEnum(), property.getAllCapsName())
-                .addLine("            ? \"%1$s=\" + %1$s : \"\")", property.getName())
-                .addLine("        + \"}\";");
-            break;
-        }
-        break;
-      }
-
-      default: {
-        code.add("\"\n")
-            .add("        + COMMA_JOINER.join(\n");
-        Property lastProperty = getLast(metadata.getProperties());
-        for (Property property : metadata.getProperties()) {
-          code.add("            ");
-          switch (property.getCodeGenerator().getType()) {
-            case HAS_DEFAULT:
-              code.add("\"%1$s=\" + %1$s", property.getName());
-              break;
-
-            case OPTIONAL:
-              code.add("(%1$s != null ? \"%1$s=\" + %1$s : null)", property.getName());
-              break;
-
-            case REQUIRED:
-              code.add("(!_unsetProperties.contains(%s.%s)\n",
-                      metadata.getPropertyEnum(), property.getAllCapsName())
-                  .add("                ? \"%1$s=\" + %1$s : null)", property.getName());
-              break;
-          }
-          if (property != lastProperty) {
-            code.add(",\n");
-          } else {
-            code.add(")\n");
-          }
-        }
-        code.addLine("        + \"}\";");
-        break;
-      }
-    }
   }
 
   private static void addStaticMethods(SourceBuilder code, Metadata metadata) {
@@ -780,6 +1022,9 @@ public class CodeGenerator {
     for (Property property : metadata.getProperties()) {
       staticMethods.addAll(property.getCodeGenerator().getStaticExcerpts());
     }
+    if (metadata.isValueInterned()) {
+      staticMethods.addAll(WeakInterner.excerpts());
+    }
     for (Excerpt staticMethod : staticMethods) {
       code.add(staticMethod);
     }
@@ -799,26 +1044,12 @@ public class CodeGenerator {
     return Excerpts.add(isInterface ? "implements %s" : "extends %s", type);
   }
 
-  private static ImmutableList<String> getNames(Iterable<Property> properties) {
-    ImmutableList.Builder<String> result = ImmutableList.builder();
-    for (Property property : properties) {
-      result.add(property.getName());
-    }
-    return result.build();
-  }
-
   private static final Predicate<Property> IS_REQUIRED = new Predicate<Property>() {
     @Override public boolean apply(Property property) {
       return property.getCodeGenerator().getType() == Type.REQUIRED;
     }
   };
 
-  private static final Predicate<Property> IS_OPTIONAL = new Predicate<Property>() {
-    @Override public boolean apply(Property property) {
-      return property.getCodeGenerator().getType() == Type.OPTIONAL;
-    }
-  };
-
   private static final Predicate<Property> HAS_DEFAULT = new Predicate<Property>() {
     @Override public boolean apply(Property property) {
       return property.getCodeGenerator().getType() == Type.HAS_DEFAULT;
@@ -1,10 +1,18 @@
 package org.inferred.freebuilder.processor;
 
+import static org.inferred.freebuilder.processor.util.StaticExcerpt.Type.METHOD;
+
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
 
 import org.inferred.freebuilder.processor.BuilderFactory.TypeInference;
 import org.inferred.freebuilder.processor.util.Block;
 import org.inferred.freebuilder.processor.util.Excerpt;
+import org.inferred.freebuilder.processor.util.ParameterizedType;
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+import org.inferred.freebuilder.processor.util.StaticExcerpt;
+
+import java.util.Set;
 
 class Declarations {
 
@@ -35,13 +43,87 @@ class Declarations {
     if (!metadata.getBuilderFactory().isPresent()) {
       return Optional.absent();
     }
-    Excerpt defaults = block.declare("_defaults", "%s _defaults = %s;",
+    Excerpt defaults;
+    if (hasDefaultsSnapshot(metadata)) {
+      defaults = block.declare("_defaults", "%s _defaults = _defaults();",
+          metadata.getGeneratedBuilder());
+    } else {
+      defaults = block.declare("_defaults", "%s _defaults = %s;",
           metadata.getGeneratedBuilder(),
           metadata.getBuilderFactory().get()
               .newBuilder(metadata.getBuilder(), TypeInference.INFERRED_TYPES));
+    }
     return Optional.of(defaults);
   }
 
+  /**
+   * Returns the static excerpts required by {@link #freshBuilder}. Property code generators that
+   * call {@code freshBuilder} must include these in their
+   * {@link PropertyCodeGenerator#getStaticExcerpts() static excerpts}.
+   */
+  public static Set<StaticExcerpt> freshBuilderExcerpts(Metadata metadata) {
+    if (!hasDefaultsSnapshot(metadata)) {
+      return ImmutableSet.of();
+    }
+    return ImmutableSet.<StaticExcerpt>of(new DefaultsSnapshotExcerpt(
+        metadata.getGeneratedBuilder(),
+        metadata.getBuilderFactory().get()
+            .newBuilder(metadata.getBuilder(), TypeInference.INFERRED_TYPES)));
+  }
+
+  /**
+   * Returns whether default values can be read from a shared, lazily-created builder. Static
+   * fields cannot reference type parameters, so generic types always create a fresh builder.
+   */
+  private static boolean hasDefaultsSnapshot(Metadata metadata) {
+    return metadata.isSnapshottingDefaults()
+        && metadata.getBuilderFactory().isPresent()
+        && !metadata.getBuilder().isParameterized();
+  }
+
+  /**
+   * Declares a static method returning a builder holding the default property values, created
+   * on first use and shared thereafter. The builder is never exposed, so is never modified.
+   */
+  private static class DefaultsSnapshotExcerpt extends StaticExcerpt {
+
+    private final ParameterizedType generatedBuilder;
+    private final Excerpt newBuilder;
+
+    DefaultsSnapshotExcerpt(ParameterizedType generatedBuilder, Excerpt newBuilder) {
+      super(METHOD, "_defaults");
+      this.generatedBuilder = generatedBuilder;
+      this.newBuilder = newBuilder;
+    }
+
+    @Override
+    public void addTo(SourceBuilder code) {
+      code.addLine("")
+          .addLine("private static volatile %s _defaultsSnapshot;", generatedBuilder)
+          .addLine("")
+          .addLine("/**")
+          .addLine(" * Returns a builder holding the default property values. It is created on")
+          .addLine(" * first use and shared thereafter, so must not be modified.")
+          .addLine(" */")
+          .addLine("private static %s _defaults() {", generatedBuilder)
+          .addLine("  %s defaults = _defaultsSnapshot;", generatedBuilder)
+          .addLine("  if (defaults == null) {")
+          .addLine("    // Benign race: at worst, concurrent callers each create an equal builder.")
+          .addLine("    defaults = %s;", newBuilder)
+          .addLine("    _defaultsSnapshot = defaults;")
+          .addLine("  }")
+          .addLine("  return defaults;")
+          .addLine("}");
+    }
+
+    @Override
+    protected void addFields(FieldReceiver fields) {
+      super.addFields(fields);
+      fields.add("generatedBuilder", generatedBuilder);
+      fields.add("newBuilder", newBuilder);
+    }
+  }
+
   private Declarations() {}
 
 }
@@ -36,6 +36,9 @@ import org.inferred.freebuilder.processor.util.ObjectsExcerpts;
 import org.inferred.freebuilder.processor.util.ParameterizedType;
 import org.inferred.freebuilder.processor.util.PreconditionExcerpts;
 import org.inferred.freebuilder.processor.util.SourceBuilder;
+import org.inferred.freebuilder.processor.util.StaticExcerpt;
+
+import java.util.Set;
 
 import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
@@ -91,7 +94,8 @@ public class DefaultPropertyFactory implements PropertyCodeGenerator.Factory {
       code.addLine(" */");
       addAccessorAnnotations(code);
       code.addLine("public %s %s(%s %s) {",
-          metadata.getBuilder(), setter(property), property.getType(), property.getName());
+          metadata.getBuilder(), setter(property), property.getType(), property.getName())
+          .add(MemoizedBuild.invalidate(metadata));
       if (kind.isPrimitive()) {
         code.addLine("  this.%1$s = %1$s;", property.getName());
       } else {
@@ -99,8 +103,7 @@ public class DefaultPropertyFactory implements PropertyCodeGenerator.Factory {
             .addLine("  this.%s = %s;", property.getName(), checkNotNullInline(property.getName()));
       }
       if (!hasDefault) {
-        code.addLine("  _unsetProperties.remove(%s.%s);",
-            metadata.getPropertyEnum(), property.getAllCapsName());
+        code.addLine("  %s", UnsetProperties.markSet(metadata, property));
       }
       if ((metadata.getBuilder() == metadata.getGeneratedBuilder())) {
         code.addLine("  return this;");
@@ -152,8 +155,7 @@ public class DefaultPropertyFactory implements PropertyCodeGenerator.Factory {
       code.addLine(" */")
           .addLine("public %s %s() {", property.getType(), getter(property));
       if (!hasDefault) {
-        Excerpt propertyIsSet = Excerpts.add("!_unsetProperties.contains(%s.%s)",
-                metadata.getPropertyEnum(), property.getAllCapsName());
+        Excerpt propertyIsSet = UnsetProperties.isSet("_unsetProperties", metadata, property);
         code.add(PreconditionExcerpts.checkState(propertyIsSet, property.getName() + " not set"));
       }
       code.addLine("  return %s;", property.getName())
@@ -176,8 +178,8 @@ public class DefaultPropertyFactory implements PropertyCodeGenerator.Factory {
       if (defaults != null) {
         code.add("if (");
         if (!hasDefault) {
-          code.add("%s._unsetProperties.contains(%s.%s) || ",
-              defaults, metadata.getPropertyEnum(), property.getAllCapsName());
+          code.add("%s || ", UnsetProperties.isUnset(
+              Excerpts.add("%s._unsetProperties", defaults), metadata, property));
         }
         code.add(ObjectsExcerpts.notEquals(
             Excerpts.add("%s.%s()", value, property.getGetterName()),
@@ -200,10 +202,10 @@ public class DefaultPropertyFactory implements PropertyCodeGenerator.Factory {
       if (defaults != null) {
         code.add("if (");
         if (!hasDefault) {
-          code.add("!%s._unsetProperties.contains(%s.%s) && ",
-                  base, metadata.getPropertyEnum(), property.getAllCapsName())
-              .add("(%s._unsetProperties.contains(%s.%s) ||",
-                  defaults, metadata.getPropertyEnum(), property.getAllCapsName());
+          code.add("%s && ", UnsetProperties.isSet(
+                  Excerpts.add("%s._unsetProperties", base), metadata, property))
+              .add("(%s ||", UnsetProperties.isUnset(
+                  Excerpts.add("%s._unsetProperties", defaults), metadata, property));
         }
         code.add(ObjectsExcerpts.notEquals(
             Excerpts.add("%s.%s()", builder, getter(property)),
@@ -215,8 +217,8 @@ public class DefaultPropertyFactory implements PropertyCodeGenerator.Factory {
         }
         code.add(") {%n");
       } else if (!hasDefault) {
-        code.addLine("if (!%s._unsetProperties.contains(%s.%s)) {",
-            base, metadata.getPropertyEnum(), property.getAllCapsName());
+        code.addLine("if (%s) {", UnsetProperties.isSet(
+            Excerpts.add("%s._unsetProperties", base), metadata, property));
       }
       code.addLine("  %s(%s.%s());", setter(property), builder, getter(property));
       if (defaults != null || !hasDefault) {
@@ -227,8 +229,7 @@ public class DefaultPropertyFactory implements PropertyCodeGenerator.Factory {
     @Override
     public void addSetBuilderFromPartial(Block code, String builder) {
       if (!hasDefault) {
-        code.add("if (!_unsetProperties.contains(%s.%s)) {",
-            metadata.getPropertyEnum(), property.getAllCapsName());
+        code.add("if (%s) {", UnsetProperties.isSet("_unsetProperties", metadata, property));
       }
       code.addLine("  %s.%s(%s);", builder, setter(property), property.getName());
       if (!hasDefault) {
@@ -241,6 +242,11 @@ public class DefaultPropertyFactory implements PropertyCodeGenerator.Factory {
       code.addLine("%s.%s(%s);", builder, setter(property), variable);
     }
 
+    @Override
+    public Set<StaticExcerpt> getStaticExcerpts() {
+      return Declarations.freshBuilderExcerpts(metadata);
+    }
+
     @Override
     public void addClearField(Block code) {
       Optional<Excerpt> defaults = Declarations.freshBuilder(code, metadata);
@@ -0,0 +1,416 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.BuilderMethods.addAllMethod;
+import static org.inferred.freebuilder.processor.BuilderMethods.addMethod;
+import static org.inferred.freebuilder.processor.BuilderMethods.clearMethod;
+import static org.inferred.freebuilder.processor.BuilderMethods.ensureCapacityMethod;
+import static org.inferred.freebuilder.processor.BuilderMethods.getter;
+import static org.inferred.freebuilder.processor.BuilderMethods.mutator;
+import static org.inferred.freebuilder.processor.BuilderMethods.removeMethod;
+import static org.inferred.freebuilder.processor.Util.erasesToAnyOf;
+import static org.inferred.freebuilder.processor.Util.upperBound;
+import static org.inferred.freebuilder.processor.util.ModelUtils.maybeAsTypeElement;
+import static org.inferred.freebuilder.processor.util.ModelUtils.maybeDeclared;
+import static org.inferred.freebuilder.processor.util.ModelUtils.overrides;
+import static org.inferred.freebuilder.processor.util.PreconditionExcerpts.checkNotNullInline;
+import static org.inferred.freebuilder.processor.util.PreconditionExcerpts.checkNotNullPreamble;
+import static org.inferred.freebuilder.processor.util.StaticExcerpt.Type.METHOD;
+import static org.inferred.freebuilder.processor.util.feature.FunctionPackage.FUNCTION_PACKAGE;
+import static org.inferred.freebuilder.processor.util.feature.GuavaLibrary.GUAVA;
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.SOURCE_LEVEL;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+import org.inferred.freebuilder.processor.Metadata.Property;
+import org.inferred.freebuilder.processor.PropertyCodeGenerator.Config;
+import org.inferred.freebuilder.processor.excerpt.CheckedSet;
+import org.inferred.freebuilder.processor.util.Block;
+import org.inferred.freebuilder.processor.util.Excerpt;
+import org.inferred.freebuilder.processor.util.Excerpts;
+import org.inferred.freebuilder.processor.util.ParameterizedType;
+import org.inferred.freebuilder.processor.util.QualifiedName;
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+import org.inferred.freebuilder.processor.util.StaticExcerpt;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+
+/**
+ * {@link PropertyCodeGenerator.Factory} providing append-only semantics for {@link Set}
+ * properties of an enum type, backed by an {@link EnumSet}.
+ *
+ * <p>The builder API matches {@link SetPropertyFactory}'s, but sets iterate in the order the
+ * enum constants are declared, not insertion order. Not used if the user has opted out with
+ * {@code @FreeBuilder(enumSets = false)}.
+ */
+public class EnumSetPropertyFactory implements PropertyCodeGenerator.Factory {
+
+  @Override
+  public Optional<? extends PropertyCodeGenerator> create(Config config) {
+    if (!config.getMetadata().isUsingEnumSets()) {
+      return Optional.absent();
+    }
+    DeclaredType type = maybeDeclared(config.getProperty().getType()).orNull();
+    if (type == null || !erasesToAnyOf(type, Set.class, ImmutableSet.class)) {
+      return Optional.absent();
+    }
+
+    TypeMirror elementType = upperBound(config.getElements(), type.getTypeArguments().get(0));
+    TypeElement element = maybeAsTypeElement(elementType).orNull();
+    if (element == null || element.getKind() != ElementKind.ENUM) {
+      return Optional.absent();
+    }
+    boolean overridesAddMethod = overrides(
+        config.getBuilder(), config.getTypes(), addMethod(config.getProperty()), elementType);
+    return Optional.of(new CodeGenerator(
+        config.getMetadata(), config.getProperty(), overridesAddMethod, elementType));
+  }
+
+  @VisibleForTesting static class CodeGenerator extends PropertyCodeGenerator {
+
+    private static final ParameterizedType COLLECTION =
+        QualifiedName.of(Collection.class).withParameters("E");
+
+    private final boolean overridesAddMethod;
+    private final TypeMirror elementType;
+
+    @VisibleForTesting
+    CodeGenerator(
+        Metadata metadata,
+        Property property,
+        boolean overridesAddMethod,
+        TypeMirror elementType) {
+      super(metadata, property);
+      this.overridesAddMethod = overridesAddMethod;
+      this.elementType = elementType;
+    }
+
+    @Override
+    public void addBuilderFieldDeclaration(SourceBuilder code) {
+      code.addLine("private final %1$s<%2$s> %3$s = %1$s.noneOf(%2$s.class);",
+          EnumSet.class, elementType, property.getName());
+    }
+
+    @Override
+    public void addBuilderFieldAccessors(SourceBuilder code) {
+      addAdd(code, metadata);
+      addVarargsAdd(code, metadata);
+      addAddAllMethods(code, metadata);
+      addRemove(code, metadata);
+      addMutator(code, metadata);
+      addClear(code, metadata);
+      addEnsureCapacity(code, metadata);
+      addGetter(code, metadata);
+    }
+
+    private void addAdd(SourceBuilder code, Metadata metadata) {
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Adds {@code element} to the set to be returned from %s.",
+              metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+          .addLine(" * If the set already contains {@code element}, then {@code %s}",
+              addMethod(property))
+          .addLine(" * has no effect. The set iterates in the order the %s constants",
+              elementType)
+          .addLine(" * are declared, not the order they are added.")
+          .addLine(" *")
+          .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
+          .addLine(" * @throws NullPointerException if {@code element} is null")
+          .addLine(" */")
+          .addLine("public %s %s(%s element) {",
+              metadata.getBuilder(), addMethod(property), elementType)
+          .add(MemoizedBuild.invalidate(metadata))
+          .add(checkNotNullPreamble("element"))
+          .addLine("  this.%s.add(%s);", property.getName(), checkNotNullInline("element"))
+          .addLine("  return (%s) this;", metadata.getBuilder())
+          .addLine("}");
+    }
+
+    private void addVarargsAdd(SourceBuilder code, Metadata metadata) {
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Adds each element of {@code elements} to the set to be returned from")
+          .addLine(" * %s, ignoring duplicate elements.",
+              metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+          .addLine(" *")
+          .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
+          .addLine(" * @throws NullPointerException if {@code elements} is null or contains a")
+          .addLine(" *     null element")
+          .addLine(" */")
+          .addLine("public %s %s(%s... elements) {",
+              metadata.getBuilder(), addMethod(property), elementType)
+          .addLine("  return %s(%s.asList(elements));", addAllMethod(property), Arrays.class)
+          .addLine("}");
+    }
+
+    private void addAddAllMethods(SourceBuilder code, Metadata metadata) {
+      if (code.feature(SOURCE_LEVEL).stream().isPresent()) {
+        addSpliteratorAddAll(code, metadata);
+        addStreamAddAll(code, metadata);
+      }
+      addIterableAddAll(code, metadata);
+    }
+
+    private void addSpliteratorAddAll(SourceBuilder code, Metadata metadata) {
+      QualifiedName spliterator = code.feature(SOURCE_LEVEL).spliterator().get();
+      addJavadocForAddAll(code, metadata);
+      code.addLine("public %s %s(%s<? extends %s> elements) {",
+              metadata.getBuilder(),
+              addAllMethod(property),
+              spliterator,
+              elementType)
+          .add(MemoizedBuild.invalidate(metadata))
+          .addLine("  elements.forEachRemaining(this::%s);", addMethod(property))
+          .addLine("  return (%s) this;", metadata.getBuilder())
+          .addLine("}");
+    }
+
+    private void addStreamAddAll(SourceBuilder code, Metadata metadata) {
+      QualifiedName baseStream = code.feature(SOURCE_LEVEL).baseStream().get();
+      addJavadocForAddAll(code, metadata);
+      code.addLine("public %s %s(%s<? extends %s, ?> elements) {",
+              metadata.getBuilder(),
+              addAllMethod(property),
+              baseStream,
+              elementType)
+          .add(MemoizedBuild.invalidate(metadata))
+          .addLine("  return %s(elements.spliterator());", addAllMethod(property))
+          .addLine("}");
+    }
+
+    private void addIterableAddAll(SourceBuilder code, Metadata metadata) {
+      addJavadocForAddAll(code, metadata);
+      addAccessorAnnotations(code);
+      code.addLine("public %s %s(%s<? extends %s> elements) {",
+              metadata.getBuilder(),
+              addAllMethod(property),
+              Iterable.class,
+              elementType)
+          .add(MemoizedBuild.invalidate(metadata));
+      if (!overridesAddMethod) {
+        code.addLine("  if (elements instanceof %s) {", EnumSet.class)
+            .addLine("    // Bitwise union; an EnumSet cannot hold nulls")
+            .addLine("    %s.addAll((%s<? extends %s>) elements);",
+                property.getName(), EnumSet.class, elementType)
+            .addLine("    return (%s) this;", metadata.getBuilder())
+            .addLine("  }");
+      }
+      code.add(Excerpts.forEach(elementType, "elements", addMethod(property)))
+          .addLine("  return (%s) this;", metadata.getBuilder())
+          .addLine("}");
+    }
+
+    private void addJavadocForAddAll(SourceBuilder code, Metadata metadata) {
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Adds each element of {@code elements} to the set to be returned from")
+          .addLine(" * %s, ignoring duplicate elements.",
+              metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+          .addLine(" *")
+          .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
+          .addLine(" * @throws NullPointerException if {@code elements} is null or contains a")
+          .addLine(" *     null element")
+          .addLine(" */");
+    }
+
+    private void addRemove(SourceBuilder code, Metadata metadata) {
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Removes {@code element} from the set to be returned from %s.",
+              metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+          .addLine(" * Does nothing if {@code element} is not a member of the set.")
+          .addLine(" *")
+          .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
+          .addLine(" * @throws NullPointerException if {@code element} is null")
+          .addLine(" */")
+          .addLine("public %s %s(%s element) {",
+              metadata.getBuilder(), removeMethod(property), elementType)
+          .add(MemoizedBuild.invalidate(metadata))
+          .add(checkNotNullPreamble("element"))
+          .addLine("  this.%s.remove(%s);", property.getName(), checkNotNullInline("element"))
+          .addLine("  return (%s) this;", metadata.getBuilder())
+          .addLine("}");
+    }
+
+    private void addMutator(SourceBuilder code, Metadata metadata) {
+      ParameterizedType consumer = code.feature(FUNCTION_PACKAGE).consumer().orNull();
+      if (consumer == null) {
+        return;
+      }
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Applies {@code mutator} to the set to be returned from %s.",
+              metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+          .addLine(" *")
+          .addLine(" * <p>This method mutates the set in-place. {@code mutator} is a void")
+          .addLine(" * consumer, so any value returned from a lambda will be ignored. Take care")
+          .addLine(" * not to call pure functions, like %s.",
+              COLLECTION.javadocNoArgMethodLink("stream"))
+          .addLine(" *")
+          .addLine(" * @return this {@code Builder} object")
+          .addLine(" * @throws NullPointerException if {@code mutator} is null")
+          .addLine(" */")
+          .addLine("public %s %s(%s<? super %s<%s>> mutator) {",
+              metadata.getBuilder(),
+              mutator(property),
+              consumer.getQualifiedName(),
+              Set.class,
+              elementType)
+          .add(MemoizedBuild.invalidate(metadata));
+      if (overridesAddMethod) {
+        code.addLine("  mutator.accept(new CheckedSet<%s>(%s, this::%s));",
+            elementType, property.getName(), addMethod(property));
+      } else {
+        code.addLine("  // If %s is overridden, this method will be updated to delegate to it",
+                addMethod(property))
+            .addLine("  mutator.accept(%s);", property.getName());
+      }
+      code.addLine("  return (%s) this;", metadata.getBuilder())
+          .addLine("}");
+    }
+
+    private void addClear(SourceBuilder code, Metadata metadata) {
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Clears the set to be returned from %s.",
+              metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+          .addLine(" *")
+          .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
+          .addLine(" */")
+          .addLine("public %s %s() {", metadata.getBuilder(), clearMethod(property))
+          .add(MemoizedBuild.invalidate(metadata))
+          .addLine("  %s.clear();", property.getName())
+          .addLine("  return (%s) this;", metadata.getBuilder())
+          .addLine("}");
+    }
+
+    private void addEnsureCapacity(SourceBuilder code, Metadata metadata) {
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Has no effect, as the set to be returned from %s",
+              metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+          .addLine(" * already has room for every %s constant.", elementType)
+          .addLine(" *")
+          .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
+          .addLine(" */")
+          .addLine("public %s %s(int minCapacity) {",
+              metadata.getBuilder(), ensureCapacityMethod(property))
+          .addLine("  return (%s) this;", metadata.getBuilder())
+          .addLine("}");
+    }
+
+    private void addGetter(SourceBuilder code, Metadata metadata) {
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Returns an unmodifiable view of the set that will be returned by")
+          .addLine(" * %s.", metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+          .addLine(" * Changes to this builder will be reflected in the view.")
+          .addLine(" */")
+          .addLine("public %s<%s> %s() {", Set.class, elementType, getter(property))
+          .addLine("  return %s.unmodifiableSet(%s);", Collections.class, property.getName())
+          .addLine("}");
+    }
+
+    @Override
+    public void addFinalFieldAssignment(SourceBuilder code, String finalField, String builder) {
+      code.add("%s = ", finalField);
+      if (code.feature(GUAVA).isAvailable()) {
+        code.add("%s.immutableEnumSet", Sets.class);
+      } else {
+        code.add("immutableEnumSet");
+      }
+      code.add("(%s.%s);\n", builder, property.getName());
+    }
+
+    @Override
+    public void addMergeFromValue(Block code, String value) {
+      if (!overridesAddMethod) {
+        code.addLine("if (%s instanceof %s) {", value, metadata.getValueType().getQualifiedName())
+            .addLine("  %s.addAll(%s.%s());", property.getName(), value, property.getGetterName())
+            .addLine("} else {");
+      }
+      code.addLine("%s(%s.%s());", addAllMethod(property), value, property.getGetterName());
+      if (!overridesAddMethod) {
+        code.addLine("}");
+      }
+    }
+
+    @Override
+    public void addMergeFromBuilder(Block code, String builder) {
+      Excerpt base = Declarations.upcastToGeneratedBuilder(code, metadata, builder);
+      if (!overridesAddMethod) {
+        code.addLine("%s.addAll(%s.%s);", property.getName(), base, property.getName());
+      } else {
+        code.addLine("%s(%s.%s);", addAllMethod(property), base, property.getName());
+      }
+    }
+
+    @Override
+    public void addSetFromResult(SourceBuilder code, String builder, String variable) {
+      code.addLine("%s.%s(%s);", builder, addAllMethod(property), variable);
+    }
+
+    @Override
+    public EqualsCost getEqualsCost() {
+      return EqualsCost.COLLECTION;
+    }
+
+    @Override
+    public void addClearField(Block code) {
+      code.addLine("%s();", clearMethod(property));
+    }
+
+    @Override
+    public Set<StaticExcerpt> getStaticExcerpts() {
+      ImmutableSet.Builder<StaticExcerpt> staticMethods = ImmutableSet.builder();
+      staticMethods.add(IMMUTABLE_ENUM_SET);
+      if (overridesAddMethod) {
+        staticMethods.addAll(CheckedSet.excerpts());
+      }
+      return staticMethods.build();
+    }
+  }
+
+  private static final StaticExcerpt IMMUTABLE_ENUM_SET =
+      new StaticExcerpt(METHOD, "immutableEnumSet") {
+    @Override
+    public void addTo(SourceBuilder code) {
+      if (!code.feature(GUAVA).isAvailable()) {
+        code.addLine("")
+            .addLine("private static <E extends %s<E>> %s<E> immutableEnumSet(%s<E> elements) {",
+                Enum.class, Set.class, EnumSet.class)
+            .addLine("  if (elements.isEmpty()) {")
+            .addLine("    return %s.emptySet();", Collections.class)
+            .addLine("  }")
+            .addLine("  return %s.unmodifiableSet(elements.clone());", Collections.class)
+            .addLine("}");
+      }
+    }
+  };
+}
@@ -16,6 +16,7 @@
 package org.inferred.freebuilder.processor;
 
 import static org.inferred.freebuilder.processor.BuilderMethods.clearMethod;
+import static org.inferred.freebuilder.processor.BuilderMethods.ensureCapacityMethod;
 import static org.inferred.freebuilder.processor.BuilderMethods.getter;
 import static org.inferred.freebuilder.processor.BuilderMethods.mutator;
 import static org.inferred.freebuilder.processor.BuilderMethods.putAllMethod;
@@ -27,14 +28,17 @@ import static org.inferred.freebuilder.processor.Util.upperBound;
 import static org.inferred.freebuilder.processor.util.ModelUtils.maybeDeclared;
 import static org.inferred.freebuilder.processor.util.ModelUtils.maybeUnbox;
 import static org.inferred.freebuilder.processor.util.ModelUtils.overrides;
+import static org.inferred.freebuilder.processor.util.StaticExcerpt.Type.METHOD;
+import static org.inferred.freebuilder.processor.util.StaticExcerpt.Type.TYPE;
 import static org.inferred.freebuilder.processor.util.feature.FunctionPackage.FUNCTION_PACKAGE;
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.diamondOperator;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Multimaps;
@@ -47,7 +51,11 @@ import org.inferred.freebuilder.processor.util.ParameterizedType;
 import org.inferred.freebuilder.processor.util.SourceBuilder;
 import org.inferred.freebuilder.processor.util.StaticExcerpt;
 
+import java.util.ArrayList;
+import java.io.Serializable;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
 
@@ -126,8 +134,8 @@ public class ListMultimapPropertyFactory implements PropertyCodeGenerator.Factor
 
     @Override
     public void addBuilderFieldDeclaration(SourceBuilder code) {
-      code.addLine("private final %1$s<%2$s, %3$s> %4$s = %1$s.create();",
-          LinkedListMultimap.class, keyType, valueType, property.getName());
+      code.addLine("private %s<%s, %s> %s = %s.of();",
+          ListMultimap.class, keyType, valueType, property.getName(), ImmutableListMultimap.class);
     }
 
     @Override
@@ -139,6 +147,7 @@ public class ListMultimapPropertyFactory implements PropertyCodeGenerator.Factor
       addRemoveAll(code, metadata);
       addMutate(code, metadata);
       addClear(code, metadata);
+      addEnsureCapacity(code, metadata);
       addGetter(code, metadata);
     }
 
@@ -166,13 +175,15 @@ public class ListMultimapPropertyFactory implements PropertyCodeGenerator.Factor
               metadata.getBuilder(),
               putMethod(property),
               unboxedKeyType.or(keyType),
-              unboxedValueType.or(valueType));
+              unboxedValueType.or(valueType))
+          .add(MemoizedBuild.invalidate(metadata));
       if (!unboxedKeyType.isPresent()) {
         code.addLine("  %s.checkNotNull(key);", Preconditions.class);
       }
       if (!unboxedValueType.isPresent()) {
         code.addLine("  %s.checkNotNull(value);", Preconditions.class);
       }
+      addConvertToMutableMultimap(code);
       code.addLine("  this.%s.put(key, value);", property.getName())
           .addLine("  return (%s) this;", metadata.getBuilder())
           .addLine("}");
@@ -200,6 +211,7 @@ public class ListMultimapPropertyFactory implements PropertyCodeGenerator.Factor
               unboxedKeyType.or(keyType),
               Iterable.class,
               valueType)
+          .add(MemoizedBuild.invalidate(metadata))
           .addLine("  for (%s value : values) {", unboxedValueType.or(valueType))
           .addLine("    %s(key, value);", putMethod(property))
           .addLine("  }")
@@ -224,7 +236,18 @@ public class ListMultimapPropertyFactory implements PropertyCodeGenerator.Factor
               Multimap.class,
               keyType,
               valueType)
-          .addLine("  for (%s<? extends %s, ? extends %s<? extends %s>> entry",
+          .add(MemoizedBuild.invalidate(metadata));
+      if (!overridesPutMethod) {
+        code.addLine("  if (multimap instanceof %s && !multimap.isEmpty()) {",
+                ImmutableMultimap.class)
+            .addLine("    if (%s instanceof %s) {", property.getName(), ImmutableListMultimap.class)
+            .addLine("      %1$s = mutableListMultimap(%1$s, 0);", property.getName())
+            .addLine("    }")
+            .addLine("    %s.putAll(multimap);", property.getName())
+            .addLine("    return (%s) this;", metadata.getBuilder())
+            .addLine("  }");
+      }
+      code.addLine("  for (%s<? extends %s, ? extends %s<? extends %s>> entry",
               Entry.class, keyType, Collection.class, valueType)
           .addLine("      : multimap.asMap().entrySet()) {")
           .addLine("    %s(entry.getKey(), entry.getValue());", putAllMethod(property))
@@ -260,13 +283,15 @@ public class ListMultimapPropertyFactory implements PropertyCodeGenerator.Factor
               metadata.getBuilder(),
               removeMethod(property),
               unboxedKeyType.or(keyType),
-              unboxedValueType.or(valueType));
+              unboxedValueType.or(valueType))
+          .add(MemoizedBuild.invalidate(metadata));
       if (!unboxedKeyType.isPresent()) {
         code.addLine("  %s.checkNotNull(key);", Preconditions.class);
       }
       if (!unboxedValueType.isPresent()) {
         code.addLine("  %s.checkNotNull(value);", Preconditions.class);
       }
+      addConvertToMutableMultimap(code);
       code.addLine("  this.%s.remove(key, value);", property.getName())
           .addLine("  return (%s) this;", metadata.getBuilder())
           .addLine("}");
@@ -287,10 +312,12 @@ public class ListMultimapPropertyFactory implements PropertyCodeGenerator.Factor
           .addLine("public %s %s(%s key) {",
               metadata.getBuilder(),
               removeAllMethod(property),
-              unboxedKeyType.or(keyType));
+              unboxedKeyType.or(keyType))
+          .add(MemoizedBuild.invalidate(metadata));
       if (!unboxedKeyType.isPresent()) {
         code.addLine("  %s.checkNotNull(key);", Preconditions.class);
       }
+      addConvertToMutableMultimap(code);
       code.addLine("  this.%s.removeAll(key);", property.getName())
           .addLine("  return (%s) this;", metadata.getBuilder())
           .addLine("}");
@@ -318,7 +345,9 @@ public class ListMultimapPropertyFactory implements PropertyCodeGenerator.Factor
               consumer.getQualifiedName(),
               ListMultimap.class,
               keyType,
-              valueType);
+              valueType)
+          .add(MemoizedBuild.invalidate(metadata));
+      addConvertToMutableMultimap(code);
       if (overridesPutMethod) {
         code.addLine("  mutator.accept(new CheckedListMultimap<>(%s, this::%s));",
             property.getName(), putMethod(property));
@@ -340,7 +369,32 @@ public class ListMultimapPropertyFactory implements PropertyCodeGenerator.Factor
           .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
           .addLine(" */")
           .addLine("public %s %s() {", metadata.getBuilder(), clearMethod(property))
-          .addLine("  %s.clear();", property.getName())
+          .add(MemoizedBuild.invalidate(metadata))
+          .addLine("  if (%s instanceof %s) {", property.getName(), ImmutableListMultimap.class)
+          .addLine("    %s = %s.of();", property.getName(), ImmutableListMultimap.class)
+          .addLine("  } else {")
+          .addLine("    %s.clear();", property.getName())
+          .addLine("  }")
+          .addLine("  return (%s) this;", metadata.getBuilder())
+          .addLine("}");
+    }
+
+    private void addEnsureCapacity(SourceBuilder code, Metadata metadata) {
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Hints that the multimap to be returned from %s will hold at least",
+              metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+          .addLine(" * {@code minCapacity} distinct keys, so storage can be allocated for them up")
+          .addLine(" * front. The hint has no effect once storage has been allocated.")
+          .addLine(" *")
+          .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
+          .addLine(" */")
+          .addLine("public %s %s(int minCapacity) {",
+              metadata.getBuilder(), ensureCapacityMethod(property));
+      code.addLine("  if (%s instanceof %s && minCapacity > %s.keySet().size()) {",
+              property.getName(), ImmutableListMultimap.class, property.getName())
+          .addLine("    %1$s = mutableListMultimap(%1$s, minCapacity);", property.getName())
+          .addLine("  }")
           .addLine("  return (%s) this;", metadata.getBuilder())
           .addLine("}");
     }
@@ -356,12 +410,22 @@ public class ListMultimapPropertyFactory implements PropertyCodeGenerator.Factor
               ListMultimap.class,
               keyType,
               valueType,
-              getter(property))
-          .addLine("  return %s.unmodifiableListMultimap(%s);",
-              Multimaps.class, property.getName())
+              getter(property));
+      addConvertToMutableMultimap(code);
+      code.addLine("  return %s.unmodifiableListMultimap(%s);", Multimaps.class, property.getName())
           .addLine("}");
     }
 
+    /**
+     * Replaces an {@link ImmutableListMultimap} adopted from a value, or the initial empty
+     * multimap, with a mutable copy before the builder's multimap is modified or exposed.
+     */
+    private void addConvertToMutableMultimap(SourceBuilder code) {
+      code.addLine("  if (%s instanceof %s) {", property.getName(), ImmutableListMultimap.class)
+          .addLine("    %1$s = mutableListMultimap(%1$s, 0);", property.getName())
+          .addLine("  }");
+    }
+
     @Override
     public void addFinalFieldAssignment(SourceBuilder code, String finalField, String builder) {
       code.addLine("%s = %s.copyOf(%s.%s);",
@@ -370,7 +434,18 @@ public class ListMultimapPropertyFactory implements PropertyCodeGenerator.Factor
 
     @Override
     public void addMergeFromValue(Block code, String value) {
-      code.addLine("%s(%s.%s());", putAllMethod(property), value, property.getGetterName());
+      code.addLine("if (%s instanceof %s && %s == %s.<%s, %s>of()) {",
+              value,
+              metadata.getValueType().getQualifiedName(),
+              property.getName(),
+              ImmutableListMultimap.class,
+              keyType,
+              valueType)
+          .addLine("  %s = %s.copyOf(%s.%s());",
+              property.getName(), ImmutableListMultimap.class, value, property.getGetterName())
+          .addLine("} else {")
+          .addLine("  %s(%s.%s());", putAllMethod(property), value, property.getGetterName())
+          .addLine("}");
     }
 
     @Override
@@ -387,18 +462,72 @@ public class ListMultimapPropertyFactory implements PropertyCodeGenerator.Factor
       code.addLine("%s.%s(%s);", builder, putAllMethod(property), variable);
     }
 
+    @Override
+    public EqualsCost getEqualsCost() {
+      return EqualsCost.COLLECTION;
+    }
+
     @Override
     public void addClearField(Block code) {
-      code.addLine("%s.clear();", property.getName());
+      code.addLine("%s();", clearMethod(property));
     }
 
     @Override
     public Set<StaticExcerpt> getStaticExcerpts() {
       ImmutableSet.Builder<StaticExcerpt> staticMethods = ImmutableSet.builder();
+      staticMethods.add(MUTABLE_LIST_MULTIMAP);
+      staticMethods.add(LIST_SUPPLIER_TYPE);
       if (overridesPutMethod) {
         staticMethods.addAll(CheckedListMultimap.excerpts());
       }
       return staticMethods.build();
     }
   }
+
+  /**
+   * Copies {@code entries} into a mutable multimap storing each key's values in a small
+   * {@code ArrayList}, which takes far less memory than a {@code LinkedListMultimap} for large
+   * multimaps. Entries are grouped by key, matching the iteration order of the built value.
+   * The key map is sized for at least {@code expectedKeys} keys.
+   */
+  private static final StaticExcerpt MUTABLE_LIST_MULTIMAP =
+      new StaticExcerpt(METHOD, "mutableListMultimap") {
+    @Override
+    public void addTo(SourceBuilder code) {
+      code.addLine("")
+          .addLine("private static <K, V> %s<K, V> mutableListMultimap(", ListMultimap.class)
+          .addLine("    %s<? extends K, ? extends V> entries, int expectedKeys) {",
+              Multimap.class)
+          .addLine("  int keys = %s.max(expectedKeys, entries.keySet().size());", Math.class)
+          .addLine("  %s<K, V> multimap = %s.newListMultimap(", ListMultimap.class, Multimaps.class)
+          .addLine("      new %s<K, %s<V>>((int) (keys / 0.75f + 1.0f)),",
+              LinkedHashMap.class, Collection.class)
+          .addLine("      new %s%s());", LIST_SUPPLIER, diamondOperator("V"))
+          .addLine("  multimap.putAll(entries);")
+          .addLine("  return multimap;")
+          .addLine("}");
+    }
+  };
+
+  /**
+   * Supplies the per-key value storage of {@code mutableListMultimap}. A named class, rather than
+   * an anonymous one, so builders holding the multimap stay serializable.
+   */
+  private static final String LIST_SUPPLIER = "ArrayListSupplier";
+
+  private static final StaticExcerpt LIST_SUPPLIER_TYPE = new StaticExcerpt(TYPE, LIST_SUPPLIER) {
+    @Override
+    public void addTo(SourceBuilder code) {
+      code.addLine("")
+          .addLine("private static final class %s<V>", LIST_SUPPLIER)
+          .addLine("    implements %s<%s<V>>, %s {", Supplier.class, List.class, Serializable.class)
+          .addLine("")
+          .addLine("  private static final long serialVersionUID = 1L;")
+          .addLine("")
+          .addLine("  @Override public %s<V> get() {", List.class)
+          .addLine("    return new %s%s(3);", ArrayList.class, diamondOperator("V"))
+          .addLine("  }")
+          .addLine("}");
+    }
+  };
 }
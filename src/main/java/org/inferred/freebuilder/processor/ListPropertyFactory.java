@@ -18,6 +18,7 @@ package org.inferred.freebuilder.processor;
 import static org.inferred.freebuilder.processor.BuilderMethods.addAllMethod;
 import static org.inferred.freebuilder.processor.BuilderMethods.addMethod;
 import static org.inferred.freebuilder.processor.BuilderMethods.clearMethod;
+import static org.inferred.freebuilder.processor.BuilderMethods.ensureCapacityMethod;
 import static org.inferred.freebuilder.processor.BuilderMethods.getter;
 import static org.inferred.freebuilder.processor.BuilderMethods.mutator;
 import static org.inferred.freebuilder.processor.Util.erasesToAnyOf;
@@ -35,12 +36,15 @@ import static org.inferred.freebuilder.processor.util.feature.SourceLevel.diamon
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 
 import org.inferred.freebuilder.processor.Metadata.Property;
 import org.inferred.freebuilder.processor.PropertyCodeGenerator.Config;
 import org.inferred.freebuilder.processor.excerpt.CheckedList;
+import org.inferred.freebuilder.processor.excerpt.HandoffList;
+import org.inferred.freebuilder.processor.excerpt.PrimitiveList;
 import org.inferred.freebuilder.processor.util.Block;
 import org.inferred.freebuilder.processor.util.Excerpt;
 import org.inferred.freebuilder.processor.util.Excerpts;
@@ -58,6 +62,7 @@ import java.util.List;
 import java.util.Set;
 
 import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
 
 /**
@@ -131,6 +136,15 @@ public class ListPropertyFactory implements PropertyCodeGenerator.Factory {
       }
     }
 
+    /**
+     * Returns the list type a Guava builder copies its {@code ImmutableList} into on first
+     * modification: a {@code HandoffList} if {@code buildAndReset} is to hand its array over to
+     * the value, or an {@link ArrayList} otherwise.
+     */
+    private Object mutableListType() {
+      return metadata.getHasBuildAndResetMethod() ? HandoffList.NAME : ArrayList.class;
+    }
+
     @Override
     public void addBuilderFieldAccessors(SourceBuilder code) {
       addAdd(code, metadata);
@@ -138,6 +152,7 @@ public class ListPropertyFactory implements PropertyCodeGenerator.Factory {
       addAddAllMethods(code, metadata);
       addMutate(code, metadata);
       addClear(code, metadata);
+      addEnsureCapacity(code, metadata);
       addGetter(code, metadata);
     }
 
@@ -153,12 +168,13 @@ public class ListPropertyFactory implements PropertyCodeGenerator.Factory {
       }
       code.addLine(" */")
           .addLine("public %s %s(%s element) {",
-              metadata.getBuilder(), addMethod(property), unboxedType.or(elementType));
+              metadata.getBuilder(), addMethod(property), unboxedType.or(elementType))
+          .add(MemoizedBuild.invalidate(metadata));
       if (code.feature(GUAVA).isAvailable()) {
         code.addLine("  if (this.%s instanceof %s) {", property.getName(), ImmutableList.class)
             .addLine("    this.%1$s = new %2$s%3$s(this.%1$s);",
                 property.getName(),
-                ArrayList.class,
+                mutableListType(),
                 diamondOperator(elementType))
             .addLine("  }");
       }
@@ -187,9 +203,12 @@ public class ListPropertyFactory implements PropertyCodeGenerator.Factory {
           .addLine("public %s %s(%s... elements) {",
               metadata.getBuilder(),
               addMethod(property),
-              unboxedType.or(elementType));
+              unboxedType.or(elementType))
+          .add(MemoizedBuild.invalidate(metadata));
       Optional<Class<?>> arrayUtils = code.feature(GUAVA).arrayUtils(unboxedType.or(elementType));
-      if (arrayUtils.isPresent()) {
+      if (primitiveKind().isPresent()) {
+        code.addLine("  return %s(elements, 0, elements.length);", addAllMethod(property));
+      } else if (arrayUtils.isPresent()) {
         code.addLine("  return %s(%s.asList(elements));", addAllMethod(property), arrayUtils.get());
       } else {
         // Primitive type, Guava not available
@@ -203,7 +222,14 @@ public class ListPropertyFactory implements PropertyCodeGenerator.Factory {
     }
 
     private void addAddAllMethods(SourceBuilder code, Metadata metadata) {
+      if (primitiveKind().isPresent()) {
+        addArrayRangeAddAll(code, metadata);
+      }
       if (code.feature(SOURCE_LEVEL).stream().isPresent()) {
+        if (primitiveKind().isPresent()) {
+          addPrimitiveSpliteratorAddAll(code, metadata);
+          addPrimitiveStreamAddAll(code, metadata);
+        }
         addSpliteratorAddAll(code, metadata);
         addStreamAddAll(code, metadata);
         addIterableAddAll(code, metadata);
@@ -212,6 +238,111 @@ public class ListPropertyFactory implements PropertyCodeGenerator.Factory {
       }
     }
 
+    /**
+     * Returns the element type's primitive kind if bulk operations can take unboxed arrays and
+     * streams of it, i.e. if it is {@code int}, {@code long} or {@code double}.
+     */
+    private Optional<TypeKind> primitiveKind() {
+      if (unboxedType.isPresent() && PrimitiveList.isSupported(unboxedType.get().getKind())) {
+        return Optional.of(unboxedType.get().getKind());
+      }
+      return Optional.absent();
+    }
+
+    private void addArrayRangeAddAll(SourceBuilder code, Metadata metadata) {
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Adds {@code length} elements of {@code elements}, starting at index")
+          .addLine(" * {@code offset}, to the list to be returned from %s.",
+              metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+          .addLine(" *")
+          .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
+          .addLine(" * @throws NullPointerException if {@code elements} is null")
+          .addLine(" * @throws IndexOutOfBoundsException if {@code offset} or {@code length} is")
+          .addLine(" *     negative, or {@code offset + length} exceeds {@code elements.length}")
+          .addLine(" */")
+          .addLine("public %s %s(%s[] elements, int offset, int length) {",
+              metadata.getBuilder(), addAllMethod(property), unboxedType.get())
+          .add(MemoizedBuild.invalidate(metadata))
+          .addLine("  if (offset < 0 || length < 0 || offset > elements.length - length) {")
+          .addLine("    throw new %s(\"offset \" + offset + \", length \" + length",
+              IndexOutOfBoundsException.class)
+          .addLine("        + \", array length \" + elements.length);")
+          .addLine("  }");
+      if (overridesAddMethod) {
+        code.addLine("  for (int i = offset; i < offset + length; i++) {")
+            .addLine("    %s(elements[i]);", addMethod(property))
+            .addLine("  }");
+      } else {
+        if (code.feature(GUAVA).isAvailable()) {
+          code.addLine("  if (%s instanceof %s) {", property.getName(), ImmutableList.class)
+              .addLine("    %1$s = new %2$s%3$s(%1$s);",
+                  property.getName(), mutableListType(), diamondOperator(elementType))
+              .addLine("  }")
+              .add("  ((%s<?>) %s)", mutableListType(), property.getName());
+        } else {
+          code.add("  %s", property.getName());
+        }
+        code.add(".ensureCapacity(%s.size() + length);%n", property.getName())
+            .addLine("  for (int i = offset; i < offset + length; i++) {")
+            .addLine("    %s.add(elements[i]);", property.getName())
+            .addLine("  }");
+      }
+      code.addLine("  return (%s) this;", metadata.getBuilder())
+          .addLine("}");
+    }
+
+    private void addPrimitiveSpliteratorAddAll(SourceBuilder code, Metadata metadata) {
+      String primitiveName = PrimitiveList.capitalizedName(primitiveKind().get());
+      QualifiedName spliterator = code.feature(SOURCE_LEVEL).spliterator().get();
+      QualifiedName primitiveConsumer =
+          QualifiedName.of("java.util.function", primitiveName + "Consumer");
+      addJavadocForAddAll(code, metadata);
+      code.addLine("public %s %s(%s elements) {",
+              metadata.getBuilder(),
+              addAllMethod(property),
+              spliterator.nestedType("Of" + primitiveName))
+          .add(MemoizedBuild.invalidate(metadata));
+      if (overridesAddMethod) {
+        code.addLine("  elements.forEachRemaining((%s) this::%s);",
+            primitiveConsumer, addMethod(property));
+      } else {
+        if (code.feature(GUAVA).isAvailable()) {
+          code.addLine("  if (%s instanceof %s) {", property.getName(), ImmutableList.class)
+              .addLine("    %1$s = new %2$s%3$s(%1$s);",
+                  property.getName(), mutableListType(), diamondOperator(elementType))
+              .addLine("  }");
+        }
+        code.addLine("  if ((elements.characteristics() & %s.SIZED) != 0) {", spliterator)
+            .addLine("    long elementsSize = elements.estimateSize();")
+            .addLine("    if (elementsSize > 0 && elementsSize <= Integer.MAX_VALUE) {");
+        if (code.feature(GUAVA).isAvailable()) {
+          code.add("      ((%s<?>) %s)", mutableListType(), property.getName());
+        } else {
+          code.add("      %s", property.getName());
+        }
+        code.add(".ensureCapacity(%s.size() + (int) elementsSize);%n", property.getName())
+            .addLine("    }")
+            .addLine("  }")
+            .addLine("  elements.forEachRemaining((%s) %s::add);",
+                primitiveConsumer, property.getName());
+      }
+      code.addLine("  return (%s) this;", metadata.getBuilder())
+          .addLine("}");
+    }
+
+    private void addPrimitiveStreamAddAll(SourceBuilder code, Metadata metadata) {
+      String primitiveName = PrimitiveList.capitalizedName(primitiveKind().get());
+      addJavadocForAddAll(code, metadata);
+      code.addLine("public %s %s(%s elements) {",
+              metadata.getBuilder(),
+              addAllMethod(property),
+              QualifiedName.of("java.util.stream", primitiveName + "Stream"))
+          .add(MemoizedBuild.invalidate(metadata))
+          .addLine("  return %s(elements.spliterator());", addAllMethod(property))
+          .addLine("}");
+    }
+
     private void addPreStreamsAddAll(SourceBuilder code, Metadata metadata) {
       addJavadocForAddAll(code, metadata);
       addAccessorAnnotations(code);
@@ -219,16 +350,18 @@ public class ListPropertyFactory implements PropertyCodeGenerator.Factory {
           metadata.getBuilder(),
           addAllMethod(property),
           Iterable.class,
-          elementType);
+          elementType)
+          .add(MemoizedBuild.invalidate(metadata));
+      addImmutableCollectionFastPath(code, metadata);
       code.addLine("  if (elements instanceof %s) {", Collection.class)
       .addLine("    int elementsSize = ((%s<?>) elements).size();", Collection.class);
       if (code.feature(GUAVA).isAvailable()) {
         code.addLine("    if (elementsSize != 0) {")
             .addLine("      if (%s instanceof %s) {", property.getName(), ImmutableList.class)
             .addLine("        %1$s = new %2$s%3$s(%1$s);",
-                property.getName(), ArrayList.class, diamondOperator(elementType))
+                property.getName(), mutableListType(), diamondOperator(elementType))
             .addLine("      }")
-            .add("      ((%s<?>) %s)", ArrayList.class, property.getName());
+            .add("      ((%s<?>) %s)", mutableListType(), property.getName());
       } else {
         code.add("    %s", property.getName());
       }
@@ -249,16 +382,17 @@ public class ListPropertyFactory implements PropertyCodeGenerator.Factory {
               metadata.getBuilder(),
               addAllMethod(property),
               spliterator,
-              elementType);
+              elementType)
+          .add(MemoizedBuild.invalidate(metadata));
       code.addLine("  if ((elements.characteristics() & %s.SIZED) != 0) {", spliterator)
           .addLine("    long elementsSize = elements.estimateSize();")
           .addLine("    if (elementsSize > 0 && elementsSize <= Integer.MAX_VALUE) {");
       if (code.feature(GUAVA).isAvailable()) {
         code.addLine("      if (%s instanceof %s) {", property.getName(), ImmutableList.class)
             .addLine("        %1$s = new %2$s%3$s(%1$s);",
-                property.getName(), ArrayList.class, diamondOperator(elementType))
+                property.getName(), mutableListType(), diamondOperator(elementType))
             .addLine("      }")
-            .add("      ((%s<?>) %s)", ArrayList.class, property.getName());
+            .add("      ((%s<?>) %s)", mutableListType(), property.getName());
       } else {
         code.add("      %s", property.getName());
       }
@@ -278,10 +412,32 @@ public class ListPropertyFactory implements PropertyCodeGenerator.Factory {
               addAllMethod(property),
               Iterable.class,
               elementType)
-          .addLine("  return %s(elements.spliterator());", addAllMethod(property))
+          .add(MemoizedBuild.invalidate(metadata));
+      addImmutableCollectionFastPath(code, metadata);
+      code.addLine("  return %s(elements.spliterator());", addAllMethod(property))
           .addLine("}");
     }
 
+    /**
+     * Adds a fast path copying Guava immutable collections, which cannot contain nulls, straight
+     * into the list, provided the user has not overridden the add method.
+     */
+    private void addImmutableCollectionFastPath(SourceBuilder code, Metadata metadata) {
+      if (overridesAddMethod || !code.feature(GUAVA).isAvailable()) {
+        return;
+      }
+      code.addLine("  if (elements instanceof %1$s && !((%1$s<?>) elements).isEmpty()) {",
+              ImmutableCollection.class)
+          .addLine("    if (%s instanceof %s) {", property.getName(), ImmutableList.class)
+          .addLine("      %1$s = new %2$s%3$s(%1$s);",
+              property.getName(), mutableListType(), diamondOperator(elementType))
+          .addLine("    }")
+          .addLine("    %s.addAll((%s<? extends %s>) elements);",
+              property.getName(), ImmutableCollection.class, elementType)
+          .addLine("    return (%s) this;", metadata.getBuilder())
+          .addLine("  }");
+    }
+
     private void addStreamAddAll(SourceBuilder code, Metadata metadata) {
       QualifiedName baseStream = code.feature(SOURCE_LEVEL).baseStream().get();
       addJavadocForAddAll(code, metadata);
@@ -290,6 +446,7 @@ public class ListPropertyFactory implements PropertyCodeGenerator.Factory {
               addAllMethod(property),
               baseStream,
               elementType)
+          .add(MemoizedBuild.invalidate(metadata))
           .addLine("  return %s(elements.spliterator());", addAllMethod(property))
           .addLine("}");
     }
@@ -329,12 +486,13 @@ public class ListPropertyFactory implements PropertyCodeGenerator.Factory {
               mutator(property),
               consumer.getQualifiedName(),
               List.class,
-              elementType);
+              elementType)
+          .add(MemoizedBuild.invalidate(metadata));
       if (code.feature(GUAVA).isAvailable()) {
         code.addLine("  if (this.%s instanceof %s) {", property.getName(), ImmutableList.class)
             .addLine("    this.%1$s = new %2$s%3$s(this.%1$s);",
                 property.getName(),
-                ArrayList.class,
+                mutableListType(),
                 diamondOperator(elementType))
             .addLine("  }");
       }
@@ -358,7 +516,8 @@ public class ListPropertyFactory implements PropertyCodeGenerator.Factory {
           .addLine(" *")
           .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
           .addLine(" */")
-          .addLine("public %s %s() {", metadata.getBuilder(), clearMethod(property));
+          .addLine("public %s %s() {", metadata.getBuilder(), clearMethod(property))
+          .add(MemoizedBuild.invalidate(metadata));
       if (code.feature(GUAVA).isAvailable()) {
         code.addLine("  if (%s instanceof %s) {", property.getName(), ImmutableList.class)
             .addLine("    %s = %s.of();", property.getName(), ImmutableList.class)
@@ -372,6 +531,36 @@ public class ListPropertyFactory implements PropertyCodeGenerator.Factory {
           .addLine("}");
     }
 
+    private void addEnsureCapacity(SourceBuilder code, Metadata metadata) {
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Ensures the list to be returned from %s can hold at least",
+              metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+          .addLine(" * {@code minCapacity} elements without reallocating its storage.")
+          .addLine(" *")
+          .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
+          .addLine(" */")
+          .addLine("public %s %s(int minCapacity) {",
+              metadata.getBuilder(), ensureCapacityMethod(property));
+      if (code.feature(GUAVA).isAvailable()) {
+        code.addLine("  if (%s instanceof %s) {", property.getName(), ImmutableList.class)
+            .addLine("    if (minCapacity > %s.size()) {", property.getName())
+            .addLine("      %s<%s> list = new %s%s(minCapacity);",
+                List.class, elementType, mutableListType(), diamondOperator(elementType))
+            .addLine("      list.addAll(%s);", property.getName())
+            .addLine("      %s = list;", property.getName())
+            .addLine("    }")
+            .addLine("  } else {")
+            .addLine("    ((%s<?>) %s).ensureCapacity(minCapacity);",
+                mutableListType(), property.getName())
+            .addLine("  }");
+      } else {
+        code.addLine("  %s.ensureCapacity(minCapacity);", property.getName());
+      }
+      code.addLine("  return (%s) this;", metadata.getBuilder())
+          .addLine("}");
+    }
+
     private void addGetter(SourceBuilder code, Metadata metadata) {
       code.addLine("")
           .addLine("/**")
@@ -383,7 +572,7 @@ public class ListPropertyFactory implements PropertyCodeGenerator.Factory {
       if (code.feature(GUAVA).isAvailable()) {
         code.addLine("  if (%s instanceof %s) {", property.getName(), ImmutableList.class)
             .addLine("    %1$s = new %2$s%3$s(%1$s);",
-                property.getName(), ArrayList.class, diamondOperator(elementType))
+                property.getName(), mutableListType(), diamondOperator(elementType))
             .addLine("  }");
       }
       code.addLine("  return %s.unmodifiableList(%s);", Collections.class, property.getName())
@@ -412,9 +601,13 @@ public class ListPropertyFactory implements PropertyCodeGenerator.Factory {
             .addLine("  %s = %s.copyOf(%s.%s());",
                 property.getName(), ImmutableList.class, value, property.getGetterName())
             .addLine("} else {");
+      } else if (!overridesAddMethod) {
+        code.addLine("if (%s instanceof %s) {", value, metadata.getValueType().getQualifiedName())
+            .addLine("  %s.addAll(%s.%s());", property.getName(), value, property.getGetterName())
+            .addLine("} else {");
       }
       code.addLine("%s(%s.%s());", addAllMethod(property), value, property.getGetterName());
-      if (code.feature(GUAVA).isAvailable()) {
+      if (code.feature(GUAVA).isAvailable() || !overridesAddMethod) {
         code.addLine("}");
       }
     }
@@ -422,7 +615,22 @@ public class ListPropertyFactory implements PropertyCodeGenerator.Factory {
     @Override
     public void addMergeFromBuilder(Block code, String builder) {
       Excerpt base = Declarations.upcastToGeneratedBuilder(code, metadata, builder);
-      code.addLine("%s(%s.%s);", addAllMethod(property), base, property.getName());
+      if (!overridesAddMethod && !code.feature(GUAVA).isAvailable()) {
+        code.addLine("%s.addAll(%s.%s);", property.getName(), base, property.getName());
+      } else {
+        code.addLine("%s(%s.%s);", addAllMethod(property), base, property.getName());
+      }
+    }
+
+    @Override
+    public void addAppendToString(SourceBuilder code, String result, String finalField) {
+      Optional<QualifiedName> appender = ValueAppender.generatedBuilderOf(elementType, metadata);
+      if (appender.isPresent()) {
+        ValueAppender.addAppendCollection(
+            code, result, property.getName(), finalField, elementType, appender.get());
+      } else {
+        super.addAppendToString(code, result, finalField);
+      }
     }
 
     @Override
@@ -430,15 +638,33 @@ public class ListPropertyFactory implements PropertyCodeGenerator.Factory {
       code.addLine("%s.%s(%s);", builder, addAllMethod(property), variable);
     }
 
+    @Override
+    public EqualsCost getEqualsCost() {
+      return EqualsCost.COLLECTION;
+    }
+
     @Override
     public void addClearField(Block code) {
       code.addLine("%s();", clearMethod(property));
     }
 
+    @Override
+    public void addHandOverField(Block code) {
+      if (code.feature(GUAVA).isAvailable()) {
+        code.addLine("if (%s instanceof %s) {", property.getName(), HandoffList.NAME)
+            .addLine("  %1$s = ((%2$s<%3$s>) %1$s).handOff();",
+                property.getName(), HandoffList.NAME, elementType)
+            .addLine("}");
+      }
+    }
+
     @Override
     public Set<StaticExcerpt> getStaticExcerpts() {
       ImmutableSet.Builder<StaticExcerpt> methods = ImmutableSet.builder();
       methods.add(IMMUTABLE_LIST);
+      if (metadata.getHasBuildAndResetMethod()) {
+        methods.addAll(HandoffList.excerpts());
+      }
       if (overridesAddMethod) {
         methods.addAll(CheckedList.excerpts());
       }
@@ -16,6 +16,7 @@
 package org.inferred.freebuilder.processor;
 
 import static org.inferred.freebuilder.processor.BuilderMethods.clearMethod;
+import static org.inferred.freebuilder.processor.BuilderMethods.ensureCapacityMethod;
 import static org.inferred.freebuilder.processor.BuilderMethods.getter;
 import static org.inferred.freebuilder.processor.BuilderMethods.mutator;
 import static org.inferred.freebuilder.processor.BuilderMethods.putAllMethod;
@@ -39,6 +40,7 @@ import com.google.common.collect.ImmutableSet;
 import org.inferred.freebuilder.processor.Metadata.Property;
 import org.inferred.freebuilder.processor.PropertyCodeGenerator.Config;
 import org.inferred.freebuilder.processor.excerpt.CheckedMap;
+import org.inferred.freebuilder.processor.excerpt.CompactImmutableCollections;
 import org.inferred.freebuilder.processor.util.Block;
 import org.inferred.freebuilder.processor.util.Excerpts;
 import org.inferred.freebuilder.processor.util.ParameterizedType;
@@ -49,6 +51,7 @@ import org.inferred.freebuilder.processor.util.StaticExcerpt;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
@@ -124,12 +127,13 @@ public class MapPropertyFactory implements PropertyCodeGenerator.Factory {
 
     @Override
     public void addBuilderFieldDeclaration(SourceBuilder code) {
-      code.addLine("private final %1$s<%2$s, %3$s> %4$s = new %1$s%5$s();",
-          LinkedHashMap.class,
-          keyType,
-          valueType,
-          property.getName(),
-          diamondOperator(Excerpts.add("%s, %s", keyType, valueType)));
+      if (code.feature(GUAVA).isAvailable()) {
+        code.addLine("private %s<%s, %s> %s = %s.of();",
+            Map.class, keyType, valueType, property.getName(), ImmutableMap.class);
+      } else {
+        code.addLine("private %s<%s, %s> %s = %s.emptyMap();",
+            Map.class, keyType, valueType, property.getName(), Collections.class);
+      }
     }
 
     @Override
@@ -139,6 +143,7 @@ public class MapPropertyFactory implements PropertyCodeGenerator.Factory {
       addRemove(code, metadata);
       addMutate(code, metadata);
       addClear(code, metadata);
+      addEnsureCapacity(code, metadata);
       addGetter(code, metadata);
     }
 
@@ -167,13 +172,15 @@ public class MapPropertyFactory implements PropertyCodeGenerator.Factory {
               metadata.getBuilder(),
               putMethod(property),
               unboxedKeyType.or(keyType),
-              unboxedValueType.or(valueType));
+              unboxedValueType.or(valueType))
+          .add(MemoizedBuild.invalidate(metadata));
       if (!unboxedKeyType.isPresent()) {
         code.add(PreconditionExcerpts.checkNotNull("key"));
       }
       if (!unboxedValueType.isPresent()) {
         code.add(PreconditionExcerpts.checkNotNull("value"));
       }
+      addConvertToMutableMap(code);
       code.addLine("  %s.put(key, value);", property.getName())
           .addLine("  return (%s) this;", metadata.getBuilder())
           .addLine("}");
@@ -196,7 +203,20 @@ public class MapPropertyFactory implements PropertyCodeGenerator.Factory {
               Map.class,
               keyType,
               valueType)
-          .addLine("  for (%s<? extends %s, ? extends %s> entry : map.entrySet()) {",
+          .add(MemoizedBuild.invalidate(metadata));
+      if (!overridesPutMethod && code.feature(GUAVA).isAvailable()) {
+        code.addLine("  if (map instanceof %s && !map.isEmpty()) {", ImmutableMap.class)
+            .addLine("    if (%s instanceof %s) {", property.getName(), ImmutableMap.class)
+            .addLine("      %1$s = new %2$s%3$s(%1$s);",
+                property.getName(),
+                LinkedHashMap.class,
+                diamondOperator(Excerpts.add("%s, %s", keyType, valueType)))
+            .addLine("    }")
+            .addLine("    %s.putAll(map);", property.getName())
+            .addLine("    return (%s) this;", metadata.getBuilder())
+            .addLine("  }");
+      }
+      code.addLine("  for (%s<? extends %s, ? extends %s> entry : map.entrySet()) {",
               Map.Entry.class, keyType, valueType)
           .addLine("    %s(entry.getKey(), entry.getValue());", putMethod(property))
           .addLine("  }")
@@ -219,10 +239,12 @@ public class MapPropertyFactory implements PropertyCodeGenerator.Factory {
           .addLine("public %s %s(%s key) {",
               metadata.getBuilder(),
               removeMethod(property),
-              unboxedKeyType.or(keyType));
+              unboxedKeyType.or(keyType))
+          .add(MemoizedBuild.invalidate(metadata));
       if (!unboxedKeyType.isPresent()) {
         code.add(PreconditionExcerpts.checkNotNull("key"));
       }
+      addConvertToMutableMap(code);
       code.addLine("  %s.remove(key);", property.getName())
           .addLine("  return (%s) this;", metadata.getBuilder())
           .addLine("}");
@@ -252,7 +274,9 @@ public class MapPropertyFactory implements PropertyCodeGenerator.Factory {
               consumer.getQualifiedName(),
               Map.class,
               keyType,
-              valueType);
+              valueType)
+          .add(MemoizedBuild.invalidate(metadata));
+      addConvertToMutableMap(code);
       if (overridesPutMethod) {
         code.addLine("  mutator.accept(new CheckedMap<>(%s, this::%s));",
             property.getName(), putMethod(property));
@@ -274,8 +298,54 @@ public class MapPropertyFactory implements PropertyCodeGenerator.Factory {
           .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
           .addLine(" */")
           .addLine("public %s %s() {", metadata.getBuilder(), clearMethod(property))
-          .addLine("  %s.clear();", property.getName())
-          .addLine("  return (%s) this;", metadata.getBuilder())
+          .add(MemoizedBuild.invalidate(metadata));
+      if (code.feature(GUAVA).isAvailable()) {
+        code.addLine("  if (%s instanceof %s) {", property.getName(), ImmutableMap.class)
+            .addLine("    %s = %s.of();", property.getName(), ImmutableMap.class)
+            .addLine("  } else {")
+            .addLine("    %s.clear();", property.getName())
+            .addLine("  }");
+      } else {
+        code.addLine("  %s.clear();", property.getName());
+      }
+      code.addLine("  return (%s) this;", metadata.getBuilder())
+          .addLine("}");
+    }
+
+    private void addEnsureCapacity(SourceBuilder code, Metadata metadata) {
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Hints that the map to be returned from %s will hold at least",
+              metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+          .addLine(" * {@code minCapacity} entries, so storage can be allocated for them up")
+          .addLine(" * front. The hint has no effect once storage has been allocated.")
+          .addLine(" *")
+          .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
+          .addLine(" */")
+          .addLine("public %s %s(int minCapacity) {",
+              metadata.getBuilder(), ensureCapacityMethod(property));
+      if (code.feature(GUAVA).isAvailable()) {
+        code.addLine("  if (%s instanceof %s && minCapacity > %s.size()) {",
+                property.getName(), ImmutableMap.class, property.getName())
+            .addLine("    %s<%s, %s> map = new %s%s((int) (minCapacity / 0.75f + 1.0f));",
+                Map.class,
+                keyType,
+                valueType,
+                LinkedHashMap.class,
+                diamondOperator(Excerpts.add("%s, %s", keyType, valueType)))
+            .addLine("    map.putAll(%s);", property.getName())
+            .addLine("    %s = map;", property.getName())
+            .addLine("  }");
+      } else {
+        code.addLine("  if (%s == %s.<%s, %s>emptyMap() && minCapacity > 0) {",
+                property.getName(), Collections.class, keyType, valueType)
+            .addLine("    %s = new %s%s((int) (minCapacity / 0.75f + 1.0f));",
+                property.getName(),
+                LinkedHashMap.class,
+                diamondOperator(Excerpts.add("%s, %s", keyType, valueType)))
+            .addLine("  }");
+      }
+      code.addLine("  return (%s) this;", metadata.getBuilder())
           .addLine("}");
     }
 
@@ -286,11 +356,41 @@ public class MapPropertyFactory implements PropertyCodeGenerator.Factory {
           .addLine(" * %s.", metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
           .addLine(" * Changes to this builder will be reflected in the view.")
           .addLine(" */")
-          .addLine("public %s<%s, %s> %s() {", Map.class, keyType, valueType, getter(property))
-          .addLine("  return %s.unmodifiableMap(%s);", Collections.class, property.getName())
+          .addLine("public %s<%s, %s> %s() {", Map.class, keyType, valueType, getter(property));
+      addConvertToMutableMap(code);
+      code.addLine("  return %s.unmodifiableMap(%s);", Collections.class, property.getName())
           .addLine("}");
     }
 
+    /**
+     * Replaces an {@link ImmutableMap} adopted from a value, or the initial empty map, with a
+     * mutable copy before the builder's map is modified or exposed.
+     */
+    private void addConvertToMutableMap(SourceBuilder code) {
+      addConvertToMutableMap(code, "  ");
+    }
+
+    private void addConvertToMutableMap(SourceBuilder code, String indent) {
+      if (code.feature(GUAVA).isAvailable()) {
+        code.addLine("%sif (%s instanceof %s) {", indent, property.getName(), ImmutableMap.class)
+            .addLine("%s  %2$s = new %3$s%4$s(%2$s);",
+                indent,
+                property.getName(),
+                LinkedHashMap.class,
+                diamondOperator(Excerpts.add("%s, %s", keyType, valueType)))
+            .addLine("%s}", indent);
+      } else {
+        code.addLine("%sif (%s == %s.<%s, %s>emptyMap()) {",
+                indent, property.getName(), Collections.class, keyType, valueType)
+            .addLine("%s  %s = new %s%s();",
+                indent,
+                property.getName(),
+                LinkedHashMap.class,
+                diamondOperator(Excerpts.add("%s, %s", keyType, valueType)))
+            .addLine("%s}", indent);
+      }
+    }
+
     @Override
     public void addFinalFieldAssignment(SourceBuilder code, String finalField, String builder) {
       code.add("%s = ", finalField);
@@ -304,16 +404,45 @@ public class MapPropertyFactory implements PropertyCodeGenerator.Factory {
 
     @Override
     public void addMergeFromValue(Block code, String value) {
+      if (code.feature(GUAVA).isAvailable()) {
+        code.addLine("if (%s instanceof %s && %s == %s.<%s, %s>of()) {",
+                value,
+                metadata.getValueType().getQualifiedName(),
+                property.getName(),
+                ImmutableMap.class,
+                keyType,
+                valueType)
+            .addLine("  %s = %s.copyOf(%s.%s());",
+                property.getName(), ImmutableMap.class, value, property.getGetterName())
+            .addLine("} else {");
+      } else if (!overridesPutMethod) {
+        code.addLine("if (%s instanceof %s) {", value, metadata.getValueType().getQualifiedName());
+        addConvertToMutableMap(code);
+        code.addLine("  %s.putAll(%s.%s());", property.getName(), value, property.getGetterName())
+            .addLine("} else {");
+      }
       code.addLine("%s(%s.%s());", putAllMethod(property), value, property.getGetterName());
+      if (code.feature(GUAVA).isAvailable() || !overridesPutMethod) {
+        code.addLine("}");
+      }
     }
 
     @Override
     public void addMergeFromBuilder(Block code, String builder) {
-      code.addLine("%s(((%s) %s).%s);",
-          putAllMethod(property),
-          metadata.getGeneratedBuilder(),
-          builder,
-          property.getName());
+      if (!overridesPutMethod && !code.feature(GUAVA).isAvailable()) {
+        addConvertToMutableMap(code, "");
+        code.addLine("%s.putAll(((%s) %s).%s);",
+            property.getName(),
+            metadata.getGeneratedBuilder(),
+            builder,
+            property.getName());
+      } else {
+        code.addLine("%s(((%s) %s).%s);",
+            putAllMethod(property),
+            metadata.getGeneratedBuilder(),
+            builder,
+            property.getName());
+      }
     }
 
     @Override
@@ -321,15 +450,21 @@ public class MapPropertyFactory implements PropertyCodeGenerator.Factory {
       code.addLine("%s.%s(%s);", builder, putAllMethod(property), variable);
     }
 
+    @Override
+    public EqualsCost getEqualsCost() {
+      return EqualsCost.COLLECTION;
+    }
+
     @Override
     public void addClearField(Block code) {
-      code.addLine("%s.clear();", property.getName());
+      code.addLine("%s();", clearMethod(property));
     }
 
     @Override
     public Set<StaticExcerpt> getStaticExcerpts() {
       ImmutableSet.Builder<StaticExcerpt> result = ImmutableSet.builder();
       result.add(IMMUTABLE_MAP);
+      result.addAll(CompactImmutableCollections.mapExcerpts());
       if (overridesPutMethod) {
         result.addAll(CheckedMap.excerpts());
       }
@@ -351,9 +486,24 @@ public class MapPropertyFactory implements PropertyCodeGenerator.Factory {
             .addLine("    %s<K, V> entry = entries.entrySet().iterator().next();", Map.Entry.class)
             .addLine("    return %s.singletonMap(entry.getKey(), entry.getValue());",
                 Collections.class)
+            .addLine("  case 2:")
+            .addLine("    %s<%s<K, V>> iterator = entries.entrySet().iterator();",
+                Iterator.class, Map.Entry.class)
+            .addLine("    %s<K, V> first = iterator.next();", Map.Entry.class)
+            .addLine("    %s<K, V> second = iterator.next();", Map.Entry.class)
+            .addLine("    return new %s<K, V>(first.getKey(), first.getValue(),",
+                CompactImmutableCollections.PAIR_MAP_TYPE)
+            .addLine("        second.getKey(), second.getValue());")
             .addLine("  default:")
-            .addLine("    return %s.unmodifiableMap(new %s%s(entries));",
-                Collections.class, LinkedHashMap.class, diamondOperator("K, V"))
+            .addLine("    Object[] keys = new Object[entries.size()];")
+            .addLine("    Object[] values = new Object[entries.size()];")
+            .addLine("    int i = 0;")
+            .addLine("    for (%s<K, V> e : entries.entrySet()) {", Map.Entry.class)
+            .addLine("      keys[i] = e.getKey();")
+            .addLine("      values[i] = e.getValue();")
+            .addLine("      i++;")
+            .addLine("    }")
+            .addLine("    return new %s<K, V>(keys, values);", CompactImmutableCollections.MAP_TYPE)
             .addLine("  }")
             .addLine("}");
       }
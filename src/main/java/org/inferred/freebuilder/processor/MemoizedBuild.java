@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import com.google.common.base.Optional;
+
+import org.inferred.freebuilder.processor.Metadata.Property;
+import org.inferred.freebuilder.processor.util.Excerpt;
+import org.inferred.freebuilder.processor.util.Excerpts;
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Excerpts memoizing the value returned by {@code build()} in a builder field named
+ * {@code _lastBuilt}, if {@link Metadata#isBuildMemoized()} is set.
+ *
+ * <p>Every builder method that can modify a property clears the field first, so while it is
+ * non-null it holds a value equal to what {@code build()} would construct. Properties whose state
+ * can change without a builder method being called contribute a
+ * {@link PropertyCodeGenerator#memoizedBuildGuard() guard} that must also hold.
+ */
+class MemoizedBuild {
+
+  /** Adds the {@code _lastBuilt} field declaration, if build is memoized. */
+  public static void addFieldDeclaration(SourceBuilder code, Metadata metadata) {
+    if (metadata.isBuildMemoized()) {
+      code.addLine("private transient %s _lastBuilt = null;", metadata.getType());
+    }
+  }
+
+  /**
+   * Returns a statement discarding the memoized value, to start every builder method that can
+   * modify a property, or an empty excerpt if build is not memoized.
+   */
+  public static Excerpt invalidate(Metadata metadata) {
+    if (!metadata.isBuildMemoized()) {
+      return Excerpts.empty();
+    }
+    return Excerpts.add("  _lastBuilt = null;\n");
+  }
+
+  /** Returns an expression that is true if {@code _lastBuilt} can be returned from build(). */
+  public static Excerpt isValid(Metadata metadata) {
+    List<Excerpt> conditions = new ArrayList<Excerpt>();
+    conditions.add(Excerpts.add("_lastBuilt != null"));
+    for (Property property : metadata.getProperties()) {
+      Optional<Excerpt> guard = property.getCodeGenerator().memoizedBuildGuard();
+      if (guard.isPresent()) {
+        conditions.add(guard.get());
+      }
+    }
+    return Excerpts.add("%s", Excerpts.join(" && ", conditions));
+  }
+
+  private MemoizedBuild() {}
+}
@@ -38,7 +38,7 @@ public abstract class Metadata {
 
   /** Standard Java methods that may be underridden. */
   public enum StandardMethod {
-    TO_STRING, HASH_CODE, EQUALS
+    TO_STRING, HASH_CODE, EQUALS, READ_RESOLVE
   }
 
   /** How compulsory the underride is. */
@@ -148,6 +148,63 @@ public abstract class Metadata {
   /** Returns whether the value type has a toBuilder method that needs to be generated. */
   public abstract boolean getHasToBuilderMethod();
 
+  /** Returns whether the value type has a compareTo method that needs to be generated. */
+  public abstract boolean getHasCompareToMethod();
+
+  /**
+   * Returns whether {@code List<Integer>}, {@code List<Long>} and {@code List<Double>} properties
+   * should be stored in unboxed arrays.
+   */
+  public abstract boolean isUsingPrimitiveLists();
+
+  /** Returns whether the value type should cache its hash code after first computing it. */
+  public abstract boolean isHashCodeCached();
+
+  /**
+   * Returns whether the builder should take default property values from a lazily-created, shared
+   * builder instance, rather than creating a fresh one on every {@code clear} or {@code mergeFrom}.
+   */
+  public abstract boolean isSnapshottingDefaults();
+
+  /**
+   * Returns whether the builder should have a {@code buildAndReset} method, handing its list
+   * storage over to the value rather than copying it.
+   */
+  public abstract boolean getHasBuildAndResetMethod();
+
+  /**
+   * Returns whether {@code build()} should return the last value it built, if the builder has not
+   * been modified since.
+   */
+  public abstract boolean isBuildMemoized();
+
+  /**
+   * Returns whether the builder should have a static {@code diff} method and a matching
+   * {@code mergeFrom(value, changed)} method.
+   */
+  public abstract boolean getHasDiffMethods();
+
+  /**
+   * Returns whether values should be canonicalized through a weak interner when built or
+   * deserialized.
+   */
+  public abstract boolean isValueInterned();
+
+  /** Returns whether the value type implements {@link java.io.Serializable}. */
+  public abstract boolean isValueSerializable();
+
+  /** Returns whether {@code Set} properties of an enum type should be stored in EnumSets. */
+  public abstract boolean isUsingEnumSets();
+
+  /** Returns whether {@code Map} properties keyed by an enum type should be stored in EnumMaps. */
+  public abstract boolean isUsingEnumMaps();
+
+  /**
+   * Returns the names of the properties by which a generated comparator orders values, most
+   * significant first, or an empty list if no comparator is requested.
+   */
+  public abstract ImmutableList<String> getComparatorOrder();
+
   /** Returns a list of annotations that should be applied to the generated builder class. */
   public abstract ImmutableList<Excerpt> getGeneratedBuilderAnnotations();
 
@@ -231,6 +288,18 @@ public abstract class Metadata {
     public Builder() {
       super.setValueTypeVisibility(Visibility.PRIVATE);
       super.setHasToBuilderMethod(false);
+      super.setUsingPrimitiveLists(false);
+      super.setHashCodeCached(false);
+      super.setSnapshottingDefaults(false);
+      super.setHasBuildAndResetMethod(false);
+      super.setBuildMemoized(false);
+      super.setHasDiffMethods(false);
+      super.setValueInterned(false);
+      super.setValueSerializable(false);
+      super.setHasCompareToMethod(false);
+      super.setComparatorOrder(ImmutableList.<String>of());
+      super.setUsingEnumSets(false);
+      super.setUsingEnumMaps(false);
     }
 
     /**
@@ -52,6 +52,18 @@ abstract class Metadata_Builder {
     PROPERTY_ENUM("propertyEnum"),
     BUILDER_SERIALIZABLE("builderSerializable"),
     HAS_TO_BUILDER_METHOD("hasToBuilderMethod"),
+    USING_PRIMITIVE_LISTS("usingPrimitiveLists"),
+    HASH_CODE_CACHED("hashCodeCached"),
+    SNAPSHOTTING_DEFAULTS("snapshottingDefaults"),
+    HAS_BUILD_AND_RESET_METHOD("hasBuildAndResetMethod"),
+    USING_ENUM_MAPS("usingEnumMaps"),
+    USING_ENUM_SETS("usingEnumSets"),
+    HAS_COMPARE_TO_METHOD("hasCompareToMethod"),
+    COMPARATOR_ORDER("comparatorOrder"),
+    VALUE_INTERNED("valueInterned"),
+    VALUE_SERIALIZABLE("valueSerializable"),
+    HAS_DIFF_METHODS("hasDiffMethods"),
+    BUILD_MEMOIZED("buildMemoized"),
     VALUE_TYPE_VISIBILITY("valueTypeVisibility"),
     ;
 
@@ -89,6 +101,18 @@ abstract class Metadata_Builder {
           new LinkedHashMap<Metadata.StandardMethod, Metadata.UnderrideLevel>();
   private boolean builderSerializable;
   private boolean hasToBuilderMethod;
+  private boolean usingPrimitiveLists;
+  private boolean hashCodeCached;
+  private boolean snapshottingDefaults;
+  private boolean hasBuildAndResetMethod;
+  private boolean usingEnumMaps;
+  private boolean usingEnumSets;
+  private boolean hasCompareToMethod;
+  private ImmutableList<String> comparatorOrder;
+  private boolean valueInterned;
+  private boolean valueSerializable;
+  private boolean hasDiffMethods;
+  private boolean buildMemoized;
   private final ArrayList<Excerpt> generatedBuilderAnnotations = new ArrayList<Excerpt>();
   private final ArrayList<Excerpt> valueTypeAnnotations = new ArrayList<Excerpt>();
   private Metadata.Visibility valueTypeVisibility;
@@ -601,6 +625,283 @@ abstract class Metadata_Builder {
     return hasToBuilderMethod;
   }
 
+  /**
+   * Sets the value to be returned by {@link Metadata#isUsingPrimitiveLists()}.
+   *
+   * @return this {@code Builder} object
+   */
+  public Metadata.Builder setUsingPrimitiveLists(boolean usingPrimitiveLists) {
+    this.usingPrimitiveLists = usingPrimitiveLists;
+    _unsetProperties.remove(Metadata_Builder.Property.USING_PRIMITIVE_LISTS);
+    return (Metadata.Builder) this;
+  }
+
+  /**
+   * Returns the value that will be returned by {@link Metadata#isUsingPrimitiveLists()}.
+   *
+   * @throws IllegalStateException if the field has not been set
+   */
+  public boolean isUsingPrimitiveLists() {
+    Preconditions.checkState(
+        !_unsetProperties.contains(Metadata_Builder.Property.USING_PRIMITIVE_LISTS),
+        "usingPrimitiveLists not set");
+    return usingPrimitiveLists;
+  }
+
+  /**
+   * Sets the value to be returned by {@link Metadata#isHashCodeCached()}.
+   *
+   * @return this {@code Builder} object
+   */
+  public Metadata.Builder setHashCodeCached(boolean hashCodeCached) {
+    this.hashCodeCached = hashCodeCached;
+    _unsetProperties.remove(Metadata_Builder.Property.HASH_CODE_CACHED);
+    return (Metadata.Builder) this;
+  }
+
+  /**
+   * Returns the value that will be returned by {@link Metadata#isHashCodeCached()}.
+   *
+   * @throws IllegalStateException if the field has not been set
+   */
+  public boolean isHashCodeCached() {
+    Preconditions.checkState(
+        !_unsetProperties.contains(Metadata_Builder.Property.HASH_CODE_CACHED),
+        "hashCodeCached not set");
+    return hashCodeCached;
+  }
+
+  /**
+   * Sets the value to be returned by {@link Metadata#isSnapshottingDefaults()}.
+   *
+   * @return this {@code Builder} object
+   */
+  public Metadata.Builder setSnapshottingDefaults(boolean snapshottingDefaults) {
+    this.snapshottingDefaults = snapshottingDefaults;
+    _unsetProperties.remove(Metadata_Builder.Property.SNAPSHOTTING_DEFAULTS);
+    return (Metadata.Builder) this;
+  }
+
+  /**
+   * Returns the value that will be returned by {@link Metadata#isSnapshottingDefaults()}.
+   *
+   * @throws IllegalStateException if the field has not been set
+   */
+  public boolean isSnapshottingDefaults() {
+    Preconditions.checkState(
+        !_unsetProperties.contains(Metadata_Builder.Property.SNAPSHOTTING_DEFAULTS),
+        "snapshottingDefaults not set");
+    return snapshottingDefaults;
+  }
+
+  /**
+   * Sets the value to be returned by {@link Metadata#getHasBuildAndResetMethod()}.
+   *
+   * @return this {@code Builder} object
+   */
+  public Metadata.Builder setHasBuildAndResetMethod(boolean hasBuildAndResetMethod) {
+    this.hasBuildAndResetMethod = hasBuildAndResetMethod;
+    _unsetProperties.remove(Metadata_Builder.Property.HAS_BUILD_AND_RESET_METHOD);
+    return (Metadata.Builder) this;
+  }
+
+  /**
+   * Returns the value that will be returned by {@link Metadata#getHasBuildAndResetMethod()}.
+   *
+   * @throws IllegalStateException if the field has not been set
+   */
+  public boolean getHasBuildAndResetMethod() {
+    Preconditions.checkState(
+        !_unsetProperties.contains(Metadata_Builder.Property.HAS_BUILD_AND_RESET_METHOD),
+        "hasBuildAndResetMethod not set");
+    return hasBuildAndResetMethod;
+  }
+
+  /**
+   * Sets the value to be returned by {@link Metadata#isUsingEnumMaps()}.
+   *
+   * @return this {@code Builder} object
+   */
+  public Metadata.Builder setUsingEnumMaps(boolean usingEnumMaps) {
+    this.usingEnumMaps = usingEnumMaps;
+    _unsetProperties.remove(Metadata_Builder.Property.USING_ENUM_MAPS);
+    return (Metadata.Builder) this;
+  }
+
+  /**
+   * Returns the value that will be returned by {@link Metadata#isUsingEnumMaps()}.
+   *
+   * @throws IllegalStateException if the field has not been set
+   */
+  public boolean isUsingEnumMaps() {
+    Preconditions.checkState(
+        !_unsetProperties.contains(Metadata_Builder.Property.USING_ENUM_MAPS),
+        "usingEnumMaps not set");
+    return usingEnumMaps;
+  }
+
+  /**
+   * Sets the value to be returned by {@link Metadata#isUsingEnumSets()}.
+   *
+   * @return this {@code Builder} object
+   */
+  public Metadata.Builder setUsingEnumSets(boolean usingEnumSets) {
+    this.usingEnumSets = usingEnumSets;
+    _unsetProperties.remove(Metadata_Builder.Property.USING_ENUM_SETS);
+    return (Metadata.Builder) this;
+  }
+
+  /**
+   * Returns the value that will be returned by {@link Metadata#isUsingEnumSets()}.
+   *
+   * @throws IllegalStateException if the field has not been set
+   */
+  public boolean isUsingEnumSets() {
+    Preconditions.checkState(
+        !_unsetProperties.contains(Metadata_Builder.Property.USING_ENUM_SETS),
+        "usingEnumSets not set");
+    return usingEnumSets;
+  }
+
+  /**
+   * Sets the value to be returned by {@link Metadata#getHasCompareToMethod()}.
+   *
+   * @return this {@code Builder} object
+   */
+  public Metadata.Builder setHasCompareToMethod(boolean hasCompareToMethod) {
+    this.hasCompareToMethod = hasCompareToMethod;
+    _unsetProperties.remove(Metadata_Builder.Property.HAS_COMPARE_TO_METHOD);
+    return (Metadata.Builder) this;
+  }
+
+  /**
+   * Returns the value that will be returned by {@link Metadata#getHasCompareToMethod()}.
+   *
+   * @throws IllegalStateException if the field has not been set
+   */
+  public boolean getHasCompareToMethod() {
+    Preconditions.checkState(
+        !_unsetProperties.contains(Metadata_Builder.Property.HAS_COMPARE_TO_METHOD),
+        "hasCompareToMethod not set");
+    return hasCompareToMethod;
+  }
+
+  /**
+   * Sets the value to be returned by {@link Metadata#getComparatorOrder()}.
+   *
+   * @return this {@code Builder} object
+   * @throws NullPointerException if {@code comparatorOrder} is null
+   */
+  public Metadata.Builder setComparatorOrder(ImmutableList<String> comparatorOrder) {
+    this.comparatorOrder = Preconditions.checkNotNull(comparatorOrder);
+    _unsetProperties.remove(Metadata_Builder.Property.COMPARATOR_ORDER);
+    return (Metadata.Builder) this;
+  }
+
+  /**
+   * Returns the value that will be returned by {@link Metadata#getComparatorOrder()}.
+   *
+   * @throws IllegalStateException if the field has not been set
+   */
+  public ImmutableList<String> getComparatorOrder() {
+    Preconditions.checkState(
+        !_unsetProperties.contains(Metadata_Builder.Property.COMPARATOR_ORDER),
+        "comparatorOrder not set");
+    return comparatorOrder;
+  }
+
+  /**
+   * Sets the value to be returned by {@link Metadata#isValueInterned()}.
+   *
+   * @return this {@code Builder} object
+   */
+  public Metadata.Builder setValueInterned(boolean valueInterned) {
+    this.valueInterned = valueInterned;
+    _unsetProperties.remove(Metadata_Builder.Property.VALUE_INTERNED);
+    return (Metadata.Builder) this;
+  }
+
+  /**
+   * Returns the value that will be returned by {@link Metadata#isValueInterned()}.
+   *
+   * @throws IllegalStateException if the field has not been set
+   */
+  public boolean isValueInterned() {
+    Preconditions.checkState(
+        !_unsetProperties.contains(Metadata_Builder.Property.VALUE_INTERNED),
+        "valueInterned not set");
+    return valueInterned;
+  }
+
+  /**
+   * Sets the value to be returned by {@link Metadata#isValueSerializable()}.
+   *
+   * @return this {@code Builder} object
+   */
+  public Metadata.Builder setValueSerializable(boolean valueSerializable) {
+    this.valueSerializable = valueSerializable;
+    _unsetProperties.remove(Metadata_Builder.Property.VALUE_SERIALIZABLE);
+    return (Metadata.Builder) this;
+  }
+
+  /**
+   * Returns the value that will be returned by {@link Metadata#isValueSerializable()}.
+   *
+   * @throws IllegalStateException if the field has not been set
+   */
+  public boolean isValueSerializable() {
+    Preconditions.checkState(
+        !_unsetProperties.contains(Metadata_Builder.Property.VALUE_SERIALIZABLE),
+        "valueSerializable not set");
+    return valueSerializable;
+  }
+
+  /**
+   * Sets the value to be returned by {@link Metadata#getHasDiffMethods()}.
+   *
+   * @return this {@code Builder} object
+   */
+  public Metadata.Builder setHasDiffMethods(boolean hasDiffMethods) {
+    this.hasDiffMethods = hasDiffMethods;
+    _unsetProperties.remove(Metadata_Builder.Property.HAS_DIFF_METHODS);
+    return (Metadata.Builder) this;
+  }
+
+  /**
+   * Returns the value that will be returned by {@link Metadata#getHasDiffMethods()}.
+   *
+   * @throws IllegalStateException if the field has not been set
+   */
+  public boolean getHasDiffMethods() {
+    Preconditions.checkState(
+        !_unsetProperties.contains(Metadata_Builder.Property.HAS_DIFF_METHODS),
+        "hasDiffMethods not set");
+    return hasDiffMethods;
+  }
+
+  /**
+   * Sets the value to be returned by {@link Metadata#isBuildMemoized()}.
+   *
+   * @return this {@code Builder} object
+   */
+  public Metadata.Builder setBuildMemoized(boolean buildMemoized) {
+    this.buildMemoized = buildMemoized;
+    _unsetProperties.remove(Metadata_Builder.Property.BUILD_MEMOIZED);
+    return (Metadata.Builder) this;
+  }
+
+  /**
+   * Returns the value that will be returned by {@link Metadata#isBuildMemoized()}.
+   *
+   * @throws IllegalStateException if the field has not been set
+   */
+  public boolean isBuildMemoized() {
+    Preconditions.checkState(
+        !_unsetProperties.contains(Metadata_Builder.Property.BUILD_MEMOIZED),
+        "buildMemoized not set");
+    return buildMemoized;
+  }
+
   /**
    * Adds {@code element} to the list to be returned from {@link Metadata#getGeneratedBuilderAnnotations()}.
    *
@@ -867,6 +1168,54 @@ abstract class Metadata_Builder {
         || value.getHasToBuilderMethod() != _defaults.getHasToBuilderMethod()) {
       setHasToBuilderMethod(value.getHasToBuilderMethod());
     }
+    if (_defaults._unsetProperties.contains(Metadata_Builder.Property.USING_PRIMITIVE_LISTS)
+        || value.isUsingPrimitiveLists() != _defaults.isUsingPrimitiveLists()) {
+      setUsingPrimitiveLists(value.isUsingPrimitiveLists());
+    }
+    if (_defaults._unsetProperties.contains(Metadata_Builder.Property.HASH_CODE_CACHED)
+        || value.isHashCodeCached() != _defaults.isHashCodeCached()) {
+      setHashCodeCached(value.isHashCodeCached());
+    }
+    if (_defaults._unsetProperties.contains(Metadata_Builder.Property.SNAPSHOTTING_DEFAULTS)
+        || value.isSnapshottingDefaults() != _defaults.isSnapshottingDefaults()) {
+      setSnapshottingDefaults(value.isSnapshottingDefaults());
+    }
+    if (_defaults._unsetProperties.contains(Metadata_Builder.Property.HAS_BUILD_AND_RESET_METHOD)
+        || value.getHasBuildAndResetMethod() != _defaults.getHasBuildAndResetMethod()) {
+      setHasBuildAndResetMethod(value.getHasBuildAndResetMethod());
+    }
+    if (_defaults._unsetProperties.contains(Metadata_Builder.Property.USING_ENUM_MAPS)
+        || value.isUsingEnumMaps() != _defaults.isUsingEnumMaps()) {
+      setUsingEnumMaps(value.isUsingEnumMaps());
+    }
+    if (_defaults._unsetProperties.contains(Metadata_Builder.Property.USING_ENUM_SETS)
+        || value.isUsingEnumSets() != _defaults.isUsingEnumSets()) {
+      setUsingEnumSets(value.isUsingEnumSets());
+    }
+    if (_defaults._unsetProperties.contains(Metadata_Builder.Property.HAS_COMPARE_TO_METHOD)
+        || value.getHasCompareToMethod() != _defaults.getHasCompareToMethod()) {
+      setHasCompareToMethod(value.getHasCompareToMethod());
+    }
+    if (_defaults._unsetProperties.contains(Metadata_Builder.Property.COMPARATOR_ORDER)
+        || !value.getComparatorOrder().equals(_defaults.getComparatorOrder())) {
+      setComparatorOrder(value.getComparatorOrder());
+    }
+    if (_defaults._unsetProperties.contains(Metadata_Builder.Property.VALUE_INTERNED)
+        || value.isValueInterned() != _defaults.isValueInterned()) {
+      setValueInterned(value.isValueInterned());
+    }
+    if (_defaults._unsetProperties.contains(Metadata_Builder.Property.VALUE_SERIALIZABLE)
+        || value.isValueSerializable() != _defaults.isValueSerializable()) {
+      setValueSerializable(value.isValueSerializable());
+    }
+    if (_defaults._unsetProperties.contains(Metadata_Builder.Property.HAS_DIFF_METHODS)
+        || value.getHasDiffMethods() != _defaults.getHasDiffMethods()) {
+      setHasDiffMethods(value.getHasDiffMethods());
+    }
+    if (_defaults._unsetProperties.contains(Metadata_Builder.Property.BUILD_MEMOIZED)
+        || value.isBuildMemoized() != _defaults.isBuildMemoized()) {
+      setBuildMemoized(value.isBuildMemoized());
+    }
     addAllGeneratedBuilderAnnotations(value.getGeneratedBuilderAnnotations());
     addAllValueTypeAnnotations(value.getValueTypeAnnotations());
     if (_defaults._unsetProperties.contains(Metadata_Builder.Property.VALUE_TYPE_VISIBILITY)
@@ -934,6 +1283,66 @@ abstract class Metadata_Builder {
             || template.getHasToBuilderMethod() != _defaults.getHasToBuilderMethod())) {
       setHasToBuilderMethod(template.getHasToBuilderMethod());
     }
+    if (!base._unsetProperties.contains(Metadata_Builder.Property.USING_PRIMITIVE_LISTS)
+        && (_defaults._unsetProperties.contains(Metadata_Builder.Property.USING_PRIMITIVE_LISTS)
+            || template.isUsingPrimitiveLists() != _defaults.isUsingPrimitiveLists())) {
+      setUsingPrimitiveLists(template.isUsingPrimitiveLists());
+    }
+    if (!base._unsetProperties.contains(Metadata_Builder.Property.HASH_CODE_CACHED)
+        && (_defaults._unsetProperties.contains(Metadata_Builder.Property.HASH_CODE_CACHED)
+            || template.isHashCodeCached() != _defaults.isHashCodeCached())) {
+      setHashCodeCached(template.isHashCodeCached());
+    }
+    if (!base._unsetProperties.contains(Metadata_Builder.Property.SNAPSHOTTING_DEFAULTS)
+        && (_defaults._unsetProperties.contains(Metadata_Builder.Property.SNAPSHOTTING_DEFAULTS)
+            || template.isSnapshottingDefaults() != _defaults.isSnapshottingDefaults())) {
+      setSnapshottingDefaults(template.isSnapshottingDefaults());
+    }
+    if (!base._unsetProperties.contains(Metadata_Builder.Property.HAS_BUILD_AND_RESET_METHOD)
+        && (_defaults._unsetProperties.contains(Metadata_Builder.Property.HAS_BUILD_AND_RESET_METHOD)
+            || template.getHasBuildAndResetMethod() != _defaults.getHasBuildAndResetMethod())) {
+      setHasBuildAndResetMethod(template.getHasBuildAndResetMethod());
+    }
+    if (!base._unsetProperties.contains(Metadata_Builder.Property.USING_ENUM_MAPS)
+        && (_defaults._unsetProperties.contains(Metadata_Builder.Property.USING_ENUM_MAPS)
+            || template.isUsingEnumMaps() != _defaults.isUsingEnumMaps())) {
+      setUsingEnumMaps(template.isUsingEnumMaps());
+    }
+    if (!base._unsetProperties.contains(Metadata_Builder.Property.USING_ENUM_SETS)
+        && (_defaults._unsetProperties.contains(Metadata_Builder.Property.USING_ENUM_SETS)
+            || template.isUsingEnumSets() != _defaults.isUsingEnumSets())) {
+      setUsingEnumSets(template.isUsingEnumSets());
+    }
+    if (!base._unsetProperties.contains(Metadata_Builder.Property.HAS_COMPARE_TO_METHOD)
+        && (_defaults._unsetProperties.contains(Metadata_Builder.Property.HAS_COMPARE_TO_METHOD)
+            || template.getHasCompareToMethod() != _defaults.getHasCompareToMethod())) {
+      setHasCompareToMethod(template.getHasCompareToMethod());
+    }
+    if (!base._unsetProperties.contains(Metadata_Builder.Property.COMPARATOR_ORDER)
+        && (_defaults._unsetProperties.contains(Metadata_Builder.Property.COMPARATOR_ORDER)
+            || !template.getComparatorOrder().equals(_defaults.getComparatorOrder()))) {
+      setComparatorOrder(template.getComparatorOrder());
+    }
+    if (!base._unsetProperties.contains(Metadata_Builder.Property.VALUE_INTERNED)
+        && (_defaults._unsetProperties.contains(Metadata_Builder.Property.VALUE_INTERNED)
+            || template.isValueInterned() != _defaults.isValueInterned())) {
+      setValueInterned(template.isValueInterned());
+    }
+    if (!base._unsetProperties.contains(Metadata_Builder.Property.VALUE_SERIALIZABLE)
+        && (_defaults._unsetProperties.contains(Metadata_Builder.Property.VALUE_SERIALIZABLE)
+            || template.isValueSerializable() != _defaults.isValueSerializable())) {
+      setValueSerializable(template.isValueSerializable());
+    }
+    if (!base._unsetProperties.contains(Metadata_Builder.Property.HAS_DIFF_METHODS)
+        && (_defaults._unsetProperties.contains(Metadata_Builder.Property.HAS_DIFF_METHODS)
+            || template.getHasDiffMethods() != _defaults.getHasDiffMethods())) {
+      setHasDiffMethods(template.getHasDiffMethods());
+    }
+    if (!base._unsetProperties.contains(Metadata_Builder.Property.BUILD_MEMOIZED)
+        && (_defaults._unsetProperties.contains(Metadata_Builder.Property.BUILD_MEMOIZED)
+            || template.isBuildMemoized() != _defaults.isBuildMemoized())) {
+      setBuildMemoized(template.isBuildMemoized());
+    }
     addAllGeneratedBuilderAnnotations(((Metadata_Builder) template).generatedBuilderAnnotations);
     addAllValueTypeAnnotations(((Metadata_Builder) template).valueTypeAnnotations);
     if (!base._unsetProperties.contains(Metadata_Builder.Property.VALUE_TYPE_VISIBILITY)
@@ -963,6 +1372,18 @@ abstract class Metadata_Builder {
     standardMethodUnderrides.clear();
     builderSerializable = _defaults.builderSerializable;
     hasToBuilderMethod = _defaults.hasToBuilderMethod;
+    usingPrimitiveLists = _defaults.usingPrimitiveLists;
+    hashCodeCached = _defaults.hashCodeCached;
+    snapshottingDefaults = _defaults.snapshottingDefaults;
+    hasBuildAndResetMethod = _defaults.hasBuildAndResetMethod;
+    usingEnumMaps = _defaults.usingEnumMaps;
+    usingEnumSets = _defaults.usingEnumSets;
+    hasCompareToMethod = _defaults.hasCompareToMethod;
+    comparatorOrder = _defaults.comparatorOrder;
+    valueInterned = _defaults.valueInterned;
+    valueSerializable = _defaults.valueSerializable;
+    hasDiffMethods = _defaults.hasDiffMethods;
+    buildMemoized = _defaults.buildMemoized;
     generatedBuilderAnnotations.clear();
     valueTypeAnnotations.clear();
     valueTypeVisibility = _defaults.valueTypeVisibility;
@@ -1017,6 +1438,18 @@ abstract class Metadata_Builder {
         standardMethodUnderrides;
     private final boolean builderSerializable;
     private final boolean hasToBuilderMethod;
+    private final boolean usingPrimitiveLists;
+    private final boolean hashCodeCached;
+    private final boolean snapshottingDefaults;
+    private final boolean hasBuildAndResetMethod;
+    private final boolean usingEnumMaps;
+    private final boolean usingEnumSets;
+    private final boolean hasCompareToMethod;
+    private final ImmutableList<String> comparatorOrder;
+    private final boolean valueInterned;
+    private final boolean valueSerializable;
+    private final boolean hasDiffMethods;
+    private final boolean buildMemoized;
     private final ImmutableList<Excerpt> generatedBuilderAnnotations;
     private final ImmutableList<Excerpt> valueTypeAnnotations;
     private final Metadata.Visibility valueTypeVisibility;
@@ -1036,6 +1469,18 @@ abstract class Metadata_Builder {
       this.standardMethodUnderrides = ImmutableMap.copyOf(builder.standardMethodUnderrides);
       this.builderSerializable = builder.builderSerializable;
       this.hasToBuilderMethod = builder.hasToBuilderMethod;
+      this.usingPrimitiveLists = builder.usingPrimitiveLists;
+      this.hashCodeCached = builder.hashCodeCached;
+      this.snapshottingDefaults = builder.snapshottingDefaults;
+      this.hasBuildAndResetMethod = builder.hasBuildAndResetMethod;
+      this.usingEnumMaps = builder.usingEnumMaps;
+      this.usingEnumSets = builder.usingEnumSets;
+      this.hasCompareToMethod = builder.hasCompareToMethod;
+      this.comparatorOrder = builder.comparatorOrder;
+      this.valueInterned = builder.valueInterned;
+      this.valueSerializable = builder.valueSerializable;
+      this.hasDiffMethods = builder.hasDiffMethods;
+      this.buildMemoized = builder.buildMemoized;
       this.generatedBuilderAnnotations = ImmutableList.copyOf(builder.generatedBuilderAnnotations);
       this.valueTypeAnnotations = ImmutableList.copyOf(builder.valueTypeAnnotations);
       this.valueTypeVisibility = builder.valueTypeVisibility;
@@ -1108,6 +1553,66 @@ abstract class Metadata_Builder {
       return hasToBuilderMethod;
     }
 
+    @Override
+    public boolean isUsingPrimitiveLists() {
+      return usingPrimitiveLists;
+    }
+
+    @Override
+    public boolean isHashCodeCached() {
+      return hashCodeCached;
+    }
+
+    @Override
+    public boolean isSnapshottingDefaults() {
+      return snapshottingDefaults;
+    }
+
+    @Override
+    public boolean getHasBuildAndResetMethod() {
+      return hasBuildAndResetMethod;
+    }
+
+    @Override
+    public boolean isUsingEnumMaps() {
+      return usingEnumMaps;
+    }
+
+    @Override
+    public boolean isUsingEnumSets() {
+      return usingEnumSets;
+    }
+
+    @Override
+    public boolean getHasCompareToMethod() {
+      return hasCompareToMethod;
+    }
+
+    @Override
+    public ImmutableList<String> getComparatorOrder() {
+      return comparatorOrder;
+    }
+
+    @Override
+    public boolean isValueInterned() {
+      return valueInterned;
+    }
+
+    @Override
+    public boolean isValueSerializable() {
+      return valueSerializable;
+    }
+
+    @Override
+    public boolean getHasDiffMethods() {
+      return hasDiffMethods;
+    }
+
+    @Override
+    public boolean isBuildMemoized() {
+      return buildMemoized;
+    }
+
     @Override
     public ImmutableList<Excerpt> getGeneratedBuilderAnnotations() {
       return generatedBuilderAnnotations;
@@ -1175,6 +1680,42 @@ abstract class Metadata_Builder {
       if (hasToBuilderMethod != other.hasToBuilderMethod) {
         return false;
       }
+      if (usingPrimitiveLists != other.usingPrimitiveLists) {
+        return false;
+      }
+      if (hashCodeCached != other.hashCodeCached) {
+        return false;
+      }
+      if (snapshottingDefaults != other.snapshottingDefaults) {
+        return false;
+      }
+      if (hasBuildAndResetMethod != other.hasBuildAndResetMethod) {
+        return false;
+      }
+      if (usingEnumMaps != other.usingEnumMaps) {
+        return false;
+      }
+      if (usingEnumSets != other.usingEnumSets) {
+        return false;
+      }
+      if (hasCompareToMethod != other.hasCompareToMethod) {
+        return false;
+      }
+      if (!comparatorOrder.equals(other.comparatorOrder)) {
+        return false;
+      }
+      if (valueInterned != other.valueInterned) {
+        return false;
+      }
+      if (valueSerializable != other.valueSerializable) {
+        return false;
+      }
+      if (hasDiffMethods != other.hasDiffMethods) {
+        return false;
+      }
+      if (buildMemoized != other.buildMemoized) {
+        return false;
+      }
       if (!generatedBuilderAnnotations.equals(other.generatedBuilderAnnotations)) {
         return false;
       }
@@ -1207,6 +1748,18 @@ abstract class Metadata_Builder {
             standardMethodUnderrides,
             builderSerializable,
             hasToBuilderMethod,
+            usingPrimitiveLists,
+            hashCodeCached,
+            snapshottingDefaults,
+            hasBuildAndResetMethod,
+            usingEnumMaps,
+            usingEnumSets,
+            hasCompareToMethod,
+            comparatorOrder,
+            valueInterned,
+            valueSerializable,
+            hasDiffMethods,
+            buildMemoized,
             generatedBuilderAnnotations,
             valueTypeAnnotations,
             valueTypeVisibility,
@@ -1231,6 +1784,18 @@ abstract class Metadata_Builder {
               "standardMethodUnderrides=" + standardMethodUnderrides,
               "builderSerializable=" + builderSerializable,
               "hasToBuilderMethod=" + hasToBuilderMethod,
+              "usingPrimitiveLists=" + usingPrimitiveLists,
+              "hashCodeCached=" + hashCodeCached,
+              "snapshottingDefaults=" + snapshottingDefaults,
+              "hasBuildAndResetMethod=" + hasBuildAndResetMethod,
+              "usingEnumMaps=" + usingEnumMaps,
+              "usingEnumSets=" + usingEnumSets,
+              "hasCompareToMethod=" + hasCompareToMethod,
+              "comparatorOrder=" + comparatorOrder,
+              "valueInterned=" + valueInterned,
+              "valueSerializable=" + valueSerializable,
+              "hasDiffMethods=" + hasDiffMethods,
+              "buildMemoized=" + buildMemoized,
               "generatedBuilderAnnotations=" + generatedBuilderAnnotations,
               "valueTypeAnnotations=" + valueTypeAnnotations,
               "valueTypeVisibility=" + valueTypeVisibility,
@@ -1260,6 +1825,18 @@ abstract class Metadata_Builder {
         standardMethodUnderrides;
     private final boolean builderSerializable;
     private final boolean hasToBuilderMethod;
+    private final boolean usingPrimitiveLists;
+    private final boolean hashCodeCached;
+    private final boolean snapshottingDefaults;
+    private final boolean hasBuildAndResetMethod;
+    private final boolean usingEnumMaps;
+    private final boolean usingEnumSets;
+    private final boolean hasCompareToMethod;
+    private final ImmutableList<String> comparatorOrder;
+    private final boolean valueInterned;
+    private final boolean valueSerializable;
+    private final boolean hasDiffMethods;
+    private final boolean buildMemoized;
     private final ImmutableList<Excerpt> generatedBuilderAnnotations;
     private final ImmutableList<Excerpt> valueTypeAnnotations;
     private final Metadata.Visibility valueTypeVisibility;
@@ -1280,6 +1857,18 @@ abstract class Metadata_Builder {
       this.standardMethodUnderrides = ImmutableMap.copyOf(builder.standardMethodUnderrides);
       this.builderSerializable = builder.builderSerializable;
       this.hasToBuilderMethod = builder.hasToBuilderMethod;
+      this.usingPrimitiveLists = builder.usingPrimitiveLists;
+      this.hashCodeCached = builder.hashCodeCached;
+      this.snapshottingDefaults = builder.snapshottingDefaults;
+      this.hasBuildAndResetMethod = builder.hasBuildAndResetMethod;
+      this.usingEnumMaps = builder.usingEnumMaps;
+      this.usingEnumSets = builder.usingEnumSets;
+      this.hasCompareToMethod = builder.hasCompareToMethod;
+      this.comparatorOrder = builder.comparatorOrder;
+      this.valueInterned = builder.valueInterned;
+      this.valueSerializable = builder.valueSerializable;
+      this.hasDiffMethods = builder.hasDiffMethods;
+      this.buildMemoized = builder.buildMemoized;
       this.generatedBuilderAnnotations = ImmutableList.copyOf(builder.generatedBuilderAnnotations);
       this.valueTypeAnnotations = ImmutableList.copyOf(builder.valueTypeAnnotations);
       this.valueTypeVisibility = builder.valueTypeVisibility;
@@ -1377,6 +1966,102 @@ abstract class Metadata_Builder {
       return hasToBuilderMethod;
     }
 
+    @Override
+    public boolean isUsingPrimitiveLists() {
+      if (_unsetProperties.contains(Metadata_Builder.Property.USING_PRIMITIVE_LISTS)) {
+        throw new UnsupportedOperationException("usingPrimitiveLists not set");
+      }
+      return usingPrimitiveLists;
+    }
+
+    @Override
+    public boolean isHashCodeCached() {
+      if (_unsetProperties.contains(Metadata_Builder.Property.HASH_CODE_CACHED)) {
+        throw new UnsupportedOperationException("hashCodeCached not set");
+      }
+      return hashCodeCached;
+    }
+
+    @Override
+    public boolean isSnapshottingDefaults() {
+      if (_unsetProperties.contains(Metadata_Builder.Property.SNAPSHOTTING_DEFAULTS)) {
+        throw new UnsupportedOperationException("snapshottingDefaults not set");
+      }
+      return snapshottingDefaults;
+    }
+
+    @Override
+    public boolean getHasBuildAndResetMethod() {
+      if (_unsetProperties.contains(Metadata_Builder.Property.HAS_BUILD_AND_RESET_METHOD)) {
+        throw new UnsupportedOperationException("hasBuildAndResetMethod not set");
+      }
+      return hasBuildAndResetMethod;
+    }
+
+    @Override
+    public boolean isUsingEnumMaps() {
+      if (_unsetProperties.contains(Metadata_Builder.Property.USING_ENUM_MAPS)) {
+        throw new UnsupportedOperationException("usingEnumMaps not set");
+      }
+      return usingEnumMaps;
+    }
+
+    @Override
+    public boolean isUsingEnumSets() {
+      if (_unsetProperties.contains(Metadata_Builder.Property.USING_ENUM_SETS)) {
+        throw new UnsupportedOperationException("usingEnumSets not set");
+      }
+      return usingEnumSets;
+    }
+
+    @Override
+    public boolean getHasCompareToMethod() {
+      if (_unsetProperties.contains(Metadata_Builder.Property.HAS_COMPARE_TO_METHOD)) {
+        throw new UnsupportedOperationException("hasCompareToMethod not set");
+      }
+      return hasCompareToMethod;
+    }
+
+    @Override
+    public ImmutableList<String> getComparatorOrder() {
+      if (_unsetProperties.contains(Metadata_Builder.Property.COMPARATOR_ORDER)) {
+        throw new UnsupportedOperationException("comparatorOrder not set");
+      }
+      return comparatorOrder;
+    }
+
+    @Override
+    public boolean isValueInterned() {
+      if (_unsetProperties.contains(Metadata_Builder.Property.VALUE_INTERNED)) {
+        throw new UnsupportedOperationException("valueInterned not set");
+      }
+      return valueInterned;
+    }
+
+    @Override
+    public boolean isValueSerializable() {
+      if (_unsetProperties.contains(Metadata_Builder.Property.VALUE_SERIALIZABLE)) {
+        throw new UnsupportedOperationException("valueSerializable not set");
+      }
+      return valueSerializable;
+    }
+
+    @Override
+    public boolean getHasDiffMethods() {
+      if (_unsetProperties.contains(Metadata_Builder.Property.HAS_DIFF_METHODS)) {
+        throw new UnsupportedOperationException("hasDiffMethods not set");
+      }
+      return hasDiffMethods;
+    }
+
+    @Override
+    public boolean isBuildMemoized() {
+      if (_unsetProperties.contains(Metadata_Builder.Property.BUILD_MEMOIZED)) {
+        throw new UnsupportedOperationException("buildMemoized not set");
+      }
+      return buildMemoized;
+    }
+
     @Override
     public ImmutableList<Excerpt> getGeneratedBuilderAnnotations() {
       return generatedBuilderAnnotations;
@@ -1451,6 +2136,43 @@ abstract class Metadata_Builder {
       if (hasToBuilderMethod != other.hasToBuilderMethod) {
         return false;
       }
+      if (usingPrimitiveLists != other.usingPrimitiveLists) {
+        return false;
+      }
+      if (hashCodeCached != other.hashCodeCached) {
+        return false;
+      }
+      if (snapshottingDefaults != other.snapshottingDefaults) {
+        return false;
+      }
+      if (hasBuildAndResetMethod != other.hasBuildAndResetMethod) {
+        return false;
+      }
+      if (usingEnumMaps != other.usingEnumMaps) {
+        return false;
+      }
+      if (usingEnumSets != other.usingEnumSets) {
+        return false;
+      }
+      if (hasCompareToMethod != other.hasCompareToMethod) {
+        return false;
+      }
+      if (comparatorOrder != other.comparatorOrder
+          && (comparatorOrder == null || !comparatorOrder.equals(other.comparatorOrder))) {
+        return false;
+      }
+      if (valueInterned != other.valueInterned) {
+        return false;
+      }
+      if (valueSerializable != other.valueSerializable) {
+        return false;
+      }
+      if (hasDiffMethods != other.hasDiffMethods) {
+        return false;
+      }
+      if (buildMemoized != other.buildMemoized) {
+        return false;
+      }
       if (!generatedBuilderAnnotations.equals(other.generatedBuilderAnnotations)) {
         return false;
       }
@@ -1485,6 +2207,18 @@ abstract class Metadata_Builder {
             standardMethodUnderrides,
             builderSerializable,
             hasToBuilderMethod,
+            usingPrimitiveLists,
+            hashCodeCached,
+            snapshottingDefaults,
+            hasBuildAndResetMethod,
+            usingEnumMaps,
+            usingEnumSets,
+            hasCompareToMethod,
+            comparatorOrder,
+            valueInterned,
+            valueSerializable,
+            hasDiffMethods,
+            buildMemoized,
             generatedBuilderAnnotations,
             valueTypeAnnotations,
             valueTypeVisibility,
@@ -1524,6 +2258,42 @@ abstract class Metadata_Builder {
               (!_unsetProperties.contains(Metadata_Builder.Property.HAS_TO_BUILDER_METHOD)
                   ? "hasToBuilderMethod=" + hasToBuilderMethod
                   : null),
+              (!_unsetProperties.contains(Metadata_Builder.Property.USING_PRIMITIVE_LISTS)
+                  ? "usingPrimitiveLists=" + usingPrimitiveLists
+                  : null),
+              (!_unsetProperties.contains(Metadata_Builder.Property.HASH_CODE_CACHED)
+                  ? "hashCodeCached=" + hashCodeCached
+                  : null),
+              (!_unsetProperties.contains(Metadata_Builder.Property.SNAPSHOTTING_DEFAULTS)
+                  ? "snapshottingDefaults=" + snapshottingDefaults
+                  : null),
+              (!_unsetProperties.contains(Metadata_Builder.Property.HAS_BUILD_AND_RESET_METHOD)
+                  ? "hasBuildAndResetMethod=" + hasBuildAndResetMethod
+                  : null),
+              (!_unsetProperties.contains(Metadata_Builder.Property.USING_ENUM_MAPS)
+                  ? "usingEnumMaps=" + usingEnumMaps
+                  : null),
+              (!_unsetProperties.contains(Metadata_Builder.Property.USING_ENUM_SETS)
+                  ? "usingEnumSets=" + usingEnumSets
+                  : null),
+              (!_unsetProperties.contains(Metadata_Builder.Property.HAS_COMPARE_TO_METHOD)
+                  ? "hasCompareToMethod=" + hasCompareToMethod
+                  : null),
+              (!_unsetProperties.contains(Metadata_Builder.Property.COMPARATOR_ORDER)
+                  ? "comparatorOrder=" + comparatorOrder
+                  : null),
+              (!_unsetProperties.contains(Metadata_Builder.Property.VALUE_INTERNED)
+                  ? "valueInterned=" + valueInterned
+                  : null),
+              (!_unsetProperties.contains(Metadata_Builder.Property.VALUE_SERIALIZABLE)
+                  ? "valueSerializable=" + valueSerializable
+                  : null),
+              (!_unsetProperties.contains(Metadata_Builder.Property.HAS_DIFF_METHODS)
+                  ? "hasDiffMethods=" + hasDiffMethods
+                  : null),
+              (!_unsetProperties.contains(Metadata_Builder.Property.BUILD_MEMOIZED)
+                  ? "buildMemoized=" + buildMemoized
+                  : null),
               "generatedBuilderAnnotations=" + generatedBuilderAnnotations,
               "valueTypeAnnotations=" + valueTypeAnnotations,
               (!_unsetProperties.contains(Metadata_Builder.Property.VALUE_TYPE_VISIBILITY)
@@ -19,6 +19,7 @@ import static org.inferred.freebuilder.processor.BuilderMethods.addAllMethod;
 import static org.inferred.freebuilder.processor.BuilderMethods.addCopiesMethod;
 import static org.inferred.freebuilder.processor.BuilderMethods.addMethod;
 import static org.inferred.freebuilder.processor.BuilderMethods.clearMethod;
+import static org.inferred.freebuilder.processor.BuilderMethods.ensureCapacityMethod;
 import static org.inferred.freebuilder.processor.BuilderMethods.getter;
 import static org.inferred.freebuilder.processor.BuilderMethods.mutator;
 import static org.inferred.freebuilder.processor.BuilderMethods.setCountMethod;
@@ -41,7 +42,9 @@ import com.google.common.collect.Multisets;
 import org.inferred.freebuilder.processor.Metadata.Property;
 import org.inferred.freebuilder.processor.PropertyCodeGenerator.Config;
 import org.inferred.freebuilder.processor.excerpt.CheckedMultiset;
+import org.inferred.freebuilder.processor.excerpt.ObjectCountMap;
 import org.inferred.freebuilder.processor.util.Block;
+import org.inferred.freebuilder.processor.util.Excerpt;
 import org.inferred.freebuilder.processor.util.ParameterizedType;
 import org.inferred.freebuilder.processor.util.QualifiedName;
 import org.inferred.freebuilder.processor.util.SourceBuilder;
@@ -111,8 +114,15 @@ public class MultisetPropertyFactory implements PropertyCodeGenerator.Factory {
 
     @Override
     public void addBuilderFieldDeclaration(SourceBuilder code) {
-      code.addLine("private final %1$s<%2$s> %3$s = %1$s.create();",
-          LinkedHashMultiset.class, elementType, property.getName());
+      code.addLine("private %s<%s> %s = %s.of();",
+              Multiset.class, elementType, property.getName(), ImmutableMultiset.class)
+          .addLine("// Holds the multiset's contents unless null, in which case %s does",
+              property.getName())
+          .addLine("private %s<%s> %s = null;", ObjectCountMap.NAME, elementType, countsField());
+    }
+
+    private String countsField() {
+      return "_" + property.getName() + "Counts";
     }
 
     @Override
@@ -123,6 +133,7 @@ public class MultisetPropertyFactory implements PropertyCodeGenerator.Factory {
       addAddCopiesTo(code, metadata);
       addMutate(code, metadata);
       addClear(code, metadata);
+      addEnsureCapacity(code, metadata);
       addSetCountOf(code, metadata);
       addGetter(code, metadata);
     }
@@ -142,6 +153,7 @@ public class MultisetPropertyFactory implements PropertyCodeGenerator.Factory {
               metadata.getBuilder(),
               addMethod(property),
               unboxedType.or(elementType))
+          .add(MemoizedBuild.invalidate(metadata))
           .addLine("  %s(element, 1);", addCopiesMethod(property))
           .addLine("  return (%s) this;", metadata.getBuilder())
           .addLine("}");
@@ -163,6 +175,7 @@ public class MultisetPropertyFactory implements PropertyCodeGenerator.Factory {
               metadata.getBuilder(),
               addMethod(property),
               unboxedType.or(elementType))
+          .add(MemoizedBuild.invalidate(metadata))
           .addLine("  for (%s element : elements) {", unboxedType.or(elementType))
           .addLine("    %s(element, 1);", addCopiesMethod(property))
           .addLine("  }")
@@ -188,6 +201,7 @@ public class MultisetPropertyFactory implements PropertyCodeGenerator.Factory {
               addAllMethod(property),
               spliterator,
               elementType)
+          .add(MemoizedBuild.invalidate(metadata))
           .addLine("  elements.forEachRemaining(element -> {")
           .addLine("    %s(element, 1);", addCopiesMethod(property))
           .addLine("  });")
@@ -203,6 +217,7 @@ public class MultisetPropertyFactory implements PropertyCodeGenerator.Factory {
               addAllMethod(property),
               baseStream,
               elementType)
+          .add(MemoizedBuild.invalidate(metadata))
           .addLine("  return %s(elements.spliterator());", addAllMethod(property))
           .addLine("}");
     }
@@ -215,6 +230,7 @@ public class MultisetPropertyFactory implements PropertyCodeGenerator.Factory {
               addAllMethod(property),
               Iterable.class,
               elementType)
+          .add(MemoizedBuild.invalidate(metadata))
           .addLine("  return %s(elements.spliterator());", addAllMethod(property))
           .addLine("}");
     }
@@ -227,6 +243,7 @@ public class MultisetPropertyFactory implements PropertyCodeGenerator.Factory {
               addAllMethod(property),
               Iterable.class,
               elementType)
+          .add(MemoizedBuild.invalidate(metadata))
           .addLine("  for (%s element : elements) {", unboxedType.or(elementType))
           .addLine("    %s(element, 1);", addCopiesMethod(property))
           .addLine("  }")
@@ -263,9 +280,10 @@ public class MultisetPropertyFactory implements PropertyCodeGenerator.Factory {
               metadata.getBuilder(),
               addCopiesMethod(property),
               unboxedType.or(elementType))
-          .addLine("  %s(element, this.%s.count(element) + occurrences);",
-              setCountMethod(property),
-              property.getName())
+          .add(MemoizedBuild.invalidate(metadata))
+          .addLine("  int count = (%1$s != null) ? %1$s.count(element) : %2$s.count(element);",
+              countsField(), property.getName())
+          .addLine("  %s(element, count + occurrences);", setCountMethod(property))
           .addLine("  return (%s) this;", metadata.getBuilder())
           .addLine("}");
     }
@@ -293,7 +311,9 @@ public class MultisetPropertyFactory implements PropertyCodeGenerator.Factory {
               mutator(property),
               consumer.getQualifiedName(),
               Multiset.class,
-              elementType);
+              elementType)
+          .add(MemoizedBuild.invalidate(metadata));
+      addConvertToMutableMultiset(code);
       if (overridesSetCountMethod) {
         code.addLine("  mutator.accept(new CheckedMultiset<>(%s, this::%s));",
             property.getName(), setCountMethod(property));
@@ -315,7 +335,13 @@ public class MultisetPropertyFactory implements PropertyCodeGenerator.Factory {
           .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
           .addLine(" */")
           .addLine("public %s %s() {", metadata.getBuilder(), clearMethod(property))
-          .addLine("  this.%s.clear();", property.getName())
+          .add(MemoizedBuild.invalidate(metadata))
+          .addLine("  %s = null;", countsField())
+          .addLine("  if (%s instanceof %s) {", property.getName(), ImmutableMultiset.class)
+          .addLine("    %s = %s.of();", property.getName(), ImmutableMultiset.class)
+          .addLine("  } else {")
+          .addLine("    %s.clear();", property.getName())
+          .addLine("  }")
           .addLine("  return (%s) this;", metadata.getBuilder())
           .addLine("}");
     }
@@ -337,11 +363,37 @@ public class MultisetPropertyFactory implements PropertyCodeGenerator.Factory {
           .addLine("public %s %s(%s element, int occurrences) {",
               metadata.getBuilder(),
               setCountMethod(property),
-              unboxedType.or(elementType));
+              unboxedType.or(elementType))
+          .add(MemoizedBuild.invalidate(metadata));
       if (!unboxedType.isPresent()) {
         code.addLine("  %s.checkNotNull(element);", Preconditions.class, property.getName());
       }
-      code.addLine("  this.%s.setCount(element, occurrences);", property.getName())
+      addConvertToCounts(code);
+      code.addLine("  if (%s != null) {", countsField())
+          .addLine("    %s.setCount(element, occurrences);", countsField())
+          .addLine("  } else {")
+          .addLine("    %s.setCount(element, occurrences);", property.getName())
+          .addLine("  }")
+          .addLine("  return (%s) this;", metadata.getBuilder())
+          .addLine("}");
+    }
+
+    private void addEnsureCapacity(SourceBuilder code, Metadata metadata) {
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Hints that the multiset to be returned from %s will hold at least",
+              metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+          .addLine(" * {@code minCapacity} distinct elements, so storage can be allocated for")
+          .addLine(" * them up front. The hint has no effect once storage has been allocated.")
+          .addLine(" *")
+          .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
+          .addLine(" */")
+          .addLine("public %s %s(int minCapacity) {",
+              metadata.getBuilder(), ensureCapacityMethod(property));
+      addConvertToCounts(code);
+      code.addLine("  if (%s != null) {", countsField())
+          .addLine("    %s.ensureCapacity(minCapacity);", countsField())
+          .addLine("  }")
           .addLine("  return (%s) this;", metadata.getBuilder())
           .addLine("}");
     }
@@ -353,29 +405,83 @@ public class MultisetPropertyFactory implements PropertyCodeGenerator.Factory {
           .addLine(" * %s.", metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
           .addLine(" * Changes to this builder will be reflected in the view.")
           .addLine(" */")
-          .addLine("public %s<%s> %s() {", Multiset.class, elementType, getter(property))
-          .addLine("  return %s.unmodifiableMultiset(%s);", Multisets.class, property.getName())
+          .addLine("public %s<%s> %s() {", Multiset.class, elementType, getter(property));
+      addConvertToMutableMultiset(code);
+      code.addLine("  return %s.unmodifiableMultiset(%s);", Multisets.class, property.getName())
           .addLine("}");
     }
 
+    /**
+     * Moves an {@link ImmutableMultiset} adopted from a value, or the initial empty multiset, into
+     * compact count storage before it is modified, unless a mutable multiset has been exposed.
+     */
+    private void addConvertToCounts(SourceBuilder code) {
+      code.addLine("  if (%s == null && %s instanceof %s) {",
+              countsField(), property.getName(), ImmutableMultiset.class)
+          .addLine("    %s = new %s<%s>(%s);",
+              countsField(), ObjectCountMap.NAME, elementType, property.getName())
+          .addLine("    %s = %s.of();", property.getName(), ImmutableMultiset.class)
+          .addLine("  }");
+    }
+
+    /**
+     * Replaces the compact count storage, an {@link ImmutableMultiset} adopted from a value, or
+     * the initial empty multiset, with a mutable multiset before it is exposed to the user.
+     * Subsequent modifications will go through the mutable multiset.
+     */
+    private void addConvertToMutableMultiset(SourceBuilder code) {
+      code.addLine("  if (%s != null) {", countsField())
+          .addLine("    %s = %s.toLinkedHashMultiset();", property.getName(), countsField())
+          .addLine("    %s = null;", countsField())
+          .addLine("  } else if (%s instanceof %s) {", property.getName(), ImmutableMultiset.class)
+          .addLine("    %1$s = %2$s.create(%1$s);", property.getName(), LinkedHashMultiset.class)
+          .addLine("  }");
+    }
+
     @Override
     public void addFinalFieldAssignment(SourceBuilder code, String finalField, String builder) {
-      code.addLine("%s = %s.copyOf(%s.%s);",
-              finalField, ImmutableMultiset.class, builder, property.getName());
+      code.addLine("if (%s.%s != null) {", builder, countsField())
+          .addLine("  %s = %s.%s.toImmutableMultiset();", finalField, builder, countsField())
+          .addLine("} else {")
+          .addLine("  %s = %s.copyOf(%s.%s);",
+              finalField, ImmutableMultiset.class, builder, property.getName())
+          .addLine("}");
     }
 
     @Override
     public void addMergeFromValue(Block code, String value) {
-      code.addLine("%s(%s.%s());", addAllMethod(property), value, property.getGetterName());
+      code.addLine("if (%s instanceof %s && %s == null && %s == %s.<%s>of()) {",
+              value,
+              metadata.getValueType().getQualifiedName(),
+              countsField(),
+              property.getName(),
+              ImmutableMultiset.class,
+              elementType)
+          .addLine("  %s = %s.copyOf(%s.%s());",
+              property.getName(), ImmutableMultiset.class, value, property.getGetterName())
+          .addLine("} else {")
+          .addLine("  %s(%s.%s());", addAllMethod(property), value, property.getGetterName())
+          .addLine("}");
     }
 
     @Override
     public void addMergeFromBuilder(Block code, String builder) {
-      code.addLine("%s(((%s) %s).%s);",
-          addAllMethod(property),
-          metadata.getGeneratedBuilder(),
-          builder,
-          property.getName());
+      Excerpt base = Declarations.upcastToGeneratedBuilder(code, metadata, builder);
+      // Add each distinct element once, with its count, rather than once per occurrence
+      code.addLine("if (%s.%s != null) {", base, countsField())
+          .addLine("  for (int i = 0; i < %s.%s.end(); i++) {", base, countsField())
+          .addLine("    int count = %s.%s.countAt(i);", base, countsField())
+          .addLine("    if (count > 0) {")
+          .addLine("      %s(%s.%s.elementAt(i), count);",
+              addCopiesMethod(property), base, countsField())
+          .addLine("    }")
+          .addLine("  }")
+          .addLine("} else {")
+          .addLine("  for (%s.Entry<%s> entry : %s.%s.entrySet()) {",
+              Multiset.class, elementType, base, property.getName())
+          .addLine("    %s(entry.getElement(), entry.getCount());", addCopiesMethod(property))
+          .addLine("  }")
+          .addLine("}");
     }
 
     @Override
@@ -383,14 +489,20 @@ public class MultisetPropertyFactory implements PropertyCodeGenerator.Factory {
       code.addLine("%s.%s(%s);", builder, addAllMethod(property), variable);
     }
 
+    @Override
+    public EqualsCost getEqualsCost() {
+      return EqualsCost.COLLECTION;
+    }
+
     @Override
     public void addClearField(Block code) {
-      code.addLine("%s.clear();", property.getName());
+      code.addLine("%s();", clearMethod(property));
     }
 
     @Override
     public Set<StaticExcerpt> getStaticExcerpts() {
       ImmutableSet.Builder<StaticExcerpt> staticMethods = ImmutableSet.builder();
+      staticMethods.addAll(ObjectCountMap.excerpts());
       if (overridesSetCountMethod) {
         staticMethods.addAll(CheckedMultiset.excerpts());
       }
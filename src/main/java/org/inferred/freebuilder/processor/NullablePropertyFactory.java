@@ -36,6 +36,7 @@ import org.inferred.freebuilder.processor.util.ObjectsExcerpts;
 import org.inferred.freebuilder.processor.util.ParameterizedType;
 import org.inferred.freebuilder.processor.util.PreconditionExcerpts;
 import org.inferred.freebuilder.processor.util.SourceBuilder;
+import org.inferred.freebuilder.processor.util.StaticExcerpt;
 
 import java.util.Set;
 
@@ -109,6 +110,7 @@ public class NullablePropertyFactory implements PropertyCodeGenerator.Factory {
       code.add("public %s %s(", metadata.getBuilder(), setter(property));
       addGetterAnnotations(code);
       code.add("%s %s) {\n", property.getType(), property.getName())
+          .add(MemoizedBuild.invalidate(metadata))
           .addLine("  this.%1$s = %1$s;", property.getName())
           .addLine("  return (%s) this;", metadata.getBuilder())
           .addLine("}");
@@ -133,6 +135,7 @@ public class NullablePropertyFactory implements PropertyCodeGenerator.Factory {
               metadata.getBuilder(),
               mapper(property),
               unaryOperator.withParameters(typeParam))
+          .add(MemoizedBuild.invalidate(metadata))
           .add(PreconditionExcerpts.checkNotNull("mapper"))
           .addLine("  %s %s = %s();",
               property.getType(), property.getName(), getter(property))
@@ -210,6 +213,11 @@ public class NullablePropertyFactory implements PropertyCodeGenerator.Factory {
       code.addLine("%s.%s(%s);", builder, setter(property), variable);
     }
 
+    @Override
+    public Set<StaticExcerpt> getStaticExcerpts() {
+      return Declarations.freshBuilderExcerpts(metadata);
+    }
+
     @Override
     public void addClearField(Block code) {
       Optional<Excerpt> defaults = Declarations.freshBuilder(code, metadata);
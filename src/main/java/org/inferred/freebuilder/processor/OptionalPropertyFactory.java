@@ -24,6 +24,7 @@ import static org.inferred.freebuilder.processor.Util.erasesToAnyOf;
 import static org.inferred.freebuilder.processor.Util.upperBound;
 import static org.inferred.freebuilder.processor.util.ModelUtils.maybeDeclared;
 import static org.inferred.freebuilder.processor.util.ModelUtils.maybeUnbox;
+import static org.inferred.freebuilder.processor.util.ObjectsExcerpts.Nullability.NULLABLE;
 import static org.inferred.freebuilder.processor.util.feature.FunctionPackage.FUNCTION_PACKAGE;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -37,6 +38,9 @@ import org.inferred.freebuilder.processor.util.ParameterizedType;
 import org.inferred.freebuilder.processor.util.PreconditionExcerpts;
 import org.inferred.freebuilder.processor.util.QualifiedName;
 import org.inferred.freebuilder.processor.util.SourceBuilder;
+import org.inferred.freebuilder.processor.util.StaticExcerpt;
+
+import java.util.Set;
 
 import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.TypeMirror;
@@ -51,7 +55,7 @@ public class OptionalPropertyFactory implements PropertyCodeGenerator.Factory {
 
   @VisibleForTesting
   enum OptionalType {
-    GUAVA(QualifiedName.of(Optional.class), "absent", "fromNullable") {
+    GUAVA(QualifiedName.of(Optional.class), "absent", "fromNullable", "orNull()") {
       @Override
       protected void applyMapper(SourceBuilder code, Metadata metadata, Property property) {
         // Guava's transform method throws a NullPointerException if mapper returns null,
@@ -75,7 +79,7 @@ public class OptionalPropertyFactory implements PropertyCodeGenerator.Factory {
             .addLine("}");
       }
     },
-    JAVA8(QualifiedName.of("java.util", "Optional"), "empty", "ofNullable") {
+    JAVA8(QualifiedName.of("java.util", "Optional"), "empty", "ofNullable", "orElse(null)") {
       @Override
       protected void applyMapper(SourceBuilder code, Metadata metadata, Property property) {
         code.addLine("  return %s(%s().map(mapper));", setter(property), getter(property));
@@ -90,11 +94,13 @@ public class OptionalPropertyFactory implements PropertyCodeGenerator.Factory {
     private final QualifiedName cls;
     private final String empty;
     private final String ofNullable;
+    private final String orNull;
 
-    OptionalType(QualifiedName cls, String empty, String ofNullable) {
+    OptionalType(QualifiedName cls, String empty, String ofNullable, String orNull) {
       this.cls = cls;
       this.empty = empty;
       this.ofNullable = ofNullable;
+      this.orNull = orNull;
     }
 
     protected abstract void applyMapper(SourceBuilder code, Metadata metadata, Property property);
@@ -206,7 +212,8 @@ public class OptionalPropertyFactory implements PropertyCodeGenerator.Factory {
               metadata.getBuilder(),
               setter(property),
               unboxedType.or(elementType),
-              property.getName());
+              property.getName())
+          .add(MemoizedBuild.invalidate(metadata));
       if (unboxedType.isPresent()) {
         code.addLine("  this.%1$s = %1$s;", property.getName());
       } else {
@@ -233,6 +240,7 @@ public class OptionalPropertyFactory implements PropertyCodeGenerator.Factory {
               optional.cls,
               elementType,
               property.getName())
+          .add(MemoizedBuild.invalidate(metadata))
           .addLine("  if (%s.isPresent()) {", property.getName())
           .addLine("    return %s(%s.get());", setter(property), property.getName())
           .addLine("  } else {")
@@ -255,6 +263,7 @@ public class OptionalPropertyFactory implements PropertyCodeGenerator.Factory {
               javax.annotation.Nullable.class,
               elementType,
               property.getName())
+          .add(MemoizedBuild.invalidate(metadata))
           .addLine("  if (%s != null) {", property.getName())
           .addLine("    return %s(%s);", setter(property), property.getName())
           .addLine("  } else {")
@@ -282,7 +291,8 @@ public class OptionalPropertyFactory implements PropertyCodeGenerator.Factory {
           .addLine("public %s %s(%s mapper) {",
               metadata.getBuilder(),
               mapper(property),
-              unaryOperator.withParameters(elementType));
+              unaryOperator.withParameters(elementType))
+          .add(MemoizedBuild.invalidate(metadata));
       optional.applyMapper(code, metadata, property);
       code.addLine("}");
     }
@@ -297,6 +307,7 @@ public class OptionalPropertyFactory implements PropertyCodeGenerator.Factory {
           .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
           .addLine(" */")
           .addLine("public %s %s() {", metadata.getBuilder(), clearMethod(property))
+          .add(MemoizedBuild.invalidate(metadata))
           .addLine("  this.%s = null;", property.getName())
           .addLine("  return (%s) this;", metadata.getBuilder())
           .addLine("}");
@@ -348,11 +359,27 @@ public class OptionalPropertyFactory implements PropertyCodeGenerator.Factory {
       code.add("%s(%s)", optional.ofNullable, finalField);
     }
 
+    @Override
+    public Optional<Excerpt> fieldsCompare(String finalField, String otherField) {
+      return naturalOrder(elementType, finalField, otherField, NULLABLE);
+    }
+
+    @Override
+    public Optional<Excerpt> gettersCompare(String value, String otherValue) {
+      return naturalOrder(elementType,
+          value + "." + optional.orNull, otherValue + "." + optional.orNull, NULLABLE);
+    }
+
     @Override
     public void addSetFromResult(SourceBuilder code, String builder, String variable) {
       code.addLine("%s.%s(%s);", builder, setter(property), variable);
     }
 
+    @Override
+    public Set<StaticExcerpt> getStaticExcerpts() {
+      return Declarations.freshBuilderExcerpts(metadata);
+    }
+
     @Override
     public void addClearField(Block code) {
       Optional<Excerpt> defaults = Declarations.freshBuilder(code, metadata);
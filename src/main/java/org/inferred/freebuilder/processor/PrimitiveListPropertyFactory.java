@@ -0,0 +1,450 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.BuilderMethods.addAllMethod;
+import static org.inferred.freebuilder.processor.BuilderMethods.addMethod;
+import static org.inferred.freebuilder.processor.BuilderMethods.clearMethod;
+import static org.inferred.freebuilder.processor.BuilderMethods.ensureCapacityMethod;
+import static org.inferred.freebuilder.processor.BuilderMethods.getter;
+import static org.inferred.freebuilder.processor.BuilderMethods.mutator;
+import static org.inferred.freebuilder.processor.Util.erasesToAnyOf;
+import static org.inferred.freebuilder.processor.Util.upperBound;
+import static org.inferred.freebuilder.processor.util.ModelUtils.maybeDeclared;
+import static org.inferred.freebuilder.processor.util.ModelUtils.maybeUnbox;
+import static org.inferred.freebuilder.processor.util.ModelUtils.overrides;
+import static org.inferred.freebuilder.processor.util.feature.FunctionPackage.FUNCTION_PACKAGE;
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.SOURCE_LEVEL;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+
+import org.inferred.freebuilder.processor.Metadata.Property;
+import org.inferred.freebuilder.processor.PropertyCodeGenerator.Config;
+import org.inferred.freebuilder.processor.excerpt.CheckedList;
+import org.inferred.freebuilder.processor.excerpt.PrimitiveList;
+import org.inferred.freebuilder.processor.util.Block;
+import org.inferred.freebuilder.processor.util.Excerpt;
+import org.inferred.freebuilder.processor.util.Excerpts;
+import org.inferred.freebuilder.processor.util.ParameterizedType;
+import org.inferred.freebuilder.processor.util.QualifiedName;
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+import org.inferred.freebuilder.processor.util.StaticExcerpt;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+
+/**
+ * {@link PropertyCodeGenerator.Factory} providing append-only semantics for {@link List}
+ * properties of {@link Integer}, {@link Long} or {@link Double}, backed by unboxed arrays.
+ *
+ * <p>Only used if the user has opted in with {@code @FreeBuilder(primitiveLists = true)}.
+ */
+public class PrimitiveListPropertyFactory implements PropertyCodeGenerator.Factory {
+
+  @Override
+  public Optional<? extends PropertyCodeGenerator> create(Config config) {
+    if (!config.getMetadata().isUsingPrimitiveLists()) {
+      return Optional.absent();
+    }
+    DeclaredType type = maybeDeclared(config.getProperty().getType()).orNull();
+    if (type == null || !erasesToAnyOf(type, Collection.class, List.class)) {
+      return Optional.absent();
+    }
+
+    TypeMirror elementType = upperBound(config.getElements(), type.getTypeArguments().get(0));
+    TypeMirror unboxedType = maybeUnbox(elementType, config.getTypes()).orNull();
+    if (unboxedType == null || !PrimitiveList.isSupported(unboxedType.getKind())) {
+      return Optional.absent();
+    }
+    boolean overridesAddMethod = overrides(
+        config.getBuilder(), config.getTypes(), addMethod(config.getProperty()), unboxedType);
+    return Optional.of(new CodeGenerator(
+        config.getMetadata(),
+        config.getProperty(),
+        overridesAddMethod,
+        elementType,
+        unboxedType));
+  }
+
+  @VisibleForTesting static class CodeGenerator extends PropertyCodeGenerator {
+
+    private static final ParameterizedType COLLECTION =
+        QualifiedName.of(Collection.class).withParameters("E");
+
+    private final boolean overridesAddMethod;
+    private final TypeMirror elementType;
+    private final TypeMirror unboxedType;
+
+    @VisibleForTesting
+    CodeGenerator(
+        Metadata metadata,
+        Property property,
+        boolean overridesAddMethod,
+        TypeMirror elementType,
+        TypeMirror unboxedType) {
+      super(metadata, property);
+      this.overridesAddMethod = overridesAddMethod;
+      this.elementType = elementType;
+      this.unboxedType = unboxedType;
+    }
+
+    private TypeKind kind() {
+      return unboxedType.getKind();
+    }
+
+    @Override
+    public void addBuilderFieldDeclaration(SourceBuilder code) {
+      code.addLine("private final %1$s %2$s = new %1$s();",
+          PrimitiveList.mutableList(kind()), property.getName());
+    }
+
+    @Override
+    public void addBuilderFieldAccessors(SourceBuilder code) {
+      addAdd(code, metadata);
+      addVarargsAdd(code, metadata);
+      addAddAllMethods(code, metadata);
+      addMutate(code, metadata);
+      addClear(code, metadata);
+      addEnsureCapacity(code, metadata);
+      addGetter(code, metadata);
+    }
+
+    private void addAdd(SourceBuilder code, Metadata metadata) {
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Adds {@code element} to the list to be returned from %s.",
+              metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+          .addLine(" *")
+          .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
+          .addLine(" */")
+          .addLine("public %s %s(%s element) {",
+              metadata.getBuilder(), addMethod(property), unboxedType)
+          .add(MemoizedBuild.invalidate(metadata))
+          .addLine("  this.%s.add%s(element);", property.getName(), primitiveName())
+          .addLine("  return (%s) this;", metadata.getBuilder())
+          .addLine("}");
+    }
+
+    private void addVarargsAdd(SourceBuilder code, Metadata metadata) {
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Adds each element of {@code elements} to the list to be returned from")
+          .addLine(" * %s.", metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+          .addLine(" *")
+          .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
+          .addLine(" * @throws NullPointerException if {@code elements} is null")
+          .addLine(" */")
+          .addLine("public %s %s(%s... elements) {",
+              metadata.getBuilder(), addMethod(property), unboxedType)
+          .add(MemoizedBuild.invalidate(metadata));
+      if (overridesAddMethod) {
+        code.addLine("  %1$s.ensureCapacity(%1$s.size() + elements.length);", property.getName())
+            .addLine("  for (%s element : elements) {", unboxedType)
+            .addLine("    %s(element);", addMethod(property))
+            .addLine("  }");
+      } else {
+        code.addLine("  %s.addAll(elements, 0, elements.length);", property.getName());
+      }
+      code.addLine("  return (%s) this;", metadata.getBuilder())
+          .addLine("}");
+    }
+
+    private void addAddAllMethods(SourceBuilder code, Metadata metadata) {
+      addArrayRangeAddAll(code, metadata);
+      if (code.feature(SOURCE_LEVEL).stream().isPresent()) {
+        addSpliteratorAddAll(code, metadata);
+        addStreamAddAll(code, metadata);
+        addIterableAddAll(code, metadata);
+      } else {
+        addPreStreamsAddAll(code, metadata);
+      }
+    }
+
+    private void addArrayRangeAddAll(SourceBuilder code, Metadata metadata) {
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Adds {@code length} elements of {@code elements}, starting at index")
+          .addLine(" * {@code offset}, to the list to be returned from %s.",
+              metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+          .addLine(" *")
+          .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
+          .addLine(" * @throws NullPointerException if {@code elements} is null")
+          .addLine(" * @throws IndexOutOfBoundsException if {@code offset} or {@code length} is")
+          .addLine(" *     negative, or {@code offset + length} exceeds {@code elements.length}")
+          .addLine(" */")
+          .addLine("public %s %s(%s[] elements, int offset, int length) {",
+              metadata.getBuilder(), addAllMethod(property), unboxedType)
+          .add(MemoizedBuild.invalidate(metadata))
+          .addLine("  if (offset < 0 || length < 0 || offset > elements.length - length) {")
+          .addLine("    throw new %s(\"offset \" + offset + \", length \" + length",
+              IndexOutOfBoundsException.class)
+          .addLine("        + \", array length \" + elements.length);")
+          .addLine("  }");
+      if (overridesAddMethod) {
+        code.addLine("  %1$s.ensureCapacity(%1$s.size() + length);", property.getName())
+            .addLine("  for (int i = offset; i < offset + length; i++) {")
+            .addLine("    %s(elements[i]);", addMethod(property))
+            .addLine("  }");
+      } else {
+        code.addLine("  %s.addAll(elements, offset, length);", property.getName());
+      }
+      code.addLine("  return (%s) this;", metadata.getBuilder())
+          .addLine("}");
+    }
+
+    private void addPreStreamsAddAll(SourceBuilder code, Metadata metadata) {
+      addJavadocForAddAll(code, metadata);
+      addAccessorAnnotations(code);
+      code.addLine("public %s %s(%s<? extends %s> elements) {",
+          metadata.getBuilder(),
+          addAllMethod(property),
+          Iterable.class,
+          elementType)
+          .add(MemoizedBuild.invalidate(metadata));
+      if (overridesAddMethod) {
+        code.addLine("  if (elements instanceof %s) {", Collection.class)
+            .addLine("    %1$s.ensureCapacity(%1$s.size() + ((%2$s<?>) elements).size());",
+                property.getName(), Collection.class)
+            .addLine("  }")
+            .add(Excerpts.forEach(unboxedType, "elements", addMethod(property)));
+      } else {
+        code.addLine("  if (elements instanceof %s) {", Collection.class)
+            .addLine("    %s.addAll((%s<? extends %s>) elements);",
+                property.getName(), Collection.class, elementType)
+            .addLine("  } else {")
+            .addLine("    for (%s element : elements) {", unboxedType)
+            .addLine("      %s.add%s(element);", property.getName(), primitiveName())
+            .addLine("    }")
+            .addLine("  }");
+      }
+      code.addLine("  return (%s) this;", metadata.getBuilder())
+          .addLine("}");
+    }
+
+    private void addSpliteratorAddAll(SourceBuilder code, Metadata metadata) {
+      QualifiedName spliterator = code.feature(SOURCE_LEVEL).spliterator().get();
+      QualifiedName primitiveSpliterator = spliterator.nestedType("Of" + primitiveName());
+      QualifiedName primitiveConsumer =
+          QualifiedName.of("java.util.function", primitiveName() + "Consumer");
+      addJavadocForAddAll(code, metadata);
+      code.addLine("public %s %s(%s<? extends %s> elements) {",
+              metadata.getBuilder(),
+              addAllMethod(property),
+              spliterator,
+              elementType)
+          .add(MemoizedBuild.invalidate(metadata))
+          .addLine("  if ((elements.characteristics() & %s.SIZED) != 0) {", spliterator)
+          .addLine("    long elementsSize = elements.estimateSize();")
+          .addLine("    if (elementsSize > 0 && elementsSize <= Integer.MAX_VALUE) {")
+          .addLine("      %1$s.ensureCapacity(%1$s.size() + (int) elementsSize);",
+              property.getName())
+          .addLine("    }")
+          .addLine("  }");
+      String consumer;
+      if (overridesAddMethod) {
+        consumer = "this::" + addMethod(property);
+      } else {
+        consumer = property.getName() + "::add" + primitiveName();
+      }
+      code.addLine("  if (elements instanceof %s) {", primitiveSpliterator)
+          .addLine("    ((%s) elements).forEachRemaining((%s) %s);",
+              primitiveSpliterator, primitiveConsumer, consumer)
+          .addLine("  } else {")
+          .addLine("    elements.forEachRemaining(this::%s);", addMethod(property))
+          .addLine("  }")
+          .addLine("  return (%s) this;", metadata.getBuilder())
+          .addLine("}");
+    }
+
+    private void addIterableAddAll(SourceBuilder code, Metadata metadata) {
+      addJavadocForAddAll(code, metadata);
+      addAccessorAnnotations(code);
+      code.addLine("public %s %s(%s<? extends %s> elements) {",
+          metadata.getBuilder(),
+          addAllMethod(property),
+          Iterable.class,
+          elementType)
+          .add(MemoizedBuild.invalidate(metadata));
+      if (!overridesAddMethod) {
+        code.addLine("  if (elements instanceof %s) {", Collection.class)
+            .addLine("    %s.addAll((%s<? extends %s>) elements);",
+                property.getName(), Collection.class, elementType)
+            .addLine("    return (%s) this;", metadata.getBuilder())
+            .addLine("  }");
+      }
+      code.addLine("  return %s(elements.spliterator());", addAllMethod(property))
+          .addLine("}");
+    }
+
+    private void addStreamAddAll(SourceBuilder code, Metadata metadata) {
+      QualifiedName baseStream = code.feature(SOURCE_LEVEL).baseStream().get();
+      addJavadocForAddAll(code, metadata);
+      code.addLine("public %s %s(%s<? extends %s, ?> elements) {",
+              metadata.getBuilder(),
+              addAllMethod(property),
+              baseStream,
+              elementType)
+          .add(MemoizedBuild.invalidate(metadata))
+          .addLine("  return %s(elements.spliterator());", addAllMethod(property))
+          .addLine("}");
+    }
+
+    private void addJavadocForAddAll(SourceBuilder code, Metadata metadata) {
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Adds each element of {@code elements} to the list to be returned from")
+          .addLine(" * %s.", metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+          .addLine(" *")
+          .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
+          .addLine(" * @throws NullPointerException if {@code elements} is null or contains a")
+          .addLine(" *     null element")
+          .addLine(" */");
+    }
+
+    private void addMutate(SourceBuilder code, Metadata metadata) {
+      ParameterizedType consumer = code.feature(FUNCTION_PACKAGE).consumer().orNull();
+      if (consumer == null) {
+        return;
+      }
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Applies {@code mutator} to the list to be returned from %s.",
+              metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+          .addLine(" *")
+          .addLine(" * <p>This method mutates the list in-place. {@code mutator} is a void")
+          .addLine(" * consumer, so any value returned from a lambda will be ignored. Take care")
+          .addLine(" * not to call pure functions, like %s.",
+              COLLECTION.javadocNoArgMethodLink("stream"))
+          .addLine(" *")
+          .addLine(" * @return this {@code Builder} object")
+          .addLine(" * @throws NullPointerException if {@code mutator} is null")
+          .addLine(" */")
+          .addLine("public %s %s(%s<? super %s<%s>> mutator) {",
+              metadata.getBuilder(),
+              mutator(property),
+              consumer.getQualifiedName(),
+              List.class,
+              elementType)
+          .add(MemoizedBuild.invalidate(metadata));
+      if (overridesAddMethod) {
+        code.addLine("  mutator.accept(new CheckedList<>(%s, this::%s));",
+            property.getName(), addMethod(property));
+      } else {
+        code.addLine("  // If %s is overridden, this method will be updated to delegate to it",
+                addMethod(property))
+            .addLine("  mutator.accept(%s);", property.getName());
+      }
+      code.addLine("  return (%s) this;", metadata.getBuilder())
+          .addLine("}");
+    }
+
+    private void addClear(SourceBuilder code, Metadata metadata) {
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Clears the list to be returned from %s.",
+              metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+          .addLine(" *")
+          .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
+          .addLine(" */")
+          .addLine("public %s %s() {", metadata.getBuilder(), clearMethod(property))
+          .add(MemoizedBuild.invalidate(metadata))
+          .addLine("  %s.clear();", property.getName())
+          .addLine("  return (%s) this;", metadata.getBuilder())
+          .addLine("}");
+    }
+
+    private void addEnsureCapacity(SourceBuilder code, Metadata metadata) {
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Ensures the list to be returned from %s can hold at least",
+              metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+          .addLine(" * {@code minCapacity} elements without reallocating its storage.")
+          .addLine(" *")
+          .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
+          .addLine(" */")
+          .addLine("public %s %s(int minCapacity) {",
+              metadata.getBuilder(), ensureCapacityMethod(property))
+          .addLine("  %s.ensureCapacity(minCapacity);", property.getName())
+          .addLine("  return (%s) this;", metadata.getBuilder())
+          .addLine("}");
+    }
+
+    private void addGetter(SourceBuilder code, Metadata metadata) {
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Returns an unmodifiable view of the list that will be returned by")
+          .addLine(" * %s.", metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+          .addLine(" * Changes to this builder will be reflected in the view.")
+          .addLine(" */")
+          .addLine("public %s<%s> %s() {", List.class, elementType, getter(property))
+          .addLine("  return %s.unmodifiableList(%s);", Collections.class, property.getName())
+          .addLine("}");
+    }
+
+    @Override
+    public void addFinalFieldAssignment(SourceBuilder code, String finalField, String builder) {
+      code.addLine("%s = %s.%s.toImmutableList();", finalField, builder, property.getName());
+    }
+
+    @Override
+    public void addMergeFromValue(Block code, String value) {
+      code.addLine("%s(%s.%s());", addAllMethod(property), value, property.getGetterName());
+    }
+
+    @Override
+    public void addMergeFromBuilder(Block code, String builder) {
+      Excerpt base = Declarations.upcastToGeneratedBuilder(code, metadata, builder);
+      code.addLine("%s(%s.%s);", addAllMethod(property), base, property.getName());
+    }
+
+    @Override
+    public void addSetFromResult(SourceBuilder code, String builder, String variable) {
+      code.addLine("%s.%s(%s);", builder, addAllMethod(property), variable);
+    }
+
+    @Override
+    public EqualsCost getEqualsCost() {
+      return EqualsCost.COLLECTION;
+    }
+
+    @Override
+    public void addClearField(Block code) {
+      code.addLine("%s();", clearMethod(property));
+    }
+
+    @Override
+    public Set<StaticExcerpt> getStaticExcerpts() {
+      ImmutableSet.Builder<StaticExcerpt> types = ImmutableSet.builder();
+      types.addAll(PrimitiveList.excerpts(kind()));
+      if (overridesAddMethod) {
+        types.addAll(CheckedList.excerpts());
+      }
+      return types.build();
+    }
+
+    private String primitiveName() {
+      return PrimitiveList.capitalizedName(kind());
+    }
+  }
+}
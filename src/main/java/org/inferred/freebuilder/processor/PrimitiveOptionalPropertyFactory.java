@@ -0,0 +1,405 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.BuilderMethods.clearMethod;
+import static org.inferred.freebuilder.processor.BuilderMethods.getter;
+import static org.inferred.freebuilder.processor.BuilderMethods.mapper;
+import static org.inferred.freebuilder.processor.BuilderMethods.nullableSetter;
+import static org.inferred.freebuilder.processor.BuilderMethods.setter;
+import static org.inferred.freebuilder.processor.Util.erasesToAnyOf;
+import static org.inferred.freebuilder.processor.util.ModelUtils.maybeDeclared;
+import static org.inferred.freebuilder.processor.util.ObjectsExcerpts.Nullability.NOT_NULLABLE;
+import static org.inferred.freebuilder.processor.util.feature.FunctionPackage.FUNCTION_PACKAGE;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+
+import org.inferred.freebuilder.processor.Metadata.Property;
+import org.inferred.freebuilder.processor.PropertyCodeGenerator.Config;
+import org.inferred.freebuilder.processor.util.Block;
+import org.inferred.freebuilder.processor.util.Excerpt;
+import org.inferred.freebuilder.processor.util.Excerpts;
+import org.inferred.freebuilder.processor.util.ObjectsExcerpts;
+import org.inferred.freebuilder.processor.util.ObjectsExcerpts.Nullability;
+import org.inferred.freebuilder.processor.util.PreconditionExcerpts;
+import org.inferred.freebuilder.processor.util.QualifiedName;
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+import org.inferred.freebuilder.processor.util.StaticExcerpt;
+
+import java.util.Set;
+
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+
+/**
+ * {@link PropertyCodeGenerator.Factory} providing a default value (empty) and convenience
+ * setter methods for {@code OptionalInt}, {@code OptionalLong} and {@code OptionalDouble}
+ * properties, stored as a primitive and a presence flag.
+ */
+public class PrimitiveOptionalPropertyFactory implements PropertyCodeGenerator.Factory {
+
+  @VisibleForTesting
+  enum OptionalType {
+    INT(TypeKind.INT, "int", Integer.class, "OptionalInt", "getAsInt", "IntUnaryOperator",
+        "applyAsInt"),
+    LONG(TypeKind.LONG, "long", Long.class, "OptionalLong", "getAsLong", "LongUnaryOperator",
+        "applyAsLong"),
+    DOUBLE(TypeKind.DOUBLE, "double", Double.class, "OptionalDouble", "getAsDouble",
+        "DoubleUnaryOperator", "applyAsDouble");
+
+    private final TypeKind kind;
+    private final String primitiveType;
+    private final Class<?> boxedType;
+    private final QualifiedName cls;
+    private final String getAs;
+    private final QualifiedName unaryOperator;
+    private final String applyAs;
+
+    OptionalType(
+        TypeKind kind,
+        String primitiveType,
+        Class<?> boxedType,
+        String simpleName,
+        String getAs,
+        String unaryOperator,
+        String applyAs) {
+      this.kind = kind;
+      this.primitiveType = primitiveType;
+      this.boxedType = boxedType;
+      this.cls = QualifiedName.of("java.util", simpleName);
+      this.getAs = getAs;
+      this.unaryOperator = QualifiedName.of("java.util.function", unaryOperator);
+      this.applyAs = applyAs;
+    }
+  }
+
+  @Override
+  public Optional<? extends PropertyCodeGenerator> create(Config config) {
+    DeclaredType type = maybeDeclared(config.getProperty().getType()).orNull();
+    if (type == null) {
+      return Optional.absent();
+    }
+    for (OptionalType optionalType : OptionalType.values()) {
+      if (erasesToAnyOf(type, optionalType.cls)) {
+        return Optional.of(
+            new CodeGenerator(config.getMetadata(), config.getProperty(), optionalType));
+      }
+    }
+    return Optional.absent();
+  }
+
+  @VisibleForTesting static class CodeGenerator extends PropertyCodeGenerator {
+
+    private final OptionalType optional;
+
+    @VisibleForTesting
+    CodeGenerator(Metadata metadata, Property property, OptionalType optional) {
+      super(metadata, property);
+      this.optional = optional;
+    }
+
+    @Override
+    public Type getType() {
+      return Type.OPTIONAL;
+    }
+
+    @Override
+    public void addValueFieldDeclaration(SourceBuilder code, String finalField) {
+      code.addLine("// Store a primitive and a presence flag instead of an %s, so no object",
+              optional.cls.getSimpleName())
+          .addLine("// is needed per value.")
+          .addLine("private final %s %s;", optional.primitiveType, finalField)
+          .addLine("private final boolean %s;", presenceFlag(finalField));
+    }
+
+    @Override
+    public void addBuilderFieldDeclaration(SourceBuilder code) {
+      code.addLine("// Store a primitive and a presence flag instead of an %s, so no object",
+              optional.cls.getSimpleName())
+          .addLine("// is needed per builder.")
+          .addLine("private %s %s = 0;", optional.primitiveType, property.getName())
+          .addLine("private boolean %s = false;", presenceFlag(property.getName()));
+    }
+
+    @Override
+    public void addBuilderFieldAccessors(SourceBuilder code) {
+      addSetter(code, metadata);
+      addOptionalSetter(code, metadata);
+      addNullableSetter(code, metadata);
+      addMapper(code, metadata);
+      addClear(code, metadata);
+      addGetter(code, metadata);
+    }
+
+    private void addSetter(SourceBuilder code, Metadata metadata) {
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Sets the value to be returned by %s.",
+              metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+          .addLine(" *")
+          .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
+          .addLine(" */")
+          .addLine("public %s %s(%s %s) {",
+              metadata.getBuilder(),
+              setter(property),
+              optional.primitiveType,
+              property.getName())
+          .add(MemoizedBuild.invalidate(metadata))
+          .addLine("  this.%1$s = %1$s;", property.getName())
+          .addLine("  this.%s = true;", presenceFlag(property.getName()))
+          .addLine("  return (%s) this;", metadata.getBuilder())
+          .addLine("}");
+    }
+
+    private void addOptionalSetter(SourceBuilder code, Metadata metadata) {
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Sets the value to be returned by %s.",
+              metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+          .addLine(" *")
+          .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
+          .addLine(" * @throws NullPointerException if {@code %s} is null", property.getName())
+          .addLine(" */");
+      addAccessorAnnotations(code);
+      code.addLine("public %s %s(%s %s) {",
+              metadata.getBuilder(),
+              setter(property),
+              optional.cls,
+              property.getName())
+          .add(MemoizedBuild.invalidate(metadata))
+          .addLine("  if (%s.isPresent()) {", property.getName())
+          .addLine("    return %s(%s.%s());", setter(property), property.getName(), optional.getAs)
+          .addLine("  } else {")
+          .addLine("    return %s();", clearMethod(property))
+          .addLine("  }")
+          .addLine("}");
+    }
+
+    private void addNullableSetter(SourceBuilder code, Metadata metadata) {
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Sets the value to be returned by %s.",
+              metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+          .addLine(" *")
+          .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
+          .addLine(" */")
+          .addLine("public %s %s(@%s %s %s) {",
+              metadata.getBuilder(),
+              nullableSetter(property),
+              javax.annotation.Nullable.class,
+              optional.boxedType,
+              property.getName())
+          .add(MemoizedBuild.invalidate(metadata))
+          .addLine("  if (%s != null) {", property.getName())
+          .addLine("    return %s(%s);", setter(property), property.getName())
+          .addLine("  } else {")
+          .addLine("    return %s();", clearMethod(property))
+          .addLine("  }")
+          .addLine("}");
+    }
+
+    private void addMapper(SourceBuilder code, Metadata metadata) {
+      if (!code.feature(FUNCTION_PACKAGE).unaryOperator().isPresent()) {
+        return;
+      }
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * If the value to be returned by %s is present,",
+              metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+          .addLine(" * replaces it by applying {@code mapper} to it and using the result.")
+          .addLine(" *")
+          .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
+          .addLine(" * @throws NullPointerException if {@code mapper} is null")
+          .addLine(" */")
+          .addLine("public %s %s(%s mapper) {",
+              metadata.getBuilder(), mapper(property), optional.unaryOperator)
+          .add(MemoizedBuild.invalidate(metadata))
+          .add(PreconditionExcerpts.checkNotNull("mapper"))
+          .addLine("  if (%s) {", presenceFlag(property.getName()))
+          .addLine("    %s(mapper.%s(%s));", setter(property), optional.applyAs, property.getName())
+          .addLine("  }")
+          .addLine("  return (%s) this;", metadata.getBuilder())
+          .addLine("}");
+    }
+
+    private void addClear(SourceBuilder code, Metadata metadata) {
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Sets the value to be returned by %s",
+              metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+          .addLine(" * to {@link %1$s#empty() %2$s.empty()}.",
+              optional.cls, optional.cls.getSimpleName())
+          .addLine(" *")
+          .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
+          .addLine(" */")
+          .addLine("public %s %s() {", metadata.getBuilder(), clearMethod(property))
+          .add(MemoizedBuild.invalidate(metadata))
+          .addLine("  this.%s = 0;", property.getName())
+          .addLine("  this.%s = false;", presenceFlag(property.getName()))
+          .addLine("  return (%s) this;", metadata.getBuilder())
+          .addLine("}");
+    }
+
+    private void addGetter(SourceBuilder code, Metadata metadata) {
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Returns the value that will be returned by %s.",
+              metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+          .addLine(" */")
+          .addLine("public %s %s() {", property.getType(), getter(property))
+          .add("  return ");
+      addReadValueFragment(code, property.getName());
+      code.add(";\n")
+          .addLine("}");
+    }
+
+    @Override
+    public void addFinalFieldAssignment(SourceBuilder code, String finalField, String builder) {
+      code.addLine("%s = %s.%s;", finalField, builder, property.getName())
+          .addLine("%s = %s;",
+              presenceFlag(finalField), presenceFlag(builder + "." + property.getName()));
+    }
+
+    @Override
+    public void addMergeFromValue(Block code, String value) {
+      addSetIfPresent(code, value + "." + property.getGetterName() + "()");
+    }
+
+    @Override
+    public void addMergeFromBuilder(Block code, String builder) {
+      addSetIfPresent(code, builder + "." + getter(property) + "()");
+    }
+
+    private void addSetIfPresent(Block code, String propertyValue) {
+      code.addLine("if (%s.isPresent()) {", propertyValue)
+          .addLine("  %s(%s.%s());", setter(property), propertyValue, optional.getAs)
+          .addLine("}");
+    }
+
+    @Override
+    public void addSetBuilderFromPartial(Block code, String builder) {
+      code.addLine("if (%s) {", presenceFlag(property.getName()))
+          .addLine("  %s.%s(%s);", builder, setter(property), property.getName())
+          .addLine("} else {")
+          .addLine("  %s.%s();", builder, clearMethod(property))
+          .addLine("}");
+    }
+
+    @Override
+    public void addReadValueFragment(SourceBuilder code, String finalField) {
+      code.add("%s ? %s.of(%s) : %s.empty()",
+          presenceFlag(finalField), optional.cls, finalField, optional.cls);
+    }
+
+    @Override
+    public Excerpt presenceCheck(String finalField) {
+      return Excerpts.add("%s", presenceFlag(finalField));
+    }
+
+    @Override
+    public EqualsCost getEqualsCost() {
+      // Stored unboxed, as a primitive and a presence flag
+      return EqualsCost.IDENTITY;
+    }
+
+    @Override
+    public Excerpt fieldsEqual(String finalField, String otherField, Nullability nullability) {
+      return Excerpts.add("%s == %s && %s",
+          presenceFlag(finalField),
+          presenceFlag(otherField),
+          primitiveEquals(true, finalField, otherField));
+    }
+
+    @Override
+    public Excerpt fieldsNotEqual(String finalField, String otherField, Nullability nullability) {
+      return Excerpts.add("%s != %s || %s",
+          presenceFlag(finalField),
+          presenceFlag(otherField),
+          primitiveEquals(false, finalField, otherField));
+    }
+
+    /** Compares the primitive values directly, as {@code Objects.equals} would box them. */
+    private Excerpt primitiveEquals(boolean areEqual, String finalField, String otherField) {
+      if (optional.kind == TypeKind.DOUBLE) {
+        return Excerpts.add("%1$s.doubleToLongBits(%2$s) %3$s %1$s.doubleToLongBits(%4$s)",
+            Double.class, finalField, areEqual ? "==" : "!=", otherField);
+      } else {
+        return Excerpts.add("%s %s %s", finalField, areEqual ? "==" : "!=", otherField);
+      }
+    }
+
+    @Override
+    public Optional<Excerpt> fieldsCompare(String finalField, String otherField) {
+      // An empty value is always stored as zero, so two empty values compare as equal.
+      return Optional.of(Excerpts.add("(%1$s != %2$s) ? (%1$s ? 1 : -1) : (%3$s)",
+          presenceFlag(finalField),
+          presenceFlag(otherField),
+          primitiveOrder(optional.kind, finalField, otherField)));
+    }
+
+    @Override
+    public Optional<Excerpt> gettersCompare(String value, String otherValue) {
+      return Optional.of(Excerpts.add(
+          "(%1$s.isPresent() != %2$s.isPresent()) ? (%1$s.isPresent() ? 1 : -1)"
+              + " : !%1$s.isPresent() ? 0 : (%3$s)",
+          value,
+          otherValue,
+          primitiveOrder(
+              optional.kind,
+              value + "." + optional.getAs + "()",
+              otherValue + "." + optional.getAs + "()")));
+    }
+
+    @Override
+    public Excerpt fieldHashCode(String finalField, Nullability nullability) {
+      // An empty value is always stored as zero, which hashes to zero, as OptionalInt.hashCode
+      // specifies.
+      return ObjectsExcerpts.hashCode(finalField, optional.kind, NOT_NULLABLE);
+    }
+
+    @Override
+    public void addSetFromResult(SourceBuilder code, String builder, String variable) {
+      code.addLine("%s.%s(%s);", builder, setter(property), variable);
+    }
+
+    @Override
+    public Set<StaticExcerpt> getStaticExcerpts() {
+      return Declarations.freshBuilderExcerpts(metadata);
+    }
+
+    @Override
+    public void addClearField(Block code) {
+      Optional<Excerpt> defaults = Declarations.freshBuilder(code, metadata);
+      if (defaults.isPresent()) {
+        code.addLine("%1$s = %2$s.%1$s;", property.getName(), defaults.get())
+            .addLine("%1$s = %2$s.%1$s;", presenceFlag(property.getName()), defaults.get());
+      } else {
+        code.addLine("%s = 0;", property.getName())
+            .addLine("%s = false;", presenceFlag(property.getName()));
+      }
+    }
+
+    /**
+     * Returns the presence flag stored alongside {@code field}, e.g. {@code this._agePresent}
+     * for {@code this.age}.
+     */
+    private static String presenceFlag(String field) {
+      int dot = field.lastIndexOf('.');
+      return field.substring(0, dot + 1) + "_" + field.substring(dot + 1) + "Present";
+    }
+  }
+}
@@ -15,6 +15,11 @@
  */
 package org.inferred.freebuilder.processor;
 
+import static org.inferred.freebuilder.processor.util.ModelUtils.maybeAsTypeElement;
+import static org.inferred.freebuilder.processor.util.ModelUtils.maybeVariable;
+import static org.inferred.freebuilder.processor.util.ObjectsExcerpts.Nullability.NOT_NULLABLE;
+import static org.inferred.freebuilder.processor.util.ObjectsExcerpts.Nullability.NULLABLE;
+
 import com.google.common.base.MoreObjects;
 import com.google.common.base.MoreObjects.ToStringHelper;
 import com.google.common.base.Optional;
@@ -25,6 +30,9 @@ import com.google.common.collect.ImmutableSet;
 import org.inferred.freebuilder.processor.Metadata.Property;
 import org.inferred.freebuilder.processor.util.Block;
 import org.inferred.freebuilder.processor.util.Excerpt;
+import org.inferred.freebuilder.processor.util.Excerpts;
+import org.inferred.freebuilder.processor.util.ObjectsExcerpts;
+import org.inferred.freebuilder.processor.util.ObjectsExcerpts.Nullability;
 import org.inferred.freebuilder.processor.util.SourceBuilder;
 import org.inferred.freebuilder.processor.util.StaticExcerpt;
 
@@ -34,7 +42,11 @@ import java.util.Map;
 import java.util.Set;
 
 import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.TypeVariable;
 import javax.lang.model.util.Elements;
 import javax.lang.model.util.Types;
 
@@ -96,6 +108,44 @@ public abstract class PropertyCodeGenerator {
     return Type.HAS_DEFAULT;
   }
 
+  /**
+   * Relative cost of comparing the property's fields in two value objects. Generated
+   * {@code equals} methods compare cheaper properties first, so that unequal values are usually
+   * told apart before any collection is walked.
+   */
+  public enum EqualsCost { IDENTITY, SCALAR, NESTED, COLLECTION }
+
+  private static final ImmutableSet<String> SCALAR_TYPES = ImmutableSet.of(
+      "java.lang.String",
+      "java.lang.Boolean",
+      "java.lang.Byte",
+      "java.lang.Short",
+      "java.lang.Character",
+      "java.lang.Integer",
+      "java.lang.Long",
+      "java.lang.Float",
+      "java.lang.Double");
+
+  /**
+   * Returns the relative cost of comparing the property's fields for equality. Primitives and
+   * enums compare by identity; strings and boxed primitives are cheap scalars; any other type is
+   * assumed to be a nested value. Collection properties override this.
+   */
+  public EqualsCost getEqualsCost() {
+    if (property.getType().getKind().isPrimitive()) {
+      return EqualsCost.IDENTITY;
+    }
+    TypeElement element = maybeAsTypeElement(property.getType()).orNull();
+    if (element == null) {
+      return EqualsCost.NESTED;
+    } else if (element.getKind() == ElementKind.ENUM) {
+      return EqualsCost.IDENTITY;
+    } else if (SCALAR_TYPES.contains(element.getQualifiedName().toString())) {
+      return EqualsCost.SCALAR;
+    }
+    return EqualsCost.NESTED;
+  }
+
   /** Add the field declaration for the property to the value's source code. */
   public void addValueFieldDeclaration(SourceBuilder code, String finalField) {
     code.addLine("private final %s %s;", property.getType(), finalField);
@@ -135,12 +185,134 @@ public abstract class PropertyCodeGenerator {
     code.add("%s", finalField);
   }
 
+  /**
+   * Adds code to the value object's {@code appendTo} method, appending "name=value" for the
+   * property to the {@link StringBuilder} {@code result}.
+   */
+  public void addAppendToString(SourceBuilder code, String result, String finalField) {
+    code.addLine("%s.append(\"%s=\").append(%s);", result, property.getName(), finalField);
+  }
+
+  /**
+   * Returns an expression that is true if an optional property is present in the value object's
+   * field.
+   */
+  public Excerpt presenceCheck(String finalField) {
+    return Excerpts.add("%s != null", finalField);
+  }
+
+  /** Returns an expression comparing the property's fields in two value objects for equality. */
+  public Excerpt fieldsEqual(String finalField, String otherField, Nullability nullability) {
+    return ObjectsExcerpts.equals(
+        finalField, otherField, property.getType().getKind(), nullability);
+  }
+
+  /** Returns an expression that is true if the property's fields in two value objects differ. */
+  public Excerpt fieldsNotEqual(String finalField, String otherField, Nullability nullability) {
+    return ObjectsExcerpts.notEquals(
+        finalField, otherField, property.getType().getKind(), nullability);
+  }
+
+  /** Returns an expression hashing the property's field as {@code Objects.hashCode} would. */
+  public Excerpt fieldHashCode(String finalField, Nullability nullability) {
+    return ObjectsExcerpts.hashCode(finalField, property.getType().getKind(), nullability);
+  }
+
+  /**
+   * Returns an int expression comparing the property's fields in two value objects, as a
+   * comparator would, or absent if the property has no natural ordering. Absent or null values
+   * sort first.
+   */
+  public Optional<Excerpt> fieldsCompare(String finalField, String otherField) {
+    return naturalOrder(property.getType(), finalField, otherField,
+        (getType() == Type.OPTIONAL) ? NULLABLE : NOT_NULLABLE);
+  }
+
+  /**
+   * Returns an int expression comparing two results of the property's getter, in the same order
+   * as {@link #fieldsCompare}. Each expression may be evaluated more than once.
+   */
+  public Optional<Excerpt> gettersCompare(String value, String otherValue) {
+    return fieldsCompare(value, otherValue);
+  }
+
+  /**
+   * Returns an int expression comparing {@code a} and {@code b} in the natural order of
+   * {@code type}, or absent if it has none. Primitives are compared without boxing; if
+   * {@code nullability} is {@link Nullability#NULLABLE}, nulls sort first.
+   */
+  protected static Optional<Excerpt> naturalOrder(
+      TypeMirror type, Object a, Object b, Nullability nullability) {
+    if (type.getKind().isPrimitive()) {
+      return Optional.of(primitiveOrder(type.getKind(), a, b));
+    } else if (!isComparable(type)) {
+      return Optional.absent();
+    } else if (nullability.isNullable()) {
+      return Optional.of(Excerpts.add(
+          "(%1$s == %2$s) ? 0 : (%1$s == null) ? -1 : (%2$s == null) ? 1 : %1$s.compareTo(%2$s)",
+          a, b));
+    } else {
+      return Optional.of(Excerpts.add("%s.compareTo(%s)", a, b));
+    }
+  }
+
+  /** Returns an int expression comparing primitives {@code a} and {@code b} without boxing. */
+  protected static Excerpt primitiveOrder(TypeKind kind, Object a, Object b) {
+    switch (kind) {
+      case BOOLEAN:
+        return Excerpts.add("(%1$s == %2$s) ? 0 : (%1$s ? 1 : -1)", a, b);
+
+      case FLOAT:
+        return Excerpts.add("%s.compare(%s, %s)", Float.class, a, b);
+
+      case DOUBLE:
+        return Excerpts.add("%s.compare(%s, %s)", Double.class, a, b);
+
+      default:
+        // Integer.compare and friends need Java 7
+        return Excerpts.add("(%1$s < %2$s) ? -1 : ((%1$s == %2$s) ? 0 : 1)", a, b);
+    }
+  }
+
+  private static boolean isComparable(TypeMirror type) {
+    Optional<TypeVariable> variable = maybeVariable(type);
+    if (variable.isPresent()) {
+      return isComparable(variable.get().getUpperBound());
+    }
+    TypeElement element = maybeAsTypeElement(type).orNull();
+    if (element == null) {
+      return false;
+    } else if (element.getQualifiedName().contentEquals(Comparable.class.getName())) {
+      return true;
+    }
+    for (TypeMirror supertype : element.getInterfaces()) {
+      if (isComparable(supertype)) {
+        return true;
+      }
+    }
+    return isComparable(element.getSuperclass());
+  }
+
   /** Adds a set call for the property from a function result to the builder's source code. */
   public abstract void addSetFromResult(SourceBuilder code, String builder, String variable);
 
   /** Adds a clear call for the property given a template builder to the builder's source code. */
   public abstract void addClearField(Block code);
 
+  /**
+   * Adds code to {@code buildAndReset} moving any mutable storage the builder holds for the
+   * property into an immutable collection the value can adopt without copying. No-op by default.
+   */
+  public void addHandOverField(@SuppressWarnings("unused") Block code) {}
+
+  /**
+   * Returns a condition that must also hold for a memoized {@code build()} to return its last
+   * value, if the property's builder state can change without a builder method being called.
+   */
+  public Optional<Excerpt> memoizedBuildGuard() {
+    return Optional.absent();
+  }
+
   /** Returns excerpts for any static types or methods added by this generator. */
   public Set<? extends StaticExcerpt> getStaticExcerpts() {
     return ImmutableSet.of();
@@ -16,6 +16,7 @@
 package org.inferred.freebuilder.processor;
 
 import static org.inferred.freebuilder.processor.BuilderMethods.clearMethod;
+import static org.inferred.freebuilder.processor.BuilderMethods.ensureCapacityMethod;
 import static org.inferred.freebuilder.processor.BuilderMethods.getter;
 import static org.inferred.freebuilder.processor.BuilderMethods.mutator;
 import static org.inferred.freebuilder.processor.BuilderMethods.putAllMethod;
@@ -27,13 +28,17 @@ import static org.inferred.freebuilder.processor.Util.upperBound;
 import static org.inferred.freebuilder.processor.util.ModelUtils.maybeDeclared;
 import static org.inferred.freebuilder.processor.util.ModelUtils.maybeUnbox;
 import static org.inferred.freebuilder.processor.util.ModelUtils.overrides;
+import static org.inferred.freebuilder.processor.util.StaticExcerpt.Type.METHOD;
+import static org.inferred.freebuilder.processor.util.StaticExcerpt.Type.TYPE;
 import static org.inferred.freebuilder.processor.util.feature.FunctionPackage.FUNCTION_PACKAGE;
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.diamondOperator;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSetMultimap;
-import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Multimaps;
 import com.google.common.collect.SetMultimap;
@@ -41,12 +46,15 @@ import com.google.common.collect.SetMultimap;
 import org.inferred.freebuilder.processor.Metadata.Property;
 import org.inferred.freebuilder.processor.PropertyCodeGenerator.Config;
 import org.inferred.freebuilder.processor.excerpt.CheckedSetMultimap;
+import org.inferred.freebuilder.processor.excerpt.CompactSet;
 import org.inferred.freebuilder.processor.util.Block;
 import org.inferred.freebuilder.processor.util.ParameterizedType;
 import org.inferred.freebuilder.processor.util.SourceBuilder;
 import org.inferred.freebuilder.processor.util.StaticExcerpt;
 
+import java.io.Serializable;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.Map.Entry;
 import java.util.Set;
 
@@ -117,8 +125,8 @@ public class SetMultimapPropertyFactory implements PropertyCodeGenerator.Factory
 
     @Override
     public void addBuilderFieldDeclaration(SourceBuilder code) {
-      code.addLine("private final %1$s<%2$s, %3$s> %4$s = %1$s.create();",
-          LinkedHashMultimap.class, keyType, valueType, property.getName());
+      code.addLine("private %s<%s, %s> %s = %s.of();",
+          SetMultimap.class, keyType, valueType, property.getName(), ImmutableSetMultimap.class);
     }
 
     @Override
@@ -130,6 +138,7 @@ public class SetMultimapPropertyFactory implements PropertyCodeGenerator.Factory
       addRemoveAll(code, metadata);
       addMutate(code, metadata);
       addClear(code, metadata);
+      addEnsureCapacity(code, metadata);
       addGetter(code, metadata);
     }
 
@@ -160,13 +169,15 @@ public class SetMultimapPropertyFactory implements PropertyCodeGenerator.Factory
               metadata.getBuilder(),
               putMethod(property),
               unboxedKeyType.or(keyType),
-              unboxedValueType.or(valueType));
+              unboxedValueType.or(valueType))
+          .add(MemoizedBuild.invalidate(metadata));
       if (!unboxedKeyType.isPresent()) {
         code.addLine("  %s.checkNotNull(key);", Preconditions.class);
       }
       if (!unboxedValueType.isPresent()) {
         code.addLine("  %s.checkNotNull(value);", Preconditions.class);
       }
+      addConvertToMutableMultimap(code);
       code.addLine("  this.%s.put(key, value);", property.getName())
           .addLine("  return (%s) this;", metadata.getBuilder())
           .addLine("}");
@@ -195,6 +206,7 @@ public class SetMultimapPropertyFactory implements PropertyCodeGenerator.Factory
               unboxedKeyType.or(keyType),
               Iterable.class,
               valueType)
+          .add(MemoizedBuild.invalidate(metadata))
           .addLine("  for (%s value : values) {", unboxedValueType.or(valueType))
           .addLine("    %s(key, value);", putMethod(property))
           .addLine("  }")
@@ -221,7 +233,18 @@ public class SetMultimapPropertyFactory implements PropertyCodeGenerator.Factory
               Multimap.class,
               keyType,
               valueType)
-          .addLine("  for (%s<? extends %s, ? extends %s<? extends %s>> entry",
+          .add(MemoizedBuild.invalidate(metadata));
+      if (!overridesPutMethod) {
+        code.addLine("  if (multimap instanceof %s && !multimap.isEmpty()) {",
+                ImmutableMultimap.class)
+            .addLine("    if (%s instanceof %s) {", property.getName(), ImmutableSetMultimap.class)
+            .addLine("      %1$s = mutableSetMultimap(%1$s, 0);", property.getName())
+            .addLine("    }")
+            .addLine("    %s.putAll(multimap);", property.getName())
+            .addLine("    return (%s) this;", metadata.getBuilder())
+            .addLine("  }");
+      }
+      code.addLine("  for (%s<? extends %s, ? extends %s<? extends %s>> entry",
               Entry.class, keyType, Collection.class, valueType)
           .addLine("      : multimap.asMap().entrySet()) {")
           .addLine("    %s(entry.getKey(), entry.getValue());",
@@ -256,13 +279,15 @@ public class SetMultimapPropertyFactory implements PropertyCodeGenerator.Factory
               metadata.getBuilder(),
               removeMethod(property),
               unboxedKeyType.or(keyType),
-              unboxedValueType.or(valueType));
+              unboxedValueType.or(valueType))
+          .add(MemoizedBuild.invalidate(metadata));
       if (!unboxedKeyType.isPresent()) {
         code.addLine("  %s.checkNotNull(key);", Preconditions.class);
       }
       if (!unboxedValueType.isPresent()) {
         code.addLine("  %s.checkNotNull(value);", Preconditions.class);
       }
+      addConvertToMutableMultimap(code);
       code.addLine("  this.%s.remove(key, value);", property.getName())
           .addLine("  return (%s) this;", metadata.getBuilder())
           .addLine("}");
@@ -283,10 +308,12 @@ public class SetMultimapPropertyFactory implements PropertyCodeGenerator.Factory
           .addLine("public %s %s(%s key) {",
               metadata.getBuilder(),
               removeAllMethod(property),
-              unboxedKeyType.or(keyType));
+              unboxedKeyType.or(keyType))
+          .add(MemoizedBuild.invalidate(metadata));
       if (!unboxedKeyType.isPresent()) {
         code.addLine("  %s.checkNotNull(key);", Preconditions.class);
       }
+      addConvertToMutableMultimap(code);
       code.addLine("  this.%s.removeAll(key);", property.getName())
           .addLine("  return (%s) this;", metadata.getBuilder())
           .addLine("}");
@@ -314,7 +341,9 @@ public class SetMultimapPropertyFactory implements PropertyCodeGenerator.Factory
               consumer.getQualifiedName(),
               SetMultimap.class,
               keyType,
-              valueType);
+              valueType)
+          .add(MemoizedBuild.invalidate(metadata));
+      addConvertToMutableMultimap(code);
       if (overridesPutMethod) {
         code.addLine("  mutator.accept(new CheckedSetMultimap<>(%s, this::%s));",
             property.getName(), putMethod(property));
@@ -336,7 +365,32 @@ public class SetMultimapPropertyFactory implements PropertyCodeGenerator.Factory
           .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
           .addLine(" */")
           .addLine("public %s %s() {", metadata.getBuilder(), clearMethod(property))
-          .addLine("  %s.clear();", property.getName())
+          .add(MemoizedBuild.invalidate(metadata))
+          .addLine("  if (%s instanceof %s) {", property.getName(), ImmutableSetMultimap.class)
+          .addLine("    %s = %s.of();", property.getName(), ImmutableSetMultimap.class)
+          .addLine("  } else {")
+          .addLine("    %s.clear();", property.getName())
+          .addLine("  }")
+          .addLine("  return (%s) this;", metadata.getBuilder())
+          .addLine("}");
+    }
+
+    private void addEnsureCapacity(SourceBuilder code, Metadata metadata) {
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Hints that the multimap to be returned from %s will hold at least",
+              metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+          .addLine(" * {@code minCapacity} distinct keys, so storage can be allocated for them up")
+          .addLine(" * front. The hint has no effect once storage has been allocated.")
+          .addLine(" *")
+          .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
+          .addLine(" */")
+          .addLine("public %s %s(int minCapacity) {",
+              metadata.getBuilder(), ensureCapacityMethod(property));
+      code.addLine("  if (%s instanceof %s && minCapacity > %s.keySet().size()) {",
+              property.getName(), ImmutableSetMultimap.class, property.getName())
+          .addLine("    %1$s = mutableSetMultimap(%1$s, minCapacity);", property.getName())
+          .addLine("  }")
           .addLine("  return (%s) this;", metadata.getBuilder())
           .addLine("}");
     }
@@ -352,12 +406,22 @@ public class SetMultimapPropertyFactory implements PropertyCodeGenerator.Factory
               SetMultimap.class,
               keyType,
               valueType,
-              getter(property))
-          .addLine("  return %s.unmodifiableSetMultimap(%s);",
-              Multimaps.class, property.getName())
+              getter(property));
+      addConvertToMutableMultimap(code);
+      code.addLine("  return %s.unmodifiableSetMultimap(%s);", Multimaps.class, property.getName())
           .addLine("}");
     }
 
+    /**
+     * Replaces an {@link ImmutableSetMultimap} adopted from a value, or the initial empty
+     * multimap, with a mutable copy before the builder's multimap is modified or exposed.
+     */
+    private void addConvertToMutableMultimap(SourceBuilder code) {
+      code.addLine("  if (%s instanceof %s) {", property.getName(), ImmutableSetMultimap.class)
+          .addLine("    %1$s = mutableSetMultimap(%1$s, 0);", property.getName())
+          .addLine("  }");
+    }
+
     @Override
     public void addFinalFieldAssignment(SourceBuilder code, String finalField, String builder) {
       code.addLine("%s = %s.copyOf(%s.%s);",
@@ -366,7 +430,18 @@ public class SetMultimapPropertyFactory implements PropertyCodeGenerator.Factory
 
     @Override
     public void addMergeFromValue(Block code, String value) {
-      code.addLine("%s(%s.%s());", putAllMethod(property), value, property.getGetterName());
+      code.addLine("if (%s instanceof %s && %s == %s.<%s, %s>of()) {",
+              value,
+              metadata.getValueType().getQualifiedName(),
+              property.getName(),
+              ImmutableSetMultimap.class,
+              keyType,
+              valueType)
+          .addLine("  %s = %s.copyOf(%s.%s());",
+              property.getName(), ImmutableSetMultimap.class, value, property.getGetterName())
+          .addLine("} else {")
+          .addLine("  %s(%s.%s());", putAllMethod(property), value, property.getGetterName())
+          .addLine("}");
     }
 
     @Override
@@ -383,18 +458,74 @@ public class SetMultimapPropertyFactory implements PropertyCodeGenerator.Factory
       code.addLine("%s.%s(%s);", builder, putAllMethod(property), variable);
     }
 
+    @Override
+    public EqualsCost getEqualsCost() {
+      return EqualsCost.COLLECTION;
+    }
+
     @Override
     public void addClearField(Block code) {
-      code.addLine("%s.clear();", property.getName());
+      code.addLine("%s();", clearMethod(property));
     }
 
     @Override
     public Set<StaticExcerpt> getStaticExcerpts() {
       ImmutableSet.Builder<StaticExcerpt> staticMethods = ImmutableSet.builder();
+      staticMethods.add(MUTABLE_SET_MULTIMAP);
+      staticMethods.add(SET_SUPPLIER_TYPE);
+      staticMethods.addAll(CompactSet.excerpts());
       if (overridesPutMethod) {
         staticMethods.addAll(CheckedSetMultimap.excerpts());
       }
       return staticMethods.build();
     }
   }
+
+  /**
+   * Copies {@code entries} into a mutable multimap storing each key's values in a
+   * {@code CompactSet}, which holds a few values in a small array rather than allocating a
+   * {@code LinkedHashMultimap} entry node per value. Entries are grouped by key, matching the
+   * iteration order of the built value.
+   * The key map is sized for at least {@code expectedKeys} keys.
+   */
+  private static final StaticExcerpt MUTABLE_SET_MULTIMAP =
+      new StaticExcerpt(METHOD, "mutableSetMultimap") {
+    @Override
+    public void addTo(SourceBuilder code) {
+      code.addLine("")
+          .addLine("private static <K, V> %s<K, V> mutableSetMultimap(", SetMultimap.class)
+          .addLine("    %s<? extends K, ? extends V> entries, int expectedKeys) {",
+              Multimap.class)
+          .addLine("  int keys = %s.max(expectedKeys, entries.keySet().size());", Math.class)
+          .addLine("  %s<K, V> multimap = %s.newSetMultimap(", SetMultimap.class, Multimaps.class)
+          .addLine("      new %s<K, %s<V>>((int) (keys / 0.75f + 1.0f)),",
+              LinkedHashMap.class, Collection.class)
+          .addLine("      new %s%s());", SET_SUPPLIER, diamondOperator("V"))
+          .addLine("  multimap.putAll(entries);")
+          .addLine("  return multimap;")
+          .addLine("}");
+    }
+  };
+
+  /**
+   * Supplies the per-key value storage of {@code mutableSetMultimap}. A named class, rather than
+   * an anonymous one, so builders holding the multimap stay serializable.
+   */
+  private static final String SET_SUPPLIER = "CompactSetSupplier";
+
+  private static final StaticExcerpt SET_SUPPLIER_TYPE = new StaticExcerpt(TYPE, SET_SUPPLIER) {
+    @Override
+    public void addTo(SourceBuilder code) {
+      code.addLine("")
+          .addLine("private static final class %s<V>", SET_SUPPLIER)
+          .addLine("    implements %s<%s<V>>, %s {", Supplier.class, Set.class, Serializable.class)
+          .addLine("")
+          .addLine("  private static final long serialVersionUID = 1L;")
+          .addLine("")
+          .addLine("  @Override public %s<V> get() {", Set.class)
+          .addLine("    return new %s%s();", CompactSet.NAME, diamondOperator("V"))
+          .addLine("  }")
+          .addLine("}");
+    }
+  };
 }
@@ -18,6 +18,7 @@ package org.inferred.freebuilder.processor;
 import static org.inferred.freebuilder.processor.BuilderMethods.addAllMethod;
 import static org.inferred.freebuilder.processor.BuilderMethods.addMethod;
 import static org.inferred.freebuilder.processor.BuilderMethods.clearMethod;
+import static org.inferred.freebuilder.processor.BuilderMethods.ensureCapacityMethod;
 import static org.inferred.freebuilder.processor.BuilderMethods.getter;
 import static org.inferred.freebuilder.processor.BuilderMethods.mutator;
 import static org.inferred.freebuilder.processor.BuilderMethods.removeMethod;
@@ -36,11 +37,14 @@ import static org.inferred.freebuilder.processor.util.feature.SourceLevel.diamon
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableSet;
 
 import org.inferred.freebuilder.processor.Metadata.Property;
 import org.inferred.freebuilder.processor.PropertyCodeGenerator.Config;
 import org.inferred.freebuilder.processor.excerpt.CheckedSet;
+import org.inferred.freebuilder.processor.excerpt.CompactImmutableCollections;
+import org.inferred.freebuilder.processor.excerpt.PrimitiveList;
 import org.inferred.freebuilder.processor.util.Block;
 import org.inferred.freebuilder.processor.util.Excerpts;
 import org.inferred.freebuilder.processor.util.ParameterizedType;
@@ -50,10 +54,12 @@ import org.inferred.freebuilder.processor.util.StaticExcerpt;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.Set;
 
 import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
 
 /**
@@ -111,8 +117,8 @@ public class SetPropertyFactory implements PropertyCodeGenerator.Factory {
         code.addLine("private %s<%s> %s = %s.of();",
             Set.class, elementType, property.getName(), ImmutableSet.class);
       } else {
-        code.addLine("private final %1$s<%2$s> %3$s = new %1$s%4$s();",
-            LinkedHashSet.class, elementType, property.getName(), diamondOperator(elementType));
+        code.addLine("private %s<%s> %s = %s.emptySet();",
+            Set.class, elementType, property.getName(), Collections.class);
       }
     }
 
@@ -124,6 +130,7 @@ public class SetPropertyFactory implements PropertyCodeGenerator.Factory {
       addRemove(code, metadata);
       addMutator(code, metadata);
       addClear(code, metadata);
+      addEnsureCapacity(code, metadata);
       addGetter(code, metadata);
     }
 
@@ -144,13 +151,9 @@ public class SetPropertyFactory implements PropertyCodeGenerator.Factory {
           .addLine("public %s %s(%s element) {",
               metadata.getBuilder(),
               addMethod(property),
-              unboxedType.or(elementType));
-      if (code.feature(GUAVA).isAvailable()) {
-        code.addLine("  if (this.%s instanceof %s) {", property.getName(), ImmutableSet.class)
-            .addLine("    this.%1$s = new %2$s%3$s(this.%1$s);",
-                property.getName(), LinkedHashSet.class, diamondOperator(elementType))
-            .addLine("  }");
-      }
+              unboxedType.or(elementType))
+          .add(MemoizedBuild.invalidate(metadata));
+      addConvertToMutableSet(code);
       if (unboxedType.isPresent()) {
         code.addLine("  this.%s.add(element);", property.getName());
       } else {
@@ -178,9 +181,12 @@ public class SetPropertyFactory implements PropertyCodeGenerator.Factory {
           .addLine("public %s %s(%s... elements) {",
               metadata.getBuilder(),
               addMethod(property),
-              unboxedType.or(elementType));
+              unboxedType.or(elementType))
+          .add(MemoizedBuild.invalidate(metadata));
       Optional<Class<?>> arrayUtils = code.feature(GUAVA).arrayUtils(unboxedType.or(elementType));
-      if (arrayUtils.isPresent()) {
+      if (primitiveKind().isPresent()) {
+        code.addLine("  return %s(elements, 0, elements.length);", addAllMethod(property));
+      } else if (arrayUtils.isPresent()) {
         code.addLine("  return %s(%s.asList(elements));", addAllMethod(property), arrayUtils.get());
       } else {
         // Primitive type, Guava not available
@@ -193,13 +199,124 @@ public class SetPropertyFactory implements PropertyCodeGenerator.Factory {
     }
 
     private void addAddAllMethods(SourceBuilder code, Metadata metadata) {
+      if (primitiveKind().isPresent()) {
+        addArrayRangeAddAll(code, metadata);
+      }
       if (code.feature(SOURCE_LEVEL).stream().isPresent()) {
+        if (primitiveKind().isPresent()) {
+          addPrimitiveSpliteratorAddAll(code, metadata);
+          addPrimitiveStreamAddAll(code, metadata);
+        }
         addSpliteratorAddAll(code, metadata);
         addStreamAddAll(code, metadata);
       }
       addIterableAddAll(code, metadata);
     }
 
+    /**
+     * Returns the element type's primitive kind if bulk operations can take unboxed arrays and
+     * streams of it, i.e. if it is {@code int}, {@code long} or {@code double}.
+     */
+    private Optional<TypeKind> primitiveKind() {
+      if (unboxedType.isPresent() && PrimitiveList.isSupported(unboxedType.get().getKind())) {
+        return Optional.of(unboxedType.get().getKind());
+      }
+      return Optional.absent();
+    }
+
+    private void addArrayRangeAddAll(SourceBuilder code, Metadata metadata) {
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Adds {@code length} elements of {@code elements}, starting at index")
+          .addLine(" * {@code offset}, to the set to be returned from %s, ignoring duplicate",
+              metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+          .addLine(" * elements (only the first duplicate element is added).")
+          .addLine(" *")
+          .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
+          .addLine(" * @throws NullPointerException if {@code elements} is null")
+          .addLine(" * @throws IndexOutOfBoundsException if {@code offset} or {@code length} is")
+          .addLine(" *     negative, or {@code offset + length} exceeds {@code elements.length}")
+          .addLine(" */")
+          .addLine("public %s %s(%s[] elements, int offset, int length) {",
+              metadata.getBuilder(), addAllMethod(property), unboxedType.get())
+          .add(MemoizedBuild.invalidate(metadata))
+          .addLine("  if (offset < 0 || length < 0 || offset > elements.length - length) {")
+          .addLine("    throw new %s(\"offset \" + offset + \", length \" + length",
+              IndexOutOfBoundsException.class)
+          .addLine("        + \", array length \" + elements.length);")
+          .addLine("  }");
+      if (overridesAddMethod) {
+        code.addLine("  for (int i = offset; i < offset + length; i++) {")
+            .addLine("    %s(elements[i]);", addMethod(property))
+            .addLine("  }");
+      } else {
+        addConvertToMutableSet(code);
+        code.addLine("  for (int i = offset; i < offset + length; i++) {")
+            .addLine("    %s.add(elements[i]);", property.getName())
+            .addLine("  }");
+      }
+      code.addLine("  return (%s) this;", metadata.getBuilder())
+          .addLine("}");
+    }
+
+    private void addPrimitiveSpliteratorAddAll(SourceBuilder code, Metadata metadata) {
+      String primitiveName = PrimitiveList.capitalizedName(primitiveKind().get());
+      QualifiedName spliterator = code.feature(SOURCE_LEVEL).spliterator().get();
+      QualifiedName primitiveConsumer =
+          QualifiedName.of("java.util.function", primitiveName + "Consumer");
+      addJavadocForAddAll(code, metadata);
+      code.addLine("public %s %s(%s elements) {",
+              metadata.getBuilder(),
+              addAllMethod(property),
+              spliterator.nestedType("Of" + primitiveName))
+          .add(MemoizedBuild.invalidate(metadata));
+      if (overridesAddMethod) {
+        code.addLine("  elements.forEachRemaining((%s) this::%s);",
+            primitiveConsumer, addMethod(property));
+      } else {
+        addConvertToMutableSet(code);
+        code.addLine("  elements.forEachRemaining((%s) %s::add);",
+            primitiveConsumer, property.getName());
+      }
+      code.addLine("  return (%s) this;", metadata.getBuilder())
+          .addLine("}");
+    }
+
+    private void addPrimitiveStreamAddAll(SourceBuilder code, Metadata metadata) {
+      String primitiveName = PrimitiveList.capitalizedName(primitiveKind().get());
+      addJavadocForAddAll(code, metadata);
+      code.addLine("public %s %s(%s elements) {",
+              metadata.getBuilder(),
+              addAllMethod(property),
+              QualifiedName.of("java.util.stream", primitiveName + "Stream"))
+          .add(MemoizedBuild.invalidate(metadata))
+          .addLine("  return %s(elements.spliterator());", addAllMethod(property))
+          .addLine("}");
+    }
+
+    /**
+     * Replaces an {@link ImmutableSet} adopted from a value, or the initial empty set, with a
+     * mutable copy before the builder's set is modified or exposed.
+     */
+    private void addConvertToMutableSet(SourceBuilder code) {
+      addConvertToMutableSet(code, "  ");
+    }
+
+    private void addConvertToMutableSet(SourceBuilder code, String indent) {
+      if (code.feature(GUAVA).isAvailable()) {
+        code.addLine("%sif (%s instanceof %s) {", indent, property.getName(), ImmutableSet.class)
+            .addLine("%s  %2$s = new %3$s%4$s(%2$s);",
+                indent, property.getName(), LinkedHashSet.class, diamondOperator(elementType))
+            .addLine("%s}", indent);
+      } else {
+        code.addLine("%sif (%s == %s.<%s>emptySet()) {",
+                indent, property.getName(), Collections.class, elementType)
+            .addLine("%s  %s = new %s%s();",
+                indent, property.getName(), LinkedHashSet.class, diamondOperator(elementType))
+            .addLine("%s}", indent);
+      }
+    }
+
     private void addSpliteratorAddAll(SourceBuilder code, Metadata metadata) {
       QualifiedName spliterator = code.feature(SOURCE_LEVEL).spliterator().get();
       addJavadocForAddAll(code, metadata);
@@ -208,6 +325,7 @@ public class SetPropertyFactory implements PropertyCodeGenerator.Factory {
               addAllMethod(property),
               spliterator,
               elementType)
+          .add(MemoizedBuild.invalidate(metadata))
           .addLine("  elements.forEachRemaining(this::%s);", addMethod(property))
           .addLine("  return (%s) this;", metadata.getBuilder())
           .addLine("}");
@@ -221,6 +339,7 @@ public class SetPropertyFactory implements PropertyCodeGenerator.Factory {
               addAllMethod(property),
               baseStream,
               elementType)
+          .add(MemoizedBuild.invalidate(metadata))
           .addLine("  return %s(elements.spliterator());", addAllMethod(property))
           .addLine("}");
     }
@@ -233,7 +352,20 @@ public class SetPropertyFactory implements PropertyCodeGenerator.Factory {
               addAllMethod(property),
               Iterable.class,
               elementType)
-          .add(Excerpts.forEach(unboxedType.or(elementType), "elements", addMethod(property)))
+          .add(MemoizedBuild.invalidate(metadata));
+      if (!overridesAddMethod && code.feature(GUAVA).isAvailable()) {
+        code.addLine("  if (elements instanceof %1$s && !((%1$s<?>) elements).isEmpty()) {",
+                ImmutableCollection.class)
+            .addLine("    if (%s instanceof %s) {", property.getName(), ImmutableSet.class)
+            .addLine("      %1$s = new %2$s%3$s(%1$s);",
+                property.getName(), LinkedHashSet.class, diamondOperator(elementType))
+            .addLine("    }")
+            .addLine("    %s.addAll((%s<? extends %s>) elements);",
+                property.getName(), ImmutableCollection.class, elementType)
+            .addLine("    return (%s) this;", metadata.getBuilder())
+            .addLine("  }");
+      }
+      code.add(Excerpts.forEach(unboxedType.or(elementType), "elements", addMethod(property)))
           .addLine("  return (%s) this;", metadata.getBuilder())
           .addLine("}");
     }
@@ -267,13 +399,9 @@ public class SetPropertyFactory implements PropertyCodeGenerator.Factory {
           .addLine("public %s %s(%s element) {",
               metadata.getBuilder(),
               removeMethod(property),
-              unboxedType.or(elementType));
-      if (code.feature(GUAVA).isAvailable()) {
-        code.addLine("  if (this.%s instanceof %s) {", property.getName(), ImmutableSet.class)
-            .addLine("    this.%1$s = new %2$s%3$s(this.%1$s);",
-                property.getName(), LinkedHashSet.class, diamondOperator(elementType))
-            .addLine("  }");
-      }
+              unboxedType.or(elementType))
+          .add(MemoizedBuild.invalidate(metadata));
+      addConvertToMutableSet(code);
       if (unboxedType.isPresent()) {
         code.addLine("  this.%s.remove(element);", property.getName());
       } else {
@@ -305,13 +433,9 @@ public class SetPropertyFactory implements PropertyCodeGenerator.Factory {
                 mutator(property),
                 consumer.get().getQualifiedName(),
                 Set.class,
-                elementType);
-        if (code.feature(GUAVA).isAvailable()) {
-          code.addLine("  if (%s instanceof %s) {", property.getName(), ImmutableSet.class)
-              .addLine("    %1$s = new %2$s%3$s(%1$s);",
-                  property.getName(), LinkedHashSet.class, diamondOperator(elementType))
-              .addLine("  }");
-        }
+                elementType)
+            .add(MemoizedBuild.invalidate(metadata));
+        addConvertToMutableSet(code);
         if (overridesAddMethod) {
           code.addLine("  mutator.accept(new CheckedSet<%s>(%s, this::%s));",
                   elementType, property.getName(), addMethod(property));
@@ -333,7 +457,8 @@ public class SetPropertyFactory implements PropertyCodeGenerator.Factory {
           .addLine(" *")
           .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
           .addLine(" */")
-          .addLine("public %s %s() {", metadata.getBuilder(), clearMethod(property));
+          .addLine("public %s %s() {", metadata.getBuilder(), clearMethod(property))
+          .add(MemoizedBuild.invalidate(metadata));
       if (code.feature(GUAVA).isAvailable()) {
         code.addLine("if (%s instanceof %s) {", property.getName(), ImmutableSet.class)
             .addLine("  %s = %s.of();", property.getName(), ImmutableSet.class)
@@ -347,6 +472,37 @@ public class SetPropertyFactory implements PropertyCodeGenerator.Factory {
           .addLine("}");
     }
 
+    private void addEnsureCapacity(SourceBuilder code, Metadata metadata) {
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Hints that the set to be returned from %s will hold at least",
+              metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+          .addLine(" * {@code minCapacity} elements, so storage can be allocated for them up")
+          .addLine(" * front. The hint has no effect once storage has been allocated.")
+          .addLine(" *")
+          .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
+          .addLine(" */")
+          .addLine("public %s %s(int minCapacity) {",
+              metadata.getBuilder(), ensureCapacityMethod(property));
+      if (code.feature(GUAVA).isAvailable()) {
+        code.addLine("  if (%s instanceof %s && minCapacity > %s.size()) {",
+                property.getName(), ImmutableSet.class, property.getName())
+            .addLine("    %s<%s> set = new %s%s((int) (minCapacity / 0.75f + 1.0f));",
+                Set.class, elementType, LinkedHashSet.class, diamondOperator(elementType))
+            .addLine("    set.addAll(%s);", property.getName())
+            .addLine("    %s = set;", property.getName())
+            .addLine("  }");
+      } else {
+        code.addLine("  if (%s == %s.<%s>emptySet() && minCapacity > 0) {",
+                property.getName(), Collections.class, elementType)
+            .addLine("    %s = new %s%s((int) (minCapacity / 0.75f + 1.0f));",
+                property.getName(), LinkedHashSet.class, diamondOperator(elementType))
+            .addLine("  }");
+      }
+      code.addLine("  return (%s) this;", metadata.getBuilder())
+          .addLine("}");
+    }
+
     private void addGetter(SourceBuilder code, Metadata metadata) {
       code.addLine("")
           .addLine("/**")
@@ -355,12 +511,7 @@ public class SetPropertyFactory implements PropertyCodeGenerator.Factory {
           .addLine(" * Changes to this builder will be reflected in the view.")
           .addLine(" */")
           .addLine("public %s<%s> %s() {", Set.class, elementType, getter(property));
-      if (code.feature(GUAVA).isAvailable()) {
-        code.addLine("  if (%s instanceof %s) {", property.getName(), ImmutableSet.class)
-            .addLine("    %1$s = new %2$s%3$s(%1$s);",
-                property.getName(), LinkedHashSet.class, diamondOperator(elementType))
-            .addLine("  }");
-      }
+      addConvertToMutableSet(code);
       code.addLine("  return %s.unmodifiableSet(%s);", Collections.class, property.getName())
           .addLine("}");
     }
@@ -388,20 +539,45 @@ public class SetPropertyFactory implements PropertyCodeGenerator.Factory {
             .addLine("  %s = %s.copyOf(%s.%s());",
                 property.getName(), ImmutableSet.class, value, property.getGetterName())
             .addLine("} else {");
+      } else if (!overridesAddMethod) {
+        code.addLine("if (%s instanceof %s) {", value, metadata.getValueType().getQualifiedName());
+        addConvertToMutableSet(code);
+        code.addLine("  %s.addAll(%s.%s());", property.getName(), value, property.getGetterName())
+            .addLine("} else {");
       }
       code.addLine("%s(%s.%s());", addAllMethod(property), value, property.getGetterName());
-      if (code.feature(GUAVA).isAvailable()) {
+      if (code.feature(GUAVA).isAvailable() || !overridesAddMethod) {
         code.addLine("}");
       }
     }
 
     @Override
     public void addMergeFromBuilder(Block code, String builder) {
-      code.addLine("%s(((%s) %s).%s);",
-          addAllMethod(property),
-          metadata.getGeneratedBuilder(),
-          builder,
-          property.getName());
+      if (!overridesAddMethod && !code.feature(GUAVA).isAvailable()) {
+        addConvertToMutableSet(code, "");
+        code.addLine("%s.addAll(((%s) %s).%s);",
+            property.getName(),
+            metadata.getGeneratedBuilder(),
+            builder,
+            property.getName());
+      } else {
+        code.addLine("%s(((%s) %s).%s);",
+            addAllMethod(property),
+            metadata.getGeneratedBuilder(),
+            builder,
+            property.getName());
+      }
+    }
+
+    @Override
+    public void addAppendToString(SourceBuilder code, String result, String finalField) {
+      Optional<QualifiedName> appender = ValueAppender.generatedBuilderOf(elementType, metadata);
+      if (appender.isPresent()) {
+        ValueAppender.addAppendCollection(
+            code, result, property.getName(), finalField, elementType, appender.get());
+      } else {
+        super.addAppendToString(code, result, finalField);
+      }
     }
 
     @Override
@@ -409,6 +585,11 @@ public class SetPropertyFactory implements PropertyCodeGenerator.Factory {
       code.addLine("%s.%s(%s);", builder, addAllMethod(property), variable);
     }
 
+    @Override
+    public EqualsCost getEqualsCost() {
+      return EqualsCost.COLLECTION;
+    }
+
     @Override
     public void addClearField(Block code) {
       code.addLine("%s();", clearMethod(property));
@@ -418,6 +599,7 @@ public class SetPropertyFactory implements PropertyCodeGenerator.Factory {
     public Set<StaticExcerpt> getStaticExcerpts() {
       ImmutableSet.Builder<StaticExcerpt> staticMethods = ImmutableSet.builder();
       staticMethods.add(IMMUTABLE_SET);
+      staticMethods.addAll(CompactImmutableCollections.setExcerpts());
       if (overridesAddMethod) {
         staticMethods.addAll(CheckedSet.excerpts());
       }
@@ -437,9 +619,13 @@ public class SetPropertyFactory implements PropertyCodeGenerator.Factory {
             .addLine("    return %s.emptySet();", Collections.class)
             .addLine("  case 1:")
             .addLine("    return %s.singleton(elements.iterator().next());", Collections.class)
+            .addLine("  case 2:")
+            .addLine("    %s<E> iterator = elements.iterator();", Iterator.class)
+            .addLine("    return new %s<E>(iterator.next(), iterator.next());",
+                CompactImmutableCollections.PAIR_SET_TYPE)
             .addLine("  default:")
-            .addLine("    return %s.unmodifiableSet(new %s%s(elements));",
-                Collections.class, LinkedHashSet.class, diamondOperator("E"))
+            .addLine("    return new %s<E>(elements.toArray());",
+                CompactImmutableCollections.SET_TYPE)
             .addLine("  }")
             .addLine("}");
       }
@@ -185,7 +185,8 @@ public class SortedSetPropertyFactory implements PropertyCodeGenerator.Factory {
           .addLine("public %s %s(%s element) {",
               metadata.getBuilder(),
               addMethod(property),
-              unboxedType.or(elementType));
+              unboxedType.or(elementType))
+          .add(MemoizedBuild.invalidate(metadata));
       addConvertToTreeSet(code);
       if (unboxedType.isPresent()) {
         code.addLine("  this.%s.add(element);", property.getName());
@@ -228,7 +229,8 @@ public class SortedSetPropertyFactory implements PropertyCodeGenerator.Factory {
           .addLine("public %s %s(%s... elements) {",
               metadata.getBuilder(),
               addMethod(property),
-              unboxedType.or(elementType));
+              unboxedType.or(elementType))
+          .add(MemoizedBuild.invalidate(metadata));
       Optional<Class<?>> arrayUtils = code.feature(GUAVA).arrayUtils(unboxedType.or(elementType));
       if (arrayUtils.isPresent()) {
         code.addLine("  return %s(%s.asList(elements));", addAllMethod(property), arrayUtils.get());
@@ -258,6 +260,7 @@ public class SortedSetPropertyFactory implements PropertyCodeGenerator.Factory {
               addAllMethod(property),
               spliterator,
               elementType)
+          .add(MemoizedBuild.invalidate(metadata))
           .addLine("  elements.forEachRemaining(this::%s);", addMethod(property))
           .addLine("  return (%s) this;", metadata.getBuilder())
           .addLine("}");
@@ -271,6 +274,7 @@ public class SortedSetPropertyFactory implements PropertyCodeGenerator.Factory {
               addAllMethod(property),
               baseStream,
               elementType)
+          .add(MemoizedBuild.invalidate(metadata))
           .addLine("  return %s(elements.spliterator());", addAllMethod(property))
           .addLine("}");
     }
@@ -283,6 +287,7 @@ public class SortedSetPropertyFactory implements PropertyCodeGenerator.Factory {
               addAllMethod(property),
               Iterable.class,
               elementType)
+          .add(MemoizedBuild.invalidate(metadata))
           .add(Excerpts.forEach(unboxedType.or(elementType), "elements", addMethod(property)))
           .addLine("  return (%s) this;", metadata.getBuilder())
           .addLine("}");
@@ -317,7 +322,8 @@ public class SortedSetPropertyFactory implements PropertyCodeGenerator.Factory {
           .addLine("public %s %s(%s element) {",
               metadata.getBuilder(),
               removeMethod(property),
-              unboxedType.or(elementType));
+              unboxedType.or(elementType))
+          .add(MemoizedBuild.invalidate(metadata));
       addConvertToTreeSet(code);
       if (unboxedType.isPresent()) {
         code.addLine("  this.%s.remove(element);", property.getName());
@@ -350,7 +356,8 @@ public class SortedSetPropertyFactory implements PropertyCodeGenerator.Factory {
                 mutator(property),
                 consumer.get().getQualifiedName(),
                 SortedSet.class,
-                elementType);
+                elementType)
+            .add(MemoizedBuild.invalidate(metadata));
         addConvertToTreeSet(code);
         if (overridesAddMethod) {
           code.addLine("  mutator.accept(new CheckedNavigableSet<%s>(%s, this::%s));",
@@ -373,7 +380,8 @@ public class SortedSetPropertyFactory implements PropertyCodeGenerator.Factory {
           .addLine(" *")
           .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
           .addLine(" */")
-          .addLine("public %s %s() {", metadata.getBuilder(), clearMethod(property));
+          .addLine("public %s %s() {", metadata.getBuilder(), clearMethod(property))
+          .add(MemoizedBuild.invalidate(metadata));
       if (code.feature(GUAVA).isAvailable()) {
         code.addLine("  if (%s instanceof %s) {", property.getName(), ImmutableSortedSet.class)
             .addLine("    %s = %s.of();", property.getName(), ImmutableSortedSet.class)
@@ -469,6 +477,11 @@ public class SortedSetPropertyFactory implements PropertyCodeGenerator.Factory {
       code.addLine("%s.%s(%s);", builder, addAllMethod(property), variable);
     }
 
+    @Override
+    public EqualsCost getEqualsCost() {
+      return EqualsCost.COLLECTION;
+    }
+
     @Override
     public void addClearField(Block code) {
       code.addLine("%s();", clearMethod(property));
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import com.google.common.base.Joiner;
+
+import org.inferred.freebuilder.processor.Metadata.Property;
+import org.inferred.freebuilder.processor.PropertyCodeGenerator.Type;
+import org.inferred.freebuilder.processor.util.Excerpt;
+import org.inferred.freebuilder.processor.util.Excerpts;
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Excerpts tracking which required properties have not been set, as a bit field named
+ * {@code _unsetProperties} in the builder and partial.
+ *
+ * <p>Bit <i>n</i> is set while the <i>n</i>th property is a required property that has not yet
+ * been set. Bits are indexed by position among all properties, not just required ones, so that
+ * property code generators can find their bit without knowing which other properties are
+ * required. The field is an {@code int} for up to 32 properties, a {@code long} for up to 64,
+ * and a {@code long[]} beyond that.
+ *
+ * <p>The property masks passed between the optional {@code diff} and
+ * {@code mergeFrom(value, changed)} methods share this layout, with a bit set for each property
+ * that differs.
+ */
+class UnsetProperties {
+
+  private static final int INT_BITS = 32;
+  private static final int LONG_BITS = 64;
+
+  /** Returns the type of the {@code _unsetProperties} field. */
+  public static String fieldType(Metadata metadata) {
+    int count = count(metadata);
+    if (count <= INT_BITS) {
+      return "int";
+    } else if (count <= LONG_BITS) {
+      return "long";
+    } else {
+      return "long[]";
+    }
+  }
+
+  /**
+   * Returns an initializer for the {@code _unsetProperties} field, marking every required property
+   * unset. Requires the code generators of all properties to be known.
+   */
+  public static Excerpt allUnset(Metadata metadata) {
+    int count = count(metadata);
+    long[] words = new long[(count + LONG_BITS - 1) / LONG_BITS];
+    for (int i = 0; i < count; i++) {
+      if (metadata.getProperties().get(i).getCodeGenerator().getType() == Type.REQUIRED) {
+        words[i / LONG_BITS] |= 1L << i;
+      }
+    }
+    if (count <= INT_BITS) {
+      return Excerpts.add("0x%s", Integer.toHexString((int) words[0]));
+    } else if (count <= LONG_BITS) {
+      return Excerpts.add("0x%sL", Long.toHexString(words[0]));
+    }
+    List<String> literals = new ArrayList<String>();
+    for (long word : words) {
+      literals.add("0x" + Long.toHexString(word) + "L");
+    }
+    return Excerpts.add("{%s}", Joiner.on(", ").join(literals));
+  }
+
+  /** Returns a boolean expression that is true if {@code property} is unset. */
+  public static Excerpt isUnset(Object unsetProperties, Metadata metadata, Property property) {
+    return Excerpts.add("(%s & %s) != 0", word(unsetProperties, metadata, property),
+        mask(metadata, property));
+  }
+
+  /** Returns a boolean expression that is true if {@code property} has been set. */
+  public static Excerpt isSet(Object unsetProperties, Metadata metadata, Property property) {
+    return Excerpts.add("(%s & %s) == 0", word(unsetProperties, metadata, property),
+        mask(metadata, property));
+  }
+
+  /** Returns an initializer for a bit field of this layout with no bits set. */
+  public static Excerpt noBits(Metadata metadata) {
+    int count = count(metadata);
+    if (count <= INT_BITS) {
+      return Excerpts.add("0");
+    } else if (count <= LONG_BITS) {
+      return Excerpts.add("0L");
+    }
+    return Excerpts.add("new long[%s]", (count + LONG_BITS - 1) / LONG_BITS);
+  }
+
+  /** Returns a boolean expression that is true if the bit for {@code property} is set. */
+  public static Excerpt hasBit(Object bits, Metadata metadata, Property property) {
+    return isUnset(bits, metadata, property);
+  }
+
+  /** Returns a statement setting the bit for {@code property} in {@code bits}. */
+  public static Excerpt setBit(Object bits, Metadata metadata, Property property) {
+    return Excerpts.add("%s |= %s;", word(bits, metadata, property), mask(metadata, property));
+  }
+
+  /** Returns a statement marking {@code property} as set on this builder. */
+  public static Excerpt markSet(Metadata metadata, Property property) {
+    return Excerpts.add("%s &= ~%s;", word("_unsetProperties", metadata, property),
+        mask(metadata, property));
+  }
+
+  /** Returns a boolean expression that is true if any required property is unset. */
+  public static Excerpt anyUnset(Object unsetProperties, Metadata metadata) {
+    int count = count(metadata);
+    if (count <= LONG_BITS) {
+      return Excerpts.add("%s != 0", unsetProperties);
+    }
+    StringBuilder words = new StringBuilder();
+    for (int i = 0; i * LONG_BITS < count; i++) {
+      words.append(i == 0 ? "(" : " | ").append(unsetProperties).append("[").append(i).append("]");
+    }
+    return Excerpts.add("%s) != 0", words);
+  }
+
+  /** Returns a statement setting this instance's {@code _unsetProperties} to match another's. */
+  public static Excerpt assignFrom(Object unsetProperties, Metadata metadata) {
+    if (count(metadata) <= LONG_BITS) {
+      return Excerpts.add("_unsetProperties = %s;", unsetProperties);
+    }
+    return Excerpts.add("%1$s.arraycopy(%2$s, 0, _unsetProperties, 0, _unsetProperties.length);",
+        System.class, unsetProperties);
+  }
+
+  /** Returns an expression evaluating to an unshared copy of {@code unsetProperties}. */
+  public static Excerpt copyOf(Object unsetProperties, Metadata metadata) {
+    if (count(metadata) <= LONG_BITS) {
+      return Excerpts.add("%s", unsetProperties);
+    }
+    return Excerpts.add("%s.clone()", unsetProperties);
+  }
+
+  /** Returns a boolean expression that is true if {@code a} and {@code b} are equal. */
+  public static Excerpt equal(Object a, Object b, Metadata metadata) {
+    if (count(metadata) <= LONG_BITS) {
+      return Excerpts.add("%s == %s", a, b);
+    }
+    return Excerpts.add("%s.equals(%s, %s)", Arrays.class, a, b);
+  }
+
+  /** Returns an int expression hashing {@code unsetProperties}. */
+  public static Excerpt hashCode(Object unsetProperties, Metadata metadata) {
+    int count = count(metadata);
+    if (count <= INT_BITS) {
+      return Excerpts.add("%s", unsetProperties);
+    } else if (count <= LONG_BITS) {
+      return Excerpts.add("(int) (%1$s ^ (%1$s >>> 32))", unsetProperties);
+    }
+    return Excerpts.add("%s.hashCode(%s)", Arrays.class, unsetProperties);
+  }
+
+  /**
+   * Returns an expression evaluating to a list of the unset properties, formatted like
+   * {@code [name, age]} by {@code toString}.
+   */
+  public static Excerpt names(Object unsetProperties, Metadata metadata) {
+    return Excerpts.add("%s.unset(%s)", metadata.getPropertyEnum(), unsetProperties);
+  }
+
+  /**
+   * Returns the argument to pass to the property enum constructor, recording the bit tracking
+   * {@code property}.
+   */
+  public static int bit(Metadata metadata, Property property) {
+    return index(metadata, property);
+  }
+
+  /**
+   * Adds the method used by {@link #names} to the property enum, which must have an {@code int}
+   * field named {@code bit} holding the value of {@link #bit} for each constant.
+   */
+  public static void addPropertyEnumMethods(SourceBuilder code, Metadata metadata) {
+    int count = count(metadata);
+    String enumType = metadata.getPropertyEnum().getSimpleName();
+    String isUnset;
+    if (count <= INT_BITS) {
+      isUnset = "(unsetProperties & (1 << property.bit)) != 0";
+    } else if (count <= LONG_BITS) {
+      isUnset = "(unsetProperties & (1L << property.bit)) != 0";
+    } else {
+      isUnset = "(unsetProperties[property.bit >>> 6] & (1L << property.bit)) != 0";
+    }
+    code.addLine("")
+        .addLine("  private static %s<%s> unset(%s unsetProperties) {",
+            List.class, enumType, fieldType(metadata))
+        .addLine("    %1$s<%2$s> result = new %3$s<%2$s>();", List.class, enumType, ArrayList.class)
+        .addLine("    for (%1$s property : %1$s.values()) {", enumType)
+        .addLine("      if (%s) {", isUnset)
+        .addLine("        result.add(property);")
+        .addLine("      }")
+        .addLine("    }")
+        .addLine("    return result;")
+        .addLine("  }");
+  }
+
+  private static int count(Metadata metadata) {
+    return metadata.getProperties().size();
+  }
+
+  private static int index(Metadata metadata, Property property) {
+    List<Property> properties = metadata.getProperties();
+    for (int i = 0; i < properties.size(); i++) {
+      if (properties.get(i).getName().equals(property.getName())) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException("Unknown property " + property.getName());
+  }
+
+  private static Excerpt word(Object unsetProperties, Metadata metadata, Property property) {
+    if (count(metadata) <= LONG_BITS) {
+      return Excerpts.add("%s", unsetProperties);
+    }
+    return Excerpts.add("%s[%s]", unsetProperties, index(metadata, property) / LONG_BITS);
+  }
+
+  private static String mask(Metadata metadata, Property property) {
+    int index = index(metadata, property);
+    if (count(metadata) <= INT_BITS) {
+      return "(1 << " + index + ")";
+    }
+    return "(1L << " + (index % LONG_BITS) + ")";
+  }
+
+  private UnsetProperties() {}
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static com.google.common.collect.Iterables.any;
+import static javax.lang.model.util.ElementFilter.typesIn;
+import static org.inferred.freebuilder.processor.util.ModelUtils.findAnnotationMirror;
+import static org.inferred.freebuilder.processor.util.ModelUtils.maybeAsTypeElement;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+
+import org.inferred.freebuilder.processor.util.QualifiedName;
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+
+/**
+ * Code generation for the {@code appendTo} methods that let {@code toString} write nested
+ * &#64;FreeBuilder values straight into the enclosing value's {@link StringBuilder}.
+ *
+ * <p>The value and partial types are private, so each generated builder superclass also gets a
+ * package-private static {@code appendTo(StringBuilder, Object)} method, which other generated
+ * builders in the same package call for properties (and collection elements) of its type.
+ */
+class ValueAppender {
+
+  /** Name of both the instance and the static {@code appendTo} methods. */
+  public static final String METHOD_NAME = "appendTo";
+
+  /**
+   * Returns the generated builder superclass of {@code type}, if {@code type} is a &#64;FreeBuilder
+   * type whose static {@code appendTo} and {@code isValue} methods can be called from the builder
+   * described by {@code metadata}.
+   */
+  public static Optional<QualifiedName> generatedBuilderOf(TypeMirror type, Metadata metadata) {
+    Optional<TypeElement> element = maybeAsTypeElement(type);
+    if (!element.isPresent()) {
+      return Optional.absent();
+    }
+    QualifiedName typeName = QualifiedName.of(element.get());
+    String packageName = metadata.getGeneratedBuilder().getQualifiedName().getPackage();
+    if (!typeName.getPackage().equals(packageName)) {
+      // The static methods are package-private.
+      return Optional.absent();
+    }
+    // As in BuildablePropertyFactory, assume @FreeBuilder types will have the method added, as
+    // their builder superclass may not have been generated yet. The annotation has source
+    // retention, so types from earlier compilations, which may lack the method, are skipped.
+    // Without a Builder subclass, only an empty placeholder superclass is generated.
+    if (!findAnnotationMirror(element.get(), "org.inferred.freebuilder.FreeBuilder").isPresent()
+        || !any(typesIn(element.get().getEnclosedElements()), IS_BUILDER_TYPE)) {
+      return Optional.absent();
+    }
+    return Optional.of(QualifiedName.of(
+        packageName, Joiner.on('_').join(typeName.getSimpleNames()) + "_Builder"));
+  }
+
+  /**
+   * Adds code appending "name=[a, b]" for a collection property to the {@link StringBuilder}
+   * {@code result}, formatting each element with the static {@code appendTo} method of
+   * {@code appender}, the generated builder superclass of {@code elementType}.
+   */
+  public static void addAppendCollection(
+      SourceBuilder code,
+      String result,
+      String name,
+      String finalField,
+      Object elementType,
+      QualifiedName appender) {
+    code.addLine("%s.append(\"%s=[\");", result, name)
+        .addLine("String _%sSeparator = \"\";", name)
+        .addLine("for (%s element : %s) {", elementType, finalField)
+        .addLine("  %s.%s(%s.append(_%sSeparator), element);",
+            appender, METHOD_NAME, result, name)
+        .addLine("  _%sSeparator = \", \";", name)
+        .addLine("}")
+        .addLine("%s.append(']');", result);
+  }
+
+  /**
+   * Adds the static {@code appendTo(StringBuilder, Object)} method to a generated builder
+   * superclass, dispatching to the value or partial type's {@code appendTo} method where one was
+   * generated, and falling back to {@link StringBuilder#append(Object)}.
+   */
+  public static void addStaticAppendToMethod(
+      SourceBuilder code, Metadata metadata, boolean hasValueType, boolean hasPartialType) {
+    code.addLine("")
+        .addLine("/**")
+        .addLine(" * Appends the string representation of {@code value} to {@code result},"
+            + " without")
+        .addLine(" * an intermediate {@link %s} if it was created by this builder.", String.class)
+        .addLine(" */")
+        .addLine("static %1$s %2$s(%1$s result, Object value) {",
+            StringBuilder.class, METHOD_NAME);
+    String prefix = "";
+    if (hasValueType) {
+      code.addLine("  %sif (value instanceof %s) {",
+              prefix, metadata.getValueType().getQualifiedName())
+          .addLine("    return ((%s) value).%s(result);",
+              metadata.getValueType().withWildcards(), METHOD_NAME);
+      prefix = "} else ";
+    }
+    if (hasPartialType) {
+      code.addLine("  %sif (value instanceof %s) {",
+              prefix, metadata.getPartialType().getQualifiedName())
+          .addLine("    return ((%s) value).%s(result);",
+              metadata.getPartialType().withWildcards(), METHOD_NAME);
+      prefix = "} else ";
+    }
+    if (prefix.isEmpty()) {
+      code.addLine("  return result.append(value);");
+    } else {
+      code.addLine("  } else {")
+          .addLine("    return result.append(value);")
+          .addLine("  }");
+    }
+    code.addLine("}");
+  }
+
+  private static final Predicate<Element> IS_BUILDER_TYPE = new Predicate<Element>() {
+    @Override public boolean apply(Element element) {
+      return element.getSimpleName().contentEquals("Builder");
+    }
+  };
+
+  private ValueAppender() {}
+}
@@ -0,0 +1,397 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor.excerpt;
+
+import static org.inferred.freebuilder.processor.util.StaticExcerpt.Type.METHOD;
+import static org.inferred.freebuilder.processor.util.StaticExcerpt.Type.TYPE;
+import static org.inferred.freebuilder.processor.util.feature.GuavaLibrary.GUAVA;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+import org.inferred.freebuilder.processor.util.StaticExcerpt;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Excerpts defining compact, insertion-ordered, immutable set and map implementations backed by
+ * arrays, for use in values when Guava is unavailable.
+ *
+ * <p>Two-element collections hold their contents in fields. Larger collections of up to
+ * {@value #MAX_LINEAR_SCAN} elements are searched linearly; beyond that, they add an
+ * open-addressed table of element positions. Nulls are never stored.
+ */
+public class CompactImmutableCollections {
+
+  private static final int MAX_LINEAR_SCAN = 8;
+
+  /** Simple name of the generated immutable set type. */
+  public static final String SET_TYPE = "CompactImmutableSet";
+
+  /** Simple name of the generated immutable map type. */
+  public static final String MAP_TYPE = "CompactImmutableMap";
+
+  /** Simple name of the generated two-element immutable set type. */
+  public static final String PAIR_SET_TYPE = "CompactImmutablePairSet";
+
+  /** Simple name of the generated two-entry immutable map type. */
+  public static final String PAIR_MAP_TYPE = "CompactImmutablePairMap";
+
+  public static Set<StaticExcerpt> setExcerpts() {
+    return ImmutableSet.of(INDEX_METHODS, COMPACT_IMMUTABLE_SET, COMPACT_IMMUTABLE_PAIR_SET);
+  }
+
+  public static Set<StaticExcerpt> mapExcerpts() {
+    return ImmutableSet.of(INDEX_METHODS, COMPACT_IMMUTABLE_MAP, COMPACT_IMMUTABLE_PAIR_MAP);
+  }
+
+  private static final StaticExcerpt INDEX_METHODS = new StaticExcerpt(METHOD, "compactIndex") {
+    @Override
+    public void addTo(SourceBuilder code) {
+      if (code.feature(GUAVA).isAvailable()) {
+        return;
+      }
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Returns an open-addressed table of the positions (plus one) of")
+          .addLine(" * {@code keys}, or null if there are few enough to search linearly.")
+          .addLine(" */")
+          .addLine("private static int[] compactIndex(Object[] keys) {")
+          .addLine("  if (keys.length <= %d) {", MAX_LINEAR_SCAN)
+          .addLine("    return null;")
+          .addLine("  }")
+          .addLine("  int[] index = new int[%s.highestOneBit(keys.length * 2 - 1) << 1];",
+              Integer.class)
+          .addLine("  int mask = index.length - 1;")
+          .addLine("  for (int i = 0; i < keys.length; i++) {")
+          .addLine("    int slot = compactHash(keys[i]) & mask;")
+          .addLine("    while (index[slot] != 0) {")
+          .addLine("      slot = (slot + 1) & mask;")
+          .addLine("    }")
+          .addLine("    index[slot] = i + 1;")
+          .addLine("  }")
+          .addLine("  return index;")
+          .addLine("}")
+          .addLine("")
+          .addLine("/** Returns the position of {@code key} in {@code keys}, or -1 if absent. */")
+          .addLine("private static int compactIndexOf(Object[] keys, int[] index, Object key) {")
+          .addLine("  if (key == null) {")
+          .addLine("    return -1;")
+          .addLine("  }")
+          .addLine("  if (index == null) {")
+          .addLine("    for (int i = 0; i < keys.length; i++) {")
+          .addLine("      if (key.equals(keys[i])) {")
+          .addLine("        return i;")
+          .addLine("      }")
+          .addLine("    }")
+          .addLine("    return -1;")
+          .addLine("  }")
+          .addLine("  int mask = index.length - 1;")
+          .addLine("  for (int slot = compactHash(key) & mask;")
+          .addLine("      index[slot] != 0;")
+          .addLine("      slot = (slot + 1) & mask) {")
+          .addLine("    int i = index[slot] - 1;")
+          .addLine("    if (key.equals(keys[i])) {")
+          .addLine("      return i;")
+          .addLine("    }")
+          .addLine("  }")
+          .addLine("  return -1;")
+          .addLine("}")
+          .addLine("")
+          .addLine("private static int compactHash(Object key) {")
+          .addLine("  return 0x1b873593 * %s.rotateLeft(key.hashCode() * 0xcc9e2d51, 15);",
+              Integer.class)
+          .addLine("}");
+    }
+  };
+
+  private static final StaticExcerpt COMPACT_IMMUTABLE_SET = new StaticExcerpt(TYPE, SET_TYPE) {
+    @Override
+    public void addTo(SourceBuilder code) {
+      if (code.feature(GUAVA).isAvailable()) {
+        return;
+      }
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * An immutable, insertion-ordered set backed by an array of its distinct,")
+          .addLine(" * non-null elements.")
+          .addLine(" */")
+          .addLine("private static final class %s<E> extends %s<E> implements %s {",
+              SET_TYPE, AbstractSet.class, Serializable.class)
+          .addLine("")
+          .addLine("  private final Object[] elements;")
+          .addLine("  private final int[] index;")
+          .addLine("")
+          .addLine("  %s(Object[] elements) {", SET_TYPE)
+          .addLine("    this.elements = elements;")
+          .addLine("    this.index = compactIndex(elements);")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override public int size() {")
+          .addLine("    return elements.length;")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override public boolean contains(Object o) {")
+          .addLine("    return compactIndexOf(elements, index, o) >= 0;")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override public %s<E> iterator() {", Iterator.class)
+          .addLine("    return new %s<E>() {", Iterator.class)
+          .addLine("      private int next = 0;")
+          .addLine("")
+          .addLine("      @Override public boolean hasNext() {")
+          .addLine("        return next < elements.length;")
+          .addLine("      }")
+          .addLine("")
+          .addLine("      @Override")
+          .addLine("      @SuppressWarnings(\"unchecked\")")
+          .addLine("      public E next() {")
+          .addLine("        if (next >= elements.length) {")
+          .addLine("          throw new %s();", NoSuchElementException.class)
+          .addLine("        }")
+          .addLine("        return (E) elements[next++];")
+          .addLine("      }")
+          .addLine("")
+          .addLine("      @Override public void remove() {")
+          .addLine("        throw new %s();", UnsupportedOperationException.class)
+          .addLine("      }")
+          .addLine("    };")
+          .addLine("  }")
+          .addLine("}");
+    }
+  };
+
+  private static final StaticExcerpt COMPACT_IMMUTABLE_MAP = new StaticExcerpt(TYPE, MAP_TYPE) {
+    @Override
+    public void addTo(SourceBuilder code) {
+      if (code.feature(GUAVA).isAvailable()) {
+        return;
+      }
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * An immutable, insertion-ordered map backed by arrays of its distinct,")
+          .addLine(" * non-null keys and their non-null values.")
+          .addLine(" */")
+          .addLine("private static final class %s<K, V> extends %s<K, V> implements %s {",
+              MAP_TYPE, AbstractMap.class, Serializable.class)
+          .addLine("")
+          .addLine("  private final Object[] keys;")
+          .addLine("  private final Object[] values;")
+          .addLine("  private final int[] index;")
+          .addLine("")
+          .addLine("  %s(Object[] keys, Object[] values) {", MAP_TYPE)
+          .addLine("    this.keys = keys;")
+          .addLine("    this.values = values;")
+          .addLine("    this.index = compactIndex(keys);")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override public int size() {")
+          .addLine("    return keys.length;")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override public boolean containsKey(Object key) {")
+          .addLine("    return compactIndexOf(keys, index, key) >= 0;")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override")
+          .addLine("  @SuppressWarnings(\"unchecked\")")
+          .addLine("  public V get(Object key) {")
+          .addLine("    int i = compactIndexOf(keys, index, key);")
+          .addLine("    return (i < 0) ? null : (V) values[i];")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override public %s<%s<K, V>> entrySet() {", Set.class, Map.Entry.class)
+          .addLine("    return new %s<%s<K, V>>() {", AbstractSet.class, Map.Entry.class)
+          .addLine("      @Override public int size() {")
+          .addLine("        return keys.length;")
+          .addLine("      }")
+          .addLine("")
+          .addLine("      @Override public %s<%s<K, V>> iterator() {",
+              Iterator.class, Map.Entry.class)
+          .addLine("        return new %s<%s<K, V>>() {", Iterator.class, Map.Entry.class)
+          .addLine("          private int next = 0;")
+          .addLine("")
+          .addLine("          @Override public boolean hasNext() {")
+          .addLine("            return next < keys.length;")
+          .addLine("          }")
+          .addLine("")
+          .addLine("          @Override")
+          .addLine("          @SuppressWarnings(\"unchecked\")")
+          .addLine("          public %s<K, V> next() {", Map.Entry.class)
+          .addLine("            if (next >= keys.length) {")
+          .addLine("              throw new %s();", NoSuchElementException.class)
+          .addLine("            }")
+          .addLine("            int i = next++;")
+          .addLine("            return new %s<K, V>((K) keys[i], (V) values[i]);",
+              SimpleImmutableEntry.class)
+          .addLine("          }")
+          .addLine("")
+          .addLine("          @Override public void remove() {")
+          .addLine("            throw new %s();", UnsupportedOperationException.class)
+          .addLine("          }")
+          .addLine("        };")
+          .addLine("      }")
+          .addLine("    };")
+          .addLine("  }")
+          .addLine("}");
+    }
+  };
+
+  private static final StaticExcerpt COMPACT_IMMUTABLE_PAIR_SET =
+      new StaticExcerpt(TYPE, PAIR_SET_TYPE) {
+    @Override
+    public void addTo(SourceBuilder code) {
+      if (code.feature(GUAVA).isAvailable()) {
+        return;
+      }
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * An immutable, insertion-ordered set of two distinct, non-null elements.")
+          .addLine(" */")
+          .addLine("private static final class %s<E> extends %s<E> implements %s {",
+              PAIR_SET_TYPE, AbstractSet.class, Serializable.class)
+          .addLine("")
+          .addLine("  private final E first;")
+          .addLine("  private final E second;")
+          .addLine("")
+          .addLine("  %s(E first, E second) {", PAIR_SET_TYPE)
+          .addLine("    this.first = first;")
+          .addLine("    this.second = second;")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override public int size() {")
+          .addLine("    return 2;")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override public boolean contains(Object o) {")
+          .addLine("    return first.equals(o) || second.equals(o);")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override public %s<E> iterator() {", Iterator.class)
+          .addLine("    return new %s<E>() {", Iterator.class)
+          .addLine("      private int next = 0;")
+          .addLine("")
+          .addLine("      @Override public boolean hasNext() {")
+          .addLine("        return next < 2;")
+          .addLine("      }")
+          .addLine("")
+          .addLine("      @Override public E next() {")
+          .addLine("        if (next >= 2) {")
+          .addLine("          throw new %s();", NoSuchElementException.class)
+          .addLine("        }")
+          .addLine("        return (next++ == 0) ? first : second;")
+          .addLine("      }")
+          .addLine("")
+          .addLine("      @Override public void remove() {")
+          .addLine("        throw new %s();", UnsupportedOperationException.class)
+          .addLine("      }")
+          .addLine("    };")
+          .addLine("  }")
+          .addLine("}");
+    }
+  };
+
+  private static final StaticExcerpt COMPACT_IMMUTABLE_PAIR_MAP =
+      new StaticExcerpt(TYPE, PAIR_MAP_TYPE) {
+    @Override
+    public void addTo(SourceBuilder code) {
+      if (code.feature(GUAVA).isAvailable()) {
+        return;
+      }
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * An immutable, insertion-ordered map of two distinct, non-null keys to")
+          .addLine(" * non-null values.")
+          .addLine(" */")
+          .addLine("private static final class %s<K, V> extends %s<K, V> implements %s {",
+              PAIR_MAP_TYPE, AbstractMap.class, Serializable.class)
+          .addLine("")
+          .addLine("  private final K firstKey;")
+          .addLine("  private final V firstValue;")
+          .addLine("  private final K secondKey;")
+          .addLine("  private final V secondValue;")
+          .addLine("")
+          .addLine("  %s(K firstKey, V firstValue, K secondKey, V secondValue) {", PAIR_MAP_TYPE)
+          .addLine("    this.firstKey = firstKey;")
+          .addLine("    this.firstValue = firstValue;")
+          .addLine("    this.secondKey = secondKey;")
+          .addLine("    this.secondValue = secondValue;")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override public int size() {")
+          .addLine("    return 2;")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override public boolean containsKey(Object key) {")
+          .addLine("    return firstKey.equals(key) || secondKey.equals(key);")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override public V get(Object key) {")
+          .addLine("    if (firstKey.equals(key)) {")
+          .addLine("      return firstValue;")
+          .addLine("    } else if (secondKey.equals(key)) {")
+          .addLine("      return secondValue;")
+          .addLine("    } else {")
+          .addLine("      return null;")
+          .addLine("    }")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override public %s<%s<K, V>> entrySet() {", Set.class, Map.Entry.class)
+          .addLine("    return new %s<%s<K, V>>() {", AbstractSet.class, Map.Entry.class)
+          .addLine("      @Override public int size() {")
+          .addLine("        return 2;")
+          .addLine("      }")
+          .addLine("")
+          .addLine("      @Override public %s<%s<K, V>> iterator() {",
+              Iterator.class, Map.Entry.class)
+          .addLine("        return new %s<%s<K, V>>() {", Iterator.class, Map.Entry.class)
+          .addLine("          private int next = 0;")
+          .addLine("")
+          .addLine("          @Override public boolean hasNext() {")
+          .addLine("            return next < 2;")
+          .addLine("          }")
+          .addLine("")
+          .addLine("          @Override public %s<K, V> next() {", Map.Entry.class)
+          .addLine("            if (next >= 2) {")
+          .addLine("              throw new %s();", NoSuchElementException.class)
+          .addLine("            }")
+          .addLine("            return (next++ == 0)")
+          .addLine("                ? new %s<K, V>(firstKey, firstValue)",
+              SimpleImmutableEntry.class)
+          .addLine("                : new %s<K, V>(secondKey, secondValue);",
+              SimpleImmutableEntry.class)
+          .addLine("          }")
+          .addLine("")
+          .addLine("          @Override public void remove() {")
+          .addLine("            throw new %s();", UnsupportedOperationException.class)
+          .addLine("          }")
+          .addLine("        };")
+          .addLine("      }")
+          .addLine("    };")
+          .addLine("  }")
+          .addLine("}");
+    }
+  };
+
+  private CompactImmutableCollections() {}
+}
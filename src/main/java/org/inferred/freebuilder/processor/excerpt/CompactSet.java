@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor.excerpt;
+
+import static org.inferred.freebuilder.processor.util.StaticExcerpt.Type.TYPE;
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.diamondOperator;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+import org.inferred.freebuilder.processor.util.StaticExcerpt;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Excerpts defining an insertion-ordered set that holds a few elements in an {@code ArrayList},
+ * for use as the per-key value storage of multimaps in builders.
+ */
+public class CompactSet {
+
+  /** Simple name of the generated type. */
+  public static final String NAME = "CompactSet";
+
+  public static Set<StaticExcerpt> excerpts() {
+    return ImmutableSet.of(COMPACT_SET);
+  }
+
+  private static final StaticExcerpt COMPACT_SET = new StaticExcerpt(TYPE, NAME) {
+    @Override
+    public void addTo(SourceBuilder code) {
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * An insertion-ordered set.")
+          .addLine(" *")
+          .addLine(" * <p>Up to {@code MAX_LIST_SIZE} elements are held in an {@link %s} and",
+              ArrayList.class)
+          .addLine(" * searched linearly, costing a single array slot each; larger sets move into")
+          .addLine(" * a {@link %s}, which allocates an entry object per element.",
+              LinkedHashSet.class)
+          .addLine(" */")
+          .addLine("private static final class %s<E> extends %s<E> implements %s {",
+              NAME, AbstractSet.class, Serializable.class)
+          .addLine("")
+          .addLine("  private static final long serialVersionUID = 1L;")
+          .addLine("  private static final int MAX_LIST_SIZE = 8;")
+          .addLine("")
+          .addLine("  private %s<E> elements = new %s%s(4);",
+              Collection.class, ArrayList.class, diamondOperator("E"))
+          .addLine("")
+          .addLine("  @Override")
+          .addLine("  public int size() {")
+          .addLine("    return elements.size();")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override")
+          .addLine("  public boolean contains(Object element) {")
+          .addLine("    return elements.contains(element);")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override")
+          .addLine("  public %s<E> iterator() {", Iterator.class)
+          .addLine("    return elements.iterator();")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override")
+          .addLine("  public boolean add(E element) {")
+          .addLine("    if (elements.contains(element)) {")
+          .addLine("      return false;")
+          .addLine("    }")
+          .addLine("    if (elements.size() == MAX_LIST_SIZE && !(elements instanceof %s)) {",
+              Set.class)
+          .addLine("      elements = new %s%s(elements);",
+              LinkedHashSet.class, diamondOperator("E"))
+          .addLine("    }")
+          .addLine("    return elements.add(element);")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override")
+          .addLine("  public boolean remove(Object element) {")
+          .addLine("    return elements.remove(element);")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override")
+          .addLine("  public void clear() {")
+          .addLine("    elements.clear();")
+          .addLine("  }")
+          .addLine("}");
+    }
+  };
+
+  private CompactSet() {}
+}
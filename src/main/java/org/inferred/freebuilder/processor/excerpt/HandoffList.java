@@ -0,0 +1,198 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor.excerpt;
+
+import static org.inferred.freebuilder.processor.util.StaticExcerpt.Type.TYPE;
+import static org.inferred.freebuilder.processor.util.feature.GuavaLibrary.GUAVA;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+import org.inferred.freebuilder.processor.util.StaticExcerpt;
+
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * Excerpts defining an array-backed list whose array can be handed over to an
+ * {@code ImmutableList} without copying, for use as list storage in builders with a
+ * {@code buildAndReset} method. Requires Guava.
+ */
+public class HandoffList {
+
+  /** Simple name of the generated type. */
+  public static final String NAME = "HandoffList";
+
+  public static Set<StaticExcerpt> excerpts() {
+    return ImmutableSet.of(HANDOFF_LIST);
+  }
+
+  private static final StaticExcerpt HANDOFF_LIST = new StaticExcerpt(TYPE, NAME) {
+    @Override
+    public void addTo(SourceBuilder code) {
+      if (!code.feature(GUAVA).isAvailable()) {
+        return;
+      }
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * An array-backed list, growing like {@link java.util.ArrayList}, whose array")
+          .addLine(" * {@link #handOff()} gives to an {@link %s}.", ImmutableList.class)
+          .addLine(" *")
+          .addLine(" * <p>{@link %s#copyOf(%s)} adopts the array returned by the collection's",
+              ImmutableList.class, Collection.class)
+          .addLine(" * {@code toArray()} method, so an exactly full array is handed over without")
+          .addLine(" * being copied.")
+          .addLine(" */")
+          .addLine("private static final class %s<E> extends %s<E>", NAME, AbstractList.class)
+          .addLine("    implements %s, %s {", RandomAccess.class, Serializable.class)
+          .addLine("")
+          .addLine("  private static final long serialVersionUID = 1L;")
+          .addLine("  private static final Object[] EMPTY = {};")
+          .addLine("")
+          .addLine("  private Object[] elements;")
+          .addLine("  private int size;")
+          .addLine("")
+          .addLine("  %s(int initialCapacity) {", NAME)
+          .addLine("    elements = (initialCapacity == 0) ? EMPTY : new Object[initialCapacity];")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  %s(%s<? extends E> elements) {", NAME, Collection.class)
+          .addLine("    this(elements.size());")
+          .addLine("    addAll(elements);")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  void ensureCapacity(int minCapacity) {")
+          .addLine("    if (minCapacity > elements.length) {")
+          .addLine("      int newCapacity = elements.length + (elements.length >> 1);")
+          .addLine("      elements = %s.copyOf(elements, Math.max(minCapacity, newCapacity));",
+              Arrays.class)
+          .addLine("    }")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override")
+          .addLine("  public int size() {")
+          .addLine("    return size;")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override")
+          .addLine("  @%s(\"unchecked\")", SuppressWarnings.class)
+          .addLine("  public E get(int index) {")
+          .addLine("    checkIndex(index);")
+          .addLine("    return (E) elements[index];")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override")
+          .addLine("  @%s(\"unchecked\")", SuppressWarnings.class)
+          .addLine("  public E set(int index, E element) {")
+          .addLine("    checkIndex(index);")
+          .addLine("    E previous = (E) elements[index];")
+          .addLine("    elements[index] = element;")
+          .addLine("    return previous;")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override")
+          .addLine("  public void add(int index, E element) {")
+          .addLine("    if (index < 0 || index > size) {")
+          .addLine("      throw new %s(\"Index: \" + index + \", Size: \" + size);",
+              IndexOutOfBoundsException.class)
+          .addLine("    }")
+          .addLine("    ensureCapacity(size + 1);")
+          .addLine("    System.arraycopy(elements, index, elements, index + 1, size - index);")
+          .addLine("    elements[index] = element;")
+          .addLine("    size++;")
+          .addLine("    modCount++;")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override")
+          .addLine("  @%s(\"unchecked\")", SuppressWarnings.class)
+          .addLine("  public E remove(int index) {")
+          .addLine("    checkIndex(index);")
+          .addLine("    E previous = (E) elements[index];")
+          .addLine("    System.arraycopy(elements, index + 1, elements, index, size - index - 1);")
+          .addLine("    elements[--size] = null;")
+          .addLine("    modCount++;")
+          .addLine("    return previous;")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override")
+          .addLine("  public void clear() {")
+          .addLine("    %s.fill(elements, 0, size, null);", Arrays.class)
+          .addLine("    size = 0;")
+          .addLine("    modCount++;")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  /**")
+          .addLine("   * Returns an immutable list of the elements, adopting the array if it is")
+          .addLine("   * exactly full, and empties this list without touching the array again.")
+          .addLine("   */")
+          .addLine("  @%s(\"unchecked\")", SuppressWarnings.class)
+          .addLine("  %s<E> handOff() {", ImmutableList.class)
+          .addLine("    Object[] array = (size == elements.length)")
+          .addLine("        ? elements : %s.copyOf(elements, size);", Arrays.class)
+          .addLine("    elements = EMPTY;")
+          .addLine("    size = 0;")
+          .addLine("    modCount++;")
+          .addLine("    return (%1$s<E>) %1$s.copyOf(new Handover(array));", ImmutableList.class)
+          .addLine("  }")
+          .addLine("")
+          .addLine("  private void checkIndex(int index) {")
+          .addLine("    if (index < 0 || index >= size) {")
+          .addLine("      throw new %s(\"Index: \" + index + \", Size: \" + size);",
+              IndexOutOfBoundsException.class)
+          .addLine("    }")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  /**")
+          .addLine("   * A view of an array no list references any longer, so {@code toArray()}")
+          .addLine("   * may return the array itself.")
+          .addLine("   */")
+          .addLine("  private static final class Handover extends %s<Object> {",
+              AbstractCollection.class)
+          .addLine("")
+          .addLine("    private final Object[] array;")
+          .addLine("")
+          .addLine("    Handover(Object[] array) {")
+          .addLine("      this.array = array;")
+          .addLine("    }")
+          .addLine("")
+          .addLine("    @Override")
+          .addLine("    public int size() {")
+          .addLine("      return array.length;")
+          .addLine("    }")
+          .addLine("")
+          .addLine("    @Override")
+          .addLine("    public %s<Object> iterator() {", Iterator.class)
+          .addLine("      return %s.asList(array).iterator();", Arrays.class)
+          .addLine("    }")
+          .addLine("")
+          .addLine("    @Override")
+          .addLine("    public Object[] toArray() {")
+          .addLine("      return array;")
+          .addLine("    }")
+          .addLine("  }")
+          .addLine("}");
+    }
+  };
+
+  private HandoffList() {}
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor.excerpt;
+
+import static org.inferred.freebuilder.processor.util.StaticExcerpt.Type.TYPE;
+
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.LinkedHashMultiset;
+import com.google.common.collect.Multiset;
+
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+import org.inferred.freebuilder.processor.util.StaticExcerpt;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Set;
+
+/**
+ * Excerpts defining an insertion-ordered map from elements to {@code int} counts, for use as
+ * multiset storage in builders. Elements and counts are held in parallel arrays, indexed by an
+ * open-addressed hash table, so no object is allocated per distinct element.
+ */
+public class ObjectCountMap {
+
+  /** Simple name of the generated type. */
+  public static final String NAME = "ObjectCountMap";
+
+  public static Set<StaticExcerpt> excerpts() {
+    return ImmutableSet.of(OBJECT_COUNT_MAP);
+  }
+
+  private static final StaticExcerpt OBJECT_COUNT_MAP = new StaticExcerpt(TYPE, NAME) {
+    @Override
+    public void addTo(SourceBuilder code) {
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * An insertion-ordered map from elements to positive counts.")
+          .addLine(" *")
+          .addLine(" * <p>Elements and counts are held in parallel arrays, in insertion order.")
+          .addLine(" * {@code table} is an open-addressed hash index into them, holding")
+          .addLine(" * {@code index + 1} for each element, {@code EMPTY} for an unused slot, or")
+          .addLine(" * {@code REMOVED} for an element whose count has dropped to zero. Removed")
+          .addLine(" * elements leave a gap in the arrays, so re-adding one appends it, as")
+          .addLine(" * {@link %s} does; gaps are compacted away when the arrays grow.",
+              LinkedHashMultiset.class)
+          .addLine(" */")
+          .addLine("private static final class %s<E> implements %s {", NAME, Serializable.class)
+          .addLine("")
+          .addLine("  private static final long serialVersionUID = 1L;")
+          .addLine("  private static final int EMPTY = 0;")
+          .addLine("  private static final int REMOVED = -1;")
+          .addLine("  private static final int MIN_CAPACITY = 4;")
+          .addLine("")
+          .addLine("  private Object[] elements;")
+          .addLine("  private int[] counts;")
+          .addLine("  /** Rebuilt on deserialization, as element hash codes may differ. */")
+          .addLine("  private transient int[] table;")
+          .addLine("  /** Number of array entries in use, including gaps left by removals. */")
+          .addLine("  private int used;")
+          .addLine("  /** Number of elements with a positive count. */")
+          .addLine("  private int size;")
+          .addLine("")
+          .addLine("  %s(%s<? extends E> multiset) {", NAME, Multiset.class)
+          .addLine("    allocate(%s.max(multiset.entrySet().size(), MIN_CAPACITY));", Math.class)
+          .addLine("    for (%s.Entry<? extends E> entry : multiset.entrySet()) {",
+              Multiset.class)
+          .addLine("      setCount(entry.getElement(), entry.getCount());")
+          .addLine("    }")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  int count(Object element) {")
+          .addLine("    int slot = find(element);")
+          .addLine("    return (slot < 0) ? 0 : counts[table[slot] - 1];")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  void setCount(E element, int count) {")
+          .addLine("    if (count < 0) {")
+          .addLine("      throw new %s(\"count cannot be negative but was: \" + count);",
+              IllegalArgumentException.class)
+          .addLine("    }")
+          .addLine("    int slot = find(element);")
+          .addLine("    if (slot >= 0) {")
+          .addLine("      int index = table[slot] - 1;")
+          .addLine("      if (count > 0) {")
+          .addLine("        counts[index] = count;")
+          .addLine("      } else {")
+          .addLine("        table[slot] = REMOVED;")
+          .addLine("        elements[index] = null;")
+          .addLine("        counts[index] = 0;")
+          .addLine("        size--;")
+          .addLine("      }")
+          .addLine("    } else if (count > 0) {")
+          .addLine("      if (used == elements.length) {")
+          .addLine("        resize(%s.max(size * 2, MIN_CAPACITY));", Math.class)
+          .addLine("      }")
+          .addLine("      elements[used] = element;")
+          .addLine("      counts[used] = count;")
+          .addLine("      used++;")
+          .addLine("      size++;")
+          .addLine("      insert(element.hashCode(), used);")
+          .addLine("    }")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  /** Returns one past the last array index that may hold an element. */")
+          .addLine("  int end() {")
+          .addLine("    return used;")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  /** Returns the element at {@code index}, or null if it was removed. */")
+          .addLine("  @SuppressWarnings(\"unchecked\")")
+          .addLine("  E elementAt(int index) {")
+          .addLine("    return (E) elements[index];")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  /** Returns the count at {@code index}, or zero if it was removed. */")
+          .addLine("  int countAt(int index) {")
+          .addLine("    return counts[index];")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  void ensureCapacity(int minCapacity) {")
+          .addLine("    if (minCapacity > elements.length) {")
+          .addLine("      resize(minCapacity);")
+          .addLine("    }")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @SuppressWarnings(\"unchecked\")")
+          .addLine("  %s<E> toImmutableMultiset() {", ImmutableMultiset.class)
+          .addLine("    %1$s.Builder<E> builder = %1$s.builder();", ImmutableMultiset.class)
+          .addLine("    for (int i = 0; i < used; i++) {")
+          .addLine("      if (counts[i] > 0) {")
+          .addLine("        builder.addCopies((E) elements[i], counts[i]);")
+          .addLine("      }")
+          .addLine("    }")
+          .addLine("    return builder.build();")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @SuppressWarnings(\"unchecked\")")
+          .addLine("  %s<E> toLinkedHashMultiset() {", LinkedHashMultiset.class)
+          .addLine("    %1$s<E> multiset = %1$s.create(size);", LinkedHashMultiset.class)
+          .addLine("    for (int i = 0; i < used; i++) {")
+          .addLine("      if (counts[i] > 0) {")
+          .addLine("        multiset.add((E) elements[i], counts[i]);")
+          .addLine("      }")
+          .addLine("    }")
+          .addLine("    return multiset;")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  /** Returns the table slot holding {@code element}, or -1 if absent. */")
+          .addLine("  private int find(Object element) {")
+          .addLine("    int mask = table.length - 1;")
+          .addLine("    for (int slot = smear(element.hashCode()) & mask; ;"
+              + " slot = (slot + 1) & mask) {")
+          .addLine("      int entry = table[slot];")
+          .addLine("      if (entry == EMPTY) {")
+          .addLine("        return -1;")
+          .addLine("      } else if (entry != REMOVED && element.equals(elements[entry - 1])) {")
+          .addLine("        return slot;")
+          .addLine("      }")
+          .addLine("    }")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  /** Records {@code entry} in the first free slot for {@code hashCode}. */")
+          .addLine("  private void insert(int hashCode, int entry) {")
+          .addLine("    int mask = table.length - 1;")
+          .addLine("    int slot = smear(hashCode) & mask;")
+          .addLine("    while (table[slot] > 0) {")
+          .addLine("      slot = (slot + 1) & mask;")
+          .addLine("    }")
+          .addLine("    table[slot] = entry;")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  private void allocate(int capacity) {")
+          .addLine("    elements = new Object[capacity];")
+          .addLine("    counts = new int[capacity];")
+          .addLine("    // Keep the table at most half full, counting removed slots, so probes")
+          .addLine("    // stay short and always reach an empty slot.")
+          .addLine("    table = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];")
+          .addLine("    used = 0;")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  /** Reallocates the arrays, dropping removed elements. */")
+          .addLine("  private void resize(int capacity) {")
+          .addLine("    Object[] oldElements = elements;")
+          .addLine("    int[] oldCounts = counts;")
+          .addLine("    int oldUsed = used;")
+          .addLine("    allocate(capacity);")
+          .addLine("    for (int i = 0; i < oldUsed; i++) {")
+          .addLine("      if (oldCounts[i] > 0) {")
+          .addLine("        elements[used] = oldElements[i];")
+          .addLine("        counts[used] = oldCounts[i];")
+          .addLine("        used++;")
+          .addLine("        insert(oldElements[i].hashCode(), used);")
+          .addLine("      }")
+          .addLine("    }")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  private void readObject(%s in) throws %s, %s {",
+              ObjectInputStream.class, IOException.class, ClassNotFoundException.class)
+          .addLine("    in.defaultReadObject();")
+          .addLine("    resize(elements.length);")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  private static int smear(int hashCode) {")
+          .addLine("    return 0x1b873593 * Integer.rotateLeft(hashCode * 0xcc9e2d51, 15);")
+          .addLine("  }")
+          .addLine("}");
+    }
+  };
+
+  private ObjectCountMap() {}
+}
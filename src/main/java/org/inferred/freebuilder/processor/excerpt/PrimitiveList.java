@@ -0,0 +1,278 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor.excerpt;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.inferred.freebuilder.processor.util.StaticExcerpt.Type.TYPE;
+
+import com.google.common.collect.ImmutableList;
+
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+import org.inferred.freebuilder.processor.util.StaticExcerpt;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+import javax.lang.model.type.TypeKind;
+
+/**
+ * Excerpts defining list implementations backed by unboxed {@code int}, {@code long} or
+ * {@code double} arrays: a growable, mutable list for use in builders, and a compact, immutable
+ * list for use in values.
+ */
+public class PrimitiveList {
+
+  /** Returns whether {@code kind} has an unboxed list implementation. */
+  public static boolean isSupported(TypeKind kind) {
+    return kind == TypeKind.INT || kind == TypeKind.LONG || kind == TypeKind.DOUBLE;
+  }
+
+  /** Returns the simple name of the mutable list implementation for {@code kind}. */
+  public static String mutableList(TypeKind kind) {
+    return capitalizedName(kind) + "ArrayList";
+  }
+
+  /** Returns the simple name of the immutable list implementation for {@code kind}. */
+  public static String immutableList(TypeKind kind) {
+    return "Immutable" + capitalizedName(kind) + "List";
+  }
+
+  public static List<StaticExcerpt> excerpts(TypeKind kind) {
+    checkArgument(isSupported(kind), "No unboxed list implementation for %s", kind);
+    return ImmutableList.<StaticExcerpt>of(
+        new MutableListExcerpt(kind), new ImmutableListExcerpt(kind));
+  }
+
+  /** Returns the capitalized name of the primitive {@code kind}, e.g. Int. */
+  public static String capitalizedName(TypeKind kind) {
+    String name = kind.name();
+    return name.charAt(0) + name.substring(1).toLowerCase();
+  }
+
+  private static Class<?> boxedType(TypeKind kind) {
+    switch (kind) {
+      case INT:
+        return Integer.class;
+      case LONG:
+        return Long.class;
+      case DOUBLE:
+        return Double.class;
+      default:
+        throw new IllegalArgumentException("No unboxed list implementation for " + kind);
+    }
+  }
+
+  private static class MutableListExcerpt extends StaticExcerpt {
+
+    private final TypeKind kind;
+
+    MutableListExcerpt(TypeKind kind) {
+      super(TYPE, mutableList(kind));
+      this.kind = kind;
+    }
+
+    @Override
+    public void addTo(SourceBuilder code) {
+      String primitive = kind.name().toLowerCase();
+      String name = mutableList(kind);
+      String immutableName = immutableList(kind);
+      Class<?> boxed = boxedType(kind);
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * A growable {@code List<%s>} backed by an unboxed {@code %s} array.",
+              boxed.getSimpleName(), primitive)
+          .addLine(" */")
+          .addLine("private static final class %s extends %s<%s>",
+              name, AbstractList.class, boxed)
+          .addLine("    implements %s, %s {", RandomAccess.class, Serializable.class)
+          .addLine("")
+          .addLine("  private static final %s[] NO_ELEMENTS = {};", primitive)
+          .addLine("")
+          .addLine("  private %s[] elements = NO_ELEMENTS;", primitive)
+          .addLine("  private int size;")
+          .addLine("")
+          .addLine("  @Override public int size() {")
+          .addLine("    return size;")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override public %s get(int index) {", boxed)
+          .addLine("    checkElementIndex(index);")
+          .addLine("    return elements[index];")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override public %1$s set(int index, %1$s element) {", boxed)
+          .addLine("    checkElementIndex(index);")
+          .addLine("    %s previous = elements[index];", primitive)
+          .addLine("    elements[index] = element;")
+          .addLine("    return previous;")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override public boolean add(%s element) {", boxed)
+          .addLine("    add%s(element);", capitalizedName(kind))
+          .addLine("    return true;")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override public void add(int index, %s element) {", boxed)
+          .addLine("    if (index < 0 || index > size) {")
+          .addLine("      throw new %s(\"Index: \" + index + \", Size: \" + size);",
+              IndexOutOfBoundsException.class)
+          .addLine("    }")
+          .addLine("    %s unboxed = element;", primitive)
+          .addLine("    ensureCapacity(size + 1);")
+          .addLine("    %s.arraycopy(elements, index, elements, index + 1, size - index);",
+              System.class)
+          .addLine("    elements[index] = unboxed;")
+          .addLine("    size++;")
+          .addLine("    modCount++;")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override public boolean addAll(%s<? extends %s> collection) {",
+              Collection.class, boxed)
+          .addLine("    int oldSize = size;")
+          .addLine("    if (collection instanceof %s) {", immutableName)
+          .addLine("      %s[] source = ((%s) collection).elements;", primitive, immutableName)
+          .addLine("      addAll(source, 0, source.length);")
+          .addLine("    } else if (collection instanceof %s) {", name)
+          .addLine("      %1$s source = (%1$s) collection;", name)
+          .addLine("      addAll(source.elements, 0, source.size);")
+          .addLine("    } else {")
+          .addLine("      ensureCapacity(size + collection.size());")
+          .addLine("      for (%s element : collection) {", primitive)
+          .addLine("        add%s(element);", capitalizedName(kind))
+          .addLine("      }")
+          .addLine("    }")
+          .addLine("    return size != oldSize;")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override public %s remove(int index) {", boxed)
+          .addLine("    checkElementIndex(index);")
+          .addLine("    %s previous = elements[index];", primitive)
+          .addLine("    %s.arraycopy(elements, index + 1, elements, index, size - index - 1);",
+              System.class)
+          .addLine("    size--;")
+          .addLine("    modCount++;")
+          .addLine("    return previous;")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override public void clear() {")
+          .addLine("    size = 0;")
+          .addLine("    modCount++;")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override protected void removeRange(int fromIndex, int toIndex) {")
+          .addLine("    %s.arraycopy(elements, toIndex, elements, fromIndex, size - toIndex);",
+              System.class)
+          .addLine("    size -= toIndex - fromIndex;")
+          .addLine("    modCount++;")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  void add%s(%s element) {", capitalizedName(kind), primitive)
+          .addLine("    ensureCapacity(size + 1);")
+          .addLine("    elements[size++] = element;")
+          .addLine("    modCount++;")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  void addAll(%s[] source, int offset, int length) {", primitive)
+          .addLine("    ensureCapacity(size + length);")
+          .addLine("    %s.arraycopy(source, offset, elements, size, length);", System.class)
+          .addLine("    size += length;")
+          .addLine("    modCount++;")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  void ensureCapacity(int minCapacity) {")
+          .addLine("    if (minCapacity > elements.length) {")
+          .addLine("      int capacity = elements.length + (elements.length >> 1) + 1;")
+          .addLine("      elements = %s.copyOf(elements, %s.max(capacity, minCapacity));",
+              Arrays.class, Math.class)
+          .addLine("    }")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  %s toImmutableList() {", immutableName)
+          .addLine("    if (size == 0) {")
+          .addLine("      return %s.EMPTY;", immutableName)
+          .addLine("    }")
+          .addLine("    return new %s(%s.copyOf(elements, size));", immutableName, Arrays.class)
+          .addLine("  }")
+          .addLine("")
+          .addLine("  private void checkElementIndex(int index) {")
+          .addLine("    if (index < 0 || index >= size) {")
+          .addLine("      throw new %s(\"Index: \" + index + \", Size: \" + size);",
+              IndexOutOfBoundsException.class)
+          .addLine("    }")
+          .addLine("  }")
+          .addLine("}");
+    }
+  }
+
+  private static class ImmutableListExcerpt extends StaticExcerpt {
+
+    private final TypeKind kind;
+
+    ImmutableListExcerpt(TypeKind kind) {
+      super(TYPE, immutableList(kind));
+      this.kind = kind;
+    }
+
+    @Override
+    public void addTo(SourceBuilder code) {
+      String primitive = kind.name().toLowerCase();
+      String name = immutableList(kind);
+      Class<?> boxed = boxedType(kind);
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * An immutable {@code List<%s>} backed by an unboxed {@code %s} array.",
+              boxed.getSimpleName(), primitive)
+          .addLine(" */")
+          .addLine("private static final class %s extends %s<%s>",
+              name, AbstractList.class, boxed)
+          .addLine("    implements %s, %s {", RandomAccess.class, Serializable.class)
+          .addLine("")
+          .addLine("  private static final %1$s EMPTY = new %1$s(new %2$s[0]);", name, primitive)
+          .addLine("")
+          .addLine("  private final %s[] elements;", primitive)
+          .addLine("")
+          .addLine("  private %s(%s[] elements) {", name, primitive)
+          .addLine("    this.elements = elements;")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override public int size() {")
+          .addLine("    return elements.length;")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override public %s get(int index) {", boxed)
+          .addLine("    return elements[index];")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override public boolean equals(Object obj) {")
+          .addLine("    if (obj instanceof %s) {", name)
+          .addLine("      return %s.equals(elements, ((%s) obj).elements);", Arrays.class, name)
+          .addLine("    }")
+          .addLine("    return super.equals(obj);")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  @Override public int hashCode() {")
+          .addLine("    return %s.hashCode(elements);", Arrays.class)
+          .addLine("  }")
+          .addLine("}");
+    }
+  }
+
+  private PrimitiveList() {}
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor.excerpt;
+
+import static org.inferred.freebuilder.processor.util.StaticExcerpt.Type.TYPE;
+import static org.inferred.freebuilder.processor.util.feature.GuavaLibrary.GUAVA;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+import org.inferred.freebuilder.processor.util.StaticExcerpt;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Excerpts defining a weak interner, for canonicalizing values when Guava's
+ * {@code Interners.newWeakInterner()} is unavailable.
+ *
+ * <p>Entries are spread over {@value #STRIPES} independently-locked {@link WeakHashMap}s, each
+ * mapping an instance to a weak reference to itself, so that interning never keeps a value alive.
+ */
+public class WeakInterner {
+
+  private static final int STRIPES = 16;
+
+  /** Simple name of the generated interner type. */
+  public static final String TYPE_NAME = "WeakInterner";
+
+  public static Set<StaticExcerpt> excerpts() {
+    return ImmutableSet.of(WEAK_INTERNER);
+  }
+
+  private static final StaticExcerpt WEAK_INTERNER = new StaticExcerpt(TYPE, TYPE_NAME) {
+    @Override
+    public void addTo(SourceBuilder code) {
+      if (code.feature(GUAVA).isAvailable()) {
+        return;
+      }
+      code.addLine("")
+          .addLine("private static final class %s<E> {", TYPE_NAME)
+          .addLine("")
+          .addLine("  private final %s<E, %s<E>>[] stripes;", Map.class, WeakReference.class)
+          .addLine("")
+          .addLine("  @SuppressWarnings(\"unchecked\")")
+          .addLine("  %s() {", TYPE_NAME)
+          .addLine("    stripes = new %s[%d];", Map.class, STRIPES)
+          .addLine("    for (int i = 0; i < stripes.length; i++) {")
+          .addLine("      stripes[i] = new %s<E, %s<E>>();", WeakHashMap.class, WeakReference.class)
+          .addLine("    }")
+          .addLine("  }")
+          .addLine("")
+          .addLine("  /**")
+          .addLine("   * Returns an instance equal to {@code sample}, which is {@code sample}")
+          .addLine("   * itself unless an equal instance was interned and is still reachable.")
+          .addLine("   */")
+          .addLine("  E intern(E sample) {")
+          .addLine("    int hash = sample.hashCode();")
+          .addLine("    %s<E, %s<E>> stripe = stripes[(hash ^ (hash >>> 16)) & %d];",
+              Map.class, WeakReference.class, STRIPES - 1)
+          .addLine("    synchronized (stripe) {")
+          .addLine("      %s<E> reference = stripe.get(sample);", WeakReference.class)
+          .addLine("      E canonical = (reference == null) ? null : reference.get();")
+          .addLine("      if (canonical != null) {")
+          .addLine("        return canonical;")
+          .addLine("      }")
+          .addLine("      stripe.put(sample, new %s<E>(sample));", WeakReference.class)
+          .addLine("      return sample;")
+          .addLine("    }")
+          .addLine("  }")
+          .addLine("}");
+    }
+  };
+
+  private WeakInterner() {}
+}
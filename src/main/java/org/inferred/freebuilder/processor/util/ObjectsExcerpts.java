@@ -1,5 +1,6 @@
 package org.inferred.freebuilder.processor.util;
 
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_8;
 import static org.inferred.freebuilder.processor.util.feature.SourceLevel.SOURCE_LEVEL;
 
 import javax.lang.model.type.TypeKind;
@@ -18,7 +19,7 @@ public class ObjectsExcerpts {
    * Returns an Excerpt equivalent to {@code Objects.equals(a, b)}.
    *
    * <p>If Objects is not available, {@code kind} and {@code nullability} are needed to generate
-   * the most idiomatic equivalent.
+   * the most idiomatic equivalent. Non-null primitives are always compared without boxing.
    */
   public static Excerpt equals(Object a, Object b, TypeKind kind, Nullability nullability) {
     return new EqualsExcerpt(true, a, b, kind, nullability);
@@ -28,7 +29,7 @@ public class ObjectsExcerpts {
    * Returns an Excerpt equivalent to {@code !Objects.equals(a, b)}.
    *
    * <p>If Objects is not available, {@code kind} and {@code nullability} are needed to generate
-   * the most idiomatic equivalent.
+   * the most idiomatic equivalent. Non-null primitives are always compared without boxing.
    */
   public static Excerpt notEquals(Object a, Object b, TypeKind kind, Nullability nullability) {
     return new EqualsExcerpt(false, a, b, kind, nullability);
@@ -53,15 +54,8 @@ public class ObjectsExcerpts {
     @Override
     public void addTo(SourceBuilder code) {
       QualifiedName javaUtilObjects = code.feature(SOURCE_LEVEL).javaUtilObjects().orNull();
-      if (javaUtilObjects != null) {
-        code.add("%s%s.equals(%s, %s)", areEqual ? "" : "!", javaUtilObjects, a, b);
-      } else if (nullability.isNullable()) {
-        if (areEqual) {
-          code.add("%1$s == %2$s || (%1$s != null && %1$s.equals(%2$s))", a, b);
-        } else {
-          code.add("%1$s != %2$s && (%1$s == null || !%1$s.equals(%2$s))", a, b);
-        }
-      } else if (kind.isPrimitive()) {
+      if (kind.isPrimitive() && !nullability.isNullable()) {
+        // Compared directly, as Objects.equals would box them
         switch (kind) {
         case FLOAT:
           code.add("%1$s.floatToIntBits(%2$s) %3$s %1$s.floatToIntBits(%4$s)",
@@ -76,6 +70,14 @@ public class ObjectsExcerpts {
         default:
           code.add("%s %s %s", a, areEqual ? "==" : "!=", b);
         }
+      } else if (javaUtilObjects != null) {
+        code.add("%s%s.equals(%s, %s)", areEqual ? "" : "!", javaUtilObjects, a, b);
+      } else if (nullability.isNullable()) {
+        if (areEqual) {
+          code.add("%1$s == %2$s || (%1$s != null && %1$s.equals(%2$s))", a, b);
+        } else {
+          code.add("%1$s != %2$s && (%1$s == null || !%1$s.equals(%2$s))", a, b);
+        }
       } else {
         code.add("%s%s.equals(%s)", areEqual ? "" : "!", a, b);
       }
@@ -93,6 +95,96 @@ public class ObjectsExcerpts {
   }
 
 
+  /**
+   * Returns an Excerpt equivalent to {@code Objects.hashCode(value)}, computed without boxing.
+   *
+   * <p>The result is identical to calling {@code hashCode()} on the boxed value, so an unrolled
+   * {@code 31 * h + ...} chain gives the same result as {@code Arrays.hashCode(Object[])}.
+   */
+  public static Excerpt hashCode(Object value, TypeKind kind, Nullability nullability) {
+    return new HashCodeExcerpt(value, kind, nullability);
+  }
+
+  private static class HashCodeExcerpt extends Excerpt {
+
+    private final Object value;
+    private final TypeKind kind;
+    private final Nullability nullability;
+
+    HashCodeExcerpt(Object value, TypeKind kind, Nullability nullability) {
+      this.value = value;
+      this.kind = kind;
+      this.nullability = nullability;
+    }
+
+    @Override
+    public void addTo(SourceBuilder code) {
+      if (!kind.isPrimitive()) {
+        QualifiedName javaUtilObjects = code.feature(SOURCE_LEVEL).javaUtilObjects().orNull();
+        if (!nullability.isNullable()) {
+          code.add("%s.hashCode()", value);
+        } else if (javaUtilObjects != null) {
+          code.add("%s.hashCode(%s)", javaUtilObjects, value);
+        } else {
+          code.add("(%1$s == null ? 0 : %1$s.hashCode())", value);
+        }
+      } else if (code.feature(SOURCE_LEVEL).compareTo(JAVA_8) >= 0) {
+        code.add("%s.hashCode(%s)", boxedType(kind), value);
+      } else {
+        switch (kind) {
+        case BOOLEAN:
+          code.add("(%s ? 1231 : 1237)", value);
+          break;
+
+        case LONG:
+          code.add("(int) (%1$s ^ (%1$s >>> 32))", value);
+          break;
+
+        case FLOAT:
+          code.add("%s.floatToIntBits(%s)", Float.class, value);
+          break;
+
+        case DOUBLE:
+          code.add("(int) (%1$s.doubleToLongBits(%2$s) ^ (%1$s.doubleToLongBits(%2$s) >>> 32))",
+              Double.class, value);
+          break;
+
+        default:
+          code.add("%s", value);
+        }
+      }
+    }
+
+    private static Class<?> boxedType(TypeKind kind) {
+      switch (kind) {
+        case BOOLEAN:
+          return Boolean.class;
+        case BYTE:
+          return Byte.class;
+        case SHORT:
+          return Short.class;
+        case INT:
+          return Integer.class;
+        case LONG:
+          return Long.class;
+        case CHAR:
+          return Character.class;
+        case FLOAT:
+          return Float.class;
+        case DOUBLE:
+          return Double.class;
+        default:
+          throw new IllegalArgumentException("Not a primitive: " + kind);
+      }
+    }
+
+    @Override
+    protected void addFields(FieldReceiver fields) {
+      fields.add("value", value);
+      fields.add("kind", kind);
+      fields.add("nullable", nullability);
+    }
+  }
 
   private ObjectsExcerpts() {}
 }
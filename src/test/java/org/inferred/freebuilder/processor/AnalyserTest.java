@@ -95,6 +95,9 @@ public class AnalyserTest {
         .setInterfaceType(false)
         .setPartialType(partialType.withParameters())
         .setPropertyEnum(propertyType.withParameters())
+        .setSnapshottingDefaults(true)
+        .setUsingEnumSets(true)
+        .setUsingEnumMaps(true)
         .setType(QualifiedName.of("com.example", "DataType").withParameters())
         .setValueType(valueType.withParameters())
         .addVisibleNestedTypes(partialType)
@@ -130,6 +133,9 @@ public class AnalyserTest {
         .setInterfaceType(true)
         .setPartialType(partialType.withParameters())
         .setPropertyEnum(propertyType.withParameters())
+        .setSnapshottingDefaults(true)
+        .setUsingEnumSets(true)
+        .setUsingEnumMaps(true)
         .setType(QualifiedName.of("com.example", "DataType").withParameters())
         .setValueType(valueType.withParameters())
         .addVisibleNestedTypes(partialType)
@@ -283,6 +289,54 @@ public class AnalyserTest {
             + "implement toBuilder");
   }
 
+  @Test
+  public void compareToMethod() throws CannotGenerateCodeException {
+    Metadata dataType = analyser.analyse(model.newType(
+        "package com.example;",
+        "@org.inferred.freebuilder.FreeBuilder(comparator = {\"count\", \"name\"})",
+        "public interface DataType extends Comparable<DataType> {",
+        "  String getName();",
+        "  int getCount();",
+        "  class Builder extends DataType_Builder { }",
+        "}"));
+    assertTrue(dataType.getHasCompareToMethod());
+    assertThat(dataType.getComparatorOrder()).containsExactly("count", "name").inOrder();
+    assertThat(dataType.getProperties()).hasSize(2);
+    assertThat(messager.getMessagesByElement().keys()).isEmpty();
+  }
+
+  @Test
+  public void compareToMethod_noComparatorOrder() throws CannotGenerateCodeException {
+    analyser.analyse(model.newType(
+        "package com.example;",
+        "public interface DataType extends Comparable<DataType> {",
+        "  String getName();",
+        "  class Builder extends DataType_Builder { }",
+        "}"));
+    assertThat(messager.getMessagesByElement().keySet()).containsExactly("compareTo");
+    assertThat(messager.getMessagesByElement().get("compareTo"))
+        .containsExactly("[ERROR] Add @FreeBuilder(comparator = {...}) to generate compareTo, "
+            + "listing the properties to compare in order");
+  }
+
+  @Test
+  public void comparatorOrder_invalidProperties() throws CannotGenerateCodeException {
+    Metadata dataType = analyser.analyse(model.newType(
+        "package com.example;",
+        "@org.inferred.freebuilder.FreeBuilder(",
+        "    comparator = {\"name\", \"tags\", \"size\", \"name\"})",
+        "public interface DataType {",
+        "  String getName();",
+        "  java.util.List<String> getTags();",
+        "  class Builder extends DataType_Builder { }",
+        "}"));
+    assertThat(dataType.getComparatorOrder()).containsExactly("name");
+    assertThat(messager.getMessagesByElement().get("DataType")).containsExactly(
+        "[ERROR] Property 'tags' is not comparable",
+        "[ERROR] No property named 'size' to compare",
+        "[ERROR] Property 'name' listed twice in comparator");
+  }
+
   @Test
   public void twoBeanGetters() throws CannotGenerateCodeException {
     Metadata dataType = analyser.analyse(model.newType(
@@ -692,6 +746,42 @@ public class AnalyserTest {
     assertThat(messager.getMessagesByElement().keys()).isEmpty();
   }
 
+  @Test
+  public void intern_gwtCompatible() throws CannotGenerateCodeException {
+    Metadata dataType = analyser.analyse(model.newType(
+        "package com.example;",
+        "@" + GwtCompatible.class.getName(),
+        "@org.inferred.freebuilder.FreeBuilder(intern = true)",
+        "public interface DataType {",
+        "  class Builder extends DataType_Builder {}",
+        "}"));
+    assertFalse(dataType.isValueInterned());
+    assertThat(messager.getMessagesByElement().keySet()).containsExactly("DataType");
+    assertThat(messager.getMessagesByElement().get("DataType"))
+        .containsExactly("[ERROR] @FreeBuilder(intern = true) is not supported on "
+            + "@GwtCompatible types");
+  }
+
+  @Test
+  public void valueSerializable() throws CannotGenerateCodeException {
+    Metadata dataType = analyser.analyse(model.newType(
+        "package com.example;",
+        "public interface DataType extends java.io.Serializable {",
+        "  class Builder extends DataType_Builder {}",
+        "}"));
+    assertTrue(dataType.isValueSerializable());
+  }
+
+  @Test
+  public void valueNotSerializable() throws CannotGenerateCodeException {
+    Metadata dataType = analyser.analyse(model.newType(
+        "package com.example;",
+        "public interface DataType {",
+        "  class Builder extends DataType_Builder {}",
+        "}"));
+    assertFalse(dataType.isValueSerializable());
+  }
+
   @Test
   public void underriddenEquals() throws CannotGenerateCodeException {
     TypeElement dataType = model.newType(
@@ -1159,6 +1249,9 @@ public class AnalyserTest {
         .setInterfaceType(false)
         .setPartialType(partialType.withParameters())
         .setPropertyEnum(propertyType.withParameters())
+        .setSnapshottingDefaults(true)
+        .setUsingEnumSets(true)
+        .setUsingEnumMaps(true)
         .setType(QualifiedName.of("com.example", "DataType").withParameters())
         .setValueType(valueType.withParameters())
         .addVisibleNestedTypes(QualifiedName.of(concreteBuilder))
@@ -1198,6 +1291,9 @@ public class AnalyserTest {
         .setInterfaceType(false)
         .setPartialType(partialType.withParameters())
         .setPropertyEnum(propertyType.withParameters())
+        .setSnapshottingDefaults(true)
+        .setUsingEnumSets(true)
+        .setUsingEnumMaps(true)
         .setType(QualifiedName.of("com.example", "DataType").withParameters())
         .setValueType(valueType.withParameters())
         .addVisibleNestedTypes(QualifiedName.of(concreteBuilder))
@@ -42,6 +42,7 @@ import org.junit.runners.Parameterized.UseParametersRunnerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import javax.tools.JavaFileObject;
 
@@ -97,6 +98,33 @@ public class BuildablePrefixlessPropertyTest {
       .addLine("}")
       .build();
 
+  private static final JavaFileObject COUNTING_TYPE = new SourceBuilder()
+      .addLine("package com.example;")
+      .addLine("@%s", FreeBuilder.class)
+      .addLine("public interface DataType {")
+      .addLine("  @%s", FreeBuilder.class)
+      .addLine("  interface Item {")
+      .addLine("    String name();")
+      .addLine("    int price();")
+      .addLine("")
+      .addLine("    class Builder extends DataType_Item_Builder {")
+      .addLine("      public static int created = 0;")
+      .addLine("")
+      .addLine("      public Builder() {")
+      .addLine("        created++;")
+      .addLine("        name(\"Air\");")
+      .addLine("        price(0);")
+      .addLine("      }")
+      .addLine("    }")
+      .addLine("  }")
+      .addLine("")
+      .addLine("  Item item1();")
+      .addLine("  Item item2();")
+      .addLine("")
+      .addLine("  class Builder extends DataType_Builder {}")
+      .addLine("}")
+      .build();
+
   private static final JavaFileObject NESTED_LIST_TYPE = new SourceBuilder()
       .addLine("package com.example;")
       .addLine("@%s", FreeBuilder.class)
@@ -305,6 +333,151 @@ public class BuildablePrefixlessPropertyTest {
         .runTest();
   }
 
+  @Test
+  public void testSetToValue_reusesInstance() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DEFAULTS_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType.Item item = new com.example.DataType.Item.Builder()")
+            .addLine("    .name(\"Foo\")")
+            .addLine("    .build();")
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .item1(item)")
+            .addLine("    .build();")
+            .addLine("assertSame(item, value.item1());")
+            .addLine("com.example.DataType copy = new com.example.DataType.Builder()")
+            .addLine("    .mergeFrom(value)")
+            .addLine("    .build();")
+            .addLine("assertSame(item, copy.item1());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testSetToValue_partial() {
+    thrown.expect(UnsupportedOperationException.class);
+    behaviorTester
+        .with(new Processor(features))
+        .with(NO_DEFAULTS_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType.Item partial = new com.example.DataType.Item.Builder()")
+            .addLine("    .name(\"Foo\")")
+            .addLine("    .buildPartial();")
+            .addLine("new com.example.DataType.Builder().item1(partial);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testSetToValue_copiesOtherImplementations() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DEFAULTS_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType.Item item = new com.example.DataType.Item() {")
+            .addLine("  @Override public String name() {")
+            .addLine("    return \"Foo\";")
+            .addLine("  }")
+            .addLine("  @Override public int price() {")
+            .addLine("    return 1;")
+            .addLine("  }")
+            .addLine("};")
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .item1(item)")
+            .addLine("    .build();")
+            .addLine("assertNotSame(item, value.item1());")
+            .addLine("assertEquals(\"Foo\", value.item1().name());")
+            .addLine("assertEquals(1, value.item1().price());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testSetToValue_copiesValuesFromOverriddenBuild() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public interface DataType {")
+            .addLine("  Item item();")
+            .addLine("")
+            .addLine("  class Builder extends DataType_Builder {}")
+            .addLine("")
+            .addLine("  @%s", FreeBuilder.class)
+            .addLine("  interface Item {")
+            .addLine("    String name();")
+            .addLine("")
+            .addLine("    class Builder extends DataType_Item_Builder {")
+            .addLine("      @Override public Item build() {")
+            .addLine("        final Item built = super.build();")
+            .addLine("        return new Item() {")
+            .addLine("          @Override public String name() {")
+            .addLine("            return built.name();")
+            .addLine("          }")
+            .addLine("        };")
+            .addLine("      }")
+            .addLine("    }")
+            .addLine("  }")
+            .addLine("}")
+            .build())
+        .with(new TestBuilder()
+            .addLine("com.example.DataType.Item item = new com.example.DataType.Item.Builder()")
+            .addLine("    .name(\"Foo\")")
+            .addLine("    .build();")
+            .addLine("com.example.DataType first = new com.example.DataType.Builder()")
+            .addLine("    .item(item)")
+            .addLine("    .build();")
+            .addLine("com.example.DataType second = new com.example.DataType.Builder()")
+            .addLine("    .item(item)")
+            .addLine("    .build();")
+            .addLine("assertNotSame(item, first.item());")
+            .addLine("assertNotSame(item, second.item());")
+            .addLine("assertEquals(\"Foo\", second.item().name());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testSetToValue_thenModifyBuilder() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DEFAULTS_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType.Item item = new com.example.DataType.Item.Builder()")
+            .addLine("    .name(\"Foo\")")
+            .addLine("    .price(1)")
+            .addLine("    .build();")
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder()")
+            .addLine("    .item1(item);")
+            .addLine("builder.item1Builder().price(2);")
+            .addLine("com.example.DataType value = builder.build();")
+            .addLine("assertEquals(\"Foo\", value.item1().name());")
+            .addLine("assertEquals(2, value.item1().price());")
+            .addLine("assertEquals(1, item.price());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testSetToValue_updatesExistingBuilder() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DEFAULTS_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder();")
+            .addLine("com.example.DataType.Item.Builder itemBuilder = builder.item1Builder();")
+            .addLine("builder.item1(new com.example.DataType.Item.Builder()")
+            .addLine("    .name(\"Foo\")")
+            .addLine("    .build());")
+            .addLine("assertEquals(\"Foo\", itemBuilder.name());")
+            .addLine("itemBuilder.price(3);")
+            .addLine("assertEquals(3, builder.build().item1().price());")
+            .build())
+        .runTest();
+  }
+
   @Test
   public void testSetToValue_nestedList() {
     behaviorTester
@@ -499,6 +672,93 @@ public class BuildablePrefixlessPropertyTest {
         .runTest();
   }
 
+  @Test
+  public void testGetBuilder_allocatedLazily() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(COUNTING_TYPE)
+        .with(new TestBuilder()
+            .addLine("int created = com.example.DataType.Item.Builder.created;")
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder();")
+            .addLine("assertEquals(created, com.example.DataType.Item.Builder.created);")
+            .addLine("assertSame(builder.item1Builder(), builder.item1Builder());")
+            .addLine("assertEquals(created + 1, com.example.DataType.Item.Builder.created);")
+            .addLine("builder.item1Builder().name(\"Foo\");")
+            .addLine("com.example.DataType value = builder.build();")
+            .addLine("assertEquals(\"Foo\", value.item1().name());")
+            .addLine("assertEquals(\"Air\", value.item2().name());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testMergeFromBuilder_untouchedNestedBuilderNotAllocated() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(COUNTING_TYPE)
+        .with(new TestBuilder()
+            .addLine("int created = com.example.DataType.Item.Builder.created;")
+            .addLine("com.example.DataType.Builder template = new com.example.DataType.Builder();")
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder()")
+            .addLine("    .mergeFrom(template);")
+            .addLine("assertEquals(created, com.example.DataType.Item.Builder.created);")
+            .addLine("com.example.DataType value = builder.build();")
+            .addLine("assertEquals(\"Air\", value.item1().name());")
+            .addLine("assertEquals(0, value.item2().price());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testBuild_untouchedDefaultBuiltOnceAndShared() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(COUNTING_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType first = new com.example.DataType.Builder().build();")
+            .addLine("int created = com.example.DataType.Item.Builder.created;")
+            .addLine("com.example.DataType second = new com.example.DataType.Builder().build();")
+            .addLine("assertEquals(created, com.example.DataType.Item.Builder.created);")
+            .addLine("assertSame(first.item1(), second.item1());")
+            .addLine("assertEquals(\"Air\", second.item2().name());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testBuild_untouchedDefaultNotSharedIfSnapshotDefaultsDisabled() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public interface DataType {")
+            .addLine("  @%s(snapshotDefaults = false)", FreeBuilder.class)
+            .addLine("  interface Item {")
+            .addLine("    long createdAt();")
+            .addLine("")
+            .addLine("    class Builder extends DataType_Item_Builder {")
+            .addLine("      private static long clock = 0;")
+            .addLine("")
+            .addLine("      public Builder() {")
+            .addLine("        createdAt(++clock);")
+            .addLine("      }")
+            .addLine("    }")
+            .addLine("  }")
+            .addLine("")
+            .addLine("  Item item();")
+            .addLine("")
+            .addLine("  class Builder extends DataType_Builder {}")
+            .addLine("}")
+            .build())
+        .with(new TestBuilder()
+            .addLine("com.example.DataType first = new com.example.DataType.Builder().build();")
+            .addLine("com.example.DataType second = new com.example.DataType.Builder().build();")
+            .addLine("assertTrue(first.item().createdAt() < second.item().createdAt());")
+            .build())
+        .runTest();
+  }
+
   @Test
   public void testGetBuilder_protolike() {
     behaviorTester
@@ -936,6 +1196,92 @@ public class BuildablePrefixlessPropertyTest {
         .runTest();
   }
 
+  @Test
+  public void testToString_nestedValues() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(NO_DEFAULTS_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder();")
+            .addLine("builder.item1Builder().name(\"Foo\").price(1);")
+            .addLine("builder.item2Builder().name(\"Bar\");")
+            .addLine("assertEquals(\"partial DataType{item1=partial Item{name=Foo, price=1}, \"")
+            .addLine("    + \"item2=partial Item{name=Bar}}\", builder.buildPartial().toString());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testToString_nestedValueCollections() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public interface DataType {")
+            .addLine("  @%s", FreeBuilder.class)
+            .addLine("  interface Item {")
+            .addLine("    String name();")
+            .addLine("")
+            .addLine("    class Builder extends DataType_Item_Builder {}")
+            .addLine("  }")
+            .addLine("")
+            .addLine("  %s<Item> items();", List.class)
+            .addLine("  %s<Item> itemSet();", Set.class)
+            .addLine("")
+            .addLine("  class Builder extends DataType_Builder {}")
+            .addLine("}")
+            .build())
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .addItems(new com.example.DataType.Item.Builder().name(\"a\").build())")
+            .addLine("    .addItems(new com.example.DataType.Item.Builder().name(\"b\").build())")
+            .addLine("    .addItemSet(new com.example.DataType.Item.Builder().name(\"c\").build())")
+            .addLine("    .build();")
+            .addLine("assertEquals(\"DataType{items=[Item{name=a}, Item{name=b}], \"")
+            .addLine("    + \"itemSet=[Item{name=c}]}\", value.toString());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testToString_nestedValueWithCustomToString() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public interface DataType {")
+            .addLine("  @%s", FreeBuilder.class)
+            .addLine("  abstract class Item {")
+            .addLine("    public abstract String name();")
+            .addLine("")
+            .addLine("    @Override public String toString() {")
+            .addLine("      return \"<\" + name() + \">\";")
+            .addLine("    }")
+            .addLine("")
+            .addLine("    public static class Builder extends DataType_Item_Builder {}")
+            .addLine("  }")
+            .addLine("")
+            .addLine("  Item item();")
+            .addLine("  %s<Item> items();", List.class)
+            .addLine("")
+            .addLine("  class Builder extends DataType_Builder {}")
+            .addLine("}")
+            .build())
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .item(new com.example.DataType.Item.Builder().name(\"a\").build())")
+            .addLine("    .addItems(new com.example.DataType.Item.Builder().name(\"b\").build())")
+            .addLine("    .addItems(new com.example.DataType.Item.Builder()")
+            .addLine("        .buildPartial())")
+            .addLine("    .build();")
+            .addLine("assertEquals(\"DataType{item=<a>, items=[<b>, partial Item{}]}\",")
+            .addLine("    value.toString());")
+            .build())
+        .runTest();
+  }
+
   @Test
   public void testIssue68_nameCollisionForTemplate() {
     // mergeFrom(DataType.Template template) must resolve the name collision on "template"
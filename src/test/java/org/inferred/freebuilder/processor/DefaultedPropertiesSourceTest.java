@@ -55,8 +55,6 @@ public class DefaultedPropertiesSourceTest {
         "    return new Person.Builder().mergeFrom(value);",
         "  }",
         "",
-        "  private static final Joiner COMMA_JOINER = Joiner.on(\", \").skipNulls();",
-        "",
         "  private String name;",
         "  private int age;",
         "",
@@ -171,14 +169,17 @@ public class DefaultedPropertiesSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
         "      Person_Builder.Value other = (Person_Builder.Value) obj;",
-        "      if (!name.equals(other.name)) {",
+        "      if (age != other.age) {",
         "        return false;",
         "      }",
-        "      if (age != other.age) {",
+        "      if (!name.equals(other.name)) {",
         "        return false;",
         "      }",
         "      return true;",
@@ -186,12 +187,23 @@ public class DefaultedPropertiesSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name, age});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + age;",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      result.append(\", \");",
+        "      result.append(\"age=\").append(age);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{\" + \"name=\" + name + \", \" + \"age=\" + age + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
@@ -216,14 +228,17 @@ public class DefaultedPropertiesSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
         "      Person_Builder.Partial other = (Person_Builder.Partial) obj;",
-        "      if (!name.equals(other.name)) {",
+        "      if (age != other.age) {",
         "        return false;",
         "      }",
-        "      if (age != other.age) {",
+        "      if (!name.equals(other.name)) {",
         "        return false;",
         "      }",
         "      return true;",
@@ -231,15 +246,49 @@ public class DefaultedPropertiesSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name, age});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + age;",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      result.append(\", \");",
+        "      result.append(\"age=\").append(age);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{\" + COMMA_JOINER.join(\"name=\" + name, \"age=\" + age) "
-            + "+ \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
@@ -259,8 +308,6 @@ public class DefaultedPropertiesSourceTest {
         "    return new Person.Builder().mergeFrom(value);",
         "  }",
         "",
-        "  private static final Joiner COMMA_JOINER = Joiner.on(\", \").skipNulls();",
-        "",
         "  private String name;",
         "  private int age;",
         "",
@@ -301,7 +348,7 @@ public class DefaultedPropertiesSourceTest {
         "    if (!Objects.equals(value.getName(), _defaults.getName())) {",
         "      setName(value.getName());",
         "    }",
-        "    if (!Objects.equals(value.getAge(), _defaults.getAge())) {",
+        "    if (value.getAge() != _defaults.getAge()) {",
         "      setAge(value.getAge());",
         "    }",
         "    return (Person.Builder) this;",
@@ -317,7 +364,7 @@ public class DefaultedPropertiesSourceTest {
         "    if (!Objects.equals(template.getName(), _defaults.getName())) {",
         "      setName(template.getName());",
         "    }",
-        "    if (!Objects.equals(template.getAge(), _defaults.getAge())) {",
+        "    if (template.getAge() != _defaults.getAge()) {",
         "      setAge(template.getAge());",
         "    }",
         "    return (Person.Builder) this;",
@@ -375,21 +422,35 @@ public class DefaultedPropertiesSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
         "      Person_Builder.Value other = (Person_Builder.Value) obj;",
-        "      return Objects.equals(name, other.name) && Objects.equals(age, other.age);",
+        "      return age == other.age && Objects.equals(name, other.name);",
         "    }",
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name, age);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + age;",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      result.append(\", \");",
+        "      result.append(\"age=\").append(age);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{\" + \"name=\" + name + \", \" + \"age=\" + age + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
@@ -414,24 +475,61 @@ public class DefaultedPropertiesSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
         "      Person_Builder.Partial other = (Person_Builder.Partial) obj;",
-        "      return Objects.equals(name, other.name) && Objects.equals(age, other.age);",
+        "      return age == other.age && Objects.equals(name, other.name);",
         "    }",
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name, age);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + age;",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      result.append(\", \");",
+        "      result.append(\"age=\").append(age);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{\" + COMMA_JOINER.join(\"name=\" + name, \"age=\" + age) "
-            + "+ \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
@@ -566,14 +664,17 @@ public class DefaultedPropertiesSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
         "      Person_Builder.Value other = (Person_Builder.Value) obj;",
-        "      if (!name.equals(other.name)) {",
+        "      if (age != other.age) {",
         "        return false;",
         "      }",
-        "      if (age != other.age) {",
+        "      if (!name.equals(other.name)) {",
         "        return false;",
         "      }",
         "      return true;",
@@ -581,12 +682,23 @@ public class DefaultedPropertiesSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name, age});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + age;",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      result.append(\", \");",
+        "      result.append(\"age=\").append(age);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{\" + \"name=\" + name + \", \" + \"age=\" + age + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
@@ -611,14 +723,17 @@ public class DefaultedPropertiesSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
         "      Person_Builder.Partial other = (Person_Builder.Partial) obj;",
-        "      if (!name.equals(other.name)) {",
+        "      if (age != other.age) {",
         "        return false;",
         "      }",
-        "      if (age != other.age) {",
+        "      if (!name.equals(other.name)) {",
         "        return false;",
         "      }",
         "      return true;",
@@ -626,19 +741,49 @@ public class DefaultedPropertiesSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name, age});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + age;",
+        "      return _hashCode;",
         "    }",
         "",
-        "    @Override",
-        "    public String toString() {",
-        "      StringBuilder result = new StringBuilder(\"partial Person{\");",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
         "      result.append(\"name=\").append(name);",
         "      result.append(\", \");",
         "      result.append(\"age=\").append(age);",
-        "      result.append(\"}\");",
-        "      return result.toString();",
+        "      return result.append(\"}\");",
+        "    }",
+        "",
+        "    @Override",
+        "    public String toString() {",
+        "      return appendTo(new StringBuilder()).toString();",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
@@ -715,27 +860,38 @@ public class DefaultedPropertiesSourceTest {
         "  }",
         "",
         "  private enum Property {",
-        "    NAME(\"name\"),",
-        "    SHOE_SIZE(\"shoeSize\"),",
+        "    NAME(\"name\", 0),",
+        "    SHOE_SIZE(\"shoeSize\", 2),",
         "    ;",
         "",
         "    private final String name;",
+        "    private final int bit;",
         "",
-        "    private Property(String name) {",
+        "    private Property(String name, int bit) {",
         "      this.name = name;",
+        "      this.bit = bit;",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
         "      return name;",
         "    }",
+        "",
+        "    private static List<Property> unset(int unsetProperties) {",
+        "      List<Property> result = new ArrayList<Property>();",
+        "      for (Property property : Property.values()) {",
+        "        if ((unsetProperties & (1 << property.bit)) != 0) {",
+        "          result.add(property);",
+        "        }",
+        "      }",
+        "      return result;",
+        "    }",
         "  }",
         "",
         "  private String name;",
         "  private int age;",
         "  private int shoeSize;",
-        "  private final EnumSet<Person_Builder.Property> _unsetProperties =",
-        "      EnumSet.allOf(Person_Builder.Property.class);",
+        "  private int _unsetProperties = 0x5;",
         "",
         "  /**",
         "   * Sets the value to be returned by {@link Person#getName()}.",
@@ -748,7 +904,7 @@ public class DefaultedPropertiesSourceTest {
         "      throw new NullPointerException();",
         "    }",
         "    this.name = name;",
-        "    _unsetProperties.remove(Person_Builder.Property.NAME);",
+        "    _unsetProperties &= ~(1 << 0);",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -758,10 +914,9 @@ public class DefaultedPropertiesSourceTest {
         "   * @throws IllegalStateException if the field has not been set",
         "   */",
         "  public String getName() {",
-        "    if (_unsetProperties.contains(Person_Builder.Property.NAME)) {",
+        "    if (!((_unsetProperties & (1 << 0)) == 0)) {",
         "      throw new IllegalStateException(\"name not set\");",
         "    }",
-
         "    return name;",
         "  }",
         "",
@@ -787,7 +942,7 @@ public class DefaultedPropertiesSourceTest {
         "   */",
         "  public Person.Builder setShoeSize(int shoeSize) {",
         "    this.shoeSize = shoeSize;",
-        "    _unsetProperties.remove(Person_Builder.Property.SHOE_SIZE);",
+        "    _unsetProperties &= ~(1 << 2);",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -797,7 +952,7 @@ public class DefaultedPropertiesSourceTest {
         "   * @throws IllegalStateException if the field has not been set",
         "   */",
         "  public int getShoeSize() {",
-        "    if (_unsetProperties.contains(Person_Builder.Property.SHOE_SIZE)) {",
+        "    if (!((_unsetProperties & (1 << 2)) == 0)) {",
         "      throw new IllegalStateException(\"shoeSize not set\");",
         "    }",
         "    return shoeSize;",
@@ -806,14 +961,14 @@ public class DefaultedPropertiesSourceTest {
         "  /** Sets all property values using the given {@code Person} as a template. */",
         "  public Person.Builder mergeFrom(Person value) {",
         "    Person_Builder _defaults = new Person.Builder();",
-        "    if (_defaults._unsetProperties.contains(Person_Builder.Property.NAME)",
+        "    if ((_defaults._unsetProperties & (1 << 0)) != 0",
         "        || !value.getName().equals(_defaults.getName())) {",
         "      setName(value.getName());",
         "    }",
         "    if (value.getAge() != _defaults.getAge()) {",
         "      setAge(value.getAge());",
         "    }",
-        "    if (_defaults._unsetProperties.contains(Person_Builder.Property.SHOE_SIZE)",
+        "    if ((_defaults._unsetProperties & (1 << 2)) != 0",
         "        || value.getShoeSize() != _defaults.getShoeSize()) {",
         "      setShoeSize(value.getShoeSize());",
         "    }",
@@ -829,16 +984,16 @@ public class DefaultedPropertiesSourceTest {
         "    // Upcast to access private fields; otherwise, oddly, we get an access violation.",
         "    Person_Builder base = (Person_Builder) template;",
         "    Person_Builder _defaults = new Person.Builder();",
-        "    if (!base._unsetProperties.contains(Person_Builder.Property.NAME)",
-        "        && (_defaults._unsetProperties.contains(Person_Builder.Property.NAME)",
+        "    if ((base._unsetProperties & (1 << 0)) == 0",
+        "        && ((_defaults._unsetProperties & (1 << 0)) != 0",
         "            || !template.getName().equals(_defaults.getName()))) {",
         "      setName(template.getName());",
         "    }",
         "    if (template.getAge() != _defaults.getAge()) {",
         "      setAge(template.getAge());",
         "    }",
-        "    if (!base._unsetProperties.contains(Person_Builder.Property.SHOE_SIZE)",
-        "        && (_defaults._unsetProperties.contains(Person_Builder.Property.SHOE_SIZE)",
+        "    if ((base._unsetProperties & (1 << 2)) == 0",
+        "        && ((_defaults._unsetProperties & (1 << 2)) != 0",
         "            || template.getShoeSize() != _defaults.getShoeSize())) {",
         "      setShoeSize(template.getShoeSize());",
         "    }",
@@ -851,8 +1006,7 @@ public class DefaultedPropertiesSourceTest {
         "    name = _defaults.name;",
         "    age = _defaults.age;",
         "    shoeSize = _defaults.shoeSize;",
-        "    _unsetProperties.clear();",
-        "    _unsetProperties.addAll(_defaults._unsetProperties);",
+        "    _unsetProperties = _defaults._unsetProperties;",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -862,8 +1016,9 @@ public class DefaultedPropertiesSourceTest {
         "   * @throws IllegalStateException if any field has not been set",
         "   */",
         "  public Person build() {",
-        "    if (!_unsetProperties.isEmpty()) {",
-        "      throw new IllegalStateException(\"Not set: \" + _unsetProperties);",
+        "    if (_unsetProperties != 0) {",
+        "      throw new IllegalStateException(",
+        "          \"Not set: \" + Person_Builder.Property.unset(_unsetProperties));",
         "    }",
         "    return new Person_Builder.Value(this);",
         "  }",
@@ -914,31 +1069,47 @@ public class DefaultedPropertiesSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
         "      Person_Builder.Value other = (Person_Builder.Value) obj;",
-        "      if (!name.equals(other.name)) {",
-        "        return false;",
-        "      }",
         "      if (age != other.age) {",
         "        return false;",
         "      }",
         "      if (shoeSize != other.shoeSize) {",
         "        return false;",
         "      }",
+        "      if (!name.equals(other.name)) {",
+        "        return false;",
+        "      }",
         "      return true;",
         "    }",
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name, age, shoeSize});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + age;",
+        "      _hashCode = 31 * _hashCode + shoeSize;",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      result.append(\", \");",
+        "      result.append(\"age=\").append(age);",
+        "      result.append(\", \");",
+        "      result.append(\"shoeSize=\").append(shoeSize);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{\" + \"name=\" + name + \", \" + \"age=\" + age + \", \" "
-            + "+ \"shoeSize=\" + shoeSize + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
@@ -946,18 +1117,18 @@ public class DefaultedPropertiesSourceTest {
         "    private final String name;",
         "    private final int age;",
         "    private final int shoeSize;",
-        "    private final EnumSet<Person_Builder.Property> _unsetProperties;",
+        "    private final int _unsetProperties;",
         "",
         "    Partial(Person_Builder builder) {",
         "      this.name = builder.name;",
         "      this.age = builder.age;",
         "      this.shoeSize = builder.shoeSize;",
-        "      this._unsetProperties = builder._unsetProperties.clone();",
+        "      this._unsetProperties = builder._unsetProperties;",
         "    }",
         "",
         "    @Override",
         "    public String getName() {",
-        "      if (_unsetProperties.contains(Person_Builder.Property.NAME)) {",
+        "      if ((_unsetProperties & (1 << 0)) != 0) {",
         "        throw new UnsupportedOperationException(\"name not set\");",
         "      }",
         "      return name;",
@@ -970,7 +1141,7 @@ public class DefaultedPropertiesSourceTest {
         "",
         "    @Override",
         "    public int getShoeSize() {",
-        "      if (_unsetProperties.contains(Person_Builder.Property.SHOE_SIZE)) {",
+        "      if ((_unsetProperties & (1 << 2)) != 0) {",
         "        throw new UnsupportedOperationException(\"shoeSize not set\");",
         "      }",
         "      return shoeSize;",
@@ -978,43 +1149,78 @@ public class DefaultedPropertiesSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
         "      Person_Builder.Partial other = (Person_Builder.Partial) obj;",
-        "      if (name != other.name && (name == null || !name.equals(other.name))) {",
-        "        return false;",
-        "      }",
         "      if (age != other.age) {",
         "        return false;",
         "      }",
         "      if (shoeSize != other.shoeSize) {",
         "        return false;",
         "      }",
-        "      return _unsetProperties.equals(other._unsetProperties);",
+        "      if (name != other.name && (name == null || !name.equals(other.name))) {",
+        "        return false;",
+        "      }",
+        "      return _unsetProperties == other._unsetProperties;",
         "    }",
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name, age, shoeSize, _unsetProperties});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + (name == null ? 0 : name.hashCode());",
+        "      _hashCode = 31 * _hashCode + age;",
+        "      _hashCode = 31 * _hashCode + shoeSize;",
+        "      _hashCode = 31 * _hashCode + _unsetProperties;",
+        "      return _hashCode;",
         "    }",
         "",
-        "    @Override",
-        "    public String toString() {",
-        "      StringBuilder result = new StringBuilder(\"partial Person{\");",
-        "      if (!_unsetProperties.contains(Person_Builder.Property.NAME)) {",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      if ((_unsetProperties & (1 << 0)) == 0) {",
         "        result.append(\"name=\").append(name);",
         "        result.append(\", \");",
         "      }",
         "      result.append(\"age=\").append(age);",
-        "      if (!_unsetProperties.contains(Person_Builder.Property.SHOE_SIZE)) {",
+        "      if ((_unsetProperties & (1 << 2)) == 0) {",
         "        result.append(\", \");",
         "        result.append(\"shoeSize=\").append(shoeSize);",
         "      }",
-        "      result.append(\"}\");",
-        "      return result.toString();",
+        "      return result.append(\"}\");",
+        "    }",
+        "",
+        "    @Override",
+        "    public String toString() {",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
@@ -1033,8 +1239,6 @@ public class DefaultedPropertiesSourceTest {
         "    return new Person.Builder().mergeFrom(value);",
         "  }",
         "",
-        "  private static final Joiner COMMA_JOINER = Joiner.on(\", \").skipNulls();",
-        "",
         "  private String name;",
         "  private int age;",
         "",
@@ -1099,7 +1303,7 @@ public class DefaultedPropertiesSourceTest {
         "    if (!Objects.equals(value.getName(), _defaults.getName())) {",
         "      setName(value.getName());",
         "    }",
-        "    if (!Objects.equals(value.getAge(), _defaults.getAge())) {",
+        "    if (value.getAge() != _defaults.getAge()) {",
         "      setAge(value.getAge());",
         "    }",
         "    return (Person.Builder) this;",
@@ -1115,7 +1319,7 @@ public class DefaultedPropertiesSourceTest {
         "    if (!Objects.equals(template.getName(), _defaults.getName())) {",
         "      setName(template.getName());",
         "    }",
-        "    if (!Objects.equals(template.getAge(), _defaults.getAge())) {",
+        "    if (template.getAge() != _defaults.getAge()) {",
         "      setAge(template.getAge());",
         "    }",
         "    return (Person.Builder) this;",
@@ -1173,21 +1377,35 @@ public class DefaultedPropertiesSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
         "      Person_Builder.Value other = (Person_Builder.Value) obj;",
-        "      return Objects.equals(name, other.name) && Objects.equals(age, other.age);",
+        "      return age == other.age && Objects.equals(name, other.name);",
         "    }",
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name, age);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + Integer.hashCode(age);",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      result.append(\", \");",
+        "      result.append(\"age=\").append(age);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{\" + \"name=\" + name + \", \" + \"age=\" + age + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
@@ -1212,24 +1430,61 @@ public class DefaultedPropertiesSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
         "      Person_Builder.Partial other = (Person_Builder.Partial) obj;",
-        "      return Objects.equals(name, other.name) && Objects.equals(age, other.age);",
+        "      return age == other.age && Objects.equals(name, other.name);",
         "    }",
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name, age);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + Integer.hashCode(age);",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      result.append(\", \");",
+        "      result.append(\"age=\").append(age);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{\" + COMMA_JOINER.join(\"name=\" + name, \"age=\" + age) "
-            + "+ \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
@@ -1248,8 +1503,6 @@ public class DefaultedPropertiesSourceTest {
         "    return new Person.Builder().mergeFrom(value);",
         "  }",
         "",
-        "  private static final Joiner COMMA_JOINER = Joiner.on(\", \").skipNulls();",
-        "",
         "  private String name;",
         "  private int age;",
         "",
@@ -1314,7 +1567,7 @@ public class DefaultedPropertiesSourceTest {
         "    if (!Objects.equals(value.getName(), _defaults.getName())) {",
         "      setName(value.getName());",
         "    }",
-        "    if (!Objects.equals(value.getAge(), _defaults.getAge())) {",
+        "    if (value.getAge() != _defaults.getAge()) {",
         "      setAge(value.getAge());",
         "    }",
         "    return (Person.Builder) this;",
@@ -1330,7 +1583,7 @@ public class DefaultedPropertiesSourceTest {
         "    if (!Objects.equals(template.getName(), _defaults.getName())) {",
         "      setName(template.getName());",
         "    }",
-        "    if (!Objects.equals(template.getAge(), _defaults.getAge())) {",
+        "    if (template.getAge() != _defaults.getAge()) {",
         "      setAge(template.getAge());",
         "    }",
         "    return (Person.Builder) this;",
@@ -1393,21 +1646,35 @@ public class DefaultedPropertiesSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
         "      Person_Builder.Value other = (Person_Builder.Value) obj;",
-        "      return Objects.equals(name, other.name) && Objects.equals(age, other.age);",
+        "      return age == other.age && Objects.equals(name, other.name);",
         "    }",
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name, age);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + Integer.hashCode(age);",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      result.append(\", \");",
+        "      result.append(\"age=\").append(age);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{\" + \"name=\" + name + \", \" + \"age=\" + age + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
@@ -1447,24 +1714,61 @@ public class DefaultedPropertiesSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
         "      Person_Builder.Partial other = (Person_Builder.Partial) obj;",
-        "      return Objects.equals(name, other.name) && Objects.equals(age, other.age);",
+        "      return age == other.age && Objects.equals(name, other.name);",
         "    }",
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name, age);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + Integer.hashCode(age);",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      result.append(\", \");",
+        "      result.append(\"age=\").append(age);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{\" + COMMA_JOINER.join(\"name=\" + name, \"age=\" + age) "
-            + "+ \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
@@ -1483,8 +1787,6 @@ public class DefaultedPropertiesSourceTest {
         "    return new Person.Builder().mergeFrom(value);",
         "  }",
         "",
-        "  private static final Joiner COMMA_JOINER = Joiner.on(\", \").skipNulls();",
-        "",
         "  private String name;",
         "  private int age;",
         "",
@@ -1599,14 +1901,17 @@ public class DefaultedPropertiesSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
         "      Person_Builder.Value other = (Person_Builder.Value) obj;",
-        "      if (!name.equals(other.name)) {",
+        "      if (age != other.age) {",
         "        return false;",
         "      }",
-        "      if (age != other.age) {",
+        "      if (!name.equals(other.name)) {",
         "        return false;",
         "      }",
         "      return true;",
@@ -1614,12 +1919,23 @@ public class DefaultedPropertiesSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name, age});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + age;",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      result.append(\", \");",
+        "      result.append(\"age=\").append(age);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{\" + \"name=\" + name + \", \" + \"age=\" + age + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
@@ -1644,14 +1960,17 @@ public class DefaultedPropertiesSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
         "      Person_Builder.Partial other = (Person_Builder.Partial) obj;",
-        "      if (!name.equals(other.name)) {",
+        "      if (age != other.age) {",
         "        return false;",
         "      }",
-        "      if (age != other.age) {",
+        "      if (!name.equals(other.name)) {",
         "        return false;",
         "      }",
         "      return true;",
@@ -1659,15 +1978,49 @@ public class DefaultedPropertiesSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name, age});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + age;",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      result.append(\", \");",
+        "      result.append(\"age=\").append(age);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{\" + COMMA_JOINER.join(\"name=\" + name, \"age=\" + age) "
-            + "+ \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
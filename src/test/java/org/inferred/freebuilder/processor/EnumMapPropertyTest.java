@@ -0,0 +1,353 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.util.feature.FunctionPackage.FUNCTION_PACKAGE;
+import static org.junit.Assume.assumeTrue;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.testing.EqualsTester;
+
+import org.inferred.freebuilder.FreeBuilder;
+import org.inferred.freebuilder.processor.util.feature.FeatureSet;
+import org.inferred.freebuilder.processor.util.testing.BehaviorTestRunner.Shared;
+import org.inferred.freebuilder.processor.util.testing.BehaviorTester;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory;
+import org.inferred.freebuilder.processor.util.testing.SourceBuilder;
+import org.inferred.freebuilder.processor.util.testing.TestBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.junit.runners.Parameterized.UseParametersRunnerFactory;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.JavaFileObject;
+
+/** Behavioral tests for {@code Map<K, V>} properties keyed by an enum type, stored in EnumMaps. */
+@RunWith(Parameterized.class)
+@UseParametersRunnerFactory(ParameterizedBehaviorTestFactory.class)
+public class EnumMapPropertyTest {
+
+  @Parameters(name = "{0}")
+  public static List<FeatureSet> featureSets() {
+    return FeatureSets.ALL;
+  }
+
+  private static final JavaFileObject ENUM_MAP_TYPE = new SourceBuilder()
+      .addLine("package com.example;")
+      .addLine("@%s", FreeBuilder.class)
+      .addLine("public abstract class DataType {")
+      .addLine("  public enum Phase { PARSE, PLAN, EXECUTE, RENDER }")
+      .addLine("")
+      .addLine("  public abstract %s<Phase, Long> getTimings();", Map.class)
+      .addLine("")
+      .addLine("  public static class Builder extends DataType_Builder {}")
+      .addLine("  public abstract Builder toBuilder();")
+      .addLine("}")
+      .build();
+
+  private static final String VALIDATION_ERROR_MESSAGE = "Timings must be non-negative";
+
+  private static final JavaFileObject VALIDATED_TIMINGS_TYPE = new SourceBuilder()
+      .addLine("package com.example;")
+      .addLine("@%s", FreeBuilder.class)
+      .addLine("public abstract class DataType {")
+      .addLine("  public enum Phase { PARSE, PLAN, EXECUTE, RENDER }")
+      .addLine("")
+      .addLine("  public abstract %s<Phase, Long> getTimings();", Map.class)
+      .addLine("")
+      .addLine("  public static class Builder extends DataType_Builder {")
+      .addLine("    @Override public Builder putTimings(Phase key, long value) {")
+      .addLine("      %s.checkArgument(value >= 0, \"%s\");",
+          Preconditions.class, VALIDATION_ERROR_MESSAGE)
+      .addLine("      return super.putTimings(key, value);")
+      .addLine("    }")
+      .addLine("  }")
+      .addLine("}")
+      .build();
+
+  @Parameter public FeatureSet features;
+
+  @Rule public final ExpectedException thrown = ExpectedException.none();
+  @Shared public BehaviorTester behaviorTester;
+
+  @Test
+  public void testDefaultEmpty() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(ENUM_MAP_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder().build();")
+            .addLine("assertThat(value.getTimings()).isEmpty();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testPut_iteratesInDeclarationOrder() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(ENUM_MAP_TYPE)
+        .with(new TestBuilder()
+            .addImport("com.example.DataType.Phase")
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .putTimings(Phase.RENDER, 4)")
+            .addLine("    .putTimings(Phase.PARSE, 1)")
+            .addLine("    .putTimings(Phase.PLAN, 2)")
+            .addLine("    .putTimings(Phase.RENDER, 5)")
+            .addLine("    .build();")
+            .addLine("assertThat(value.getTimings()).isEqualTo(%s.of(", ImmutableMap.class)
+            .addLine("    Phase.PARSE, 1L, Phase.PLAN, 2L, Phase.RENDER, 5L));")
+            .addLine("assertThat(value.getTimings().keySet())")
+            .addLine("    .containsExactly(Phase.PARSE, Phase.PLAN, Phase.RENDER).inOrder();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testPut_nullKey() {
+    thrown.expect(NullPointerException.class);
+    behaviorTester
+        .with(new Processor(features))
+        .with(ENUM_MAP_TYPE)
+        .with(new TestBuilder()
+            .addLine("new com.example.DataType.Builder().putTimings(null, 1);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testPutAll() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(ENUM_MAP_TYPE)
+        .with(new TestBuilder()
+            .addImport("com.example.DataType.Phase")
+            .addLine("%s<Phase, Long> timings = new %s<Phase, Long>(Phase.class);",
+                Map.class, EnumMap.class)
+            .addLine("timings.put(Phase.EXECUTE, 3L);")
+            .addLine("timings.put(Phase.PLAN, 2L);")
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .putTimings(Phase.PLAN, 7)")
+            .addLine("    .putAllTimings(timings)")
+            .addLine("    .build();")
+            .addLine("assertThat(value.getTimings()).isEqualTo(%s.of(", ImmutableMap.class)
+            .addLine("    Phase.PLAN, 2L, Phase.EXECUTE, 3L));")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testPutAll_nullValue() {
+    thrown.expect(NullPointerException.class);
+    behaviorTester
+        .with(new Processor(features))
+        .with(ENUM_MAP_TYPE)
+        .with(new TestBuilder()
+            .addImport("com.example.DataType.Phase")
+            .addLine("%s<Phase, Long> timings = new %s<Phase, Long>();", Map.class, HashMap.class)
+            .addLine("timings.put(Phase.PARSE, null);")
+            .addLine("new com.example.DataType.Builder().putAllTimings(timings);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testRemoveAndClear() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(ENUM_MAP_TYPE)
+        .with(new TestBuilder()
+            .addImport("com.example.DataType.Phase")
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder()")
+            .addLine("    .putTimings(Phase.PARSE, 1)")
+            .addLine("    .putTimings(Phase.PLAN, 2)")
+            .addLine("    .removeTimings(Phase.PARSE);")
+            .addLine("assertThat(builder.build().getTimings())")
+            .addLine("    .isEqualTo(%s.of(Phase.PLAN, 2L));", ImmutableMap.class)
+            .addLine("assertThat(builder.clearTimings().build().getTimings()).isEmpty();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testGetter_returnsLiveView() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(ENUM_MAP_TYPE)
+        .with(new TestBuilder()
+            .addImport("com.example.DataType.Phase")
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder();")
+            .addLine("%s<Phase, Long> timings = builder.getTimings();", Map.class)
+            .addLine("builder.putTimings(Phase.PLAN, 2);")
+            .addLine("assertThat(timings).isEqualTo(%s.of(Phase.PLAN, 2L));", ImmutableMap.class)
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testValueMap_isImmutable() {
+    thrown.expect(UnsupportedOperationException.class);
+    behaviorTester
+        .with(new Processor(features))
+        .with(ENUM_MAP_TYPE)
+        .with(new TestBuilder()
+            .addImport("com.example.DataType.Phase")
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .putTimings(Phase.PLAN, 2)")
+            .addLine("    .build();")
+            .addLine("value.getTimings().put(Phase.PARSE, 1L);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testEquality() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(ENUM_MAP_TYPE)
+        .with(new TestBuilder()
+            .addImport("com.example.DataType.Phase")
+            .addLine("new %s()", EqualsTester.class)
+            .addLine("    .addEqualityGroup(")
+            .addLine("        new com.example.DataType.Builder().build(),")
+            .addLine("        new com.example.DataType.Builder().build())")
+            .addLine("    .addEqualityGroup(")
+            .addLine("        new com.example.DataType.Builder()")
+            .addLine("            .putTimings(Phase.PARSE, 1).putTimings(Phase.PLAN, 2).build(),")
+            .addLine("        new com.example.DataType.Builder()")
+            .addLine("            .putTimings(Phase.PLAN, 2).putTimings(Phase.PARSE, 1).build())")
+            .addLine("    .addEqualityGroup(")
+            .addLine("        new com.example.DataType.Builder()")
+            .addLine("            .putTimings(Phase.PARSE, 2).build())")
+            .addLine("    .testEquals();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testToBuilderAndMergeFromBuilder() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(ENUM_MAP_TYPE)
+        .with(new TestBuilder()
+            .addImport("com.example.DataType.Phase")
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .putTimings(Phase.PLAN, 2)")
+            .addLine("    .build();")
+            .addLine("com.example.DataType.Builder other = new com.example.DataType.Builder()")
+            .addLine("    .putTimings(Phase.RENDER, 4);")
+            .addLine("com.example.DataType copy = value.toBuilder()")
+            .addLine("    .putTimings(Phase.PARSE, 1)")
+            .addLine("    .mergeFrom(other)")
+            .addLine("    .build();")
+            .addLine("assertThat(copy.getTimings()).isEqualTo(%s.of(", ImmutableMap.class)
+            .addLine("    Phase.PARSE, 1L, Phase.PLAN, 2L, Phase.RENDER, 4L));")
+            .addLine("assertThat(copy.getTimings().keySet())")
+            .addLine("    .containsExactly(Phase.PARSE, Phase.PLAN, Phase.RENDER).inOrder();")
+            .addLine("assertThat(value.getTimings())")
+            .addLine("    .isEqualTo(%s.of(Phase.PLAN, 2L));", ImmutableMap.class)
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testOptOut_keepsInsertionOrder() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s(enumMaps = false)", FreeBuilder.class)
+            .addLine("public abstract class DataType {")
+            .addLine("  public enum Phase { PARSE, PLAN, EXECUTE, RENDER }")
+            .addLine("")
+            .addLine("  public abstract %s<Phase, Long> getTimings();", Map.class)
+            .addLine("")
+            .addLine("  public static class Builder extends DataType_Builder {}")
+            .addLine("}")
+            .build())
+        .with(new TestBuilder()
+            .addImport("com.example.DataType.Phase")
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .putTimings(Phase.RENDER, 4)")
+            .addLine("    .putTimings(Phase.PARSE, 1)")
+            .addLine("    .build();")
+            .addLine("assertThat(value.getTimings().keySet())")
+            .addLine("    .containsExactly(Phase.RENDER, Phase.PARSE).inOrder();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testOverriddenPut_validatesPutAll() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage(VALIDATION_ERROR_MESSAGE);
+    behaviorTester
+        .with(new Processor(features))
+        .with(VALIDATED_TIMINGS_TYPE)
+        .with(new TestBuilder()
+            .addImport("com.example.DataType.Phase")
+            .addLine("%s<Phase, Long> timings = new %s<Phase, Long>(Phase.class);",
+                Map.class, EnumMap.class)
+            .addLine("timings.put(Phase.PLAN, -1L);")
+            .addLine("new com.example.DataType.Builder().putAllTimings(timings);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testMutate() {
+    assumeTrue("Environment has lambdas", features.get(FUNCTION_PACKAGE).consumer().isPresent());
+    behaviorTester
+        .with(new Processor(features))
+        .with(ENUM_MAP_TYPE)
+        .with(new TestBuilder()
+            .addImport("com.example.DataType.Phase")
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .putTimings(Phase.PARSE, 1)")
+            .addLine("    .mutateTimings(timings -> timings.put(Phase.PARSE, 3L))")
+            .addLine("    .build();")
+            .addLine("assertThat(value.getTimings())")
+            .addLine("    .isEqualTo(%s.of(Phase.PARSE, 3L));", ImmutableMap.class)
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testMutate_validatedByOverriddenPut() {
+    assumeTrue("Environment has lambdas", features.get(FUNCTION_PACKAGE).consumer().isPresent());
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage(VALIDATION_ERROR_MESSAGE);
+    behaviorTester
+        .with(new Processor(features))
+        .with(VALIDATED_TIMINGS_TYPE)
+        .with(new TestBuilder()
+            .addImport("com.example.DataType.Phase")
+            .addLine("new com.example.DataType.Builder()")
+            .addLine("    .mutateTimings(timings -> timings.put(Phase.PLAN, -1L));")
+            .build())
+        .runTest();
+  }
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.util.feature.FunctionPackage.FUNCTION_PACKAGE;
+import static org.junit.Assume.assumeTrue;
+
+import com.google.common.base.Preconditions;
+import com.google.common.testing.EqualsTester;
+
+import org.inferred.freebuilder.FreeBuilder;
+import org.inferred.freebuilder.processor.util.feature.FeatureSet;
+import org.inferred.freebuilder.processor.util.testing.BehaviorTestRunner.Shared;
+import org.inferred.freebuilder.processor.util.testing.BehaviorTester;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory;
+import org.inferred.freebuilder.processor.util.testing.SourceBuilder;
+import org.inferred.freebuilder.processor.util.testing.TestBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.junit.runners.Parameterized.UseParametersRunnerFactory;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.tools.JavaFileObject;
+
+/** Behavioral tests for {@code Set<E>} properties of an enum type, stored in EnumSets. */
+@RunWith(Parameterized.class)
+@UseParametersRunnerFactory(ParameterizedBehaviorTestFactory.class)
+public class EnumSetPropertyTest {
+
+  @Parameters(name = "{0}")
+  public static List<FeatureSet> featureSets() {
+    return FeatureSets.ALL;
+  }
+
+  private static final JavaFileObject ENUM_SET_TYPE = new SourceBuilder()
+      .addLine("package com.example;")
+      .addLine("@%s", FreeBuilder.class)
+      .addLine("public abstract class DataType {")
+      .addLine("  public enum Flag { A, B, C, D }")
+      .addLine("")
+      .addLine("  public abstract %s<Flag> getFlags();", Set.class)
+      .addLine("")
+      .addLine("  public static class Builder extends DataType_Builder {}")
+      .addLine("  public abstract Builder toBuilder();")
+      .addLine("}")
+      .build();
+
+  private static final String VALIDATION_ERROR_MESSAGE = "Flag D is reserved";
+
+  private static final JavaFileObject VALIDATED_FLAGS_TYPE = new SourceBuilder()
+      .addLine("package com.example;")
+      .addLine("@%s", FreeBuilder.class)
+      .addLine("public abstract class DataType {")
+      .addLine("  public enum Flag { A, B, C, D }")
+      .addLine("")
+      .addLine("  public abstract %s<Flag> getFlags();", Set.class)
+      .addLine("")
+      .addLine("  public static class Builder extends DataType_Builder {")
+      .addLine("    @Override public Builder addFlags(Flag element) {")
+      .addLine("      %s.checkArgument(element != Flag.D, \"%s\");",
+          Preconditions.class, VALIDATION_ERROR_MESSAGE)
+      .addLine("      return super.addFlags(element);")
+      .addLine("    }")
+      .addLine("  }")
+      .addLine("}")
+      .build();
+
+  @Parameter public FeatureSet features;
+
+  @Rule public final ExpectedException thrown = ExpectedException.none();
+  @Shared public BehaviorTester behaviorTester;
+
+  @Test
+  public void testDefaultEmpty() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(ENUM_SET_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder().build();")
+            .addLine("assertThat(value.getFlags()).isEmpty();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testAddElements_iterateInDeclarationOrder() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(ENUM_SET_TYPE)
+        .with(new TestBuilder()
+            .addImport("com.example.DataType.Flag")
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .addFlags(Flag.D)")
+            .addLine("    .addFlags(Flag.B, Flag.A, Flag.D)")
+            .addLine("    .build();")
+            .addLine("assertThat(value.getFlags()).containsExactly(Flag.A, Flag.B, Flag.D)")
+            .addLine("    .inOrder();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testAddAllIterable() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(ENUM_SET_TYPE)
+        .with(new TestBuilder()
+            .addImport("com.example.DataType.Flag")
+            .addLine("%s<Flag> flags = new %s<Flag>();", Set.class, LinkedHashSet.class)
+            .addLine("flags.add(Flag.C);")
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .addAllFlags(%s.of(Flag.B))", EnumSet.class)
+            .addLine("    .addAllFlags(flags)")
+            .addLine("    .build();")
+            .addLine("assertThat(value.getFlags()).containsExactly(Flag.B, Flag.C).inOrder();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testAddAllIterable_nullElement() {
+    thrown.expect(NullPointerException.class);
+    behaviorTester
+        .with(new Processor(features))
+        .with(ENUM_SET_TYPE)
+        .with(new TestBuilder()
+            .addImport("com.example.DataType.Flag")
+            .addLine("new com.example.DataType.Builder()")
+            .addLine("    .addAllFlags(%s.asList(Flag.A, null));", Arrays.class)
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testRemoveAndClear() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(ENUM_SET_TYPE)
+        .with(new TestBuilder()
+            .addImport("com.example.DataType.Flag")
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder()")
+            .addLine("    .addFlags(Flag.A, Flag.B, Flag.C)")
+            .addLine("    .removeFlags(Flag.B);")
+            .addLine("assertThat(builder.build().getFlags()).containsExactly(Flag.A, Flag.C);")
+            .addLine("assertThat(builder.clearFlags().build().getFlags()).isEmpty();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testGetter_returnsLiveView() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(ENUM_SET_TYPE)
+        .with(new TestBuilder()
+            .addImport("com.example.DataType.Flag")
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder();")
+            .addLine("%s<Flag> flags = builder.getFlags();", Set.class)
+            .addLine("builder.addFlags(Flag.C);")
+            .addLine("assertThat(flags).containsExactly(Flag.C);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testValueSet_isImmutable() {
+    thrown.expect(UnsupportedOperationException.class);
+    behaviorTester
+        .with(new Processor(features))
+        .with(ENUM_SET_TYPE)
+        .with(new TestBuilder()
+            .addImport("com.example.DataType.Flag")
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .addFlags(Flag.A)")
+            .addLine("    .build();")
+            .addLine("value.getFlags().add(Flag.B);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testEquality() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(ENUM_SET_TYPE)
+        .with(new TestBuilder()
+            .addImport("com.example.DataType.Flag")
+            .addLine("new %s()", EqualsTester.class)
+            .addLine("    .addEqualityGroup(")
+            .addLine("        new com.example.DataType.Builder().build(),")
+            .addLine("        new com.example.DataType.Builder().build())")
+            .addLine("    .addEqualityGroup(")
+            .addLine("        new com.example.DataType.Builder().addFlags(Flag.A, Flag.B).build(),")
+            .addLine("        new com.example.DataType.Builder().addFlags(Flag.B, Flag.A).build())")
+            .addLine("    .testEquals();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testToBuilderAndMergeFromBuilder() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(ENUM_SET_TYPE)
+        .with(new TestBuilder()
+            .addImport("com.example.DataType.Flag")
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .addFlags(Flag.B)")
+            .addLine("    .build();")
+            .addLine("com.example.DataType.Builder other = new com.example.DataType.Builder()")
+            .addLine("    .addFlags(Flag.D);")
+            .addLine("com.example.DataType copy = value.toBuilder()")
+            .addLine("    .addFlags(Flag.A)")
+            .addLine("    .mergeFrom(other)")
+            .addLine("    .build();")
+            .addLine("assertThat(copy.getFlags()).containsExactly(Flag.A, Flag.B, Flag.D)")
+            .addLine("    .inOrder();")
+            .addLine("assertThat(value.getFlags()).containsExactly(Flag.B);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testOptOut_keepsInsertionOrder() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s(enumSets = false)", FreeBuilder.class)
+            .addLine("public abstract class DataType {")
+            .addLine("  public enum Flag { A, B, C, D }")
+            .addLine("")
+            .addLine("  public abstract %s<Flag> getFlags();", Set.class)
+            .addLine("")
+            .addLine("  public static class Builder extends DataType_Builder {}")
+            .addLine("}")
+            .build())
+        .with(new TestBuilder()
+            .addImport("com.example.DataType.Flag")
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .addFlags(Flag.C, Flag.A)")
+            .addLine("    .build();")
+            .addLine("assertThat(value.getFlags()).containsExactly(Flag.C, Flag.A).inOrder();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testOverriddenAdd_validatesVarargs() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage(VALIDATION_ERROR_MESSAGE);
+    behaviorTester
+        .with(new Processor(features))
+        .with(VALIDATED_FLAGS_TYPE)
+        .with(new TestBuilder()
+            .addImport("com.example.DataType.Flag")
+            .addLine("new com.example.DataType.Builder().addFlags(Flag.A, Flag.D);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testOverriddenAdd_validatesAddAllEnumSet() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage(VALIDATION_ERROR_MESSAGE);
+    behaviorTester
+        .with(new Processor(features))
+        .with(VALIDATED_FLAGS_TYPE)
+        .with(new TestBuilder()
+            .addImport("com.example.DataType.Flag")
+            .addLine("new com.example.DataType.Builder()")
+            .addLine("    .addAllFlags(%s.allOf(Flag.class));", EnumSet.class)
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testMutate() {
+    assumeTrue("Environment has lambdas", features.get(FUNCTION_PACKAGE).consumer().isPresent());
+    behaviorTester
+        .with(new Processor(features))
+        .with(ENUM_SET_TYPE)
+        .with(new TestBuilder()
+            .addImport("com.example.DataType.Flag")
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .addFlags(Flag.A, Flag.B)")
+            .addLine("    .mutateFlags(flags -> {")
+            .addLine("      flags.remove(Flag.A);")
+            .addLine("      flags.add(Flag.C);")
+            .addLine("    })")
+            .addLine("    .build();")
+            .addLine("assertThat(value.getFlags()).containsExactly(Flag.B, Flag.C).inOrder();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testMutate_validatedByOverriddenAdd() {
+    assumeTrue("Environment has lambdas", features.get(FUNCTION_PACKAGE).consumer().isPresent());
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage(VALIDATION_ERROR_MESSAGE);
+    behaviorTester
+        .with(new Processor(features))
+        .with(VALIDATED_FLAGS_TYPE)
+        .with(new TestBuilder()
+            .addImport("com.example.DataType.Flag")
+            .addLine("new com.example.DataType.Builder()")
+            .addLine("    .mutateFlags(flags -> flags.add(Flag.D));")
+            .build())
+        .runTest();
+  }
+}
@@ -54,29 +54,38 @@ public class GenericTypeSourceTest {
         "    return new Person.Builder<A, B>().mergeFrom(value);",
         "  }",
         "",
-        "  private static final Joiner COMMA_JOINER = Joiner.on(\", \").skipNulls();",
-        "",
         "  private enum Property {",
-        "    NAME(\"name\"),",
-        "    AGE(\"age\"),",
+        "    NAME(\"name\", 0),",
+        "    AGE(\"age\", 1),",
         "    ;",
         "",
         "    private final String name;",
+        "    private final int bit;",
         "",
-        "    private Property(String name) {",
+        "    private Property(String name, int bit) {",
         "      this.name = name;",
+        "      this.bit = bit;",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
         "      return name;",
         "    }",
+        "",
+        "    private static List<Property> unset(int unsetProperties) {",
+        "      List<Property> result = new ArrayList<Property>();",
+        "      for (Property property : Property.values()) {",
+        "        if ((unsetProperties & (1 << property.bit)) != 0) {",
+        "          result.add(property);",
+        "        }",
+        "      }",
+        "      return result;",
+        "    }",
         "  }",
         "",
         "  private A name;",
         "  private B age;",
-        "  private final EnumSet<Person_Builder.Property> _unsetProperties =",
-        "      EnumSet.allOf(Person_Builder.Property.class);",
+        "  private int _unsetProperties = 0x3;",
         "",
         "  /**",
         "   * Sets the value to be returned by {@link Person#getName()}.",
@@ -86,7 +95,7 @@ public class GenericTypeSourceTest {
         "   */",
         "  public Person.Builder<A, B> setName(A name) {",
         "    this.name = Preconditions.checkNotNull(name);",
-        "    _unsetProperties.remove(Person_Builder.Property.NAME);",
+        "    _unsetProperties &= ~(1 << 0);",
         "    return (Person.Builder<A, B>) this;",
         "  }",
         "",
@@ -96,8 +105,7 @@ public class GenericTypeSourceTest {
         "   * @throws IllegalStateException if the field has not been set",
         "   */",
         "  public A getName() {",
-        "    Preconditions.checkState(",
-        "        !_unsetProperties.contains(Person_Builder.Property.NAME), \"name not set\");",
+        "    Preconditions.checkState((_unsetProperties & (1 << 0)) == 0, \"name not set\");",
         "    return name;",
         "  }",
         "",
@@ -109,7 +117,7 @@ public class GenericTypeSourceTest {
         "   */",
         "  public Person.Builder<A, B> setAge(B age) {",
         "    this.age = Preconditions.checkNotNull(age);",
-        "    _unsetProperties.remove(Person_Builder.Property.AGE);",
+        "    _unsetProperties &= ~(1 << 1);",
         "    return (Person.Builder<A, B>) this;",
         "  }",
         "",
@@ -119,19 +127,18 @@ public class GenericTypeSourceTest {
         "   * @throws IllegalStateException if the field has not been set",
         "   */",
         "  public B getAge() {",
-        "    Preconditions.checkState(",
-        "        !_unsetProperties.contains(Person_Builder.Property.AGE), \"age not set\");",
+        "    Preconditions.checkState((_unsetProperties & (1 << 1)) == 0, \"age not set\");",
         "    return age;",
         "  }",
         "",
         "  /** Sets all property values using the given {@code Person} as a template. */",
         "  public Person.Builder<A, B> mergeFrom(Person<A, B> value) {",
         "    Person_Builder<A, B> _defaults = new Person.Builder<A, B>();",
-        "    if (_defaults._unsetProperties.contains(Person_Builder.Property.NAME)",
+        "    if ((_defaults._unsetProperties & (1 << 0)) != 0",
         "        || !value.getName().equals(_defaults.getName())) {",
         "      setName(value.getName());",
         "    }",
-        "    if (_defaults._unsetProperties.contains(Person_Builder.Property.AGE)",
+        "    if ((_defaults._unsetProperties & (1 << 1)) != 0",
         "        || !value.getAge().equals(_defaults.getAge())) {",
         "      setAge(value.getAge());",
         "    }",
@@ -147,13 +154,13 @@ public class GenericTypeSourceTest {
         "    // Upcast to access private fields; otherwise, oddly, we get an access violation.",
         "    Person_Builder<A, B> base = (Person_Builder<A, B>) template;",
         "    Person_Builder<A, B> _defaults = new Person.Builder<A, B>();",
-        "    if (!base._unsetProperties.contains(Person_Builder.Property.NAME)",
-        "        && (_defaults._unsetProperties.contains(Person_Builder.Property.NAME)",
+        "    if ((base._unsetProperties & (1 << 0)) == 0",
+        "        && ((_defaults._unsetProperties & (1 << 0)) != 0",
         "            || !template.getName().equals(_defaults.getName()))) {",
         "      setName(template.getName());",
         "    }",
-        "    if (!base._unsetProperties.contains(Person_Builder.Property.AGE)",
-        "        && (_defaults._unsetProperties.contains(Person_Builder.Property.AGE)",
+        "    if ((base._unsetProperties & (1 << 1)) == 0",
+        "        && ((_defaults._unsetProperties & (1 << 1)) != 0",
         "            || !template.getAge().equals(_defaults.getAge()))) {",
         "      setAge(template.getAge());",
         "    }",
@@ -165,8 +172,7 @@ public class GenericTypeSourceTest {
         "    Person_Builder<A, B> _defaults = new Person.Builder<A, B>();",
         "    name = _defaults.name;",
         "    age = _defaults.age;",
-        "    _unsetProperties.clear();",
-        "    _unsetProperties.addAll(_defaults._unsetProperties);",
+        "    _unsetProperties = _defaults._unsetProperties;",
         "    return (Person.Builder<A, B>) this;",
         "  }",
         "",
@@ -176,8 +182,10 @@ public class GenericTypeSourceTest {
         "   * @throws IllegalStateException if any field has not been set",
         "   */",
         "  public Person<A, B> build() {",
-        "    Preconditions.checkState(_unsetProperties.isEmpty(),"
-            + " \"Not set: %s\", _unsetProperties);",
+        "    if (_unsetProperties != 0) {",
+        "      throw new IllegalStateException(",
+        "          \"Not set: \" + Person_Builder.Property.unset(_unsetProperties));",
+        "    }",
         "    return new Person_Builder.Value<A, B>(this);",
         "  }",
         "",
@@ -221,6 +229,9 @@ public class GenericTypeSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
@@ -236,29 +247,42 @@ public class GenericTypeSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name, age});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + age.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      String separator = \"\";",
+        "      result.append(\"name=\").append(name);",
+        "      separator = \", \";",
+        "      result.append(separator);",
+        "      result.append(\"age=\").append(age);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{\" + \"name=\" + name + \", \" + \"age=\" + age + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
         "  private static final class Partial<A, B> extends Person<A, B> {",
         "    private final A name;",
         "    private final B age;",
-        "    private final EnumSet<Person_Builder.Property> _unsetProperties;",
+        "    private final int _unsetProperties;",
         "",
         "    Partial(Person_Builder<A, B> builder) {",
         "      this.name = builder.name;",
         "      this.age = builder.age;",
-        "      this._unsetProperties = builder._unsetProperties.clone();",
+        "      this._unsetProperties = builder._unsetProperties;",
         "    }",
         "",
         "    @Override",
         "    public A getName() {",
-        "      if (_unsetProperties.contains(Person_Builder.Property.NAME)) {",
+        "      if ((_unsetProperties & (1 << 0)) != 0) {",
         "        throw new UnsupportedOperationException(\"name not set\");",
         "      }",
         "      return name;",
@@ -266,7 +290,7 @@ public class GenericTypeSourceTest {
         "",
         "    @Override",
         "    public B getAge() {",
-        "      if (_unsetProperties.contains(Person_Builder.Property.AGE)) {",
+        "      if ((_unsetProperties & (1 << 1)) != 0) {",
         "        throw new UnsupportedOperationException(\"age not set\");",
         "      }",
         "      return age;",
@@ -274,6 +298,9 @@ public class GenericTypeSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
@@ -284,25 +311,61 @@ public class GenericTypeSourceTest {
         "      if (age != other.age && (age == null || !age.equals(other.age))) {",
         "        return false;",
         "      }",
-        "      return _unsetProperties.equals(other._unsetProperties);",
+        "      return _unsetProperties == other._unsetProperties;",
         "    }",
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name, age, _unsetProperties});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + (name == null ? 0 : name.hashCode());",
+        "      _hashCode = 31 * _hashCode + (age == null ? 0 : age.hashCode());",
+        "      _hashCode = 31 * _hashCode + _unsetProperties;",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      String separator = \"\";",
+        "      if ((_unsetProperties & (1 << 0)) == 0) {",
+        "        result.append(\"name=\").append(name);",
+        "        separator = \", \";",
+        "      }",
+        "      if ((_unsetProperties & (1 << 1)) == 0) {",
+        "        result.append(separator);",
+        "        result.append(\"age=\").append(age);",
+        "      }",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{\"",
-        "          + COMMA_JOINER.join(",
-        "              (!_unsetProperties.contains(Person_Builder.Property.NAME) "
-            + "? \"name=\" + name : null),",
-        "              (!_unsetProperties.contains(Person_Builder.Property.AGE) "
-            + "? \"age=\" + age : null))",
-        "          + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value<?, ?>) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial<?, ?>) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
@@ -322,29 +385,38 @@ public class GenericTypeSourceTest {
         "    return new Person.Builder<A, B>().mergeFrom(value);",
         "  }",
         "",
-        "  private static final Joiner COMMA_JOINER = Joiner.on(\", \").skipNulls();",
-        "",
         "  private enum Property {",
-        "    NAME(\"name\"),",
-        "    AGE(\"age\"),",
+        "    NAME(\"name\", 0),",
+        "    AGE(\"age\", 1),",
         "    ;",
         "",
         "    private final String name;",
+        "    private final int bit;",
         "",
-        "    private Property(String name) {",
+        "    private Property(String name, int bit) {",
         "      this.name = name;",
+        "      this.bit = bit;",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
         "      return name;",
         "    }",
+        "",
+        "    private static List<Property> unset(int unsetProperties) {",
+        "      List<Property> result = new ArrayList<Property>();",
+        "      for (Property property : Property.values()) {",
+        "        if ((unsetProperties & (1 << property.bit)) != 0) {",
+        "          result.add(property);",
+        "        }",
+        "      }",
+        "      return result;",
+        "    }",
         "  }",
         "",
         "  private A name;",
         "  private B age;",
-        "  private final EnumSet<Person_Builder.Property> _unsetProperties =",
-        "      EnumSet.allOf(Person_Builder.Property.class);",
+        "  private int _unsetProperties = 0x3;",
         "",
         "  /**",
         "   * Sets the value to be returned by {@link Person#getName()}.",
@@ -354,7 +426,7 @@ public class GenericTypeSourceTest {
         "   */",
         "  public Person.Builder<A, B> setName(A name) {",
         "    this.name = Preconditions.checkNotNull(name);",
-        "    _unsetProperties.remove(Person_Builder.Property.NAME);",
+        "    _unsetProperties &= ~(1 << 0);",
         "    return (Person.Builder<A, B>) this;",
         "  }",
         "",
@@ -364,8 +436,7 @@ public class GenericTypeSourceTest {
         "   * @throws IllegalStateException if the field has not been set",
         "   */",
         "  public A getName() {",
-        "    Preconditions.checkState(",
-        "        !_unsetProperties.contains(Person_Builder.Property.NAME), \"name not set\");",
+        "    Preconditions.checkState((_unsetProperties & (1 << 0)) == 0, \"name not set\");",
         "    return name;",
         "  }",
         "",
@@ -377,7 +448,7 @@ public class GenericTypeSourceTest {
         "   */",
         "  public Person.Builder<A, B> setAge(B age) {",
         "    this.age = Preconditions.checkNotNull(age);",
-        "    _unsetProperties.remove(Person_Builder.Property.AGE);",
+        "    _unsetProperties &= ~(1 << 1);",
         "    return (Person.Builder<A, B>) this;",
         "  }",
         "",
@@ -387,19 +458,18 @@ public class GenericTypeSourceTest {
         "   * @throws IllegalStateException if the field has not been set",
         "   */",
         "  public B getAge() {",
-        "    Preconditions.checkState(",
-        "        !_unsetProperties.contains(Person_Builder.Property.AGE), \"age not set\");",
+        "    Preconditions.checkState((_unsetProperties & (1 << 1)) == 0, \"age not set\");",
         "    return age;",
         "  }",
         "",
         "  /** Sets all property values using the given {@code Person} as a template. */",
         "  public Person.Builder<A, B> mergeFrom(Person<A, B> value) {",
         "    Person_Builder<A, B> _defaults = new Person.Builder<>();",
-        "    if (_defaults._unsetProperties.contains(Person_Builder.Property.NAME)",
+        "    if ((_defaults._unsetProperties & (1 << 0)) != 0",
         "        || !Objects.equals(value.getName(), _defaults.getName())) {",
         "      setName(value.getName());",
         "    }",
-        "    if (_defaults._unsetProperties.contains(Person_Builder.Property.AGE)",
+        "    if ((_defaults._unsetProperties & (1 << 1)) != 0",
         "        || !Objects.equals(value.getAge(), _defaults.getAge())) {",
         "      setAge(value.getAge());",
         "    }",
@@ -415,13 +485,13 @@ public class GenericTypeSourceTest {
         "    // Upcast to access private fields; otherwise, oddly, we get an access violation.",
         "    Person_Builder<A, B> base = (Person_Builder<A, B>) template;",
         "    Person_Builder<A, B> _defaults = new Person.Builder<>();",
-        "    if (!base._unsetProperties.contains(Person_Builder.Property.NAME)",
-        "        && (_defaults._unsetProperties.contains(Person_Builder.Property.NAME)",
+        "    if ((base._unsetProperties & (1 << 0)) == 0",
+        "        && ((_defaults._unsetProperties & (1 << 0)) != 0",
         "            || !Objects.equals(template.getName(), _defaults.getName()))) {",
         "      setName(template.getName());",
         "    }",
-        "    if (!base._unsetProperties.contains(Person_Builder.Property.AGE)",
-        "        && (_defaults._unsetProperties.contains(Person_Builder.Property.AGE)",
+        "    if ((base._unsetProperties & (1 << 1)) == 0",
+        "        && ((_defaults._unsetProperties & (1 << 1)) != 0",
         "            || !Objects.equals(template.getAge(), _defaults.getAge()))) {",
         "      setAge(template.getAge());",
         "    }",
@@ -433,8 +503,7 @@ public class GenericTypeSourceTest {
         "    Person_Builder<A, B> _defaults = new Person.Builder<>();",
         "    name = _defaults.name;",
         "    age = _defaults.age;",
-        "    _unsetProperties.clear();",
-        "    _unsetProperties.addAll(_defaults._unsetProperties);",
+        "    _unsetProperties = _defaults._unsetProperties;",
         "    return (Person.Builder<A, B>) this;",
         "  }",
         "",
@@ -444,8 +513,10 @@ public class GenericTypeSourceTest {
         "   * @throws IllegalStateException if any field has not been set",
         "   */",
         "  public Person<A, B> build() {",
-        "    Preconditions.checkState(_unsetProperties.isEmpty(),"
-            + " \"Not set: %s\", _unsetProperties);",
+        "    if (_unsetProperties != 0) {",
+        "      throw new IllegalStateException(",
+        "          \"Not set: \" + Person_Builder.Property.unset(_unsetProperties));",
+        "    }",
         "    return new Person_Builder.Value<>(this);",
         "  }",
         "",
@@ -489,6 +560,9 @@ public class GenericTypeSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
@@ -498,29 +572,42 @@ public class GenericTypeSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name, age);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + age.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      String separator = \"\";",
+        "      result.append(\"name=\").append(name);",
+        "      separator = \", \";",
+        "      result.append(separator);",
+        "      result.append(\"age=\").append(age);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{\" + \"name=\" + name + \", \" + \"age=\" + age + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
         "  private static final class Partial<A, B> extends Person<A, B> {",
         "    private final A name;",
         "    private final B age;",
-        "    private final EnumSet<Person_Builder.Property> _unsetProperties;",
+        "    private final int _unsetProperties;",
         "",
         "    Partial(Person_Builder<A, B> builder) {",
         "      this.name = builder.name;",
         "      this.age = builder.age;",
-        "      this._unsetProperties = builder._unsetProperties.clone();",
+        "      this._unsetProperties = builder._unsetProperties;",
         "    }",
         "",
         "    @Override",
         "    public A getName() {",
-        "      if (_unsetProperties.contains(Person_Builder.Property.NAME)) {",
+        "      if ((_unsetProperties & (1 << 0)) != 0) {",
         "        throw new UnsupportedOperationException(\"name not set\");",
         "      }",
         "      return name;",
@@ -528,7 +615,7 @@ public class GenericTypeSourceTest {
         "",
         "    @Override",
         "    public B getAge() {",
-        "      if (_unsetProperties.contains(Person_Builder.Property.AGE)) {",
+        "      if ((_unsetProperties & (1 << 1)) != 0) {",
         "        throw new UnsupportedOperationException(\"age not set\");",
         "      }",
         "      return age;",
@@ -536,31 +623,70 @@ public class GenericTypeSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
         "      Person_Builder.Partial<?, ?> other = (Person_Builder.Partial<?, ?>) obj;",
         "      return Objects.equals(name, other.name)",
         "          && Objects.equals(age, other.age)",
-        "          && Objects.equals(_unsetProperties, other._unsetProperties);",
+        "          && _unsetProperties == other._unsetProperties;",
         "    }",
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name, age, _unsetProperties);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + Objects.hashCode(name);",
+        "      _hashCode = 31 * _hashCode + Objects.hashCode(age);",
+        "      _hashCode = 31 * _hashCode + _unsetProperties;",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      String separator = \"\";",
+        "      if ((_unsetProperties & (1 << 0)) == 0) {",
+        "        result.append(\"name=\").append(name);",
+        "        separator = \", \";",
+        "      }",
+        "      if ((_unsetProperties & (1 << 1)) == 0) {",
+        "        result.append(separator);",
+        "        result.append(\"age=\").append(age);",
+        "      }",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{\"",
-        "          + COMMA_JOINER.join(",
-        "              (!_unsetProperties.contains(Person_Builder.Property.NAME) "
-            + "? \"name=\" + name : null),",
-        "              (!_unsetProperties.contains(Person_Builder.Property.AGE) "
-            + "? \"age=\" + age : null))",
-        "          + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value<?, ?>) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial<?, ?>) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
@@ -579,29 +705,38 @@ public class GenericTypeSourceTest {
         "    return new Person.Builder<A, B>().mergeFrom(value);",
         "  }",
         "",
-        "  private static final Joiner COMMA_JOINER = Joiner.on(\", \").skipNulls();",
-        "",
         "  private enum Property {",
-        "    NAME(\"name\"),",
-        "    AGE(\"age\"),",
+        "    NAME(\"name\", 0),",
+        "    AGE(\"age\", 1),",
         "    ;",
         "",
         "    private final String name;",
+        "    private final int bit;",
         "",
-        "    private Property(String name) {",
+        "    private Property(String name, int bit) {",
         "      this.name = name;",
+        "      this.bit = bit;",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
         "      return name;",
         "    }",
+        "",
+        "    private static List<Property> unset(int unsetProperties) {",
+        "      List<Property> result = new ArrayList<Property>();",
+        "      for (Property property : Property.values()) {",
+        "        if ((unsetProperties & (1 << property.bit)) != 0) {",
+        "          result.add(property);",
+        "        }",
+        "      }",
+        "      return result;",
+        "    }",
         "  }",
         "",
         "  private A name;",
         "  private B age;",
-        "  private final EnumSet<Person_Builder.Property> _unsetProperties =",
-        "      EnumSet.allOf(Person_Builder.Property.class);",
+        "  private int _unsetProperties = 0x3;",
         "",
         "  /**",
         "   * Sets the value to be returned by {@link Person#getName()}.",
@@ -611,7 +746,7 @@ public class GenericTypeSourceTest {
         "   */",
         "  public Person.Builder<A, B> setName(A name) {",
         "    this.name = Preconditions.checkNotNull(name);",
-        "    _unsetProperties.remove(Person_Builder.Property.NAME);",
+        "    _unsetProperties &= ~(1 << 0);",
         "    return (Person.Builder<A, B>) this;",
         "  }",
         "",
@@ -635,8 +770,7 @@ public class GenericTypeSourceTest {
         "   * @throws IllegalStateException if the field has not been set",
         "   */",
         "  public A getName() {",
-        "    Preconditions.checkState(",
-        "        !_unsetProperties.contains(Person_Builder.Property.NAME), \"name not set\");",
+        "    Preconditions.checkState((_unsetProperties & (1 << 0)) == 0, \"name not set\");",
         "    return name;",
         "  }",
         "",
@@ -648,7 +782,7 @@ public class GenericTypeSourceTest {
         "   */",
         "  public Person.Builder<A, B> setAge(B age) {",
         "    this.age = Preconditions.checkNotNull(age);",
-        "    _unsetProperties.remove(Person_Builder.Property.AGE);",
+        "    _unsetProperties &= ~(1 << 1);",
         "    return (Person.Builder<A, B>) this;",
         "  }",
         "",
@@ -672,19 +806,18 @@ public class GenericTypeSourceTest {
         "   * @throws IllegalStateException if the field has not been set",
         "   */",
         "  public B getAge() {",
-        "    Preconditions.checkState(",
-        "        !_unsetProperties.contains(Person_Builder.Property.AGE), \"age not set\");",
+        "    Preconditions.checkState((_unsetProperties & (1 << 1)) == 0, \"age not set\");",
         "    return age;",
         "  }",
         "",
         "  /** Sets all property values using the given {@code Person} as a template. */",
         "  public Person.Builder<A, B> mergeFrom(Person<A, B> value) {",
         "    Person_Builder<A, B> _defaults = new Person.Builder<>();",
-        "    if (_defaults._unsetProperties.contains(Person_Builder.Property.NAME)",
+        "    if ((_defaults._unsetProperties & (1 << 0)) != 0",
         "        || !Objects.equals(value.getName(), _defaults.getName())) {",
         "      setName(value.getName());",
         "    }",
-        "    if (_defaults._unsetProperties.contains(Person_Builder.Property.AGE)",
+        "    if ((_defaults._unsetProperties & (1 << 1)) != 0",
         "        || !Objects.equals(value.getAge(), _defaults.getAge())) {",
         "      setAge(value.getAge());",
         "    }",
@@ -700,13 +833,13 @@ public class GenericTypeSourceTest {
         "    // Upcast to access private fields; otherwise, oddly, we get an access violation.",
         "    Person_Builder<A, B> base = (Person_Builder<A, B>) template;",
         "    Person_Builder<A, B> _defaults = new Person.Builder<>();",
-        "    if (!base._unsetProperties.contains(Person_Builder.Property.NAME)",
-        "        && (_defaults._unsetProperties.contains(Person_Builder.Property.NAME)",
+        "    if ((base._unsetProperties & (1 << 0)) == 0",
+        "        && ((_defaults._unsetProperties & (1 << 0)) != 0",
         "            || !Objects.equals(template.getName(), _defaults.getName()))) {",
         "      setName(template.getName());",
         "    }",
-        "    if (!base._unsetProperties.contains(Person_Builder.Property.AGE)",
-        "        && (_defaults._unsetProperties.contains(Person_Builder.Property.AGE)",
+        "    if ((base._unsetProperties & (1 << 1)) == 0",
+        "        && ((_defaults._unsetProperties & (1 << 1)) != 0",
         "            || !Objects.equals(template.getAge(), _defaults.getAge()))) {",
         "      setAge(template.getAge());",
         "    }",
@@ -718,8 +851,7 @@ public class GenericTypeSourceTest {
         "    Person_Builder<A, B> _defaults = new Person.Builder<>();",
         "    name = _defaults.name;",
         "    age = _defaults.age;",
-        "    _unsetProperties.clear();",
-        "    _unsetProperties.addAll(_defaults._unsetProperties);",
+        "    _unsetProperties = _defaults._unsetProperties;",
         "    return (Person.Builder<A, B>) this;",
         "  }",
         "",
@@ -729,8 +861,10 @@ public class GenericTypeSourceTest {
         "   * @throws IllegalStateException if any field has not been set",
         "   */",
         "  public Person<A, B> build() {",
-        "    Preconditions.checkState(_unsetProperties.isEmpty(),"
-            + " \"Not set: %s\", _unsetProperties);",
+        "    if (_unsetProperties != 0) {",
+        "      throw new IllegalStateException(",
+        "          \"Not set: \" + Person_Builder.Property.unset(_unsetProperties));",
+        "    }",
         "    return new Person_Builder.Value<>(this);",
         "  }",
         "",
@@ -774,6 +908,9 @@ public class GenericTypeSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
@@ -783,29 +920,42 @@ public class GenericTypeSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name, age);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + age.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      String separator = \"\";",
+        "      result.append(\"name=\").append(name);",
+        "      separator = \", \";",
+        "      result.append(separator);",
+        "      result.append(\"age=\").append(age);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{\" + \"name=\" + name + \", \" + \"age=\" + age + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
         "  private static final class Partial<A, B> extends Person<A, B> {",
         "    private final A name;",
         "    private final B age;",
-        "    private final EnumSet<Person_Builder.Property> _unsetProperties;",
+        "    private final int _unsetProperties;",
         "",
         "    Partial(Person_Builder<A, B> builder) {",
         "      this.name = builder.name;",
         "      this.age = builder.age;",
-        "      this._unsetProperties = builder._unsetProperties.clone();",
+        "      this._unsetProperties = builder._unsetProperties;",
         "    }",
         "",
         "    @Override",
         "    public A getName() {",
-        "      if (_unsetProperties.contains(Person_Builder.Property.NAME)) {",
+        "      if ((_unsetProperties & (1 << 0)) != 0) {",
         "        throw new UnsupportedOperationException(\"name not set\");",
         "      }",
         "      return name;",
@@ -813,7 +963,7 @@ public class GenericTypeSourceTest {
         "",
         "    @Override",
         "    public B getAge() {",
-        "      if (_unsetProperties.contains(Person_Builder.Property.AGE)) {",
+        "      if ((_unsetProperties & (1 << 1)) != 0) {",
         "        throw new UnsupportedOperationException(\"age not set\");",
         "      }",
         "      return age;",
@@ -821,31 +971,70 @@ public class GenericTypeSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
         "      Person_Builder.Partial<?, ?> other = (Person_Builder.Partial<?, ?>) obj;",
         "      return Objects.equals(name, other.name)",
         "          && Objects.equals(age, other.age)",
-        "          && Objects.equals(_unsetProperties, other._unsetProperties);",
+        "          && _unsetProperties == other._unsetProperties;",
         "    }",
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name, age, _unsetProperties);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + Objects.hashCode(name);",
+        "      _hashCode = 31 * _hashCode + Objects.hashCode(age);",
+        "      _hashCode = 31 * _hashCode + _unsetProperties;",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      String separator = \"\";",
+        "      if ((_unsetProperties & (1 << 0)) == 0) {",
+        "        result.append(\"name=\").append(name);",
+        "        separator = \", \";",
+        "      }",
+        "      if ((_unsetProperties & (1 << 1)) == 0) {",
+        "        result.append(separator);",
+        "        result.append(\"age=\").append(age);",
+        "      }",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{\"",
-        "          + COMMA_JOINER.join(",
-        "              (!_unsetProperties.contains(Person_Builder.Property.NAME) "
-            + "? \"name=\" + name : null),",
-        "              (!_unsetProperties.contains(Person_Builder.Property.AGE) "
-            + "? \"age=\" + age : null))",
-        "          + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value<?, ?>) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial<?, ?>) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
@@ -60,8 +60,6 @@ public class GuavaOptionalSourceTest {
         "    return new Person.Builder().mergeFrom(value);",
         "  }",
         "",
-        "  private static final Joiner COMMA_JOINER = Joiner.on(\", \").skipNulls();",
-        "",
         "  // Store a nullable object instead of an Optional. Escape analysis then",
         "  // allows the JVM to optimize away the Optional objects created by and",
         "  // passed to our API.",
@@ -261,6 +259,9 @@ public class GuavaOptionalSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
@@ -276,16 +277,29 @@ public class GuavaOptionalSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name, age});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + (name == null ? 0 : name.hashCode());",
+        "      _hashCode = 31 * _hashCode + (age == null ? 0 : age.hashCode());",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      String separator = \"\";",
+        "      if (name != null) {",
+        "        result.append(\"name=\").append(name);",
+        "        separator = \", \";",
+        "      }",
+        "      if (age != null) {",
+        "        result.append(separator);",
+        "        result.append(\"age=\").append(age);",
+        "      }",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{\"",
-        "          + COMMA_JOINER.join(",
-        "              (name != null ? \"name=\" + name : null), "
-            + "(age != null ? \"age=\" + age : null))",
-        "          + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
@@ -316,6 +330,9 @@ public class GuavaOptionalSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
@@ -331,18 +348,55 @@ public class GuavaOptionalSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name, age});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + (name == null ? 0 : name.hashCode());",
+        "      _hashCode = 31 * _hashCode + (age == null ? 0 : age.hashCode());",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      String separator = \"\";",
+        "      if (name != null) {",
+        "        result.append(\"name=\").append(name);",
+        "        separator = \", \";",
+        "      }",
+        "      if (age != null) {",
+        "        result.append(separator);",
+        "        result.append(\"age=\").append(age);",
+        "      }",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{\"",
-        "          + COMMA_JOINER.join(",
-        "              (name != null ? \"name=\" + name : null), "
-            + "(age != null ? \"age=\" + age : null))",
-        "          + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
@@ -362,8 +416,6 @@ public class GuavaOptionalSourceTest {
         "    return new Person.Builder().mergeFrom(value);",
         "  }",
         "",
-        "  private static final Joiner COMMA_JOINER = Joiner.on(\", \").skipNulls();",
-        "",
         "  // Store a nullable object instead of an Optional. Escape analysis then",
         "  // allows the JVM to optimize away the Optional objects created by and",
         "  // passed to our API.",
@@ -563,6 +615,9 @@ public class GuavaOptionalSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
@@ -572,16 +627,29 @@ public class GuavaOptionalSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name, age);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + Objects.hashCode(name);",
+        "      _hashCode = 31 * _hashCode + Objects.hashCode(age);",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      String separator = \"\";",
+        "      if (name != null) {",
+        "        result.append(\"name=\").append(name);",
+        "        separator = \", \";",
+        "      }",
+        "      if (age != null) {",
+        "        result.append(separator);",
+        "        result.append(\"age=\").append(age);",
+        "      }",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{\"",
-        "          + COMMA_JOINER.join(",
-        "              (name != null ? \"name=\" + name : null), "
-            + "(age != null ? \"age=\" + age : null))",
-        "          + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
@@ -612,6 +680,9 @@ public class GuavaOptionalSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
@@ -621,18 +692,55 @@ public class GuavaOptionalSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name, age);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + Objects.hashCode(name);",
+        "      _hashCode = 31 * _hashCode + Objects.hashCode(age);",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      String separator = \"\";",
+        "      if (name != null) {",
+        "        result.append(\"name=\").append(name);",
+        "        separator = \", \";",
+        "      }",
+        "      if (age != null) {",
+        "        result.append(separator);",
+        "        result.append(\"age=\").append(age);",
+        "      }",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{\"",
-        "          + COMMA_JOINER.join(",
-        "              (name != null ? \"name=\" + name : null), "
-            + "(age != null ? \"age=\" + age : null))",
-        "          + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
@@ -651,8 +759,6 @@ public class GuavaOptionalSourceTest {
         "    return new Person.Builder().mergeFrom(value);",
         "  }",
         "",
-        "  private static final Joiner COMMA_JOINER = Joiner.on(\", \").skipNulls();",
-        "",
         "  // Store a nullable object instead of an Optional. Escape analysis then",
         "  // allows the JVM to optimize away the Optional objects created by and",
         "  // passed to our API.",
@@ -890,6 +996,9 @@ public class GuavaOptionalSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
@@ -899,16 +1008,29 @@ public class GuavaOptionalSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name, age);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + Objects.hashCode(name);",
+        "      _hashCode = 31 * _hashCode + Objects.hashCode(age);",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      String separator = \"\";",
+        "      if (name != null) {",
+        "        result.append(\"name=\").append(name);",
+        "        separator = \", \";",
+        "      }",
+        "      if (age != null) {",
+        "        result.append(separator);",
+        "        result.append(\"age=\").append(age);",
+        "      }",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{\"",
-        "          + COMMA_JOINER.join(",
-        "              (name != null ? \"name=\" + name : null), "
-            + "(age != null ? \"age=\" + age : null))",
-        "          + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
@@ -939,6 +1061,9 @@ public class GuavaOptionalSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
@@ -948,18 +1073,55 @@ public class GuavaOptionalSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name, age);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + Objects.hashCode(name);",
+        "      _hashCode = 31 * _hashCode + Objects.hashCode(age);",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      String separator = \"\";",
+        "      if (name != null) {",
+        "        result.append(\"name=\").append(name);",
+        "        separator = \", \";",
+        "      }",
+        "      if (age != null) {",
+        "        result.append(separator);",
+        "        result.append(\"age=\").append(age);",
+        "      }",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{\"",
-        "          + COMMA_JOINER.join(",
-        "              (name != null ? \"name=\" + name : null), "
-            + "(age != null ? \"age=\" + age : null))",
-        "          + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
@@ -978,8 +1140,6 @@ public class GuavaOptionalSourceTest {
         "    return new Person.Builder().mergeFrom(value);",
         "  }",
         "",
-        "  private static final Joiner COMMA_JOINER = Joiner.on(\", \").skipNulls();",
-        "",
         "  // Store a nullable object instead of an Optional. Escape analysis then",
         "  // allows the JVM to optimize away the Optional objects created by and",
         "  // passed to our API.",
@@ -1178,6 +1338,9 @@ public class GuavaOptionalSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
@@ -1193,16 +1356,29 @@ public class GuavaOptionalSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name, age});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + (name == null ? 0 : name.hashCode());",
+        "      _hashCode = 31 * _hashCode + (age == null ? 0 : age.hashCode());",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      String separator = \"\";",
+        "      if (name != null) {",
+        "        result.append(\"name=\").append(name);",
+        "        separator = \", \";",
+        "      }",
+        "      if (age != null) {",
+        "        result.append(separator);",
+        "        result.append(\"age=\").append(age);",
+        "      }",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{\"",
-        "          + COMMA_JOINER.join(",
-        "              (name != null ? \"name=\" + name : null), "
-            + "(age != null ? \"age=\" + age : null))",
-        "          + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
@@ -1233,6 +1409,9 @@ public class GuavaOptionalSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
@@ -1248,18 +1427,55 @@ public class GuavaOptionalSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name, age});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + (name == null ? 0 : name.hashCode());",
+        "      _hashCode = 31 * _hashCode + (age == null ? 0 : age.hashCode());",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      String separator = \"\";",
+        "      if (name != null) {",
+        "        result.append(\"name=\").append(name);",
+        "        separator = \", \";",
+        "      }",
+        "      if (age != null) {",
+        "        result.append(separator);",
+        "        result.append(\"age=\").append(age);",
+        "      }",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{\"",
-        "          + COMMA_JOINER.join(",
-        "              (name != null ? \"name=\" + name : null), "
-            + "(age != null ? \"age=\" + age : null))",
-        "          + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
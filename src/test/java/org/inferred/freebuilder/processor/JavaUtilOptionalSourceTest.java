@@ -59,8 +59,6 @@ public class JavaUtilOptionalSourceTest {
         "    return new Person.Builder().mergeFrom(value);",
         "  }",
         "",
-        "  private static final Joiner COMMA_JOINER = Joiner.on(\", \").skipNulls();",
-        "",
         "  // Store a nullable object instead of an Optional. Escape analysis then",
         "  // allows the JVM to optimize away the Optional objects created by and",
         "  // passed to our API.",
@@ -279,6 +277,9 @@ public class JavaUtilOptionalSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
@@ -288,16 +289,29 @@ public class JavaUtilOptionalSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name, age);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + Objects.hashCode(name);",
+        "      _hashCode = 31 * _hashCode + Objects.hashCode(age);",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      String separator = \"\";",
+        "      if (name != null) {",
+        "        result.append(\"name=\").append(name);",
+        "        separator = \", \";",
+        "      }",
+        "      if (age != null) {",
+        "        result.append(separator);",
+        "        result.append(\"age=\").append(age);",
+        "      }",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{\"",
-        "          + COMMA_JOINER.join(",
-        "              (name != null ? \"name=\" + name : null), "
-            + "(age != null ? \"age=\" + age : null))",
-        "          + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
@@ -328,6 +342,9 @@ public class JavaUtilOptionalSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
@@ -337,18 +354,55 @@ public class JavaUtilOptionalSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name, age);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + Objects.hashCode(name);",
+        "      _hashCode = 31 * _hashCode + Objects.hashCode(age);",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      String separator = \"\";",
+        "      if (name != null) {",
+        "        result.append(\"name=\").append(name);",
+        "        separator = \", \";",
+        "      }",
+        "      if (age != null) {",
+        "        result.append(separator);",
+        "        result.append(\"age=\").append(age);",
+        "      }",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{\"",
-        "          + COMMA_JOINER.join(",
-        "              (name != null ? \"name=\" + name : null), "
-            + "(age != null ? \"age=\" + age : null))",
-        "          + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
@@ -584,6 +638,9 @@ public class JavaUtilOptionalSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
@@ -593,12 +650,14 @@ public class JavaUtilOptionalSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name, age);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + Objects.hashCode(name);",
+        "      _hashCode = 31 * _hashCode + Objects.hashCode(age);",
+        "      return _hashCode;",
         "    }",
         "",
-        "    @Override",
-        "    public String toString() {",
-        "      StringBuilder result = new StringBuilder(\"Person{\");",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
         "      String separator = \"\";",
         "      if (name != null) {",
         "        result.append(\"name=\").append(name);",
@@ -608,8 +667,12 @@ public class JavaUtilOptionalSourceTest {
         "        result.append(separator);",
         "        result.append(\"age=\").append(age);",
         "      }",
-        "      result.append(\"}\");",
-        "      return result.toString();",
+        "      return result.append(\"}\");",
+        "    }",
+        "",
+        "    @Override",
+        "    public String toString() {",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
@@ -640,6 +703,9 @@ public class JavaUtilOptionalSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
@@ -649,12 +715,14 @@ public class JavaUtilOptionalSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name, age);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + Objects.hashCode(name);",
+        "      _hashCode = 31 * _hashCode + Objects.hashCode(age);",
+        "      return _hashCode;",
         "    }",
         "",
-        "    @Override",
-        "    public String toString() {",
-        "      StringBuilder result = new StringBuilder(\"partial Person{\");",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
         "      String separator = \"\";",
         "      if (name != null) {",
         "        result.append(\"name=\").append(name);",
@@ -664,10 +732,38 @@ public class JavaUtilOptionalSourceTest {
         "        result.append(separator);",
         "        result.append(\"age=\").append(age);",
         "      }",
-        "      result.append(\"}\");",
-        "      return result.toString();",
+        "      return result.append(\"}\");",
+        "    }",
+        "",
+        "    @Override",
+        "    public String toString() {",
+        "      return appendTo(new StringBuilder()).toString();",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
@@ -686,8 +782,6 @@ public class JavaUtilOptionalSourceTest {
         "    return new Person.Builder().mergeFrom(value);",
         "  }",
         "",
-        "  private static final Joiner COMMA_JOINER = Joiner.on(\", \").skipNulls();",
-        "",
         "  // Store a nullable object instead of an Optional. Escape analysis then",
         "  // allows the JVM to optimize away the Optional objects created by and",
         "  // passed to our API.",
@@ -906,6 +1000,9 @@ public class JavaUtilOptionalSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
@@ -915,16 +1012,29 @@ public class JavaUtilOptionalSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name, age);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + Objects.hashCode(name);",
+        "      _hashCode = 31 * _hashCode + Objects.hashCode(age);",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      String separator = \"\";",
+        "      if (name != null) {",
+        "        result.append(\"name=\").append(name);",
+        "        separator = \", \";",
+        "      }",
+        "      if (age != null) {",
+        "        result.append(separator);",
+        "        result.append(\"age=\").append(age);",
+        "      }",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{\"",
-        "          + COMMA_JOINER.join(",
-        "              (name != null ? \"name=\" + name : null), "
-            + "(age != null ? \"age=\" + age : null))",
-        "          + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
@@ -955,6 +1065,9 @@ public class JavaUtilOptionalSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
@@ -964,18 +1077,55 @@ public class JavaUtilOptionalSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name, age);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + Objects.hashCode(name);",
+        "      _hashCode = 31 * _hashCode + Objects.hashCode(age);",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      String separator = \"\";",
+        "      if (name != null) {",
+        "        result.append(\"name=\").append(name);",
+        "        separator = \", \";",
+        "      }",
+        "      if (age != null) {",
+        "        result.append(separator);",
+        "        result.append(\"age=\").append(age);",
+        "      }",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{\"",
-        "          + COMMA_JOINER.join(",
-        "              (name != null ? \"name=\" + name : null), "
-            + "(age != null ? \"age=\" + age : null))",
-        "          + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
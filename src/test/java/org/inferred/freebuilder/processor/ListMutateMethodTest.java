@@ -106,6 +106,36 @@ public class ListMutateMethodTest {
         .runTest();
   }
 
+  @Test
+  public void mutateModifiesUnderlyingPropertyOfBuildAndResetBuilder() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s(buildAndReset = true)", FreeBuilder.class)
+            .addLine("public interface DataType {")
+            .addLine("  %s<Integer> getProperties();", List.class)
+            .addLine("")
+            .addLine("  public static class Builder extends DataType_Builder {}")
+            .addLine("}")
+            .build())
+        .with(new TestBuilder()
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder()")
+            .addLine("    .addProperties(1, 2, 3, 4, 5, 6)")
+            .addLine("    .mutateProperties(list -> {")
+            .addLine("      list.add(0, 0);")
+            .addLine("      list.set(1, 10);")
+            .addLine("      list.remove(2);")
+            .addLine("      list.subList(3, 5).clear();")
+            .addLine("    });")
+            .addLine("assertThat(builder.getProperties()).containsExactly(0, 10, 3, 6).inOrder();")
+            .addLine("com.example.DataType value = builder.buildAndReset();")
+            .addLine("assertThat(value.getProperties()).containsExactly(0, 10, 3, 6).inOrder();")
+            .addLine("assertThat(builder.getProperties()).isEmpty();")
+            .build())
+        .runTest();
+  }
+
   @Test
   public void mutateAndAddModifiesUnderlyingPropertyWhenChecked() {
     behaviorTester
@@ -265,6 +265,82 @@ public class ListPrefixlessPropertyTest {
         .runTest();
   }
 
+  @Test
+  public void testAddAllIntSpliterator() {
+    assumeStreamsAvailable();
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public abstract class DataType {")
+            .addLine("  public abstract %s<%s> items();", List.class, Integer.class)
+            .addLine("")
+            .addLine("  public static class Builder extends DataType_Builder {}")
+            .addLine("  public static Builder builder() {")
+            .addLine("    return new Builder();")
+            .addLine("  }")
+            .addLine("}")
+            .build())
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .addItems(0)")
+            .addLine("    .addAllItems(%s.range(1, 4).spliterator())", IntStream.class)
+            .addLine("    .build();")
+            .addLine("assertThat(value.items()).containsExactly(0, 1, 2, 3).inOrder();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testAddAllIntArrayRange() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public abstract class DataType {")
+            .addLine("  public abstract %s<%s> items();", List.class, Integer.class)
+            .addLine("")
+            .addLine("  public static class Builder extends DataType_Builder {}")
+            .addLine("  public static Builder builder() {")
+            .addLine("    return new Builder();")
+            .addLine("  }")
+            .addLine("}")
+            .build())
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .addItems(0)")
+            .addLine("    .addAllItems(new int[] { 1, 2, 3, 4, 5 }, 1, 3)")
+            .addLine("    .build();")
+            .addLine("assertThat(value.items()).containsExactly(0, 2, 3, 4).inOrder();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testAddAllIntArrayRange_outOfBounds() {
+    thrown.expect(IndexOutOfBoundsException.class);
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public abstract class DataType {")
+            .addLine("  public abstract %s<%s> items();", List.class, Integer.class)
+            .addLine("")
+            .addLine("  public static class Builder extends DataType_Builder {}")
+            .addLine("  public static Builder builder() {")
+            .addLine("    return new Builder();")
+            .addLine("  }")
+            .addLine("}")
+            .build())
+        .with(testBuilder()
+            .addLine("new DataType.Builder().addAllItems(new int[] { 1, 2, 3 }, 2, 2);")
+            .build())
+        .runTest();
+  }
+
   @Test
   public void testAddAllIterable() {
     behaviorTester
@@ -279,6 +355,46 @@ public class ListPrefixlessPropertyTest {
         .runTest();
   }
 
+  @Test
+  public void testAddAllIterable_immutableListAfterAdd() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(LIST_PROPERTY_AUTO_BUILT_TYPE)
+        .with(testBuilder()
+            .addLine("%s<String> source = %s.of(\"two\", \"three\");",
+                ImmutableList.class, ImmutableList.class)
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .addItems(\"one\")")
+            .addLine("    .addAllItems(source)")
+            .addLine("    .addItems(\"four\")")
+            .addLine("    .build();")
+            .addLine("assertThat(value.items())")
+            .addLine("    .containsExactly(\"one\", \"two\", \"three\", \"four\").inOrder();")
+            .addLine("assertThat(source).containsExactly(\"two\", \"three\").inOrder();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testMergeFrom_valueInstance_afterAdd() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(LIST_PROPERTY_AUTO_BUILT_TYPE)
+        .with(testBuilder()
+            .addLine("DataType template = new DataType.Builder()")
+            .addLine("    .addItems(\"two\", \"three\")")
+            .addLine("    .build();")
+            .addLine("DataType.Builder builder = new DataType.Builder()")
+            .addLine("    .addItems(\"one\")")
+            .addLine("    .mergeFrom(template)")
+            .addLine("    .mergeFrom(new DataType.Builder().addItems(\"four\"));")
+            .addLine("assertThat(builder.build().items())")
+            .addLine("    .containsExactly(\"one\", \"two\", \"three\", \"four\").inOrder();")
+            .addLine("assertThat(template.items()).containsExactly(\"two\", \"three\").inOrder();")
+            .build())
+        .runTest();
+  }
+
   @Test
   public void testAddAllIterable_onlyIteratesOnce() {
     behaviorTester
@@ -327,6 +443,27 @@ public class ListPrefixlessPropertyTest {
         .runTest();
   }
 
+  @Test
+  public void testEnsureCapacity() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(LIST_PROPERTY_AUTO_BUILT_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .addItems(\"one\", \"two\")")
+            .addLine("    .build();")
+            .addLine("DataType copy = new DataType.Builder()")
+            .addLine("    .mergeFrom(value)")
+            .addLine("    .ensureItemsCapacity(100)")
+            .addLine("    .addItems(\"three\")")
+            .addLine("    .build();")
+            .addLine("assertThat(value.items()).containsExactly(\"one\", \"two\").inOrder();")
+            .addLine("assertThat(copy.items())")
+            .addLine("    .containsExactly(\"one\", \"two\", \"three\").inOrder();")
+            .build())
+        .runTest();
+  }
+
   @Test
   public void testClear_emptyList() {
     behaviorTester
@@ -865,6 +1002,18 @@ public class ListPrefixlessPropertyTest {
         .runTest();
   }
 
+  @Test
+  public void testPrimitiveValidation_addAllIntArrayRange() {
+    thrown.expectMessage(INT_VALIDATION_ERROR_MESSAGE);
+    behaviorTester
+        .with(new Processor(features))
+        .with(VALIDATED_INTS)
+        .with(testBuilder()
+            .addLine("new DataType.Builder().addAllItems(new int[] { 3, -2 }, 0, 2);")
+            .build())
+        .runTest();
+  }
+
   @Test
   public void testPrimitiveValidation_addAllIterable() {
     thrown.expectMessage(INT_VALIDATION_ERROR_MESSAGE);
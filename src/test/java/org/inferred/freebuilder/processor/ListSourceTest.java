@@ -58,8 +58,6 @@ public class ListSourceTest {
         "    return new Person.Builder().mergeFrom(value);",
         "  }",
         "",
-        "  private static final Joiner COMMA_JOINER = Joiner.on(\", \").skipNulls();",
-        "",
         "  private List<String> name = ImmutableList.of();",
         "  private List<Integer> age = ImmutableList.of();",
         "",
@@ -96,6 +94,14 @@ public class ListSourceTest {
         "   * @throws NullPointerException if {@code elements} is null or contains a null element",
         "   */",
         "  public Person.Builder addAllName(Iterable<? extends String> elements) {",
+        "    if (elements instanceof ImmutableCollection && !((ImmutableCollection<?>) "
+            + "elements).isEmpty()) {",
+        "      if (name instanceof ImmutableList) {",
+        "        name = new ArrayList<String>(name);",
+        "      }",
+        "      name.addAll((ImmutableCollection<? extends String>) elements);",
+        "      return (Person.Builder) this;",
+        "    }",
         "    if (elements instanceof Collection) {",
         "      int elementsSize = ((Collection<?>) elements).size();",
         "      if (elementsSize != 0) {",
@@ -126,6 +132,26 @@ public class ListSourceTest {
         "  }",
         "",
         "  /**",
+        "   * Ensures the list to be returned from {@link Person#getName()} can hold at least "
+            + "{@code",
+        "   * minCapacity} elements without reallocating its storage.",
+        "   *",
+        "   * @return this {@code Builder} object",
+        "   */",
+        "  public Person.Builder ensureNameCapacity(int minCapacity) {",
+        "    if (name instanceof ImmutableList) {",
+        "      if (minCapacity > name.size()) {",
+        "        List<String> list = new ArrayList<String>(minCapacity);",
+        "        list.addAll(name);",
+        "        name = list;",
+        "      }",
+        "    } else {",
+        "      ((ArrayList<?>) name).ensureCapacity(minCapacity);",
+        "    }",
+        "    return (Person.Builder) this;",
+        "  }",
+        "",
+        "  /**",
         "   * Returns an unmodifiable view of the list that will be returned by "
             + "{@link Person#getName()}.",
         "   * Changes to this builder will be reflected in the view.",
@@ -157,7 +183,34 @@ public class ListSourceTest {
         "   * @return this {@code Builder} object",
         "   */",
         "  public Person.Builder addAge(int... elements) {",
-        "    return addAllAge(Ints.asList(elements));",
+        "    return addAllAge(elements, 0, elements.length);",
+        "  }",
+        "",
+        "  /**",
+        "   * Adds {@code length} elements of {@code elements}, starting at index {@code offset}, "
+            + "to the list",
+        "   * to be returned from {@link Person#getAge()}.",
+        "   *",
+        "   * @return this {@code Builder} object",
+        "   * @throws NullPointerException if {@code elements} is null",
+        "   * @throws IndexOutOfBoundsException if {@code offset} or {@code length} is negative, "
+            + "or {@code",
+        "   *     offset + length} exceeds {@code elements.length}",
+        "   */",
+        "  public Person.Builder addAllAge(int[] elements, int offset, int length) {",
+        "    if (offset < 0 || length < 0 || offset > elements.length - length) {",
+        "      throw new IndexOutOfBoundsException(",
+        "          \"offset \" + offset + \", length \" + length + \", array length \" + "
+            + "elements.length);",
+        "    }",
+        "    if (age instanceof ImmutableList) {",
+        "      age = new ArrayList<Integer>(age);",
+        "    }",
+        "    ((ArrayList<?>) age).ensureCapacity(age.size() + length);",
+        "    for (int i = offset; i < offset + length; i++) {",
+        "      age.add(elements[i]);",
+        "    }",
+        "    return (Person.Builder) this;",
         "  }",
         "",
         "  /**",
@@ -168,6 +221,14 @@ public class ListSourceTest {
         "   * @throws NullPointerException if {@code elements} is null or contains a null element",
         "   */",
         "  public Person.Builder addAllAge(Iterable<? extends Integer> elements) {",
+        "    if (elements instanceof ImmutableCollection && !((ImmutableCollection<?>) "
+            + "elements).isEmpty()) {",
+        "      if (age instanceof ImmutableList) {",
+        "        age = new ArrayList<Integer>(age);",
+        "      }",
+        "      age.addAll((ImmutableCollection<? extends Integer>) elements);",
+        "      return (Person.Builder) this;",
+        "    }",
         "    if (elements instanceof Collection) {",
         "      int elementsSize = ((Collection<?>) elements).size();",
         "      if (elementsSize != 0) {",
@@ -198,6 +259,26 @@ public class ListSourceTest {
         "  }",
         "",
         "  /**",
+        "   * Ensures the list to be returned from {@link Person#getAge()} can hold at least "
+            + "{@code",
+        "   * minCapacity} elements without reallocating its storage.",
+        "   *",
+        "   * @return this {@code Builder} object",
+        "   */",
+        "  public Person.Builder ensureAgeCapacity(int minCapacity) {",
+        "    if (age instanceof ImmutableList) {",
+        "      if (minCapacity > age.size()) {",
+        "        List<Integer> list = new ArrayList<Integer>(minCapacity);",
+        "        list.addAll(age);",
+        "        age = list;",
+        "      }",
+        "    } else {",
+        "      ((ArrayList<?>) age).ensureCapacity(minCapacity);",
+        "    }",
+        "    return (Person.Builder) this;",
+        "  }",
+        "",
+        "  /**",
         "   * Returns an unmodifiable view of the list that will be returned by "
             + "{@link Person#getAge()}.",
         "   * Changes to this builder will be reflected in the view.",
@@ -288,6 +369,9 @@ public class ListSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
@@ -303,12 +387,23 @@ public class ListSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name, age});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + age.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      result.append(\", \");",
+        "      result.append(\"age=\").append(age);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{\" + \"name=\" + name + \", \" + \"age=\" + age + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
@@ -333,6 +428,9 @@ public class ListSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
@@ -348,15 +446,49 @@ public class ListSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name, age});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + age.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      result.append(\", \");",
+        "      result.append(\"age=\").append(age);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{\" + COMMA_JOINER.join(\"name=\" + name, \"age=\" + age) "
-            + "+ \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
@@ -376,8 +508,6 @@ public class ListSourceTest {
         "    return new Person.Builder().mergeFrom(value);",
         "  }",
         "",
-        "  private static final Joiner COMMA_JOINER = Joiner.on(\", \").skipNulls();",
-        "",
         "  private List<String> name = ImmutableList.of();",
         "  private List<Integer> age = ImmutableList.of();",
         "",
@@ -414,6 +544,14 @@ public class ListSourceTest {
         "   * @throws NullPointerException if {@code elements} is null or contains a null element",
         "   */",
         "  public Person.Builder addAllName(Iterable<? extends String> elements) {",
+        "    if (elements instanceof ImmutableCollection && !((ImmutableCollection<?>) "
+            + "elements).isEmpty()) {",
+        "      if (name instanceof ImmutableList) {",
+        "        name = new ArrayList<>(name);",
+        "      }",
+        "      name.addAll((ImmutableCollection<? extends String>) elements);",
+        "      return (Person.Builder) this;",
+        "    }",
         "    if (elements instanceof Collection) {",
         "      int elementsSize = ((Collection<?>) elements).size();",
         "      if (elementsSize != 0) {",
@@ -444,6 +582,26 @@ public class ListSourceTest {
         "  }",
         "",
         "  /**",
+        "   * Ensures the list to be returned from {@link Person#getName()} can hold at least "
+            + "{@code",
+        "   * minCapacity} elements without reallocating its storage.",
+        "   *",
+        "   * @return this {@code Builder} object",
+        "   */",
+        "  public Person.Builder ensureNameCapacity(int minCapacity) {",
+        "    if (name instanceof ImmutableList) {",
+        "      if (minCapacity > name.size()) {",
+        "        List<String> list = new ArrayList<>(minCapacity);",
+        "        list.addAll(name);",
+        "        name = list;",
+        "      }",
+        "    } else {",
+        "      ((ArrayList<?>) name).ensureCapacity(minCapacity);",
+        "    }",
+        "    return (Person.Builder) this;",
+        "  }",
+        "",
+        "  /**",
         "   * Returns an unmodifiable view of the list that will be returned by "
             + "{@link Person#getName()}.",
         "   * Changes to this builder will be reflected in the view.",
@@ -475,7 +633,34 @@ public class ListSourceTest {
         "   * @return this {@code Builder} object",
         "   */",
         "  public Person.Builder addAge(int... elements) {",
-        "    return addAllAge(Ints.asList(elements));",
+        "    return addAllAge(elements, 0, elements.length);",
+        "  }",
+        "",
+        "  /**",
+        "   * Adds {@code length} elements of {@code elements}, starting at index {@code offset}, "
+            + "to the list",
+        "   * to be returned from {@link Person#getAge()}.",
+        "   *",
+        "   * @return this {@code Builder} object",
+        "   * @throws NullPointerException if {@code elements} is null",
+        "   * @throws IndexOutOfBoundsException if {@code offset} or {@code length} is negative, "
+            + "or {@code",
+        "   *     offset + length} exceeds {@code elements.length}",
+        "   */",
+        "  public Person.Builder addAllAge(int[] elements, int offset, int length) {",
+        "    if (offset < 0 || length < 0 || offset > elements.length - length) {",
+        "      throw new IndexOutOfBoundsException(",
+        "          \"offset \" + offset + \", length \" + length + \", array length \" + "
+            + "elements.length);",
+        "    }",
+        "    if (age instanceof ImmutableList) {",
+        "      age = new ArrayList<>(age);",
+        "    }",
+        "    ((ArrayList<?>) age).ensureCapacity(age.size() + length);",
+        "    for (int i = offset; i < offset + length; i++) {",
+        "      age.add(elements[i]);",
+        "    }",
+        "    return (Person.Builder) this;",
         "  }",
         "",
         "  /**",
@@ -486,6 +671,14 @@ public class ListSourceTest {
         "   * @throws NullPointerException if {@code elements} is null or contains a null element",
         "   */",
         "  public Person.Builder addAllAge(Iterable<? extends Integer> elements) {",
+        "    if (elements instanceof ImmutableCollection && !((ImmutableCollection<?>) "
+            + "elements).isEmpty()) {",
+        "      if (age instanceof ImmutableList) {",
+        "        age = new ArrayList<>(age);",
+        "      }",
+        "      age.addAll((ImmutableCollection<? extends Integer>) elements);",
+        "      return (Person.Builder) this;",
+        "    }",
         "    if (elements instanceof Collection) {",
         "      int elementsSize = ((Collection<?>) elements).size();",
         "      if (elementsSize != 0) {",
@@ -516,6 +709,26 @@ public class ListSourceTest {
         "  }",
         "",
         "  /**",
+        "   * Ensures the list to be returned from {@link Person#getAge()} can hold at least "
+            + "{@code",
+        "   * minCapacity} elements without reallocating its storage.",
+        "   *",
+        "   * @return this {@code Builder} object",
+        "   */",
+        "  public Person.Builder ensureAgeCapacity(int minCapacity) {",
+        "    if (age instanceof ImmutableList) {",
+        "      if (minCapacity > age.size()) {",
+        "        List<Integer> list = new ArrayList<>(minCapacity);",
+        "        list.addAll(age);",
+        "        age = list;",
+        "      }",
+        "    } else {",
+        "      ((ArrayList<?>) age).ensureCapacity(minCapacity);",
+        "    }",
+        "    return (Person.Builder) this;",
+        "  }",
+        "",
+        "  /**",
         "   * Returns an unmodifiable view of the list that will be returned by "
             + "{@link Person#getAge()}.",
         "   * Changes to this builder will be reflected in the view.",
@@ -606,6 +819,9 @@ public class ListSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
@@ -615,12 +831,23 @@ public class ListSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name, age);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + age.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      result.append(\", \");",
+        "      result.append(\"age=\").append(age);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{\" + \"name=\" + name + \", \" + \"age=\" + age + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
@@ -645,6 +872,9 @@ public class ListSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
@@ -654,15 +884,49 @@ public class ListSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name, age);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + age.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      result.append(\", \");",
+        "      result.append(\"age=\").append(age);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{\" + COMMA_JOINER.join(\"name=\" + name, \"age=\" + age) "
-            + "+ \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
@@ -681,8 +945,6 @@ public class ListSourceTest {
         "    return new Person.Builder().mergeFrom(value);",
         "  }",
         "",
-        "  private static final Joiner COMMA_JOINER = Joiner.on(\", \").skipNulls();",
-        "",
         "  private List<String> name = ImmutableList.of();",
         "  private List<Integer> age = ImmutableList.of();",
         "",
@@ -751,6 +1013,14 @@ public class ListSourceTest {
         "   * @throws NullPointerException if {@code elements} is null or contains a null element",
         "   */",
         "  public Person.Builder addAllName(Iterable<? extends String> elements) {",
+        "    if (elements instanceof ImmutableCollection && !((ImmutableCollection<?>) "
+            + "elements).isEmpty()) {",
+        "      if (name instanceof ImmutableList) {",
+        "        name = new ArrayList<>(name);",
+        "      }",
+        "      name.addAll((ImmutableCollection<? extends String>) elements);",
+        "      return (Person.Builder) this;",
+        "    }",
         "    return addAllName(elements.spliterator());",
         "  }",
         "",
@@ -790,6 +1060,26 @@ public class ListSourceTest {
         "  }",
         "",
         "  /**",
+        "   * Ensures the list to be returned from {@link Person#getName()} can hold at least "
+            + "{@code",
+        "   * minCapacity} elements without reallocating its storage.",
+        "   *",
+        "   * @return this {@code Builder} object",
+        "   */",
+        "  public Person.Builder ensureNameCapacity(int minCapacity) {",
+        "    if (name instanceof ImmutableList) {",
+        "      if (minCapacity > name.size()) {",
+        "        List<String> list = new ArrayList<>(minCapacity);",
+        "        list.addAll(name);",
+        "        name = list;",
+        "      }",
+        "    } else {",
+        "      ((ArrayList<?>) name).ensureCapacity(minCapacity);",
+        "    }",
+        "    return (Person.Builder) this;",
+        "  }",
+        "",
+        "  /**",
         "   * Returns an unmodifiable view of the list that will be returned by "
             + "{@link Person#getName()}.",
         "   * Changes to this builder will be reflected in the view.",
@@ -821,7 +1111,66 @@ public class ListSourceTest {
         "   * @return this {@code Builder} object",
         "   */",
         "  public Person.Builder addAge(int... elements) {",
-        "    return addAllAge(Ints.asList(elements));",
+        "    return addAllAge(elements, 0, elements.length);",
+        "  }",
+        "",
+        "  /**",
+        "   * Adds {@code length} elements of {@code elements}, starting at index {@code offset}, "
+            + "to the list",
+        "   * to be returned from {@link Person#getAge()}.",
+        "   *",
+        "   * @return this {@code Builder} object",
+        "   * @throws NullPointerException if {@code elements} is null",
+        "   * @throws IndexOutOfBoundsException if {@code offset} or {@code length} is negative, "
+            + "or {@code",
+        "   *     offset + length} exceeds {@code elements.length}",
+        "   */",
+        "  public Person.Builder addAllAge(int[] elements, int offset, int length) {",
+        "    if (offset < 0 || length < 0 || offset > elements.length - length) {",
+        "      throw new IndexOutOfBoundsException(",
+        "          \"offset \" + offset + \", length \" + length + \", array length \" + "
+            + "elements.length);",
+        "    }",
+        "    if (age instanceof ImmutableList) {",
+        "      age = new ArrayList<>(age);",
+        "    }",
+        "    ((ArrayList<?>) age).ensureCapacity(age.size() + length);",
+        "    for (int i = offset; i < offset + length; i++) {",
+        "      age.add(elements[i]);",
+        "    }",
+        "    return (Person.Builder) this;",
+        "  }",
+        "",
+        "  /**",
+        "   * Adds each element of {@code elements} to the list to be returned from {@link "
+            + "Person#getAge()}.",
+        "   *",
+        "   * @return this {@code Builder} object",
+        "   * @throws NullPointerException if {@code elements} is null or contains a null element",
+        "   */",
+        "  public Person.Builder addAllAge(Spliterator.OfInt elements) {",
+        "    if (age instanceof ImmutableList) {",
+        "      age = new ArrayList<>(age);",
+        "    }",
+        "    if ((elements.characteristics() & Spliterator.SIZED) != 0) {",
+        "      long elementsSize = elements.estimateSize();",
+        "      if (elementsSize > 0 && elementsSize <= Integer.MAX_VALUE) {",
+        "        ((ArrayList<?>) age).ensureCapacity(age.size() + (int) elementsSize);",
+        "      }",
+        "    }",
+        "    elements.forEachRemaining((IntConsumer) age::add);",
+        "    return (Person.Builder) this;",
+        "  }",
+        "",
+        "  /**",
+        "   * Adds each element of {@code elements} to the list to be returned from {@link "
+            + "Person#getAge()}.",
+        "   *",
+        "   * @return this {@code Builder} object",
+        "   * @throws NullPointerException if {@code elements} is null or contains a null element",
+        "   */",
+        "  public Person.Builder addAllAge(IntStream elements) {",
+        "    return addAllAge(elements.spliterator());",
         "  }",
         "",
         "  /**",
@@ -864,6 +1213,14 @@ public class ListSourceTest {
         "   * @throws NullPointerException if {@code elements} is null or contains a null element",
         "   */",
         "  public Person.Builder addAllAge(Iterable<? extends Integer> elements) {",
+        "    if (elements instanceof ImmutableCollection && !((ImmutableCollection<?>) "
+            + "elements).isEmpty()) {",
+        "      if (age instanceof ImmutableList) {",
+        "        age = new ArrayList<>(age);",
+        "      }",
+        "      age.addAll((ImmutableCollection<? extends Integer>) elements);",
+        "      return (Person.Builder) this;",
+        "    }",
         "    return addAllAge(elements.spliterator());",
         "  }",
         "",
@@ -903,6 +1260,26 @@ public class ListSourceTest {
         "  }",
         "",
         "  /**",
+        "   * Ensures the list to be returned from {@link Person#getAge()} can hold at least "
+            + "{@code",
+        "   * minCapacity} elements without reallocating its storage.",
+        "   *",
+        "   * @return this {@code Builder} object",
+        "   */",
+        "  public Person.Builder ensureAgeCapacity(int minCapacity) {",
+        "    if (age instanceof ImmutableList) {",
+        "      if (minCapacity > age.size()) {",
+        "        List<Integer> list = new ArrayList<>(minCapacity);",
+        "        list.addAll(age);",
+        "        age = list;",
+        "      }",
+        "    } else {",
+        "      ((ArrayList<?>) age).ensureCapacity(minCapacity);",
+        "    }",
+        "    return (Person.Builder) this;",
+        "  }",
+        "",
+        "  /**",
         "   * Returns an unmodifiable view of the list that will be returned by "
             + "{@link Person#getAge()}.",
         "   * Changes to this builder will be reflected in the view.",
@@ -993,6 +1370,9 @@ public class ListSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
@@ -1002,12 +1382,23 @@ public class ListSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name, age);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + age.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      result.append(\", \");",
+        "      result.append(\"age=\").append(age);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{\" + \"name=\" + name + \", \" + \"age=\" + age + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
@@ -1032,6 +1423,9 @@ public class ListSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
@@ -1041,15 +1435,49 @@ public class ListSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name, age);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + age.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      result.append(\", \");",
+        "      result.append(\"age=\").append(age);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{\" + COMMA_JOINER.join(\"name=\" + name, \"age=\" + age) "
-            + "+ \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
@@ -1125,6 +1553,18 @@ public class ListSourceTest {
         "  }",
         "",
         "  /**",
+        "   * Ensures the list to be returned from {@link Person#getName()} can hold at least "
+            + "{@code",
+        "   * minCapacity} elements without reallocating its storage.",
+        "   *",
+        "   * @return this {@code Builder} object",
+        "   */",
+        "  public Person.Builder ensureNameCapacity(int minCapacity) {",
+        "    name.ensureCapacity(minCapacity);",
+        "    return (Person.Builder) this;",
+        "  }",
+        "",
+        "  /**",
         "   * Returns an unmodifiable view of the list that will be returned by "
             + "{@link Person#getName()}.",
         "   * Changes to this builder will be reflected in the view.",
@@ -1150,9 +1590,29 @@ public class ListSourceTest {
         "   * @return this {@code Builder} object",
         "   */",
         "  public Person.Builder addAge(int... elements) {",
-        "    age.ensureCapacity(age.size() + elements.length);",
-        "    for (int element : elements) {",
-        "      addAge(element);",
+        "    return addAllAge(elements, 0, elements.length);",
+        "  }",
+        "",
+        "  /**",
+        "   * Adds {@code length} elements of {@code elements}, starting at index {@code offset}, "
+            + "to the list",
+        "   * to be returned from {@link Person#getAge()}.",
+        "   *",
+        "   * @return this {@code Builder} object",
+        "   * @throws NullPointerException if {@code elements} is null",
+        "   * @throws IndexOutOfBoundsException if {@code offset} or {@code length} is negative, "
+            + "or {@code",
+        "   *     offset + length} exceeds {@code elements.length}",
+        "   */",
+        "  public Person.Builder addAllAge(int[] elements, int offset, int length) {",
+        "    if (offset < 0 || length < 0 || offset > elements.length - length) {",
+        "      throw new IndexOutOfBoundsException(",
+        "          \"offset \" + offset + \", length \" + length + \", array length \" + "
+            + "elements.length);",
+        "    }",
+        "    age.ensureCapacity(age.size() + length);",
+        "    for (int i = offset; i < offset + length; i++) {",
+        "      age.add(elements[i]);",
         "    }",
         "    return (Person.Builder) this;",
         "  }",
@@ -1186,6 +1646,18 @@ public class ListSourceTest {
         "  }",
         "",
         "  /**",
+        "   * Ensures the list to be returned from {@link Person#getAge()} can hold at least "
+            + "{@code",
+        "   * minCapacity} elements without reallocating its storage.",
+        "   *",
+        "   * @return this {@code Builder} object",
+        "   */",
+        "  public Person.Builder ensureAgeCapacity(int minCapacity) {",
+        "    age.ensureCapacity(minCapacity);",
+        "    return (Person.Builder) this;",
+        "  }",
+        "",
+        "  /**",
         "   * Returns an unmodifiable view of the list that will be returned by "
             + "{@link Person#getAge()}.",
         "   * Changes to this builder will be reflected in the view.",
@@ -1196,8 +1668,16 @@ public class ListSourceTest {
         "",
         "  /** Sets all property values using the given {@code Person} as a template. */",
         "  public Person.Builder mergeFrom(Person value) {",
-        "    addAllName(value.getName());",
-        "    addAllAge(value.getAge());",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      name.addAll(value.getName());",
+        "    } else {",
+        "      addAllName(value.getName());",
+        "    }",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      age.addAll(value.getAge());",
+        "    } else {",
+        "      addAllAge(value.getAge());",
+        "    }",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -1209,8 +1689,8 @@ public class ListSourceTest {
         "  public Person.Builder mergeFrom(Person.Builder template) {",
         "    // Upcast to access private fields; otherwise, oddly, we get an access violation.",
         "    Person_Builder base = (Person_Builder) template;",
-        "    addAllName(base.name);",
-        "    addAllAge(base.age);",
+        "    name.addAll(base.name);",
+        "    age.addAll(base.age);",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -1264,6 +1744,9 @@ public class ListSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
@@ -1279,12 +1762,23 @@ public class ListSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name, age});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + age.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      result.append(\", \");",
+        "      result.append(\"age=\").append(age);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{\" + \"name=\" + name + \", \" + \"age=\" + age + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
@@ -1309,6 +1803,9 @@ public class ListSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
@@ -1324,20 +1821,50 @@ public class ListSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name, age});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + age.hashCode();",
+        "      return _hashCode;",
         "    }",
         "",
-        "    @Override",
-        "    public String toString() {",
-        "      StringBuilder result = new StringBuilder(\"partial Person{\");",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
         "      result.append(\"name=\").append(name);",
         "      result.append(\", \");",
         "      result.append(\"age=\").append(age);",
-        "      result.append(\"}\");",
-        "      return result.toString();",
+        "      return result.append(\"}\");",
+        "    }",
+        "",
+        "    @Override",
+        "    public String toString() {",
+        "      return appendTo(new StringBuilder()).toString();",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
         "    }",
         "  }",
         "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
+        "",
         "  @SuppressWarnings(\"unchecked\")",
         "  private static <E> List<E> immutableList(List<E> elements) {",
         "    switch (elements.size()) {",
@@ -1422,6 +1949,18 @@ public class ListSourceTest {
         "  }",
         "",
         "  /**",
+        "   * Ensures the list to be returned from {@link Person#getName()} can hold at least "
+            + "{@code",
+        "   * minCapacity} elements without reallocating its storage.",
+        "   *",
+        "   * @return this {@code Builder} object",
+        "   */",
+        "  public Person.Builder ensureNameCapacity(int minCapacity) {",
+        "    name.ensureCapacity(minCapacity);",
+        "    return (Person.Builder) this;",
+        "  }",
+        "",
+        "  /**",
         "   * Returns an unmodifiable view of the list that will be returned by "
             + "{@link Person#getName()}.",
         "   * Changes to this builder will be reflected in the view.",
@@ -1447,9 +1986,29 @@ public class ListSourceTest {
         "   * @return this {@code Builder} object",
         "   */",
         "  public Person.Builder addAge(int... elements) {",
-        "    age.ensureCapacity(age.size() + elements.length);",
-        "    for (int element : elements) {",
-        "      addAge(element);",
+        "    return addAllAge(elements, 0, elements.length);",
+        "  }",
+        "",
+        "  /**",
+        "   * Adds {@code length} elements of {@code elements}, starting at index {@code offset}, "
+            + "to the list",
+        "   * to be returned from {@link Person#getAge()}.",
+        "   *",
+        "   * @return this {@code Builder} object",
+        "   * @throws NullPointerException if {@code elements} is null",
+        "   * @throws IndexOutOfBoundsException if {@code offset} or {@code length} is negative, "
+            + "or {@code",
+        "   *     offset + length} exceeds {@code elements.length}",
+        "   */",
+        "  public Person.Builder addAllAge(int[] elements, int offset, int length) {",
+        "    if (offset < 0 || length < 0 || offset > elements.length - length) {",
+        "      throw new IndexOutOfBoundsException(",
+        "          \"offset \" + offset + \", length \" + length + \", array length \" + "
+            + "elements.length);",
+        "    }",
+        "    age.ensureCapacity(age.size() + length);",
+        "    for (int i = offset; i < offset + length; i++) {",
+        "      age.add(elements[i]);",
         "    }",
         "    return (Person.Builder) this;",
         "  }",
@@ -1483,6 +2042,18 @@ public class ListSourceTest {
         "  }",
         "",
         "  /**",
+        "   * Ensures the list to be returned from {@link Person#getAge()} can hold at least "
+            + "{@code",
+        "   * minCapacity} elements without reallocating its storage.",
+        "   *",
+        "   * @return this {@code Builder} object",
+        "   */",
+        "  public Person.Builder ensureAgeCapacity(int minCapacity) {",
+        "    age.ensureCapacity(minCapacity);",
+        "    return (Person.Builder) this;",
+        "  }",
+        "",
+        "  /**",
         "   * Returns an unmodifiable view of the list that will be returned by "
             + "{@link Person#getAge()}.",
         "   * Changes to this builder will be reflected in the view.",
@@ -1493,8 +2064,16 @@ public class ListSourceTest {
         "",
         "  /** Sets all property values using the given {@code Person} as a template. */",
         "  public Person.Builder mergeFrom(Person value) {",
-        "    addAllName(value.getName());",
-        "    addAllAge(value.getAge());",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      name.addAll(value.getName());",
+        "    } else {",
+        "      addAllName(value.getName());",
+        "    }",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      age.addAll(value.getAge());",
+        "    } else {",
+        "      addAllAge(value.getAge());",
+        "    }",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -1506,8 +2085,8 @@ public class ListSourceTest {
         "  public Person.Builder mergeFrom(Person.Builder template) {",
         "    // Upcast to access private fields; otherwise, oddly, we get an access violation.",
         "    Person_Builder base = (Person_Builder) template;",
-        "    addAllName(base.name);",
-        "    addAllAge(base.age);",
+        "    name.addAll(base.name);",
+        "    age.addAll(base.age);",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -1561,6 +2140,9 @@ public class ListSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
@@ -1570,12 +2152,23 @@ public class ListSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name, age);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + age.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      result.append(\", \");",
+        "      result.append(\"age=\").append(age);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{\" + \"name=\" + name + \", \" + \"age=\" + age + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
@@ -1600,6 +2193,9 @@ public class ListSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
@@ -1609,20 +2205,50 @@ public class ListSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name, age);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + age.hashCode();",
+        "      return _hashCode;",
         "    }",
         "",
-        "    @Override",
-        "    public String toString() {",
-        "      StringBuilder result = new StringBuilder(\"partial Person{\");",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
         "      result.append(\"name=\").append(name);",
         "      result.append(\", \");",
         "      result.append(\"age=\").append(age);",
-        "      result.append(\"}\");",
-        "      return result.toString();",
+        "      return result.append(\"}\");",
+        "    }",
+        "",
+        "    @Override",
+        "    public String toString() {",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
+        "",
         "  @SuppressWarnings(\"unchecked\")",
         "  private static <E> List<E> immutableList(List<E> elements) {",
         "    switch (elements.size()) {",
@@ -1653,8 +2279,6 @@ public class ListSourceTest {
         "    return new Person.Builder().mergeFrom(value);",
         "  }",
         "",
-        "  private static final Joiner COMMA_JOINER = Joiner.on(\", \").skipNulls();",
-        "",
         "  private List<String> name = ImmutableList.of();",
         "  private List<Integer> age = ImmutableList.of();",
         "",
@@ -1691,6 +2315,14 @@ public class ListSourceTest {
         "   * @throws NullPointerException if {@code elements} is null or contains a null element",
         "   */",
         "  public Person.Builder addAllName(Iterable<? extends String> elements) {",
+        "    if (elements instanceof ImmutableCollection && !((ImmutableCollection<?>) "
+            + "elements).isEmpty()) {",
+        "      if (name instanceof ImmutableList) {",
+        "        name = new ArrayList<String>(name);",
+        "      }",
+        "      name.addAll((ImmutableCollection<? extends String>) elements);",
+        "      return (Person.Builder) this;",
+        "    }",
         "    if (elements instanceof Collection) {",
         "      int elementsSize = ((Collection<?>) elements).size();",
         "      if (elementsSize != 0) {",
@@ -1721,6 +2353,25 @@ public class ListSourceTest {
         "  }",
         "",
         "  /**",
+        "   * Ensures the list to be returned from {@link Person#name()} can hold at least {@code",
+        "   * minCapacity} elements without reallocating its storage.",
+        "   *",
+        "   * @return this {@code Builder} object",
+        "   */",
+        "  public Person.Builder ensureNameCapacity(int minCapacity) {",
+        "    if (name instanceof ImmutableList) {",
+        "      if (minCapacity > name.size()) {",
+        "        List<String> list = new ArrayList<String>(minCapacity);",
+        "        list.addAll(name);",
+        "        name = list;",
+        "      }",
+        "    } else {",
+        "      ((ArrayList<?>) name).ensureCapacity(minCapacity);",
+        "    }",
+        "    return (Person.Builder) this;",
+        "  }",
+        "",
+        "  /**",
         "   * Returns an unmodifiable view of the list that will be returned by "
             + "{@link Person#name()}.",
         "   * Changes to this builder will be reflected in the view.",
@@ -1752,7 +2403,34 @@ public class ListSourceTest {
         "   * @return this {@code Builder} object",
         "   */",
         "  public Person.Builder addAge(int... elements) {",
-        "    return addAllAge(Ints.asList(elements));",
+        "    return addAllAge(elements, 0, elements.length);",
+        "  }",
+        "",
+        "  /**",
+        "   * Adds {@code length} elements of {@code elements}, starting at index {@code offset}, "
+            + "to the list",
+        "   * to be returned from {@link Person#age()}.",
+        "   *",
+        "   * @return this {@code Builder} object",
+        "   * @throws NullPointerException if {@code elements} is null",
+        "   * @throws IndexOutOfBoundsException if {@code offset} or {@code length} is negative, "
+            + "or {@code",
+        "   *     offset + length} exceeds {@code elements.length}",
+        "   */",
+        "  public Person.Builder addAllAge(int[] elements, int offset, int length) {",
+        "    if (offset < 0 || length < 0 || offset > elements.length - length) {",
+        "      throw new IndexOutOfBoundsException(",
+        "          \"offset \" + offset + \", length \" + length + \", array length \" + "
+            + "elements.length);",
+        "    }",
+        "    if (age instanceof ImmutableList) {",
+        "      age = new ArrayList<Integer>(age);",
+        "    }",
+        "    ((ArrayList<?>) age).ensureCapacity(age.size() + length);",
+        "    for (int i = offset; i < offset + length; i++) {",
+        "      age.add(elements[i]);",
+        "    }",
+        "    return (Person.Builder) this;",
         "  }",
         "",
         "  /**",
@@ -1763,6 +2441,14 @@ public class ListSourceTest {
         "   * @throws NullPointerException if {@code elements} is null or contains a null element",
         "   */",
         "  public Person.Builder addAllAge(Iterable<? extends Integer> elements) {",
+        "    if (elements instanceof ImmutableCollection && !((ImmutableCollection<?>) "
+            + "elements).isEmpty()) {",
+        "      if (age instanceof ImmutableList) {",
+        "        age = new ArrayList<Integer>(age);",
+        "      }",
+        "      age.addAll((ImmutableCollection<? extends Integer>) elements);",
+        "      return (Person.Builder) this;",
+        "    }",
         "    if (elements instanceof Collection) {",
         "      int elementsSize = ((Collection<?>) elements).size();",
         "      if (elementsSize != 0) {",
@@ -1793,6 +2479,26 @@ public class ListSourceTest {
         "  }",
         "",
         "  /**",
+        "   * Ensures the list to be returned from {@link Person#age()} can hold at least {@code "
+            + "minCapacity}",
+        "   * elements without reallocating its storage.",
+        "   *",
+        "   * @return this {@code Builder} object",
+        "   */",
+        "  public Person.Builder ensureAgeCapacity(int minCapacity) {",
+        "    if (age instanceof ImmutableList) {",
+        "      if (minCapacity > age.size()) {",
+        "        List<Integer> list = new ArrayList<Integer>(minCapacity);",
+        "        list.addAll(age);",
+        "        age = list;",
+        "      }",
+        "    } else {",
+        "      ((ArrayList<?>) age).ensureCapacity(minCapacity);",
+        "    }",
+        "    return (Person.Builder) this;",
+        "  }",
+        "",
+        "  /**",
         "   * Returns an unmodifiable view of the list that will be returned by "
             + "{@link Person#age()}. Changes",
         "   * to this builder will be reflected in the view.",
@@ -1883,6 +2589,9 @@ public class ListSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
@@ -1898,12 +2607,23 @@ public class ListSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name, age});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + age.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      result.append(\", \");",
+        "      result.append(\"age=\").append(age);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{\" + \"name=\" + name + \", \" + \"age=\" + age + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
@@ -1928,6 +2648,9 @@ public class ListSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
@@ -1943,15 +2666,49 @@ public class ListSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name, age});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + age.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      result.append(\", \");",
+        "      result.append(\"age=\").append(age);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{\" + COMMA_JOINER.join(\"name=\" + name, \"age=\" + age) "
-            + "+ \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
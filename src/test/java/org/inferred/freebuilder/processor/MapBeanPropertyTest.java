@@ -446,6 +446,24 @@ public class MapBeanPropertyTest {
         .runTest();
   }
 
+  @Test
+  public void testGet_returnsLiveView_afterBuilderClear() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(MAP_PROPERTY_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder();")
+            .addLine("%s<String, Object> itemsView = builder.getItems();", Map.class)
+            .addLine("builder.putItems(\"bar\", \"baz\");")
+            .addLine("builder.clear();")
+            .addLine("assertThat(itemsView).isEmpty();")
+            .addLine("builder.putItems(\"four\", 4.0);")
+            .addLine("assertThat(itemsView).isEqualTo(%s.of(\"four\", 4.0));",
+                ImmutableMap.class)
+            .build())
+        .runTest();
+  }
+
   @Test
   public void testGet_returnsUnmodifiableMap() {
     thrown.expect(UnsupportedOperationException.class);
@@ -480,6 +498,68 @@ public class MapBeanPropertyTest {
         .runTest();
   }
 
+  @Test
+  public void testMergeFromReusesImmutableMapInstance() {
+    assumeTrue("Guava available", features.get(GUAVA).isAvailable());
+    behaviorTester
+        .with(new Processor(features))
+        .with(MAP_PROPERTY_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .putItems(\"bar\", \"baz\")")
+            .addLine("    .putItems(\"three\", 3)")
+            .addLine("    .build();")
+            .addLine("com.example.DataType copy = new com.example.DataType.Builder()")
+            .addLine("    .mergeFrom(value)")
+            .addLine("    .build();")
+            .addLine("assertThat(copy.getItems()).isSameAs(value.getItems());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testMergeFromEmptyMapDoesNotPreventReuseOfImmutableMapInstance() {
+    assumeTrue("Guava available", features.get(GUAVA).isAvailable());
+    behaviorTester
+        .with(new Processor(features))
+        .with(MAP_PROPERTY_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .putItems(\"bar\", \"baz\")")
+            .addLine("    .build();")
+            .addLine("com.example.DataType copy = new com.example.DataType.Builder()")
+            .addLine("    .mergeFrom(value)")
+            .addLine("    .mergeFrom(new com.example.DataType.Builder())")
+            .addLine("    .build();")
+            .addLine("assertThat(copy.getItems()).isSameAs(value.getItems());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testMergeFrom_valueInstance_thenModified() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(MAP_PROPERTY_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .putItems(\"bar\", \"baz\")")
+            .addLine("    .putItems(\"three\", 3)")
+            .addLine("    .build();")
+            .addLine("com.example.DataType copy = new com.example.DataType.Builder()")
+            .addLine("    .mergeFrom(value)")
+            .addLine("    .removeItems(\"bar\")")
+            .addLine("    .putItems(\"four\", 4)")
+            .addLine("    .build();")
+            .addLine("assertThat(value.getItems())")
+            .addLine("    .isEqualTo(%s.of(\"bar\", \"baz\", \"three\", 3));",
+                ImmutableMap.class)
+            .addLine("assertThat(copy.getItems())")
+            .addLine("    .isEqualTo(%s.of(\"three\", 3, \"four\", 4));", ImmutableMap.class)
+            .build())
+        .runTest();
+  }
+
   @Test
   public void testMergeFrom_builder() {
     behaviorTester
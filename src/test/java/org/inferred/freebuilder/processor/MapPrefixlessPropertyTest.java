@@ -40,6 +40,7 @@ import org.junit.runners.Parameterized.Parameter;
 import org.junit.runners.Parameterized.Parameters;
 import org.junit.runners.Parameterized.UseParametersRunnerFactory;
 
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -263,6 +264,25 @@ public class MapPrefixlessPropertyTest {
         .runTest();
   }
 
+  @Test
+  public void testPutAll_immutableMapAfterPut() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(MAP_PROPERTY_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .putItems(\"one\", 1)")
+            .addLine("    .putAllItems(%s.of(\"one\", \"uno\", \"two\", 2))",
+                ImmutableMap.class)
+            .addLine("    .putItems(\"three\", 3)")
+            .addLine("    .build();")
+            .addLine("assertThat(value.items())")
+            .addLine("    .isEqualTo(%s.of(\"one\", \"uno\", \"two\", 2, \"three\", 3));",
+                ImmutableMap.class)
+            .build())
+        .runTest();
+  }
+
   @Test
   public void testPutAll_nullKey() {
     thrown.expect(NullPointerException.class);
@@ -403,6 +423,94 @@ public class MapPrefixlessPropertyTest {
         .runTest();
   }
 
+  @Test
+  public void testEnsureCapacity() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(MAP_PROPERTY_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .putItems(\"bar\", \"baz\")")
+            .addLine("    .ensureItemsCapacity(100)")
+            .addLine("    .putItems(\"three\", 3)")
+            .addLine("    .build();")
+            .addLine("assertThat(value.items())")
+            .addLine("    .isEqualTo(%s.of(\"bar\", \"baz\", \"three\", 3));",
+                ImmutableMap.class)
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testEnsureCapacity_emptyBuilderKeepsViewsLive() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(MAP_PROPERTY_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder();")
+            .addLine("%s<String, Object> view = builder.items();", Map.class)
+            .addLine("builder.ensureItemsCapacity(100).putItems(\"bar\", \"baz\");")
+            .addLine("assertThat(view).isEqualTo(%s.of(\"bar\", \"baz\"));", ImmutableMap.class)
+            .addLine("assertThat(builder.build().items())")
+            .addLine("    .isEqualTo(%s.of(\"bar\", \"baz\"));", ImmutableMap.class)
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testBuild_twoEntryMap() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(PRIMITIVE_KEY_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .putItems(7, \"seven\")")
+            .addLine("    .putItems(3, \"three\")")
+            .addLine("    .build();")
+            .addLine("assertThat(value.items().keySet()).containsExactly(7, 3).inOrder();")
+            .addLine("assertThat(value.items())")
+            .addLine("    .isEqualTo(%s.of(3, \"three\", 7, \"seven\"));", ImmutableMap.class)
+            .addLine("assertThat(value.items().hashCode())")
+            .addLine("    .isEqualTo(%s.of(3, \"three\", 7, \"seven\").hashCode());",
+                ImmutableMap.class)
+            .addLine("assertThat(value.items().get(3)).isEqualTo(\"three\");")
+            .addLine("assertThat(value.items().get(5)).isNull();")
+            .addLine("assertThat(value.items().get(null)).isNull();")
+            .addLine("assertThat(value.items().containsKey(7)).isTrue();")
+            .addLine("assertThat(value.items().containsKey(5)).isFalse();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testBuild_largeMap() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(PRIMITIVE_KEY_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder();")
+            .addLine("%1$s<Integer, String> expected = new %1$s<Integer, String>();",
+                LinkedHashMap.class)
+            .addLine("for (int i = 0; i < 50; i++) {")
+            .addLine("  builder.putItems(50 - i * 7, \"v\" + i);")
+            .addLine("  expected.put(50 - i * 7, \"v\" + i);")
+            .addLine("}")
+            .addLine("com.example.DataType value = builder.build();")
+            .addLine("assertThat(value.items().keySet())")
+            .addLine("    .containsExactlyElementsIn(expected.keySet()).inOrder();")
+            .addLine("assertThat(value.items()).isEqualTo(new %s<Integer, String>(expected));",
+                HashMap.class)
+            .addLine("assertThat(value.items().hashCode()).isEqualTo(expected.hashCode());")
+            .addLine("for (int i = -350; i <= 50; i++) {")
+            .addLine("  assertThat(value.items().get(i)).isEqualTo(expected.get(i));")
+            .addLine("  assertThat(value.items().containsKey(i))")
+            .addLine("      .isEqualTo(expected.containsKey(i));")
+            .addLine("}")
+            .addLine("assertThat(value.items().get(null)).isNull();")
+            .build())
+        .runTest();
+  }
+
   @Test
   public void testClear() {
     behaviorTester
@@ -446,6 +554,24 @@ public class MapPrefixlessPropertyTest {
         .runTest();
   }
 
+  @Test
+  public void testGet_returnsLiveView_afterBuilderClear() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(MAP_PROPERTY_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder();")
+            .addLine("%s<String, Object> itemsView = builder.items();", Map.class)
+            .addLine("builder.putItems(\"bar\", \"baz\");")
+            .addLine("builder.clear();")
+            .addLine("assertThat(itemsView).isEmpty();")
+            .addLine("builder.putItems(\"four\", 4.0);")
+            .addLine("assertThat(itemsView).isEqualTo(%s.of(\"four\", 4.0));",
+                ImmutableMap.class)
+            .build())
+        .runTest();
+  }
+
   @Test
   public void testGet_returnsUnmodifiableMap() {
     thrown.expect(UnsupportedOperationException.class);
@@ -480,6 +606,68 @@ public class MapPrefixlessPropertyTest {
         .runTest();
   }
 
+  @Test
+  public void testMergeFromReusesImmutableMapInstance() {
+    assumeTrue("Guava available", features.get(GUAVA).isAvailable());
+    behaviorTester
+        .with(new Processor(features))
+        .with(MAP_PROPERTY_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .putItems(\"bar\", \"baz\")")
+            .addLine("    .putItems(\"three\", 3)")
+            .addLine("    .build();")
+            .addLine("com.example.DataType copy = new com.example.DataType.Builder()")
+            .addLine("    .mergeFrom(value)")
+            .addLine("    .build();")
+            .addLine("assertThat(copy.items()).isSameAs(value.items());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testMergeFromEmptyMapDoesNotPreventReuseOfImmutableMapInstance() {
+    assumeTrue("Guava available", features.get(GUAVA).isAvailable());
+    behaviorTester
+        .with(new Processor(features))
+        .with(MAP_PROPERTY_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .putItems(\"bar\", \"baz\")")
+            .addLine("    .build();")
+            .addLine("com.example.DataType copy = new com.example.DataType.Builder()")
+            .addLine("    .mergeFrom(value)")
+            .addLine("    .mergeFrom(new com.example.DataType.Builder())")
+            .addLine("    .build();")
+            .addLine("assertThat(copy.items()).isSameAs(value.items());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testMergeFrom_valueInstance_thenModified() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(MAP_PROPERTY_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .putItems(\"bar\", \"baz\")")
+            .addLine("    .putItems(\"three\", 3)")
+            .addLine("    .build();")
+            .addLine("com.example.DataType copy = new com.example.DataType.Builder()")
+            .addLine("    .mergeFrom(value)")
+            .addLine("    .removeItems(\"bar\")")
+            .addLine("    .putItems(\"four\", 4)")
+            .addLine("    .build();")
+            .addLine("assertThat(value.items())")
+            .addLine("    .isEqualTo(%s.of(\"bar\", \"baz\", \"three\", 3));",
+                ImmutableMap.class)
+            .addLine("assertThat(copy.items())")
+            .addLine("    .isEqualTo(%s.of(\"three\", 3, \"four\", 4));", ImmutableMap.class)
+            .build())
+        .runTest();
+  }
+
   @Test
   public void testMergeFrom_builder() {
     behaviorTester
@@ -57,8 +57,7 @@ public class MapSourceTest {
         "    return new Person.Builder().mergeFrom(value);",
         "  }",
         "",
-        "  private final LinkedHashMap<Integer, String> name = "
-            + "new LinkedHashMap<Integer, String>();",
+        "  private Map<Integer, String> name = ImmutableMap.of();",
         "",
         "  /**",
         "   * Associates {@code key} with {@code value} in the map to be returned from {@link",
@@ -71,6 +70,9 @@ public class MapSourceTest {
         "   */",
         "  public Person.Builder putName(int key, String value) {",
         "    Preconditions.checkNotNull(value);",
+        "    if (name instanceof ImmutableMap) {",
+        "      name = new LinkedHashMap<Integer, String>(name);",
+        "    }",
         "    name.put(key, value);",
         "    return (Person.Builder) this;",
         "  }",
@@ -83,6 +85,13 @@ public class MapSourceTest {
         "   * @throws NullPointerException if {@code map} is null or contains a null key or value",
         "   */",
         "  public Person.Builder putAllName(Map<? extends Integer, ? extends String> map) {",
+        "    if (map instanceof ImmutableMap && !map.isEmpty()) {",
+        "      if (name instanceof ImmutableMap) {",
+        "        name = new LinkedHashMap<Integer, String>(name);",
+        "      }",
+        "      name.putAll(map);",
+        "      return (Person.Builder) this;",
+        "    }",
         "    for (Map.Entry<? extends Integer, ? extends String> entry : map.entrySet()) {",
         "      putName(entry.getKey(), entry.getValue());",
         "    }",
@@ -97,6 +106,9 @@ public class MapSourceTest {
         "   * @return this {@code Builder} object",
         "   */",
         "  public Person.Builder removeName(int key) {",
+        "    if (name instanceof ImmutableMap) {",
+        "      name = new LinkedHashMap<Integer, String>(name);",
+        "    }",
         "    name.remove(key);",
         "    return (Person.Builder) this;",
         "  }",
@@ -108,7 +120,30 @@ public class MapSourceTest {
         "   * @return this {@code Builder} object",
         "   */",
         "  public Person.Builder clearName() {",
-        "    name.clear();",
+        "    if (name instanceof ImmutableMap) {",
+        "      name = ImmutableMap.of();",
+        "    } else {",
+        "      name.clear();",
+        "    }",
+        "    return (Person.Builder) this;",
+        "  }",
+        "",
+        "  /**",
+        "   * Hints that the map to be returned from {@link Person#getName()} will hold at least "
+            + "{@code",
+        "   * minCapacity} entries, so storage can be allocated for them up front. The hint has no "
+            + "effect",
+        "   * once storage has been allocated.",
+        "   *",
+        "   * @return this {@code Builder} object",
+        "   */",
+        "  public Person.Builder ensureNameCapacity(int minCapacity) {",
+        "    if (name instanceof ImmutableMap && minCapacity > name.size()) {",
+        "      Map<Integer, String> map =",
+        "          new LinkedHashMap<Integer, String>((int) (minCapacity / 0.75f + 1.0f));",
+        "      map.putAll(name);",
+        "      name = map;",
+        "    }",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -118,12 +153,20 @@ public class MapSourceTest {
         "   * Changes to this builder will be reflected in the view.",
         "   */",
         "  public Map<Integer, String> getName() {",
+        "    if (name instanceof ImmutableMap) {",
+        "      name = new LinkedHashMap<Integer, String>(name);",
+        "    }",
         "    return Collections.unmodifiableMap(name);",
         "  }",
         "",
         "  /** Sets all property values using the given {@code Person} as a template. */",
         "  public Person.Builder mergeFrom(Person value) {",
-        "    putAllName(value.getName());",
+        "    if (value instanceof Person_Builder.Value && name == ImmutableMap.<Integer, "
+            + "String>of()) {",
+        "      name = ImmutableMap.copyOf(value.getName());",
+        "    } else {",
+        "      putAllName(value.getName());",
+        "    }",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -139,7 +182,7 @@ public class MapSourceTest {
         "",
         "  /** Resets the state of this builder. */",
         "  public Person.Builder clear() {",
-        "    name.clear();",
+        "    clearName();",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -180,6 +223,9 @@ public class MapSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
@@ -192,12 +238,20 @@ public class MapSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{name=\" + name + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
@@ -215,6 +269,9 @@ public class MapSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
@@ -227,14 +284,46 @@ public class MapSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{name=\" + name + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
@@ -254,7 +343,7 @@ public class MapSourceTest {
         "    return new Person.Builder().mergeFrom(value);",
         "  }",
         "",
-        "  private final LinkedHashMap<Integer, String> name = new LinkedHashMap<>();",
+        "  private Map<Integer, String> name = ImmutableMap.of();",
         "",
         "  /**",
         "   * Associates {@code key} with {@code value} in the map to be returned from {@link",
@@ -267,6 +356,9 @@ public class MapSourceTest {
         "   */",
         "  public Person.Builder putName(int key, String value) {",
         "    Preconditions.checkNotNull(value);",
+        "    if (name instanceof ImmutableMap) {",
+        "      name = new LinkedHashMap<>(name);",
+        "    }",
         "    name.put(key, value);",
         "    return (Person.Builder) this;",
         "  }",
@@ -279,6 +371,13 @@ public class MapSourceTest {
         "   * @throws NullPointerException if {@code map} is null or contains a null key or value",
         "   */",
         "  public Person.Builder putAllName(Map<? extends Integer, ? extends String> map) {",
+        "    if (map instanceof ImmutableMap && !map.isEmpty()) {",
+        "      if (name instanceof ImmutableMap) {",
+        "        name = new LinkedHashMap<>(name);",
+        "      }",
+        "      name.putAll(map);",
+        "      return (Person.Builder) this;",
+        "    }",
         "    for (Map.Entry<? extends Integer, ? extends String> entry : map.entrySet()) {",
         "      putName(entry.getKey(), entry.getValue());",
         "    }",
@@ -293,6 +392,9 @@ public class MapSourceTest {
         "   * @return this {@code Builder} object",
         "   */",
         "  public Person.Builder removeName(int key) {",
+        "    if (name instanceof ImmutableMap) {",
+        "      name = new LinkedHashMap<>(name);",
+        "    }",
         "    name.remove(key);",
         "    return (Person.Builder) this;",
         "  }",
@@ -304,7 +406,29 @@ public class MapSourceTest {
         "   * @return this {@code Builder} object",
         "   */",
         "  public Person.Builder clearName() {",
-        "    name.clear();",
+        "    if (name instanceof ImmutableMap) {",
+        "      name = ImmutableMap.of();",
+        "    } else {",
+        "      name.clear();",
+        "    }",
+        "    return (Person.Builder) this;",
+        "  }",
+        "",
+        "  /**",
+        "   * Hints that the map to be returned from {@link Person#getName()} will hold at least "
+            + "{@code",
+        "   * minCapacity} entries, so storage can be allocated for them up front. The hint has no "
+            + "effect",
+        "   * once storage has been allocated.",
+        "   *",
+        "   * @return this {@code Builder} object",
+        "   */",
+        "  public Person.Builder ensureNameCapacity(int minCapacity) {",
+        "    if (name instanceof ImmutableMap && minCapacity > name.size()) {",
+        "      Map<Integer, String> map = new LinkedHashMap<>((int) (minCapacity / 0.75f + 1.0f));",
+        "      map.putAll(name);",
+        "      name = map;",
+        "    }",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -314,12 +438,20 @@ public class MapSourceTest {
         "   * Changes to this builder will be reflected in the view.",
         "   */",
         "  public Map<Integer, String> getName() {",
+        "    if (name instanceof ImmutableMap) {",
+        "      name = new LinkedHashMap<>(name);",
+        "    }",
         "    return Collections.unmodifiableMap(name);",
         "  }",
         "",
         "  /** Sets all property values using the given {@code Person} as a template. */",
         "  public Person.Builder mergeFrom(Person value) {",
-        "    putAllName(value.getName());",
+        "    if (value instanceof Person_Builder.Value && name == ImmutableMap.<Integer, "
+            + "String>of()) {",
+        "      name = ImmutableMap.copyOf(value.getName());",
+        "    } else {",
+        "      putAllName(value.getName());",
+        "    }",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -335,7 +467,7 @@ public class MapSourceTest {
         "",
         "  /** Resets the state of this builder. */",
         "  public Person.Builder clear() {",
-        "    name.clear();",
+        "    clearName();",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -376,6 +508,9 @@ public class MapSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
@@ -385,12 +520,20 @@ public class MapSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{name=\" + name + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
@@ -408,6 +551,9 @@ public class MapSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
@@ -417,14 +563,46 @@ public class MapSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{name=\" + name + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
@@ -443,8 +621,7 @@ public class MapSourceTest {
         "    return new Person.Builder().mergeFrom(value);",
         "  }",
         "",
-        "  private final LinkedHashMap<Integer, String> name = "
-            + "new LinkedHashMap<Integer, String>();",
+        "  private Map<Integer, String> name = Collections.emptyMap();",
         "",
         "  /**",
         "   * Associates {@code key} with {@code value} in the map to be returned from {@link",
@@ -459,6 +636,9 @@ public class MapSourceTest {
         "    if (value == null) {",
         "      throw new NullPointerException();",
         "    }",
+        "    if (name == Collections.<Integer, String>emptyMap()) {",
+        "      name = new LinkedHashMap<Integer, String>();",
+        "    }",
         "    name.put(key, value);",
         "    return (Person.Builder) this;",
         "  }",
@@ -485,6 +665,9 @@ public class MapSourceTest {
         "   * @return this {@code Builder} object",
         "   */",
         "  public Person.Builder removeName(int key) {",
+        "    if (name == Collections.<Integer, String>emptyMap()) {",
+        "      name = new LinkedHashMap<Integer, String>();",
+        "    }",
         "    name.remove(key);",
         "    return (Person.Builder) this;",
         "  }",
@@ -501,17 +684,43 @@ public class MapSourceTest {
         "  }",
         "",
         "  /**",
+        "   * Hints that the map to be returned from {@link Person#getName()} will hold at least "
+            + "{@code",
+        "   * minCapacity} entries, so storage can be allocated for them up front. The hint has no "
+            + "effect",
+        "   * once storage has been allocated.",
+        "   *",
+        "   * @return this {@code Builder} object",
+        "   */",
+        "  public Person.Builder ensureNameCapacity(int minCapacity) {",
+        "    if (name == Collections.<Integer, String>emptyMap() && minCapacity > 0) {",
+        "      name = new LinkedHashMap<Integer, String>((int) (minCapacity / 0.75f + 1.0f));",
+        "    }",
+        "    return (Person.Builder) this;",
+        "  }",
+        "",
+        "  /**",
         "   * Returns an unmodifiable view of the map that will be returned by "
             + "{@link Person#getName()}.",
         "   * Changes to this builder will be reflected in the view.",
         "   */",
         "  public Map<Integer, String> getName() {",
+        "    if (name == Collections.<Integer, String>emptyMap()) {",
+        "      name = new LinkedHashMap<Integer, String>();",
+        "    }",
         "    return Collections.unmodifiableMap(name);",
         "  }",
         "",
         "  /** Sets all property values using the given {@code Person} as a template. */",
         "  public Person.Builder mergeFrom(Person value) {",
-        "    putAllName(value.getName());",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      if (name == Collections.<Integer, String>emptyMap()) {",
+        "        name = new LinkedHashMap<Integer, String>();",
+        "      }",
+        "      name.putAll(value.getName());",
+        "    } else {",
+        "      putAllName(value.getName());",
+        "    }",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -521,13 +730,16 @@ public class MapSourceTest {
         "   * input.",
         "   */",
         "  public Person.Builder mergeFrom(Person.Builder template) {",
-        "    putAllName(((Person_Builder) template).name);",
+        "    if (name == Collections.<Integer, String>emptyMap()) {",
+        "      name = new LinkedHashMap<Integer, String>();",
+        "    }",
+        "    name.putAll(((Person_Builder) template).name);",
         "    return (Person.Builder) this;",
         "  }",
         "",
         "  /** Resets the state of this builder. */",
         "  public Person.Builder clear() {",
-        "    name.clear();",
+        "    clearName();",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -567,6 +779,9 @@ public class MapSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
@@ -579,12 +794,20 @@ public class MapSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{name=\" + name + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
@@ -602,6 +825,9 @@ public class MapSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
@@ -614,13 +840,93 @@ public class MapSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{name=\" + name + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
+        "",
+        "  /**",
+        "   * Returns an open-addressed table of the positions (plus one) of {@code keys}, or null "
+            + "if there",
+        "   * are few enough to search linearly.",
+        "   */",
+        "  private static int[] compactIndex(Object[] keys) {",
+        "    if (keys.length <= 8) {",
+        "      return null;",
+        "    }",
+        "    int[] index = new int[Integer.highestOneBit(keys.length * 2 - 1) << 1];",
+        "    int mask = index.length - 1;",
+        "    for (int i = 0; i < keys.length; i++) {",
+        "      int slot = compactHash(keys[i]) & mask;",
+        "      while (index[slot] != 0) {",
+        "        slot = (slot + 1) & mask;",
+        "      }",
+        "      index[slot] = i + 1;",
         "    }",
+        "    return index;",
+        "  }",
+        "",
+        "  /** Returns the position of {@code key} in {@code keys}, or -1 if absent. */",
+        "  private static int compactIndexOf(Object[] keys, int[] index, Object key) {",
+        "    if (key == null) {",
+        "      return -1;",
+        "    }",
+        "    if (index == null) {",
+        "      for (int i = 0; i < keys.length; i++) {",
+        "        if (key.equals(keys[i])) {",
+        "          return i;",
+        "        }",
+        "      }",
+        "      return -1;",
+        "    }",
+        "    int mask = index.length - 1;",
+        "    for (int slot = compactHash(key) & mask; index[slot] != 0; slot = (slot + 1) & mask) {",
+        "      int i = index[slot] - 1;",
+        "      if (key.equals(keys[i])) {",
+        "        return i;",
+        "      }",
+        "    }",
+        "    return -1;",
+        "  }",
+        "",
+        "  private static int compactHash(Object key) {",
+        "    return 0x1b873593 * Integer.rotateLeft(key.hashCode() * 0xcc9e2d51, 15);",
         "  }",
         "",
         "  private static <K, V> Map<K, V> immutableMap(Map<K, V> entries) {",
@@ -630,8 +936,172 @@ public class MapSourceTest {
         "      case 1:",
         "        Map.Entry<K, V> entry = entries.entrySet().iterator().next();",
         "        return Collections.singletonMap(entry.getKey(), entry.getValue());",
+        "      case 2:",
+        "        Iterator<Map.Entry<K, V>> iterator = entries.entrySet().iterator();",
+        "        Map.Entry<K, V> first = iterator.next();",
+        "        Map.Entry<K, V> second = iterator.next();",
+        "        return new CompactImmutablePairMap<K, V>(",
+        "            first.getKey(), first.getValue(), second.getKey(), second.getValue());",
         "      default:",
-        "        return Collections.unmodifiableMap(new LinkedHashMap<K, V>(entries));",
+        "        Object[] keys = new Object[entries.size()];",
+        "        Object[] values = new Object[entries.size()];",
+        "        int i = 0;",
+        "        for (Map.Entry<K, V> e : entries.entrySet()) {",
+        "          keys[i] = e.getKey();",
+        "          values[i] = e.getValue();",
+        "          i++;",
+        "        }",
+        "        return new CompactImmutableMap<K, V>(keys, values);",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * An immutable, insertion-ordered map backed by arrays of its distinct, non-null keys "
+            + "and their",
+        "   * non-null values.",
+        "   */",
+        "  private static final class CompactImmutableMap<K, V> extends AbstractMap<K, V>",
+        "      implements Serializable {",
+        "",
+        "    private final Object[] keys;",
+        "    private final Object[] values;",
+        "    private final int[] index;",
+        "",
+        "    CompactImmutableMap(Object[] keys, Object[] values) {",
+        "      this.keys = keys;",
+        "      this.values = values;",
+        "      this.index = compactIndex(keys);",
+        "    }",
+        "",
+        "    @Override",
+        "    public int size() {",
+        "      return keys.length;",
+        "    }",
+        "",
+        "    @Override",
+        "    public boolean containsKey(Object key) {",
+        "      return compactIndexOf(keys, index, key) >= 0;",
+        "    }",
+        "",
+        "    @Override",
+        "    @SuppressWarnings(\"unchecked\")",
+        "    public V get(Object key) {",
+        "      int i = compactIndexOf(keys, index, key);",
+        "      return (i < 0) ? null : (V) values[i];",
+        "    }",
+        "",
+        "    @Override",
+        "    public Set<Map.Entry<K, V>> entrySet() {",
+        "      return new AbstractSet<Map.Entry<K, V>>() {",
+        "        @Override",
+        "        public int size() {",
+        "          return keys.length;",
+        "        }",
+        "",
+        "        @Override",
+        "        public Iterator<Map.Entry<K, V>> iterator() {",
+        "          return new Iterator<Map.Entry<K, V>>() {",
+        "            private int next = 0;",
+        "",
+        "            @Override",
+        "            public boolean hasNext() {",
+        "              return next < keys.length;",
+        "            }",
+        "",
+        "            @Override",
+        "            @SuppressWarnings(\"unchecked\")",
+        "            public Map.Entry<K, V> next() {",
+        "              if (next >= keys.length) {",
+        "                throw new NoSuchElementException();",
+        "              }",
+        "              int i = next++;",
+        "              return new AbstractMap.SimpleImmutableEntry<K, V>((K) keys[i], (V) "
+            + "values[i]);",
+        "            }",
+        "",
+        "            @Override",
+        "            public void remove() {",
+        "              throw new UnsupportedOperationException();",
+        "            }",
+        "          };",
+        "        }",
+        "      };",
+        "    }",
+        "  }",
+        "",
+        "  /** An immutable, insertion-ordered map of two distinct, non-null keys to non-null "
+            + "values. */",
+        "  private static final class CompactImmutablePairMap<K, V> extends AbstractMap<K, V>",
+        "      implements Serializable {",
+        "",
+        "    private final K firstKey;",
+        "    private final V firstValue;",
+        "    private final K secondKey;",
+        "    private final V secondValue;",
+        "",
+        "    CompactImmutablePairMap(K firstKey, V firstValue, K secondKey, V secondValue) {",
+        "      this.firstKey = firstKey;",
+        "      this.firstValue = firstValue;",
+        "      this.secondKey = secondKey;",
+        "      this.secondValue = secondValue;",
+        "    }",
+        "",
+        "    @Override",
+        "    public int size() {",
+        "      return 2;",
+        "    }",
+        "",
+        "    @Override",
+        "    public boolean containsKey(Object key) {",
+        "      return firstKey.equals(key) || secondKey.equals(key);",
+        "    }",
+        "",
+        "    @Override",
+        "    public V get(Object key) {",
+        "      if (firstKey.equals(key)) {",
+        "        return firstValue;",
+        "      } else if (secondKey.equals(key)) {",
+        "        return secondValue;",
+        "      } else {",
+        "        return null;",
+        "      }",
+        "    }",
+        "",
+        "    @Override",
+        "    public Set<Map.Entry<K, V>> entrySet() {",
+        "      return new AbstractSet<Map.Entry<K, V>>() {",
+        "        @Override",
+        "        public int size() {",
+        "          return 2;",
+        "        }",
+        "",
+        "        @Override",
+        "        public Iterator<Map.Entry<K, V>> iterator() {",
+        "          return new Iterator<Map.Entry<K, V>>() {",
+        "            private int next = 0;",
+        "",
+        "            @Override",
+        "            public boolean hasNext() {",
+        "              return next < 2;",
+        "            }",
+        "",
+        "            @Override",
+        "            public Map.Entry<K, V> next() {",
+        "              if (next >= 2) {",
+        "                throw new NoSuchElementException();",
+        "              }",
+        "              return (next++ == 0)",
+        "                  ? new AbstractMap.SimpleImmutableEntry<K, V>(firstKey, firstValue)",
+        "                  : new AbstractMap.SimpleImmutableEntry<K, V>(secondKey, secondValue);",
+        "            }",
+        "",
+        "            @Override",
+        "            public void remove() {",
+        "              throw new UnsupportedOperationException();",
+        "            }",
+        "          };",
+        "        }",
+        "      };",
         "    }",
         "  }",
         "}\n"));
@@ -652,7 +1122,7 @@ public class MapSourceTest {
         "    return new Person.Builder().mergeFrom(value);",
         "  }",
         "",
-        "  private final LinkedHashMap<Integer, String> name = new LinkedHashMap<>();",
+        "  private Map<Integer, String> name = Collections.emptyMap();",
         "",
         "  /**",
         "   * Associates {@code key} with {@code value} in the map to be returned from {@link",
@@ -665,6 +1135,9 @@ public class MapSourceTest {
         "   */",
         "  public Person.Builder putName(int key, String value) {",
         "    Objects.requireNonNull(value);",
+        "    if (name == Collections.<Integer, String>emptyMap()) {",
+        "      name = new LinkedHashMap<>();",
+        "    }",
         "    name.put(key, value);",
         "    return (Person.Builder) this;",
         "  }",
@@ -691,6 +1164,9 @@ public class MapSourceTest {
         "   * @return this {@code Builder} object",
         "   */",
         "  public Person.Builder removeName(int key) {",
+        "    if (name == Collections.<Integer, String>emptyMap()) {",
+        "      name = new LinkedHashMap<>();",
+        "    }",
         "    name.remove(key);",
         "    return (Person.Builder) this;",
         "  }",
@@ -707,17 +1183,43 @@ public class MapSourceTest {
         "  }",
         "",
         "  /**",
+        "   * Hints that the map to be returned from {@link Person#getName()} will hold at least "
+            + "{@code",
+        "   * minCapacity} entries, so storage can be allocated for them up front. The hint has no "
+            + "effect",
+        "   * once storage has been allocated.",
+        "   *",
+        "   * @return this {@code Builder} object",
+        "   */",
+        "  public Person.Builder ensureNameCapacity(int minCapacity) {",
+        "    if (name == Collections.<Integer, String>emptyMap() && minCapacity > 0) {",
+        "      name = new LinkedHashMap<>((int) (minCapacity / 0.75f + 1.0f));",
+        "    }",
+        "    return (Person.Builder) this;",
+        "  }",
+        "",
+        "  /**",
         "   * Returns an unmodifiable view of the map that will be returned by "
             + "{@link Person#getName()}.",
         "   * Changes to this builder will be reflected in the view.",
         "   */",
         "  public Map<Integer, String> getName() {",
+        "    if (name == Collections.<Integer, String>emptyMap()) {",
+        "      name = new LinkedHashMap<>();",
+        "    }",
         "    return Collections.unmodifiableMap(name);",
         "  }",
         "",
         "  /** Sets all property values using the given {@code Person} as a template. */",
         "  public Person.Builder mergeFrom(Person value) {",
-        "    putAllName(value.getName());",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      if (name == Collections.<Integer, String>emptyMap()) {",
+        "        name = new LinkedHashMap<>();",
+        "      }",
+        "      name.putAll(value.getName());",
+        "    } else {",
+        "      putAllName(value.getName());",
+        "    }",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -727,13 +1229,16 @@ public class MapSourceTest {
         "   * input.",
         "   */",
         "  public Person.Builder mergeFrom(Person.Builder template) {",
-        "    putAllName(((Person_Builder) template).name);",
+        "    if (name == Collections.<Integer, String>emptyMap()) {",
+        "      name = new LinkedHashMap<>();",
+        "    }",
+        "    name.putAll(((Person_Builder) template).name);",
         "    return (Person.Builder) this;",
         "  }",
         "",
         "  /** Resets the state of this builder. */",
         "  public Person.Builder clear() {",
-        "    name.clear();",
+        "    clearName();",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -773,6 +1278,9 @@ public class MapSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
@@ -782,12 +1290,20 @@ public class MapSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{name=\" + name + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
@@ -805,6 +1321,9 @@ public class MapSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
@@ -814,15 +1333,95 @@ public class MapSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{name=\" + name + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
+        "",
+        "  /**",
+        "   * Returns an open-addressed table of the positions (plus one) of {@code keys}, or null "
+            + "if there",
+        "   * are few enough to search linearly.",
+        "   */",
+        "  private static int[] compactIndex(Object[] keys) {",
+        "    if (keys.length <= 8) {",
+        "      return null;",
+        "    }",
+        "    int[] index = new int[Integer.highestOneBit(keys.length * 2 - 1) << 1];",
+        "    int mask = index.length - 1;",
+        "    for (int i = 0; i < keys.length; i++) {",
+        "      int slot = compactHash(keys[i]) & mask;",
+        "      while (index[slot] != 0) {",
+        "        slot = (slot + 1) & mask;",
+        "      }",
+        "      index[slot] = i + 1;",
+        "    }",
+        "    return index;",
+        "  }",
+        "",
+        "  /** Returns the position of {@code key} in {@code keys}, or -1 if absent. */",
+        "  private static int compactIndexOf(Object[] keys, int[] index, Object key) {",
+        "    if (key == null) {",
+        "      return -1;",
+        "    }",
+        "    if (index == null) {",
+        "      for (int i = 0; i < keys.length; i++) {",
+        "        if (key.equals(keys[i])) {",
+        "          return i;",
+        "        }",
+        "      }",
+        "      return -1;",
+        "    }",
+        "    int mask = index.length - 1;",
+        "    for (int slot = compactHash(key) & mask; index[slot] != 0; slot = (slot + 1) & mask) {",
+        "      int i = index[slot] - 1;",
+        "      if (key.equals(keys[i])) {",
+        "        return i;",
+        "      }",
+        "    }",
+        "    return -1;",
+        "  }",
+        "",
+        "  private static int compactHash(Object key) {",
+        "    return 0x1b873593 * Integer.rotateLeft(key.hashCode() * 0xcc9e2d51, 15);",
+        "  }",
+        "",
         "  private static <K, V> Map<K, V> immutableMap(Map<K, V> entries) {",
         "    switch (entries.size()) {",
         "      case 0:",
@@ -830,8 +1429,172 @@ public class MapSourceTest {
         "      case 1:",
         "        Map.Entry<K, V> entry = entries.entrySet().iterator().next();",
         "        return Collections.singletonMap(entry.getKey(), entry.getValue());",
+        "      case 2:",
+        "        Iterator<Map.Entry<K, V>> iterator = entries.entrySet().iterator();",
+        "        Map.Entry<K, V> first = iterator.next();",
+        "        Map.Entry<K, V> second = iterator.next();",
+        "        return new CompactImmutablePairMap<K, V>(",
+        "            first.getKey(), first.getValue(), second.getKey(), second.getValue());",
         "      default:",
-        "        return Collections.unmodifiableMap(new LinkedHashMap<>(entries));",
+        "        Object[] keys = new Object[entries.size()];",
+        "        Object[] values = new Object[entries.size()];",
+        "        int i = 0;",
+        "        for (Map.Entry<K, V> e : entries.entrySet()) {",
+        "          keys[i] = e.getKey();",
+        "          values[i] = e.getValue();",
+        "          i++;",
+        "        }",
+        "        return new CompactImmutableMap<K, V>(keys, values);",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * An immutable, insertion-ordered map backed by arrays of its distinct, non-null keys "
+            + "and their",
+        "   * non-null values.",
+        "   */",
+        "  private static final class CompactImmutableMap<K, V> extends AbstractMap<K, V>",
+        "      implements Serializable {",
+        "",
+        "    private final Object[] keys;",
+        "    private final Object[] values;",
+        "    private final int[] index;",
+        "",
+        "    CompactImmutableMap(Object[] keys, Object[] values) {",
+        "      this.keys = keys;",
+        "      this.values = values;",
+        "      this.index = compactIndex(keys);",
+        "    }",
+        "",
+        "    @Override",
+        "    public int size() {",
+        "      return keys.length;",
+        "    }",
+        "",
+        "    @Override",
+        "    public boolean containsKey(Object key) {",
+        "      return compactIndexOf(keys, index, key) >= 0;",
+        "    }",
+        "",
+        "    @Override",
+        "    @SuppressWarnings(\"unchecked\")",
+        "    public V get(Object key) {",
+        "      int i = compactIndexOf(keys, index, key);",
+        "      return (i < 0) ? null : (V) values[i];",
+        "    }",
+        "",
+        "    @Override",
+        "    public Set<Map.Entry<K, V>> entrySet() {",
+        "      return new AbstractSet<Map.Entry<K, V>>() {",
+        "        @Override",
+        "        public int size() {",
+        "          return keys.length;",
+        "        }",
+        "",
+        "        @Override",
+        "        public Iterator<Map.Entry<K, V>> iterator() {",
+        "          return new Iterator<Map.Entry<K, V>>() {",
+        "            private int next = 0;",
+        "",
+        "            @Override",
+        "            public boolean hasNext() {",
+        "              return next < keys.length;",
+        "            }",
+        "",
+        "            @Override",
+        "            @SuppressWarnings(\"unchecked\")",
+        "            public Map.Entry<K, V> next() {",
+        "              if (next >= keys.length) {",
+        "                throw new NoSuchElementException();",
+        "              }",
+        "              int i = next++;",
+        "              return new AbstractMap.SimpleImmutableEntry<K, V>((K) keys[i], (V) "
+            + "values[i]);",
+        "            }",
+        "",
+        "            @Override",
+        "            public void remove() {",
+        "              throw new UnsupportedOperationException();",
+        "            }",
+        "          };",
+        "        }",
+        "      };",
+        "    }",
+        "  }",
+        "",
+        "  /** An immutable, insertion-ordered map of two distinct, non-null keys to non-null "
+            + "values. */",
+        "  private static final class CompactImmutablePairMap<K, V> extends AbstractMap<K, V>",
+        "      implements Serializable {",
+        "",
+        "    private final K firstKey;",
+        "    private final V firstValue;",
+        "    private final K secondKey;",
+        "    private final V secondValue;",
+        "",
+        "    CompactImmutablePairMap(K firstKey, V firstValue, K secondKey, V secondValue) {",
+        "      this.firstKey = firstKey;",
+        "      this.firstValue = firstValue;",
+        "      this.secondKey = secondKey;",
+        "      this.secondValue = secondValue;",
+        "    }",
+        "",
+        "    @Override",
+        "    public int size() {",
+        "      return 2;",
+        "    }",
+        "",
+        "    @Override",
+        "    public boolean containsKey(Object key) {",
+        "      return firstKey.equals(key) || secondKey.equals(key);",
+        "    }",
+        "",
+        "    @Override",
+        "    public V get(Object key) {",
+        "      if (firstKey.equals(key)) {",
+        "        return firstValue;",
+        "      } else if (secondKey.equals(key)) {",
+        "        return secondValue;",
+        "      } else {",
+        "        return null;",
+        "      }",
+        "    }",
+        "",
+        "    @Override",
+        "    public Set<Map.Entry<K, V>> entrySet() {",
+        "      return new AbstractSet<Map.Entry<K, V>>() {",
+        "        @Override",
+        "        public int size() {",
+        "          return 2;",
+        "        }",
+        "",
+        "        @Override",
+        "        public Iterator<Map.Entry<K, V>> iterator() {",
+        "          return new Iterator<Map.Entry<K, V>>() {",
+        "            private int next = 0;",
+        "",
+        "            @Override",
+        "            public boolean hasNext() {",
+        "              return next < 2;",
+        "            }",
+        "",
+        "            @Override",
+        "            public Map.Entry<K, V> next() {",
+        "              if (next >= 2) {",
+        "                throw new NoSuchElementException();",
+        "              }",
+        "              return (next++ == 0)",
+        "                  ? new AbstractMap.SimpleImmutableEntry<K, V>(firstKey, firstValue)",
+        "                  : new AbstractMap.SimpleImmutableEntry<K, V>(secondKey, secondValue);",
+        "            }",
+        "",
+        "            @Override",
+        "            public void remove() {",
+        "              throw new UnsupportedOperationException();",
+        "            }",
+        "          };",
+        "        }",
+        "      };",
         "    }",
         "  }",
         "}\n"));
@@ -852,8 +1615,7 @@ public class MapSourceTest {
         "    return new Person.Builder().mergeFrom(value);",
         "  }",
         "",
-        "  private final LinkedHashMap<Integer, String> name = "
-            + "new LinkedHashMap<Integer, String>();",
+        "  private Map<Integer, String> name = ImmutableMap.of();",
         "",
         "  /**",
         "   * Associates {@code key} with {@code value} in the map to be returned from "
@@ -867,6 +1629,9 @@ public class MapSourceTest {
         "   */",
         "  public Person.Builder putName(int key, String value) {",
         "    Preconditions.checkNotNull(value);",
+        "    if (name instanceof ImmutableMap) {",
+        "      name = new LinkedHashMap<Integer, String>(name);",
+        "    }",
         "    name.put(key, value);",
         "    return (Person.Builder) this;",
         "  }",
@@ -879,6 +1644,13 @@ public class MapSourceTest {
         "   * @throws NullPointerException if {@code map} is null or contains a null key or value",
         "   */",
         "  public Person.Builder putAllName(Map<? extends Integer, ? extends String> map) {",
+        "    if (map instanceof ImmutableMap && !map.isEmpty()) {",
+        "      if (name instanceof ImmutableMap) {",
+        "        name = new LinkedHashMap<Integer, String>(name);",
+        "      }",
+        "      name.putAll(map);",
+        "      return (Person.Builder) this;",
+        "    }",
         "    for (Map.Entry<? extends Integer, ? extends String> entry : map.entrySet()) {",
         "      putName(entry.getKey(), entry.getValue());",
         "    }",
@@ -893,6 +1665,9 @@ public class MapSourceTest {
         "   * @return this {@code Builder} object",
         "   */",
         "  public Person.Builder removeName(int key) {",
+        "    if (name instanceof ImmutableMap) {",
+        "      name = new LinkedHashMap<Integer, String>(name);",
+        "    }",
         "    name.remove(key);",
         "    return (Person.Builder) this;",
         "  }",
@@ -903,7 +1678,30 @@ public class MapSourceTest {
         "   * @return this {@code Builder} object",
         "   */",
         "  public Person.Builder clearName() {",
-        "    name.clear();",
+        "    if (name instanceof ImmutableMap) {",
+        "      name = ImmutableMap.of();",
+        "    } else {",
+        "      name.clear();",
+        "    }",
+        "    return (Person.Builder) this;",
+        "  }",
+        "",
+        "  /**",
+        "   * Hints that the map to be returned from {@link Person#name()} will hold at least "
+            + "{@code",
+        "   * minCapacity} entries, so storage can be allocated for them up front. The hint has no "
+            + "effect",
+        "   * once storage has been allocated.",
+        "   *",
+        "   * @return this {@code Builder} object",
+        "   */",
+        "  public Person.Builder ensureNameCapacity(int minCapacity) {",
+        "    if (name instanceof ImmutableMap && minCapacity > name.size()) {",
+        "      Map<Integer, String> map =",
+        "          new LinkedHashMap<Integer, String>((int) (minCapacity / 0.75f + 1.0f));",
+        "      map.putAll(name);",
+        "      name = map;",
+        "    }",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -913,12 +1711,20 @@ public class MapSourceTest {
         "   * to this builder will be reflected in the view.",
         "   */",
         "  public Map<Integer, String> name() {",
+        "    if (name instanceof ImmutableMap) {",
+        "      name = new LinkedHashMap<Integer, String>(name);",
+        "    }",
         "    return Collections.unmodifiableMap(name);",
         "  }",
         "",
         "  /** Sets all property values using the given {@code Person} as a template. */",
         "  public Person.Builder mergeFrom(Person value) {",
-        "    putAllName(value.name());",
+        "    if (value instanceof Person_Builder.Value && name == ImmutableMap.<Integer, "
+            + "String>of()) {",
+        "      name = ImmutableMap.copyOf(value.name());",
+        "    } else {",
+        "      putAllName(value.name());",
+        "    }",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -934,7 +1740,7 @@ public class MapSourceTest {
         "",
         "  /** Resets the state of this builder. */",
         "  public Person.Builder clear() {",
-        "    name.clear();",
+        "    clearName();",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -975,6 +1781,9 @@ public class MapSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
@@ -987,12 +1796,20 @@ public class MapSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{name=\" + name + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
@@ -1010,6 +1827,9 @@ public class MapSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
@@ -1022,14 +1842,46 @@ public class MapSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{name=\" + name + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
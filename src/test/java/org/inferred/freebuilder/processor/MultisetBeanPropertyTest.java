@@ -626,6 +626,25 @@ public class MultisetBeanPropertyTest {
         .runTest();
   }
 
+  @Test
+  public void testGet_returnsLiveView_afterBuilderClear() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(MULTISET_PROPERTY_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder();")
+            .addLine("%s<String> itemsView = builder.getItems();", Multiset.class)
+            .addLine("assertThat(itemsView).isEmpty();")
+            .addLine("builder.addItems(\"one\", \"two\");")
+            .addLine("assertThat(itemsView).iteratesAs(\"one\", \"two\");")
+            .addLine("builder.clear();")
+            .addLine("assertThat(itemsView).isEmpty();")
+            .addLine("builder.addItems(\"three\", \"four\");")
+            .addLine("assertThat(itemsView).iteratesAs(\"three\", \"four\");")
+            .build())
+        .runTest();
+  }
+
   @Test
   public void testGet_returnsUnmodifiableSet() {
     thrown.expect(UnsupportedOperationException.class);
@@ -671,6 +690,24 @@ public class MultisetBeanPropertyTest {
         .runTest();
   }
 
+  @Test
+  public void testMergeFrom_builderWithLargeCounts() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(MULTISET_PROPERTY_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType.Builder template = com.example.DataType.builder()")
+            .addLine("    .addCopiesToItems(\"one\", 1000000000);")
+            .addLine("com.example.DataType.Builder builder = com.example.DataType.builder()")
+            .addLine("    .mergeFrom(template);")
+            .addLine("assertEquals(1000000000, builder.build().getItems().count(\"one\"));")
+            .addLine("com.example.DataType.Builder copy = com.example.DataType.builder()")
+            .addLine("    .mergeFrom(com.example.DataType.builder().mergeFrom(builder.build()));")
+            .addLine("assertEquals(1000000000, copy.build().getItems().count(\"one\"));")
+            .build())
+        .runTest();
+  }
+
   @Test
   public void testBuilderClear() {
     behaviorTester
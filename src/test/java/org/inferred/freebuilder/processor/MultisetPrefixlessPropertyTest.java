@@ -457,6 +457,67 @@ public class MultisetPrefixlessPropertyTest {
         .runTest();
   }
 
+  @Test
+  public void testEnsureCapacity() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(MULTISET_PROPERTY_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .addItems(\"one\", \"two\", \"one\")")
+            .addLine("    .ensureItemsCapacity(100)")
+            .addLine("    .addItems(\"three\")")
+            .addLine("    .build();")
+            .addLine("assertThat(value.items()).iteratesAs(\"one\", \"one\", \"two\", \"three\");")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testSetCountOf_toZeroThenReAdd_movesToEnd() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(MULTISET_PROPERTY_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .addItems(\"one\", \"two\", \"three\")")
+            .addLine("    .setCountOfItems(\"one\", 0)")
+            .addLine("    .addCopiesToItems(\"one\", 2)")
+            .addLine("    .build();")
+            .addLine("assertThat(value.items()).iteratesAs(\"two\", \"three\", \"one\", \"one\");")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testManyDistinctElements() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(MULTISET_PROPERTY_TYPE)
+        .with(testBuilder()
+            .addLine("DataType.Builder builder = new DataType.Builder();")
+            .addLine("for (int i = 0; i < 1000; i++) {")
+            .addLine("  builder.addCopiesToItems(\"item\" + i, i %% 3 + 1);")
+            .addLine("}")
+            .addLine("for (int i = 0; i < 1000; i += 2) {")
+            .addLine("  builder.setCountOfItems(\"item\" + i, 0);")
+            .addLine("}")
+            .addLine("for (int i = 0; i < 1000; i++) {")
+            .addLine("  builder.addItems(\"extra\" + i);")
+            .addLine("}")
+            .addLine("DataType value = builder.build();")
+            .addLine("assertThat(value.items().elementSet()).hasSize(1500);")
+            .addLine("assertThat(value.items().count(\"item0\")).isEqualTo(0);")
+            .addLine("assertThat(value.items().count(\"item1\")).isEqualTo(2);")
+            .addLine("assertThat(value.items().count(\"item5\")).isEqualTo(3);")
+            .addLine("assertThat(value.items().count(\"extra999\")).isEqualTo(1);")
+            .addLine("assertThat(value.items().elementSet()).containsAllOf(")
+            .addLine("    \"item1\", \"item3\", \"extra0\").inOrder();")
+            .addLine("assertThat(builder.items()).isEqualTo(value.items());")
+            .build())
+        .runTest();
+  }
+
   @Test
   public void testDefaultEmpty_primitive() {
     behaviorTester
@@ -719,6 +780,25 @@ public class MultisetPrefixlessPropertyTest {
         .runTest();
   }
 
+  @Test
+  public void testGet_returnsLiveView_afterBuilderClear() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(MULTISET_PROPERTY_TYPE)
+        .with(testBuilder()
+            .addLine("DataType.Builder builder = new DataType.Builder();")
+            .addLine("%s<String> itemsView = builder.items();", Multiset.class)
+            .addLine("assertThat(itemsView).isEmpty();")
+            .addLine("builder.addItems(\"one\", \"two\");")
+            .addLine("assertThat(itemsView).iteratesAs(\"one\", \"two\");")
+            .addLine("builder.clear();")
+            .addLine("assertThat(itemsView).isEmpty();")
+            .addLine("builder.addItems(\"three\", \"four\");")
+            .addLine("assertThat(itemsView).iteratesAs(\"three\", \"four\");")
+            .build())
+        .runTest();
+  }
+
   @Test
   public void testGet_returnsUnmodifiableSet() {
     thrown.expect(UnsupportedOperationException.class);
@@ -749,6 +829,58 @@ public class MultisetPrefixlessPropertyTest {
         .runTest();
   }
 
+  @Test
+  public void testMergeFromReusesImmutableMultisetInstance() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(MULTISET_PROPERTY_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = DataType.builder()")
+            .addLine("    .addItems(\"one\", \"two\")")
+            .addLine("    .build();")
+            .addLine("DataType copy = DataType.builder().mergeFrom(value).build();")
+            .addLine("assertThat(copy.items()).isSameAs(value.items());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testMergeFromEmptyMultisetDoesNotPreventReuseOfImmutableMultisetInstance() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(MULTISET_PROPERTY_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = DataType.builder()")
+            .addLine("    .addItems(\"one\", \"two\")")
+            .addLine("    .build();")
+            .addLine("DataType copy = DataType.builder()")
+            .addLine("    .mergeFrom(value)")
+            .addLine("    .mergeFrom(DataType.builder())")
+            .addLine("    .build();")
+            .addLine("assertThat(copy.items()).isSameAs(value.items());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testModifyAfterMergeFromDoesNotChangeSourceValue() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(MULTISET_PROPERTY_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = DataType.builder()")
+            .addLine("    .addItems(\"one\", \"two\")")
+            .addLine("    .build();")
+            .addLine("DataType copy = DataType.builder()")
+            .addLine("    .mergeFrom(value)")
+            .addLine("    .addItems(\"three\")")
+            .addLine("    .build();")
+            .addLine("assertThat(value.items()).iteratesAs(\"one\", \"two\");")
+            .addLine("assertThat(copy.items()).iteratesAs(\"one\", \"two\", \"three\");")
+            .build())
+        .runTest();
+  }
+
   @Test
   public void testMergeFrom_builder() {
     behaviorTester
@@ -790,6 +922,24 @@ public class MultisetPrefixlessPropertyTest {
         .runTest();
   }
 
+  @Test
+  public void testMergeFrom_builderWithLargeCounts() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(MULTISET_PROPERTY_TYPE)
+        .with(testBuilder()
+            .addLine("DataType.Builder template = DataType.builder()")
+            .addLine("    .addCopiesToItems(\"one\", 1000000000);")
+            .addLine("DataType.Builder builder = DataType.builder()")
+            .addLine("    .mergeFrom(template);")
+            .addLine("assertEquals(1000000000, builder.build().items().count(\"one\"));")
+            .addLine("DataType.Builder copy = DataType.builder()")
+            .addLine("    .mergeFrom(DataType.builder().mergeFrom(builder.build()));")
+            .addLine("assertEquals(1000000000, copy.build().items().count(\"one\"));")
+            .build())
+        .runTest();
+  }
+
   @Test
   public void testBuilderClear() {
     behaviorTester
@@ -0,0 +1,422 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.util.feature.FunctionPackage.FUNCTION_PACKAGE;
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.SOURCE_LEVEL;
+import static org.junit.Assume.assumeTrue;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.testing.EqualsTester;
+
+import org.inferred.freebuilder.FreeBuilder;
+import org.inferred.freebuilder.processor.util.feature.FeatureSet;
+import org.inferred.freebuilder.processor.util.testing.BehaviorTestRunner.Shared;
+import org.inferred.freebuilder.processor.util.testing.BehaviorTester;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory;
+import org.inferred.freebuilder.processor.util.testing.SourceBuilder;
+import org.inferred.freebuilder.processor.util.testing.TestBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.junit.runners.Parameterized.UseParametersRunnerFactory;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.JavaFileObject;
+
+/** Behavioral tests for {@code List<Integer>} properties stored in unboxed arrays. */
+@RunWith(Parameterized.class)
+@UseParametersRunnerFactory(ParameterizedBehaviorTestFactory.class)
+public class PrimitiveListPropertyTest {
+
+  @Parameters(name = "{0}")
+  public static List<FeatureSet> featureSets() {
+    return FeatureSets.ALL;
+  }
+
+  private static final JavaFileObject PRIMITIVE_LISTS_TYPE = new SourceBuilder()
+      .addLine("package com.example;")
+      .addLine("@%s(primitiveLists = true)", FreeBuilder.class)
+      .addLine("public abstract class DataType {")
+      .addLine("  public abstract %s<Integer> getInts();", List.class)
+      .addLine("  public abstract %s<Long> getLongs();", List.class)
+      .addLine("  public abstract %s<Double> getDoubles();", List.class)
+      .addLine("")
+      .addLine("  public static class Builder extends DataType_Builder {}")
+      .addLine("  public abstract Builder toBuilder();")
+      .addLine("}")
+      .build();
+
+  private static final String VALIDATION_ERROR_MESSAGE = "Value must be non-negative";
+
+  private static final JavaFileObject VALIDATED_INTS_TYPE = new SourceBuilder()
+      .addLine("package com.example;")
+      .addLine("@%s(primitiveLists = true)", FreeBuilder.class)
+      .addLine("public abstract class DataType {")
+      .addLine("  public abstract %s<Integer> getInts();", List.class)
+      .addLine("")
+      .addLine("  public static class Builder extends DataType_Builder {")
+      .addLine("    @Override public Builder addInts(int element) {")
+      .addLine("      %s.checkArgument(element >= 0, \"%s\");",
+          Preconditions.class, VALIDATION_ERROR_MESSAGE)
+      .addLine("      return super.addInts(element);")
+      .addLine("    }")
+      .addLine("  }")
+      .addLine("}")
+      .build();
+
+  @Parameter public FeatureSet features;
+
+  @Rule public final ExpectedException thrown = ExpectedException.none();
+  @Shared public BehaviorTester behaviorTester;
+
+  @Test
+  public void testDefaultEmpty() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(PRIMITIVE_LISTS_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder().build();")
+            .addLine("assertThat(value.getInts()).isEmpty();")
+            .addLine("assertThat(value.getLongs()).isEmpty();")
+            .addLine("assertThat(value.getDoubles()).isEmpty();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testAddElements() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(PRIMITIVE_LISTS_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .addInts(1)")
+            .addLine("    .addInts(2, 3, 4)")
+            .addLine("    .addLongs(5L, 6L)")
+            .addLine("    .addDoubles(7.5)")
+            .addLine("    .build();")
+            .addLine("assertThat(value.getInts()).containsExactly(1, 2, 3, 4).inOrder();")
+            .addLine("assertThat(value.getLongs()).containsExactly(5L, 6L).inOrder();")
+            .addLine("assertThat(value.getDoubles()).containsExactly(7.5);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testAddAllIterable() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(PRIMITIVE_LISTS_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .addAllInts(%s.of(1, 2))", ImmutableList.class)
+            .addLine("    .addAllInts(new %s<Integer>(3, 4))", DodgyIterable.class)
+            .addLine("    .build();")
+            .addLine("assertThat(value.getInts()).containsExactly(1, 2, 3, 4).inOrder();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testAddAllArrayRange() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(PRIMITIVE_LISTS_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .addAllInts(new int[] { 1, 2, 3, 4 }, 1, 2)")
+            .addLine("    .addAllDoubles(new double[] { 0.5, 1.5 }, 0, 2)")
+            .addLine("    .build();")
+            .addLine("assertThat(value.getInts()).containsExactly(2, 3).inOrder();")
+            .addLine("assertThat(value.getDoubles()).containsExactly(0.5, 1.5).inOrder();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testAddAllIterable_nullElement() {
+    thrown.expect(NullPointerException.class);
+    behaviorTester
+        .with(new Processor(features))
+        .with(PRIMITIVE_LISTS_TYPE)
+        .with(new TestBuilder()
+            .addLine("new com.example.DataType.Builder()")
+            .addLine("    .addAllInts(%s.asList(1, null, 3));", Arrays.class)
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testAddAllPrimitiveStream() {
+    assumeTrue("Streams available", features.get(SOURCE_LEVEL).stream().isPresent());
+    behaviorTester
+        .with(new Processor(features))
+        .with(PRIMITIVE_LISTS_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .addAllInts(java.util.stream.IntStream.range(0, 5))")
+            .addLine("    .addAllLongs(java.util.stream.LongStream.of(7L, 8L))")
+            .addLine("    .build();")
+            .addLine("assertThat(value.getInts()).containsExactly(0, 1, 2, 3, 4).inOrder();")
+            .addLine("assertThat(value.getLongs()).containsExactly(7L, 8L).inOrder();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testClear() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(PRIMITIVE_LISTS_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .addInts(1, 2)")
+            .addLine("    .clearInts()")
+            .addLine("    .addInts(3)")
+            .addLine("    .build();")
+            .addLine("assertThat(value.getInts()).containsExactly(3);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testEnsureCapacity() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(PRIMITIVE_LISTS_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .addInts(1, 2)")
+            .addLine("    .ensureIntsCapacity(100)")
+            .addLine("    .addInts(3)")
+            .addLine("    .build();")
+            .addLine("assertThat(value.getInts()).containsExactly(1, 2, 3).inOrder();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testGetter_returnsLiveView() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(PRIMITIVE_LISTS_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder();")
+            .addLine("%s<Integer> ints = builder.getInts();", List.class)
+            .addLine("builder.addInts(1, 2);")
+            .addLine("assertThat(ints).containsExactly(1, 2).inOrder();")
+            .addLine("builder.clearInts();")
+            .addLine("assertThat(ints).isEmpty();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testGetter_returnsUnmodifiableList() {
+    thrown.expect(UnsupportedOperationException.class);
+    behaviorTester
+        .with(new Processor(features))
+        .with(PRIMITIVE_LISTS_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder();")
+            .addLine("builder.getInts().add(1);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testValueList_isImmutable() {
+    thrown.expect(UnsupportedOperationException.class);
+    behaviorTester
+        .with(new Processor(features))
+        .with(PRIMITIVE_LISTS_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .addInts(1)")
+            .addLine("    .build();")
+            .addLine("value.getInts().set(0, 2);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testValueList_equalsAndHashCodeMatchJavaUtilList() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(PRIMITIVE_LISTS_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .addInts(1, -2, 3)")
+            .addLine("    .addLongs(Long.MAX_VALUE, -1L)")
+            .addLine("    .addDoubles(0.5, Double.NaN, -0.0)")
+            .addLine("    .build();")
+            .addLine("new %s()", EqualsTester.class)
+            .addLine("    .addEqualityGroup(")
+            .addLine("        value.getInts(), %s.asList(1, -2, 3))", Arrays.class)
+            .addLine("    .addEqualityGroup(")
+            .addLine("        value.getLongs(), %s.asList(Long.MAX_VALUE, -1L))", Arrays.class)
+            .addLine("    .addEqualityGroup(")
+            .addLine("        value.getDoubles(), %s.asList(0.5, Double.NaN, -0.0))", Arrays.class)
+            .addLine("    .testEquals();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testEquality() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(PRIMITIVE_LISTS_TYPE)
+        .with(new TestBuilder()
+            .addLine("new %s()", EqualsTester.class)
+            .addLine("    .addEqualityGroup(")
+            .addLine("        new com.example.DataType.Builder().build(),")
+            .addLine("        new com.example.DataType.Builder().build())")
+            .addLine("    .addEqualityGroup(")
+            .addLine("        new com.example.DataType.Builder().addInts(1, 2).build(),")
+            .addLine("        new com.example.DataType.Builder().addInts(1).addInts(2).build())")
+            .addLine("    .addEqualityGroup(")
+            .addLine("        new com.example.DataType.Builder().addDoubles(1.0).build(),")
+            .addLine("        new com.example.DataType.Builder().addDoubles(1.0).build())")
+            .addLine("    .testEquals();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testToBuilder_copiesElements() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(PRIMITIVE_LISTS_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .addInts(1, 2)")
+            .addLine("    .addLongs(3L)")
+            .addLine("    .build();")
+            .addLine("com.example.DataType copy = value.toBuilder()")
+            .addLine("    .addInts(3)")
+            .addLine("    .build();")
+            .addLine("assertThat(value.getInts()).containsExactly(1, 2).inOrder();")
+            .addLine("assertThat(copy.getInts()).containsExactly(1, 2, 3).inOrder();")
+            .addLine("assertThat(copy.getLongs()).containsExactly(3L);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testMergeFromBuilder() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(PRIMITIVE_LISTS_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder()")
+            .addLine("    .addInts(1, 2);")
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .addInts(0)")
+            .addLine("    .mergeFrom(builder)")
+            .addLine("    .build();")
+            .addLine("assertThat(value.getInts()).containsExactly(0, 1, 2).inOrder();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testBuildPartial_doesNotShareBuilderStorage() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(PRIMITIVE_LISTS_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder()")
+            .addLine("    .addInts(1);")
+            .addLine("com.example.DataType partial = builder.buildPartial();")
+            .addLine("builder.addInts(2);")
+            .addLine("assertThat(partial.getInts()).containsExactly(1);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testOverriddenAdd_validatesVarargs() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage(VALIDATION_ERROR_MESSAGE);
+    behaviorTester
+        .with(new Processor(features))
+        .with(VALIDATED_INTS_TYPE)
+        .with(new TestBuilder()
+            .addLine("new com.example.DataType.Builder().addInts(1, -2);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testOverriddenAdd_validatesAddAll() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage(VALIDATION_ERROR_MESSAGE);
+    behaviorTester
+        .with(new Processor(features))
+        .with(VALIDATED_INTS_TYPE)
+        .with(new TestBuilder()
+            .addLine("new com.example.DataType.Builder().addAllInts(%s.of(1, -2));",
+                ImmutableList.class)
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testMutate() {
+    assumeTrue("Environment has lambdas", features.get(FUNCTION_PACKAGE).consumer().isPresent());
+    behaviorTester
+        .with(new Processor(features))
+        .with(PRIMITIVE_LISTS_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .addInts(1, 2, 3, 4)")
+            .addLine("    .mutateInts(ints -> {")
+            .addLine("      ints.remove(1);")
+            .addLine("      ints.set(0, 5);")
+            .addLine("      ints.add(1, 6);")
+            .addLine("      ints.subList(2, 3).clear();")
+            .addLine("    })")
+            .addLine("    .build();")
+            .addLine("assertThat(value.getInts()).containsExactly(5, 6, 4).inOrder();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testMutate_validatedByOverriddenAdd() {
+    assumeTrue("Environment has lambdas", features.get(FUNCTION_PACKAGE).consumer().isPresent());
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage(VALIDATION_ERROR_MESSAGE);
+    behaviorTester
+        .with(new Processor(features))
+        .with(VALIDATED_INTS_TYPE)
+        .with(new TestBuilder()
+            .addLine("new com.example.DataType.Builder()")
+            .addLine("    .addInts(1)")
+            .addLine("    .mutateInts(ints -> ints.add(-1));")
+            .build())
+        .runTest();
+  }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2016 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.util.feature.FunctionPackage.FUNCTION_PACKAGE;
+import static org.junit.Assume.assumeTrue;
+
+import com.google.common.base.Preconditions;
+import com.google.common.testing.EqualsTester;
+
+import org.inferred.freebuilder.FreeBuilder;
+import org.inferred.freebuilder.processor.util.feature.FeatureSet;
+import org.inferred.freebuilder.processor.util.testing.BehaviorTestRunner.Shared;
+import org.inferred.freebuilder.processor.util.testing.BehaviorTester;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory;
+import org.inferred.freebuilder.processor.util.testing.SourceBuilder;
+import org.inferred.freebuilder.processor.util.testing.TestBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.junit.runners.Parameterized.UseParametersRunnerFactory;
+
+import java.util.List;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+
+import javax.tools.JavaFileObject;
+
+/** Behavioral tests for {@code OptionalInt}, {@code OptionalLong} and {@code OptionalDouble}. */
+@RunWith(Parameterized.class)
+@UseParametersRunnerFactory(ParameterizedBehaviorTestFactory.class)
+public class PrimitiveOptionalPropertyTest {
+
+  @Parameters(name = "{0}")
+  public static List<FeatureSet> featureSets() {
+    return FeatureSets.ALL;
+  }
+
+  private static final JavaFileObject PRIMITIVE_OPTIONALS_TYPE = new SourceBuilder()
+      .addLine("package com.example;")
+      .addLine("@%s", FreeBuilder.class)
+      .addLine("public abstract class DataType {")
+      .addLine("  public abstract %s getCount();", OptionalInt.class)
+      .addLine("  public abstract %s getTotal();", OptionalLong.class)
+      .addLine("  public abstract %s getRatio();", OptionalDouble.class)
+      .addLine("")
+      .addLine("  public static class Builder extends DataType_Builder {}")
+      .addLine("  public abstract Builder toBuilder();")
+      .addLine("}")
+      .build();
+
+  @Parameter public FeatureSet features;
+
+  @Rule public final ExpectedException thrown = ExpectedException.none();
+  @Shared public BehaviorTester behaviorTester;
+
+  @Test
+  public void testDefaultEmpty() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(PRIMITIVE_OPTIONALS_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder().build();")
+            .addLine("assertEquals(%s.empty(), value.getCount());", OptionalInt.class)
+            .addLine("assertEquals(%s.empty(), value.getTotal());", OptionalLong.class)
+            .addLine("assertEquals(%s.empty(), value.getRatio());", OptionalDouble.class)
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testSet_primitive() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(PRIMITIVE_OPTIONALS_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .setCount(0)")
+            .addLine("    .setTotal(5L)")
+            .addLine("    .setRatio(2.5)")
+            .addLine("    .build();")
+            .addLine("assertEquals(%s.of(0), value.getCount());", OptionalInt.class)
+            .addLine("assertEquals(%s.of(5L), value.getTotal());", OptionalLong.class)
+            .addLine("assertEquals(%s.of(2.5), value.getRatio());", OptionalDouble.class)
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testSet_optional() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(PRIMITIVE_OPTIONALS_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .setCount(%s.of(3))", OptionalInt.class)
+            .addLine("    .setTotal(7L)")
+            .addLine("    .setTotal(%s.empty())", OptionalLong.class)
+            .addLine("    .build();")
+            .addLine("assertEquals(%s.of(3), value.getCount());", OptionalInt.class)
+            .addLine("assertEquals(%s.empty(), value.getTotal());", OptionalLong.class)
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testSet_nullOptional() {
+    thrown.expect(NullPointerException.class);
+    behaviorTester
+        .with(new Processor(features))
+        .with(PRIMITIVE_OPTIONALS_TYPE)
+        .with(new TestBuilder()
+            .addLine("new com.example.DataType.Builder().setCount((%s) null);", OptionalInt.class)
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testSetNullable() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(PRIMITIVE_OPTIONALS_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .setNullableCount(4)")
+            .addLine("    .setRatio(1.5)")
+            .addLine("    .setNullableRatio(null)")
+            .addLine("    .build();")
+            .addLine("assertEquals(%s.of(4), value.getCount());", OptionalInt.class)
+            .addLine("assertEquals(%s.empty(), value.getRatio());", OptionalDouble.class)
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testClear() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(PRIMITIVE_OPTIONALS_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder()")
+            .addLine("    .setCount(4)")
+            .addLine("    .clearCount();")
+            .addLine("assertEquals(%s.empty(), builder.getCount());", OptionalInt.class)
+            .addLine("assertEquals(%s.empty(), builder.build().getCount());", OptionalInt.class)
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testMapper() {
+    assumeTrue(features.get(FUNCTION_PACKAGE).unaryOperator().isPresent());
+    behaviorTester
+        .with(new Processor(features))
+        .with(PRIMITIVE_OPTIONALS_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .setCount(4)")
+            .addLine("    .mapCount(i -> i * 3)")
+            .addLine("    .mapTotal(l -> l + 1)")
+            .addLine("    .build();")
+            .addLine("assertEquals(%s.of(12), value.getCount());", OptionalInt.class)
+            .addLine("assertEquals(%s.empty(), value.getTotal());", OptionalLong.class)
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testCustomization() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Count too big");
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public abstract class DataType {")
+            .addLine("  public abstract %s getCount();", OptionalInt.class)
+            .addLine("")
+            .addLine("  public static class Builder extends DataType_Builder {")
+            .addLine("    @Override public Builder setCount(int value) {")
+            .addLine("      %s.checkArgument(value <= 10, \"Count too big\");", Preconditions.class)
+            .addLine("      return super.setCount(value);")
+            .addLine("    }")
+            .addLine("  }")
+            .addLine("}")
+            .build())
+        .with(new TestBuilder()
+            .addLine("new com.example.DataType.Builder().setCount(%s.of(13));", OptionalInt.class)
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testMergeFrom() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(PRIMITIVE_OPTIONALS_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .setCount(1)")
+            .addLine("    .setRatio(2.5)")
+            .addLine("    .build();")
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder()")
+            .addLine("    .setTotal(3L)")
+            .addLine("    .setRatio(4.5)")
+            .addLine("    .mergeFrom(value);")
+            .addLine("assertEquals(%s.of(1), builder.getCount());", OptionalInt.class)
+            .addLine("assertEquals(%s.of(3L), builder.getTotal());", OptionalLong.class)
+            .addLine("assertEquals(%s.of(2.5), builder.getRatio());", OptionalDouble.class)
+            .addLine("builder = new com.example.DataType.Builder()")
+            .addLine("    .mergeFrom(new com.example.DataType.Builder().setTotal(6L));")
+            .addLine("assertEquals(%s.of(6L), builder.getTotal());", OptionalLong.class)
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testToBuilder_fromPartial() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(PRIMITIVE_OPTIONALS_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .setCount(1)")
+            .addLine("    .buildPartial()")
+            .addLine("    .toBuilder()")
+            .addLine("    .setTotal(2L)")
+            .addLine("    .build();")
+            .addLine("assertEquals(%s.of(1), value.getCount());", OptionalInt.class)
+            .addLine("assertEquals(%s.of(2L), value.getTotal());", OptionalLong.class)
+            .addLine("assertEquals(%s.empty(), value.getRatio());", OptionalDouble.class)
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testEquality() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(PRIMITIVE_OPTIONALS_TYPE)
+        .with(new TestBuilder()
+            .addLine("new %s()", EqualsTester.class)
+            .addLine("    .addEqualityGroup(")
+            .addLine("        new com.example.DataType.Builder().build(),")
+            .addLine("        new com.example.DataType.Builder().setCount(1).clearCount().build())")
+            .addLine("    .addEqualityGroup(")
+            .addLine("        new com.example.DataType.Builder().setCount(0).build(),")
+            .addLine("        new com.example.DataType.Builder().setNullableCount(0).build())")
+            .addLine("    .addEqualityGroup(")
+            .addLine("        new com.example.DataType.Builder().setRatio(0.0).build())")
+            .addLine("    .addEqualityGroup(")
+            .addLine("        new com.example.DataType.Builder().setRatio(-0.0).build())")
+            .addLine("    .addEqualityGroup(")
+            .addLine("        new com.example.DataType.Builder().buildPartial(),")
+            .addLine("        new com.example.DataType.Builder().buildPartial())")
+            .addLine("    .addEqualityGroup(")
+            .addLine("        new com.example.DataType.Builder().setTotal(0L).buildPartial(),")
+            .addLine("        new com.example.DataType.Builder().setTotal(0L).buildPartial())")
+            .addLine("    .testEquals();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testToString() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(PRIMITIVE_OPTIONALS_TYPE)
+        .with(new TestBuilder()
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder()")
+            .addLine("    .setCount(1)")
+            .addLine("    .setRatio(2.5);")
+            .addLine("assertEquals(\"DataType{count=1, ratio=2.5}\", builder.build().toString());")
+            .addLine("assertEquals(\"partial DataType{count=1, ratio=2.5}\",")
+            .addLine("    builder.buildPartial().toString());")
+            .build())
+        .runTest();
+  }
+}
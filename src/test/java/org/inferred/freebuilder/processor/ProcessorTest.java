@@ -16,6 +16,12 @@
 package org.inferred.freebuilder.processor;
 
 import com.google.common.annotations.GwtCompatible;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.SetMultimap;
 import com.google.common.testing.EqualsTester;
 import com.google.gwt.user.client.rpc.SerializationException;
 import com.google.gwt.user.server.rpc.RPC;
@@ -47,8 +53,14 @@ import java.io.ObjectOutputStream;
 import java.io.ObjectStreamClass;
 import java.io.Serializable;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
 
+import javax.annotation.Nullable;
 import javax.tools.JavaFileObject;
 
 @RunWith(Parameterized.class)
@@ -226,6 +238,88 @@ public class ProcessorTest {
         .runTest();
   }
 
+  @Test
+  public void testBuilderSerializability_modifiedMultiset() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public abstract class DataType {")
+            .addLine("  public abstract %s<String> getItems();", Multiset.class)
+            .addLine("")
+            .addLine("  public static class Builder extends DataType_Builder implements %s {}",
+                Serializable.class)
+            .addLine("}")
+            .build())
+        .with(new TestBuilder()
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder()")
+            .addLine("    .addItems(\"a\", \"b\", \"a\");")
+            .addLine("com.example.DataType.Builder copy =")
+            .addLine("    %s.reserialize(builder);", ProcessorTest.class)
+            .addLine("copy.addItems(\"a\").setCountOfItems(\"b\", 0);")
+            .addLine("assertEquals(%s.of(\"a\", \"a\", \"a\"), copy.build().getItems());",
+                ImmutableMultiset.class)
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testBuilderSerializability_modifiedListMultimap() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public abstract class DataType {")
+            .addLine("  public abstract %s<String, Integer> getItems();", ListMultimap.class)
+            .addLine("")
+            .addLine("  public static class Builder extends DataType_Builder implements %s {}",
+                Serializable.class)
+            .addLine("}")
+            .build())
+        .with(new TestBuilder()
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder()")
+            .addLine("    .putItems(\"a\", 1)")
+            .addLine("    .putItems(\"b\", 2);")
+            .addLine("com.example.DataType.Builder copy =")
+            .addLine("    %s.reserialize(builder);", ProcessorTest.class)
+            .addLine("copy.putItems(\"a\", 1);")
+            .addLine("assertEquals(%s.of(\"a\", 1, \"a\", 1, \"b\", 2),",
+                ImmutableListMultimap.class)
+            .addLine("    copy.build().getItems());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testBuilderSerializability_modifiedSetMultimap() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public abstract class DataType {")
+            .addLine("  public abstract %s<String, Integer> getItems();", SetMultimap.class)
+            .addLine("")
+            .addLine("  public static class Builder extends DataType_Builder implements %s {}",
+                Serializable.class)
+            .addLine("}")
+            .build())
+        .with(new TestBuilder()
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder()")
+            .addLine("    .putItems(\"a\", 1)")
+            .addLine("    .putItems(\"b\", 2);")
+            .addLine("com.example.DataType.Builder copy =")
+            .addLine("    %s.reserialize(builder);", ProcessorTest.class)
+            .addLine("copy.putItems(\"a\", 1).putItems(\"a\", 3);")
+            .addLine("assertEquals(%s.of(\"a\", 1, \"a\", 3, \"b\", 2),",
+                ImmutableSetMultimap.class)
+            .addLine("    copy.build().getItems());")
+            .build())
+        .runTest();
+  }
+
   @Test
   public void testFrom() {
     behaviorTester
@@ -397,6 +491,70 @@ public class ProcessorTest {
         .runTest();
   }
 
+  @Test
+  public void testClear_defaultsSnapshotCreatedOnce() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public abstract class DataType {")
+            .addLine("  public abstract int getPropertyA();")
+            .addLine("  public abstract String getPropertyB();")
+            .addLine("")
+            .addLine("  public static class Builder extends DataType_Builder {")
+            .addLine("    public static int constructions = 0;")
+            .addLine("    public Builder() {")
+            .addLine("      constructions++;")
+            .addLine("      setPropertyB(\"default\");")
+            .addLine("    }")
+            .addLine("  }")
+            .addLine("}")
+            .build())
+        .with(new TestBuilder()
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder();")
+            .addLine("for (int i = 0; i < 3; i++) {")
+            .addLine("  com.example.DataType value = builder")
+            .addLine("      .setPropertyA(i)")
+            .addLine("      .setPropertyB(\"b\" + i)")
+            .addLine("      .build();")
+            .addLine("  builder.clear().mergeFrom(value);")
+            .addLine("  assertEquals(value, builder.build());")
+            .addLine("  builder.clear();")
+            .addLine("  assertEquals(\"default\", builder.getPropertyB());")
+            .addLine("}")
+            .addLine("assertEquals(2, com.example.DataType.Builder.constructions);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testClear_snapshotDefaultsDisabled() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s(snapshotDefaults = false)", FreeBuilder.class)
+            .addLine("public abstract class DataType {")
+            .addLine("  public abstract long getTimestamp();")
+            .addLine("")
+            .addLine("  public static class Builder extends DataType_Builder {")
+            .addLine("    private static long nextTimestamp = 0;")
+            .addLine("    public Builder() {")
+            .addLine("      setTimestamp(nextTimestamp++);")
+            .addLine("    }")
+            .addLine("  }")
+            .addLine("}")
+            .build())
+        .with(new TestBuilder()
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder();")
+            .addLine("assertEquals(0, builder.getTimestamp());")
+            .addLine("assertEquals(1, builder.clear().getTimestamp());")
+            .addLine("assertEquals(2, builder.clear().getTimestamp());")
+            .build())
+        .runTest();
+  }
+
   @Test
   public void testPropertyNamedTemplate() {
     behaviorTester
@@ -543,6 +701,513 @@ public class ProcessorTest {
         .runTest();
   }
 
+  @Test
+  public void testHashCode_matchesArraysHashCode() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public abstract class DataType {")
+            .addLine("  public abstract boolean getA();")
+            .addLine("  public abstract byte getB();")
+            .addLine("  public abstract short getC();")
+            .addLine("  public abstract char getD();")
+            .addLine("  public abstract int getE();")
+            .addLine("  public abstract long getF();")
+            .addLine("  public abstract float getG();")
+            .addLine("  public abstract double getH();")
+            .addLine("  public abstract String getI();")
+            .addLine("  @%s public abstract String getJ();", Nullable.class)
+            .addLine("")
+            .addLine("  public static class Builder extends DataType_Builder {}")
+            .addLine("}")
+            .build())
+        .with(new TestBuilder()
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder()")
+            .addLine("    .setA(true)")
+            .addLine("    .setB((byte) -3)")
+            .addLine("    .setC((short) 1000)")
+            .addLine("    .setD('x')")
+            .addLine("    .setE(-17)")
+            .addLine("    .setF(Long.MIN_VALUE + 5)")
+            .addLine("    .setG(-0.0f)")
+            .addLine("    .setH(Double.NaN)")
+            .addLine("    .setI(\"hello\");")
+            .addLine("assertEquals(%s.hashCode(new Object[] {", Arrays.class)
+            .addLine("        true, (byte) -3, (short) 1000, 'x', -17, Long.MIN_VALUE + 5, -0.0f,")
+            .addLine("        Double.NaN, \"hello\", null }),")
+            .addLine("    builder.build().hashCode());")
+            .addLine("assertEquals(%s.hashCode(new Object[] {", Arrays.class)
+            .addLine("        true, (byte) -3, (short) 1000, 'x', -17, Long.MIN_VALUE + 5, -0.0f,")
+            .addLine("        Double.NaN, \"hello\", null, %s.emptySet() }),", Collections.class)
+            .addLine("    builder.buildPartial().hashCode());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testCachedHashCode_equality() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s(cacheHashCode = true)", FreeBuilder.class)
+            .addLine("public abstract class DataType {")
+            .addLine("  public abstract int getPropertyA();")
+            .addLine("  public abstract %s<String> getPropertyB();", List.class)
+            .addLine("")
+            .addLine("  public static class Builder extends DataType_Builder {}")
+            .addLine("  public static Builder builder() {")
+            .addLine("    return new Builder();")
+            .addLine("  }")
+            .addLine("}")
+            .build())
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = com.example.DataType.builder()")
+            .addLine("    .setPropertyA(11)")
+            .addLine("    .addPropertyB(\"x\", \"y\")")
+            .addLine("    .build();")
+            .addLine("assertEquals(%s.hashCode(new Object[] { 11, %s.asList(\"x\", \"y\") }),",
+                Arrays.class, Arrays.class)
+            .addLine("    value.hashCode());")
+            .addLine("new %s()", EqualsTester.class)
+            .addLine("    .addEqualityGroup(")
+            .addLine("        value,")
+            .addLine("        com.example.DataType.builder()")
+            .addLine("            .setPropertyA(11)")
+            .addLine("            .addPropertyB(\"x\", \"y\")")
+            .addLine("            .build())")
+            .addLine("    .addEqualityGroup(")
+            .addLine("        com.example.DataType.builder()")
+            .addLine("            .setPropertyA(11)")
+            .addLine("            .addPropertyB(\"y\", \"x\")")
+            .addLine("            .build())")
+            .addLine("    .addEqualityGroup(")
+            .addLine("        com.example.DataType.builder()")
+            .addLine("            .setPropertyA(12)")
+            .addLine("            .build(),")
+            .addLine("        com.example.DataType.builder()")
+            .addLine("            .setPropertyA(12)")
+            .addLine("            .build())")
+            .addLine("    .addEqualityGroup(")
+            .addLine("        com.example.DataType.builder()")
+            .addLine("            .setPropertyA(12)")
+            .addLine("            .buildPartial())")
+            .addLine("    .testEquals();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testCachedHashCode_computedOnce() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("public class Tracked {")
+            .addLine("  public static int hashCodeCalls = 0;")
+            .addLine("  @Override public int hashCode() {")
+            .addLine("    hashCodeCalls++;")
+            .addLine("    return 42;")
+            .addLine("  }")
+            .addLine("}")
+            .build())
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s(cacheHashCode = true)", FreeBuilder.class)
+            .addLine("public abstract class DataType {")
+            .addLine("  public abstract Tracked getTracked();")
+            .addLine("")
+            .addLine("  public static class Builder extends DataType_Builder {}")
+            .addLine("}")
+            .build())
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .setTracked(new com.example.Tracked())")
+            .addLine("    .build();")
+            .addLine("int hashCode = value.hashCode();")
+            .addLine("assertEquals(hashCode, value.hashCode());")
+            .addLine("assertEquals(1, com.example.Tracked.hashCodeCalls);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testMemoizeBuild() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s(memoizeBuild = true)", FreeBuilder.class)
+            .addLine("public abstract class DataType {")
+            .addLine("  public abstract int getPropertyA();")
+            .addLine("  public abstract %s<String> getPropertyB();", List.class)
+            .addLine("")
+            .addLine("  public static class Builder extends DataType_Builder {}")
+            .addLine("}")
+            .build())
+        .with(new TestBuilder()
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder()")
+            .addLine("    .setPropertyA(11)")
+            .addLine("    .addPropertyB(\"x\");")
+            .addLine("com.example.DataType value = builder.build();")
+            .addLine("assertSame(value, builder.build());")
+            .addLine("com.example.DataType added = builder.addPropertyB(\"y\").build();")
+            .addLine("assertThat(added.getPropertyB()).containsExactly(\"x\", \"y\").inOrder();")
+            .addLine("assertSame(added, builder.build());")
+            .addLine("com.example.DataType set = builder.setPropertyA(12).build();")
+            .addLine("assertEquals(12, set.getPropertyA());")
+            .addLine("com.example.DataType merged = builder.mergeFrom(value).build();")
+            .addLine("assertEquals(11, merged.getPropertyA());")
+            .addLine("assertNotSame(value, merged);")
+            .addLine("com.example.DataType cleared = builder.clear().setPropertyA(11).build();")
+            .addLine("assertThat(cleared.getPropertyB()).isEmpty();")
+            .addLine("assertThat(value.getPropertyB()).containsExactly(\"x\");")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testDiff() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s(diff = true)", FreeBuilder.class)
+            .addLine("public abstract class DataType {")
+            .addLine("  public abstract int getPropertyA();")
+            .addLine("  public abstract String getPropertyB();")
+            .addLine("  public abstract %s<String> getPropertyC();", List.class)
+            .addLine("  @%s public abstract String getPropertyD();", Nullable.class)
+            .addLine("")
+            .addLine("  public static class Builder extends DataType_Builder {}")
+            .addLine("}")
+            .build())
+        .with(new TestBuilder()
+            .addLine("com.example.DataType a = new com.example.DataType.Builder()")
+            .addLine("    .setPropertyA(1)")
+            .addLine("    .setPropertyB(\"x\")")
+            .addLine("    .addPropertyC(\"p\")")
+            .addLine("    .setPropertyD(\"d\")")
+            .addLine("    .build();")
+            .addLine("com.example.DataType b = new com.example.DataType.Builder()")
+            .addLine("    .setPropertyA(1)")
+            .addLine("    .setPropertyB(\"y\")")
+            .addLine("    .addPropertyC(\"p\", \"q\")")
+            .addLine("    .build();")
+            .addLine("assertEquals(0, com.example.DataType.Builder.diff(a, a));")
+            .addLine("assertEquals(0, com.example.DataType.Builder.diff(")
+            .addLine("    a, new com.example.DataType.Builder().mergeFrom(a).build()));")
+            .addLine("int changed = com.example.DataType.Builder.diff(a, b);")
+            .addLine("assertEquals(0xe, changed);")
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder()")
+            .addLine("    .mergeFrom(a);")
+            .addLine("assertEquals(b, builder.mergeFrom(b, changed).build());")
+            .addLine("com.example.DataType onlyC = new com.example.DataType.Builder()")
+            .addLine("    .mergeFrom(a)")
+            .addLine("    .mergeFrom(b, changed & 0x4)")
+            .addLine("    .build();")
+            .addLine("assertEquals(\"x\", onlyC.getPropertyB());")
+            .addLine("assertThat(onlyC.getPropertyC()).containsExactly(\"p\", \"q\").inOrder();")
+            .addLine("assertEquals(\"d\", onlyC.getPropertyD());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testBuildAndReset() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s(buildAndReset = true)", FreeBuilder.class)
+            .addLine("public abstract class DataType {")
+            .addLine("  public abstract int getPropertyA();")
+            .addLine("  public abstract %s<String> getPropertyB();", List.class)
+            .addLine("  public abstract %s<String> getPropertyC();", Set.class)
+            .addLine("")
+            .addLine("  public static class Builder extends DataType_Builder {}")
+            .addLine("}")
+            .build())
+        .with(new TestBuilder()
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder()")
+            .addLine("    .setPropertyA(11)")
+            .addLine("    .addPropertyB(\"x\", \"y\")")
+            .addLine("    .addPropertyC(\"z\");")
+            .addLine("com.example.DataType value = builder.buildAndReset();")
+            .addLine("assertEquals(11, value.getPropertyA());")
+            .addLine("assertThat(value.getPropertyB()).containsExactly(\"x\", \"y\").inOrder();")
+            .addLine("assertThat(value.getPropertyC()).containsExactly(\"z\");")
+            .addLine("assertThat(builder.getPropertyB()).isEmpty();")
+            .addLine("assertThat(builder.getPropertyC()).isEmpty();")
+            .addLine("builder.setPropertyA(12).addPropertyB(\"w\");")
+            .addLine("com.example.DataType second = builder.buildAndReset();")
+            .addLine("assertEquals(12, second.getPropertyA());")
+            .addLine("assertThat(second.getPropertyB()).containsExactly(\"w\");")
+            .addLine("assertThat(value.getPropertyB()).containsExactly(\"x\", \"y\").inOrder();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testBuildAndReset_presizedList() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s(buildAndReset = true)", FreeBuilder.class)
+            .addLine("public abstract class DataType {")
+            .addLine("  public abstract %s<String> getItems();", List.class)
+            .addLine("")
+            .addLine("  public static class Builder extends DataType_Builder implements %s {}",
+                Serializable.class)
+            .addLine("}")
+            .build())
+        .with(new TestBuilder()
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder()")
+            .addLine("    .ensureItemsCapacity(3)")
+            .addLine("    .addItems(\"a\", \"b\", \"c\");")
+            .addLine("com.example.DataType value = builder.buildAndReset();")
+            .addLine("builder.addItems(\"d\", \"e\", \"f\");")
+            .addLine("assertThat(value.getItems()).containsExactly(\"a\", \"b\", \"c\").inOrder();")
+            .addLine("com.example.DataType.Builder copy =")
+            .addLine("    %s.reserialize(builder);", ProcessorTest.class)
+            .addLine("assertThat(copy.buildAndReset().getItems())")
+            .addLine("    .containsExactly(\"d\", \"e\", \"f\").inOrder();")
+            .addLine("assertThat(builder.build().getItems())")
+            .addLine("    .containsExactly(\"d\", \"e\", \"f\").inOrder();")
+            .addLine("assertThat(value.getItems()).containsExactly(\"a\", \"b\", \"c\").inOrder();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testBuildAndReset_requiredPropertyUnset() {
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Not set: [propertyA]");
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s(buildAndReset = true)", FreeBuilder.class)
+            .addLine("public abstract class DataType {")
+            .addLine("  public abstract int getPropertyA();")
+            .addLine("")
+            .addLine("  public static class Builder extends DataType_Builder {}")
+            .addLine("}")
+            .build())
+        .with(new TestBuilder()
+            .addLine("new com.example.DataType.Builder().buildAndReset();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testIntern() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s(intern = true)", FreeBuilder.class)
+            .addLine("public abstract class DataType implements %s {", Serializable.class)
+            .addLine("  public abstract int getPropertyA();")
+            .addLine("  public abstract %s<String> getPropertyB();", List.class)
+            .addLine("")
+            .addLine("  public static class Builder extends DataType_Builder {}")
+            .addLine("}")
+            .build())
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .setPropertyA(11)")
+            .addLine("    .addPropertyB(\"x\")")
+            .addLine("    .build();")
+            .addLine("assertSame(value, new com.example.DataType.Builder()")
+            .addLine("    .setPropertyA(11)")
+            .addLine("    .addPropertyB(\"x\")")
+            .addLine("    .build());")
+            .addLine("com.example.DataType other = new com.example.DataType.Builder()")
+            .addLine("    .setPropertyA(12)")
+            .addLine("    .build();")
+            .addLine("assertNotSame(value, other);")
+            .addLine("assertEquals(12, other.getPropertyA());")
+            .addLine("assertSame(value, %s.reserialize(value));", ProcessorTest.class)
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testIntern_genericType() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s(intern = true)", FreeBuilder.class)
+            .addLine("public abstract class DataType<T> {")
+            .addLine("  public abstract T getProperty();")
+            .addLine("")
+            .addLine("  public static class Builder<T> extends DataType_Builder<T> {}")
+            .addLine("}")
+            .build())
+        .with(new TestBuilder()
+            .addLine("com.example.DataType<String> value =")
+            .addLine("    new com.example.DataType.Builder<String>().setProperty(\"x\").build();")
+            .addLine("assertSame(value,")
+            .addLine("    new com.example.DataType.Builder<String>().setProperty(\"x\").build());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testIntern_notSerializable() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s(intern = true)", FreeBuilder.class)
+            .addLine("public abstract class DataType {")
+            .addLine("  public abstract int getProperty();")
+            .addLine("")
+            .addLine("  public static class Builder extends DataType_Builder {}")
+            .addLine("}")
+            .build())
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value =")
+            .addLine("    new com.example.DataType.Builder().setProperty(1).build();")
+            .addLine("assertSame(value,")
+            .addLine("    new com.example.DataType.Builder().setProperty(1).build());")
+            .addLine("for (%s method : value.getClass().getDeclaredMethods()) {", Method.class)
+            .addLine("  assertFalse(method.getName().equals(\"readResolve\"));")
+            .addLine("}")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testComparator() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s(comparator = {\"priority\", \"name\", \"weight\"})",
+                FreeBuilder.class)
+            .addLine("public abstract class DataType {")
+            .addLine("  public abstract double getWeight();")
+            .addLine("  @%s public abstract String getName();", Nullable.class)
+            .addLine("  public abstract int getPriority();")
+            .addLine("")
+            .addLine("  public static class Builder extends DataType_Builder {}")
+            .addLine("}")
+            .build())
+        .with(new TestBuilder()
+            .addLine("com.example.DataType a = new com.example.DataType.Builder()")
+            .addLine("    .setPriority(1).setName(\"z\").setWeight(9.0).build();")
+            .addLine("com.example.DataType b = new com.example.DataType.Builder()")
+            .addLine("    .setPriority(2).setWeight(1.0).build();")
+            .addLine("com.example.DataType c = new com.example.DataType.Builder()")
+            .addLine("    .setPriority(2).setName(\"a\").setWeight(2.0).build();")
+            .addLine("com.example.DataType d = new com.example.DataType.Builder()")
+            .addLine("    .setPriority(2).setName(\"a\").setWeight(3.0).build();")
+            .addLine("%s<com.example.DataType> values = new %s<com.example.DataType>(",
+                List.class, ArrayList.class)
+            .addLine("    %s.asList(d, c, b, a));", Arrays.class)
+            .addLine("%s.sort(values, com.example.DataType.Builder.comparator());",
+                Collections.class)
+            .addLine("assertThat(values).containsExactly(a, b, c, d).inOrder();")
+            .addLine("assertEquals(0, com.example.DataType.Builder.comparator().compare(")
+            .addLine("    c, new com.example.DataType.Builder().mergeFrom(c).build()));")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testComparator_comparable() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s(comparator = {\"name\", \"count\"})", FreeBuilder.class)
+            .addLine("public abstract class DataType implements Comparable<DataType> {")
+            .addLine("  public abstract String getName();")
+            .addLine("  public abstract long getCount();")
+            .addLine("")
+            .addLine("  public static class Builder extends DataType_Builder {}")
+            .addLine("}")
+            .build())
+        .with(new TestBuilder()
+            .addLine("com.example.DataType a = new com.example.DataType.Builder()")
+            .addLine("    .setName(\"a\").setCount(5).build();")
+            .addLine("com.example.DataType b = new com.example.DataType.Builder()")
+            .addLine("    .setName(\"b\").setCount(1).build();")
+            .addLine("com.example.DataType partial = new com.example.DataType.Builder()")
+            .addLine("    .setName(\"a\").setCount(7).buildPartial();")
+            .addLine("assertThat(a.compareTo(b)).isLessThan(0);")
+            .addLine("assertThat(b.compareTo(a)).isGreaterThan(0);")
+            .addLine("assertThat(a.compareTo(partial)).isLessThan(0);")
+            .addLine("assertThat(partial.compareTo(b)).isLessThan(0);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testComparator_genericType() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s(comparator = \"property\")", FreeBuilder.class)
+            .addLine("public abstract class DataType<T extends Comparable<T>> {")
+            .addLine("  public abstract T getProperty();")
+            .addLine("")
+            .addLine("  public static class Builder<T extends Comparable<T>>")
+            .addLine("      extends DataType_Builder<T> {}")
+            .addLine("}")
+            .build())
+        .with(new TestBuilder()
+            .addLine("%s<com.example.DataType<Integer>> comparator =", Comparator.class)
+            .addLine("    com.example.DataType.Builder.<Integer>comparator();")
+            .addLine("assertThat(comparator.compare(")
+            .addLine("    new com.example.DataType.Builder<Integer>().setProperty(3).build(),")
+            .addLine("    new com.example.DataType.Builder<Integer>().setProperty(10).build()))")
+            .addLine("    .isLessThan(0);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testMemoizeBuild_nestedBuilderHandedOut() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s(memoizeBuild = true)", FreeBuilder.class)
+            .addLine("public abstract class DataType {")
+            .addLine("  public abstract Item getItem();")
+            .addLine("")
+            .addLine("  public static class Builder extends DataType_Builder {}")
+            .addLine("")
+            .addLine("  @%s", FreeBuilder.class)
+            .addLine("  public abstract static class Item {")
+            .addLine("    public abstract String getName();")
+            .addLine("")
+            .addLine("    public static class Builder extends DataType_Item_Builder {}")
+            .addLine("  }")
+            .addLine("}")
+            .build())
+        .with(new TestBuilder()
+            .addLine("com.example.DataType.Builder builder = new com.example.DataType.Builder();")
+            .addLine("builder.setItem(new com.example.DataType.Item.Builder().setName(\"a\"));")
+            .addLine("com.example.DataType value = builder.build();")
+            .addLine("assertSame(value, builder.build());")
+            .addLine("builder.getItemBuilder().setName(\"b\");")
+            .addLine("assertEquals(\"b\", builder.build().getItem().getName());")
+            .addLine("builder.getItemBuilder().setName(\"c\");")
+            .addLine("assertEquals(\"c\", builder.build().getItem().getName());")
+            .addLine("assertEquals(\"a\", value.getItem().getName());")
+            .build())
+        .runTest();
+  }
+
   @Test
   public void testToString_noProperties() {
     behaviorTester
@@ -31,6 +31,7 @@ import org.junit.runners.Parameterized.Parameter;
 import org.junit.runners.Parameterized.Parameters;
 import org.junit.runners.Parameterized.UseParametersRunnerFactory;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
@@ -299,6 +300,89 @@ public class RequiredBeanPropertiesTest {
         .runTest();
   }
 
+  @Test
+  public void testCantBuildWithUnsetProperties_over32Properties() {
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Not set: [property3, property39]");
+    behaviorTester
+        .with(new Processor(features))
+        .with(manyPropertiesType(40))
+        .with(setAllPropertiesExcept(40, 3, 39)
+            .addLine("    ;")
+            .addLine("builder.build();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testCantBuildWithUnsetProperties_over64Properties() {
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Not set: [property3, property64, property69]");
+    behaviorTester
+        .with(new Processor(features))
+        .with(manyPropertiesType(70))
+        .with(setAllPropertiesExcept(70, 3, 64, 69)
+            .addLine("    ;")
+            .addLine("builder.build();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testPartialsWithUnsetProperties_over64Properties() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(manyPropertiesType(70))
+        .with(setAllPropertiesExcept(70, 69)
+            .addLine("    ;")
+            .addLine("builder.setProperty69(69);")
+            .addLine("DataType value = builder.build();")
+            .addLine("DataType.Builder copy = new DataType.Builder().mergeFrom(builder);")
+            .addLine("assertEquals(value, copy.build());")
+            .addLine("DataType partial = new DataType.Builder().setProperty65(65).buildPartial();")
+            .addLine("assertEquals(65, partial.getProperty65());")
+            .addLine("assertEquals(partial,")
+            .addLine("    new DataType.Builder().setProperty65(65).buildPartial());")
+            .addLine("assertEquals(partial.hashCode(),")
+            .addLine("    new DataType.Builder().setProperty65(65).buildPartial().hashCode());")
+            .addLine("assertFalse(partial.equals(")
+            .addLine("    new DataType.Builder().setProperty64(65).buildPartial()));")
+            .addLine("assertEquals(\"partial DataType{names=[], property65=65}\",")
+            .addLine("    partial.toString());")
+            .build())
+        .runTest();
+  }
+
+  /** Returns a type with {@code count} required int properties and a list property. */
+  private static JavaFileObject manyPropertiesType(int count) {
+    SourceBuilder type = new SourceBuilder()
+        .addLine("package com.example;")
+        .addLine("@%s", FreeBuilder.class)
+        .addLine("public abstract class DataType {")
+        .addLine("  public abstract %s<String> getNames();", List.class);
+    for (int i = 0; i < count; i++) {
+      type.addLine("  public abstract int getProperty%s();", i);
+    }
+    return type
+        .addLine("")
+        .addLine("  public static class Builder extends DataType_Builder {}")
+        .addLine("}")
+        .build();
+  }
+
+  private static TestBuilder setAllPropertiesExcept(int count, Integer... unset) {
+    TestBuilder test = testBuilder()
+        .addLine("DataType.Builder builder = new DataType.Builder()")
+        .addLine("    .addNames(\"a\")");
+    List<Integer> unsetProperties = Arrays.asList(unset);
+    for (int i = 0; i < count; i++) {
+      if (!unsetProperties.contains(i)) {
+        test.addLine("    .setProperty%1$s(%1$s)", i);
+      }
+    }
+    return test;
+  }
+
   private static TestBuilder testBuilder() {
     return new TestBuilder().addImport("com.example.DataType");
   }
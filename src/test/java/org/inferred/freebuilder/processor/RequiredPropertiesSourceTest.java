@@ -55,29 +55,38 @@ public class RequiredPropertiesSourceTest {
         "    return new Person.Builder().mergeFrom(value);",
         "  }",
         "",
-        "  private static final Joiner COMMA_JOINER = Joiner.on(\", \").skipNulls();",
-        "",
         "  private enum Property {",
-        "    NAME(\"name\"),",
-        "    AGE(\"age\"),",
+        "    NAME(\"name\", 0),",
+        "    AGE(\"age\", 1),",
         "    ;",
         "",
         "    private final String name;",
+        "    private final int bit;",
         "",
-        "    private Property(String name) {",
+        "    private Property(String name, int bit) {",
         "      this.name = name;",
+        "      this.bit = bit;",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
         "      return name;",
         "    }",
+        "",
+        "    private static List<Property> unset(int unsetProperties) {",
+        "      List<Property> result = new ArrayList<Property>();",
+        "      for (Property property : Property.values()) {",
+        "        if ((unsetProperties & (1 << property.bit)) != 0) {",
+        "          result.add(property);",
+        "        }",
+        "      }",
+        "      return result;",
+        "    }",
         "  }",
         "",
         "  private String name;",
         "  private int age;",
-        "  private final EnumSet<Person_Builder.Property> _unsetProperties =",
-        "      EnumSet.allOf(Person_Builder.Property.class);",
+        "  private int _unsetProperties = 0x3;",
         "",
         "  /**",
         "   * Sets the value to be returned by {@link Person#getName()}.",
@@ -87,7 +96,7 @@ public class RequiredPropertiesSourceTest {
         "   */",
         "  public Person.Builder setName(String name) {",
         "    this.name = Preconditions.checkNotNull(name);",
-        "    _unsetProperties.remove(Person_Builder.Property.NAME);",
+        "    _unsetProperties &= ~(1 << 0);",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -97,8 +106,7 @@ public class RequiredPropertiesSourceTest {
         "   * @throws IllegalStateException if the field has not been set",
         "   */",
         "  public String getName() {",
-        "    Preconditions.checkState(",
-        "        !_unsetProperties.contains(Person_Builder.Property.NAME), \"name not set\");",
+        "    Preconditions.checkState((_unsetProperties & (1 << 0)) == 0, \"name not set\");",
         "    return name;",
         "  }",
         "",
@@ -109,7 +117,7 @@ public class RequiredPropertiesSourceTest {
         "   */",
         "  public Person.Builder setAge(int age) {",
         "    this.age = age;",
-        "    _unsetProperties.remove(Person_Builder.Property.AGE);",
+        "    _unsetProperties &= ~(1 << 1);",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -119,20 +127,19 @@ public class RequiredPropertiesSourceTest {
         "   * @throws IllegalStateException if the field has not been set",
         "   */",
         "  public int getAge() {",
-        "    Preconditions.checkState(",
-        "        !_unsetProperties.contains(Person_Builder.Property.AGE), \"age not set\");",
+        "    Preconditions.checkState((_unsetProperties & (1 << 1)) == 0, \"age not set\");",
         "    return age;",
         "  }",
         "",
         "  /** Sets all property values using the given {@code Person} as a template. */",
         "  public Person.Builder mergeFrom(Person value) {",
         "    Person_Builder _defaults = new Person.Builder();",
-        "    if (_defaults._unsetProperties.contains(Person_Builder.Property.NAME)",
+        "    if ((_defaults._unsetProperties & (1 << 0)) != 0",
         "        || !value.getName().equals(_defaults.getName())) {",
         "      setName(value.getName());",
         "    }",
-        "    if (_defaults._unsetProperties.contains(Person_Builder.Property.AGE)",
-        "        || value.getAge() != _defaults.getAge()) {",
+        "    if ((_defaults._unsetProperties & (1 << 1)) != 0 || value.getAge() != "
+            + "_defaults.getAge()) {",
         "      setAge(value.getAge());",
         "    }",
         "    return (Person.Builder) this;",
@@ -147,13 +154,13 @@ public class RequiredPropertiesSourceTest {
         "    // Upcast to access private fields; otherwise, oddly, we get an access violation.",
         "    Person_Builder base = (Person_Builder) template;",
         "    Person_Builder _defaults = new Person.Builder();",
-        "    if (!base._unsetProperties.contains(Person_Builder.Property.NAME)",
-        "        && (_defaults._unsetProperties.contains(Person_Builder.Property.NAME)",
+        "    if ((base._unsetProperties & (1 << 0)) == 0",
+        "        && ((_defaults._unsetProperties & (1 << 0)) != 0",
         "            || !template.getName().equals(_defaults.getName()))) {",
         "      setName(template.getName());",
         "    }",
-        "    if (!base._unsetProperties.contains(Person_Builder.Property.AGE)",
-        "        && (_defaults._unsetProperties.contains(Person_Builder.Property.AGE)",
+        "    if ((base._unsetProperties & (1 << 1)) == 0",
+        "        && ((_defaults._unsetProperties & (1 << 1)) != 0",
         "            || template.getAge() != _defaults.getAge())) {",
         "      setAge(template.getAge());",
         "    }",
@@ -165,8 +172,7 @@ public class RequiredPropertiesSourceTest {
         "    Person_Builder _defaults = new Person.Builder();",
         "    name = _defaults.name;",
         "    age = _defaults.age;",
-        "    _unsetProperties.clear();",
-        "    _unsetProperties.addAll(_defaults._unsetProperties);",
+        "    _unsetProperties = _defaults._unsetProperties;",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -176,8 +182,10 @@ public class RequiredPropertiesSourceTest {
         "   * @throws IllegalStateException if any field has not been set",
         "   */",
         "  public Person build() {",
-        "    Preconditions.checkState(_unsetProperties.isEmpty(),"
-            + " \"Not set: %s\", _unsetProperties);",
+        "    if (_unsetProperties != 0) {",
+        "      throw new IllegalStateException(",
+        "          \"Not set: \" + Person_Builder.Property.unset(_unsetProperties));",
+        "    }",
         "    return new Person_Builder.Value(this);",
         "  }",
         "",
@@ -221,14 +229,17 @@ public class RequiredPropertiesSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
         "      Person_Builder.Value other = (Person_Builder.Value) obj;",
-        "      if (!name.equals(other.name)) {",
+        "      if (age != other.age) {",
         "        return false;",
         "      }",
-        "      if (age != other.age) {",
+        "      if (!name.equals(other.name)) {",
         "        return false;",
         "      }",
         "      return true;",
@@ -236,29 +247,42 @@ public class RequiredPropertiesSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name, age});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + age;",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      String separator = \"\";",
+        "      result.append(\"name=\").append(name);",
+        "      separator = \", \";",
+        "      result.append(separator);",
+        "      result.append(\"age=\").append(age);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{\" + \"name=\" + name + \", \" + \"age=\" + age + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
         "  private static final class Partial extends Person {",
         "    private final String name;",
         "    private final int age;",
-        "    private final EnumSet<Person_Builder.Property> _unsetProperties;",
+        "    private final int _unsetProperties;",
         "",
         "    Partial(Person_Builder builder) {",
         "      this.name = builder.name;",
         "      this.age = builder.age;",
-        "      this._unsetProperties = builder._unsetProperties.clone();",
+        "      this._unsetProperties = builder._unsetProperties;",
         "    }",
         "",
         "    @Override",
         "    public String getName() {",
-        "      if (_unsetProperties.contains(Person_Builder.Property.NAME)) {",
+        "      if ((_unsetProperties & (1 << 0)) != 0) {",
         "        throw new UnsupportedOperationException(\"name not set\");",
         "      }",
         "      return name;",
@@ -266,7 +290,7 @@ public class RequiredPropertiesSourceTest {
         "",
         "    @Override",
         "    public int getAge() {",
-        "      if (_unsetProperties.contains(Person_Builder.Property.AGE)) {",
+        "      if ((_unsetProperties & (1 << 1)) != 0) {",
         "        throw new UnsupportedOperationException(\"age not set\");",
         "      }",
         "      return age;",
@@ -274,35 +298,74 @@ public class RequiredPropertiesSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
         "      Person_Builder.Partial other = (Person_Builder.Partial) obj;",
-        "      if (name != other.name && (name == null || !name.equals(other.name))) {",
+        "      if (age != other.age) {",
         "        return false;",
         "      }",
-        "      if (age != other.age) {",
+        "      if (name != other.name && (name == null || !name.equals(other.name))) {",
         "        return false;",
         "      }",
-        "      return _unsetProperties.equals(other._unsetProperties);",
+        "      return _unsetProperties == other._unsetProperties;",
         "    }",
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name, age, _unsetProperties});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + (name == null ? 0 : name.hashCode());",
+        "      _hashCode = 31 * _hashCode + age;",
+        "      _hashCode = 31 * _hashCode + _unsetProperties;",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      String separator = \"\";",
+        "      if ((_unsetProperties & (1 << 0)) == 0) {",
+        "        result.append(\"name=\").append(name);",
+        "        separator = \", \";",
+        "      }",
+        "      if ((_unsetProperties & (1 << 1)) == 0) {",
+        "        result.append(separator);",
+        "        result.append(\"age=\").append(age);",
+        "      }",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{\"",
-        "          + COMMA_JOINER.join(",
-        "              (!_unsetProperties.contains(Person_Builder.Property.NAME) "
-            + "? \"name=\" + name : null),",
-        "              (!_unsetProperties.contains(Person_Builder.Property.AGE) "
-            + "? \"age=\" + age : null))",
-        "          + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
@@ -322,29 +385,38 @@ public class RequiredPropertiesSourceTest {
         "    return new Person.Builder().mergeFrom(value);",
         "  }",
         "",
-        "  private static final Joiner COMMA_JOINER = Joiner.on(\", \").skipNulls();",
-        "",
         "  private enum Property {",
-        "    NAME(\"name\"),",
-        "    AGE(\"age\"),",
+        "    NAME(\"name\", 0),",
+        "    AGE(\"age\", 1),",
         "    ;",
         "",
         "    private final String name;",
+        "    private final int bit;",
         "",
-        "    private Property(String name) {",
+        "    private Property(String name, int bit) {",
         "      this.name = name;",
+        "      this.bit = bit;",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
         "      return name;",
         "    }",
+        "",
+        "    private static List<Property> unset(int unsetProperties) {",
+        "      List<Property> result = new ArrayList<Property>();",
+        "      for (Property property : Property.values()) {",
+        "        if ((unsetProperties & (1 << property.bit)) != 0) {",
+        "          result.add(property);",
+        "        }",
+        "      }",
+        "      return result;",
+        "    }",
         "  }",
         "",
         "  private String name;",
         "  private int age;",
-        "  private final EnumSet<Person_Builder.Property> _unsetProperties =",
-        "      EnumSet.allOf(Person_Builder.Property.class);",
+        "  private int _unsetProperties = 0x3;",
         "",
         "  /**",
         "   * Sets the value to be returned by {@link Person#getName()}.",
@@ -354,7 +426,7 @@ public class RequiredPropertiesSourceTest {
         "   */",
         "  public Person.Builder setName(String name) {",
         "    this.name = Preconditions.checkNotNull(name);",
-        "    _unsetProperties.remove(Person_Builder.Property.NAME);",
+        "    _unsetProperties &= ~(1 << 0);",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -364,8 +436,7 @@ public class RequiredPropertiesSourceTest {
         "   * @throws IllegalStateException if the field has not been set",
         "   */",
         "  public String getName() {",
-        "    Preconditions.checkState(",
-        "        !_unsetProperties.contains(Person_Builder.Property.NAME), \"name not set\");",
+        "    Preconditions.checkState((_unsetProperties & (1 << 0)) == 0, \"name not set\");",
         "    return name;",
         "  }",
         "",
@@ -376,7 +447,7 @@ public class RequiredPropertiesSourceTest {
         "   */",
         "  public Person.Builder setAge(int age) {",
         "    this.age = age;",
-        "    _unsetProperties.remove(Person_Builder.Property.AGE);",
+        "    _unsetProperties &= ~(1 << 1);",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -386,20 +457,19 @@ public class RequiredPropertiesSourceTest {
         "   * @throws IllegalStateException if the field has not been set",
         "   */",
         "  public int getAge() {",
-        "    Preconditions.checkState(",
-        "        !_unsetProperties.contains(Person_Builder.Property.AGE), \"age not set\");",
+        "    Preconditions.checkState((_unsetProperties & (1 << 1)) == 0, \"age not set\");",
         "    return age;",
         "  }",
         "",
         "  /** Sets all property values using the given {@code Person} as a template. */",
         "  public Person.Builder mergeFrom(Person value) {",
         "    Person_Builder _defaults = new Person.Builder();",
-        "    if (_defaults._unsetProperties.contains(Person_Builder.Property.NAME)",
+        "    if ((_defaults._unsetProperties & (1 << 0)) != 0",
         "        || !Objects.equals(value.getName(), _defaults.getName())) {",
         "      setName(value.getName());",
         "    }",
-        "    if (_defaults._unsetProperties.contains(Person_Builder.Property.AGE)",
-        "        || !Objects.equals(value.getAge(), _defaults.getAge())) {",
+        "    if ((_defaults._unsetProperties & (1 << 1)) != 0 || value.getAge() != "
+            + "_defaults.getAge()) {",
         "      setAge(value.getAge());",
         "    }",
         "    return (Person.Builder) this;",
@@ -414,14 +484,14 @@ public class RequiredPropertiesSourceTest {
         "    // Upcast to access private fields; otherwise, oddly, we get an access violation.",
         "    Person_Builder base = (Person_Builder) template;",
         "    Person_Builder _defaults = new Person.Builder();",
-        "    if (!base._unsetProperties.contains(Person_Builder.Property.NAME)",
-        "        && (_defaults._unsetProperties.contains(Person_Builder.Property.NAME)",
+        "    if ((base._unsetProperties & (1 << 0)) == 0",
+        "        && ((_defaults._unsetProperties & (1 << 0)) != 0",
         "            || !Objects.equals(template.getName(), _defaults.getName()))) {",
         "      setName(template.getName());",
         "    }",
-        "    if (!base._unsetProperties.contains(Person_Builder.Property.AGE)",
-        "        && (_defaults._unsetProperties.contains(Person_Builder.Property.AGE)",
-        "            || !Objects.equals(template.getAge(), _defaults.getAge()))) {",
+        "    if ((base._unsetProperties & (1 << 1)) == 0",
+        "        && ((_defaults._unsetProperties & (1 << 1)) != 0",
+        "            || template.getAge() != _defaults.getAge())) {",
         "      setAge(template.getAge());",
         "    }",
         "    return (Person.Builder) this;",
@@ -432,8 +502,7 @@ public class RequiredPropertiesSourceTest {
         "    Person_Builder _defaults = new Person.Builder();",
         "    name = _defaults.name;",
         "    age = _defaults.age;",
-        "    _unsetProperties.clear();",
-        "    _unsetProperties.addAll(_defaults._unsetProperties);",
+        "    _unsetProperties = _defaults._unsetProperties;",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -443,8 +512,10 @@ public class RequiredPropertiesSourceTest {
         "   * @throws IllegalStateException if any field has not been set",
         "   */",
         "  public Person build() {",
-        "    Preconditions.checkState(_unsetProperties.isEmpty(),"
-            + " \"Not set: %s\", _unsetProperties);",
+        "    if (_unsetProperties != 0) {",
+        "      throw new IllegalStateException(",
+        "          \"Not set: \" + Person_Builder.Property.unset(_unsetProperties));",
+        "    }",
         "    return new Person_Builder.Value(this);",
         "  }",
         "",
@@ -488,38 +559,54 @@ public class RequiredPropertiesSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
         "      Person_Builder.Value other = (Person_Builder.Value) obj;",
-        "      return Objects.equals(name, other.name) && Objects.equals(age, other.age);",
+        "      return age == other.age && Objects.equals(name, other.name);",
         "    }",
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name, age);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + age;",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      String separator = \"\";",
+        "      result.append(\"name=\").append(name);",
+        "      separator = \", \";",
+        "      result.append(separator);",
+        "      result.append(\"age=\").append(age);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{\" + \"name=\" + name + \", \" + \"age=\" + age + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
         "  private static final class Partial extends Person {",
         "    private final String name;",
         "    private final int age;",
-        "    private final EnumSet<Person_Builder.Property> _unsetProperties;",
+        "    private final int _unsetProperties;",
         "",
         "    Partial(Person_Builder builder) {",
         "      this.name = builder.name;",
         "      this.age = builder.age;",
-        "      this._unsetProperties = builder._unsetProperties.clone();",
+        "      this._unsetProperties = builder._unsetProperties;",
         "    }",
         "",
         "    @Override",
         "    public String getName() {",
-        "      if (_unsetProperties.contains(Person_Builder.Property.NAME)) {",
+        "      if ((_unsetProperties & (1 << 0)) != 0) {",
         "        throw new UnsupportedOperationException(\"name not set\");",
         "      }",
         "      return name;",
@@ -527,7 +614,7 @@ public class RequiredPropertiesSourceTest {
         "",
         "    @Override",
         "    public int getAge() {",
-        "      if (_unsetProperties.contains(Person_Builder.Property.AGE)) {",
+        "      if ((_unsetProperties & (1 << 1)) != 0) {",
         "        throw new UnsupportedOperationException(\"age not set\");",
         "      }",
         "      return age;",
@@ -535,31 +622,70 @@ public class RequiredPropertiesSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
         "      Person_Builder.Partial other = (Person_Builder.Partial) obj;",
-        "      return Objects.equals(name, other.name)",
-        "          && Objects.equals(age, other.age)",
-        "          && Objects.equals(_unsetProperties, other._unsetProperties);",
+        "      return age == other.age",
+        "          && Objects.equals(name, other.name)",
+        "          && _unsetProperties == other._unsetProperties;",
         "    }",
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name, age, _unsetProperties);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + Objects.hashCode(name);",
+        "      _hashCode = 31 * _hashCode + age;",
+        "      _hashCode = 31 * _hashCode + _unsetProperties;",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      String separator = \"\";",
+        "      if ((_unsetProperties & (1 << 0)) == 0) {",
+        "        result.append(\"name=\").append(name);",
+        "        separator = \", \";",
+        "      }",
+        "      if ((_unsetProperties & (1 << 1)) == 0) {",
+        "        result.append(separator);",
+        "        result.append(\"age=\").append(age);",
+        "      }",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{\"",
-        "          + COMMA_JOINER.join(",
-        "              (!_unsetProperties.contains(Person_Builder.Property.NAME) "
-            + "? \"name=\" + name : null),",
-        "              (!_unsetProperties.contains(Person_Builder.Property.AGE) "
-            + "? \"age=\" + age : null))",
-        "          + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
@@ -579,26 +705,37 @@ public class RequiredPropertiesSourceTest {
         "  }",
         "",
         "  private enum Property {",
-        "    NAME(\"name\"),",
-        "    AGE(\"age\"),",
+        "    NAME(\"name\", 0),",
+        "    AGE(\"age\", 1),",
         "    ;",
         "",
         "    private final String name;",
+        "    private final int bit;",
         "",
-        "    private Property(String name) {",
+        "    private Property(String name, int bit) {",
         "      this.name = name;",
+        "      this.bit = bit;",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
         "      return name;",
         "    }",
+        "",
+        "    private static List<Property> unset(int unsetProperties) {",
+        "      List<Property> result = new ArrayList<Property>();",
+        "      for (Property property : Property.values()) {",
+        "        if ((unsetProperties & (1 << property.bit)) != 0) {",
+        "          result.add(property);",
+        "        }",
+        "      }",
+        "      return result;",
+        "    }",
         "  }",
         "",
         "  private String name;",
         "  private int age;",
-        "  private final EnumSet<Person_Builder.Property> _unsetProperties =",
-        "      EnumSet.allOf(Person_Builder.Property.class);",
+        "  private int _unsetProperties = 0x3;",
         "",
         "  /**",
         "   * Sets the value to be returned by {@link Person#getName()}.",
@@ -611,7 +748,7 @@ public class RequiredPropertiesSourceTest {
         "      throw new NullPointerException();",
         "    }",
         "    this.name = name;",
-        "    _unsetProperties.remove(Person_Builder.Property.NAME);",
+        "    _unsetProperties &= ~(1 << 0);",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -621,7 +758,7 @@ public class RequiredPropertiesSourceTest {
         "   * @throws IllegalStateException if the field has not been set",
         "   */",
         "  public String getName() {",
-        "    if (_unsetProperties.contains(Person_Builder.Property.NAME)) {",
+        "    if (!((_unsetProperties & (1 << 0)) == 0)) {",
         "      throw new IllegalStateException(\"name not set\");",
         "    }",
         "    return name;",
@@ -634,7 +771,7 @@ public class RequiredPropertiesSourceTest {
         "   */",
         "  public Person.Builder setAge(int age) {",
         "    this.age = age;",
-        "    _unsetProperties.remove(Person_Builder.Property.AGE);",
+        "    _unsetProperties &= ~(1 << 1);",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -644,7 +781,7 @@ public class RequiredPropertiesSourceTest {
         "   * @throws IllegalStateException if the field has not been set",
         "   */",
         "  public int getAge() {",
-        "    if (_unsetProperties.contains(Person_Builder.Property.AGE)) {",
+        "    if (!((_unsetProperties & (1 << 1)) == 0)) {",
         "      throw new IllegalStateException(\"age not set\");",
         "    }",
         "    return age;",
@@ -653,12 +790,12 @@ public class RequiredPropertiesSourceTest {
         "  /** Sets all property values using the given {@code Person} as a template. */",
         "  public Person.Builder mergeFrom(Person value) {",
         "    Person_Builder _defaults = new Person.Builder();",
-        "    if (_defaults._unsetProperties.contains(Person_Builder.Property.NAME)",
+        "    if ((_defaults._unsetProperties & (1 << 0)) != 0",
         "        || !value.getName().equals(_defaults.getName())) {",
         "      setName(value.getName());",
         "    }",
-        "    if (_defaults._unsetProperties.contains(Person_Builder.Property.AGE)",
-        "        || value.getAge() != _defaults.getAge()) {",
+        "    if ((_defaults._unsetProperties & (1 << 1)) != 0 || value.getAge() != "
+            + "_defaults.getAge()) {",
         "      setAge(value.getAge());",
         "    }",
         "    return (Person.Builder) this;",
@@ -673,13 +810,13 @@ public class RequiredPropertiesSourceTest {
         "    // Upcast to access private fields; otherwise, oddly, we get an access violation.",
         "    Person_Builder base = (Person_Builder) template;",
         "    Person_Builder _defaults = new Person.Builder();",
-        "    if (!base._unsetProperties.contains(Person_Builder.Property.NAME)",
-        "        && (_defaults._unsetProperties.contains(Person_Builder.Property.NAME)",
+        "    if ((base._unsetProperties & (1 << 0)) == 0",
+        "        && ((_defaults._unsetProperties & (1 << 0)) != 0",
         "            || !template.getName().equals(_defaults.getName()))) {",
         "      setName(template.getName());",
         "    }",
-        "    if (!base._unsetProperties.contains(Person_Builder.Property.AGE)",
-        "        && (_defaults._unsetProperties.contains(Person_Builder.Property.AGE)",
+        "    if ((base._unsetProperties & (1 << 1)) == 0",
+        "        && ((_defaults._unsetProperties & (1 << 1)) != 0",
         "            || template.getAge() != _defaults.getAge())) {",
         "      setAge(template.getAge());",
         "    }",
@@ -691,8 +828,7 @@ public class RequiredPropertiesSourceTest {
         "    Person_Builder _defaults = new Person.Builder();",
         "    name = _defaults.name;",
         "    age = _defaults.age;",
-        "    _unsetProperties.clear();",
-        "    _unsetProperties.addAll(_defaults._unsetProperties);",
+        "    _unsetProperties = _defaults._unsetProperties;",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -702,8 +838,9 @@ public class RequiredPropertiesSourceTest {
         "   * @throws IllegalStateException if any field has not been set",
         "   */",
         "  public Person build() {",
-        "    if (!_unsetProperties.isEmpty()) {",
-        "      throw new IllegalStateException(\"Not set: \" + _unsetProperties);",
+        "    if (_unsetProperties != 0) {",
+        "      throw new IllegalStateException(",
+        "          \"Not set: \" + Person_Builder.Property.unset(_unsetProperties));",
         "    }",
         "    return new Person_Builder.Value(this);",
         "  }",
@@ -747,14 +884,17 @@ public class RequiredPropertiesSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
         "      Person_Builder.Value other = (Person_Builder.Value) obj;",
-        "      if (!name.equals(other.name)) {",
+        "      if (age != other.age) {",
         "        return false;",
         "      }",
-        "      if (age != other.age) {",
+        "      if (!name.equals(other.name)) {",
         "        return false;",
         "      }",
         "      return true;",
@@ -762,29 +902,42 @@ public class RequiredPropertiesSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name, age});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + age;",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      String separator = \"\";",
+        "      result.append(\"name=\").append(name);",
+        "      separator = \", \";",
+        "      result.append(separator);",
+        "      result.append(\"age=\").append(age);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{\" + \"name=\" + name + \", \" + \"age=\" + age + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
         "  private static final class Partial extends Person {",
         "    private final String name;",
         "    private final int age;",
-        "    private final EnumSet<Person_Builder.Property> _unsetProperties;",
+        "    private final int _unsetProperties;",
         "",
         "    Partial(Person_Builder builder) {",
         "      this.name = builder.name;",
         "      this.age = builder.age;",
-        "      this._unsetProperties = builder._unsetProperties.clone();",
+        "      this._unsetProperties = builder._unsetProperties;",
         "    }",
         "",
         "    @Override",
         "    public String getName() {",
-        "      if (_unsetProperties.contains(Person_Builder.Property.NAME)) {",
+        "      if ((_unsetProperties & (1 << 0)) != 0) {",
         "        throw new UnsupportedOperationException(\"name not set\");",
         "      }",
         "      return name;",
@@ -792,7 +945,7 @@ public class RequiredPropertiesSourceTest {
         "",
         "    @Override",
         "    public int getAge() {",
-        "      if (_unsetProperties.contains(Person_Builder.Property.AGE)) {",
+        "      if ((_unsetProperties & (1 << 1)) != 0) {",
         "        throw new UnsupportedOperationException(\"age not set\");",
         "      }",
         "      return age;",
@@ -800,40 +953,74 @@ public class RequiredPropertiesSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
         "      Person_Builder.Partial other = (Person_Builder.Partial) obj;",
-        "      if (name != other.name && (name == null || !name.equals(other.name))) {",
+        "      if (age != other.age) {",
         "        return false;",
         "      }",
-        "      if (age != other.age) {",
+        "      if (name != other.name && (name == null || !name.equals(other.name))) {",
         "        return false;",
         "      }",
-        "      return _unsetProperties.equals(other._unsetProperties);",
+        "      return _unsetProperties == other._unsetProperties;",
         "    }",
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name, age, _unsetProperties});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + (name == null ? 0 : name.hashCode());",
+        "      _hashCode = 31 * _hashCode + age;",
+        "      _hashCode = 31 * _hashCode + _unsetProperties;",
+        "      return _hashCode;",
         "    }",
         "",
-        "    @Override",
-        "    public String toString() {",
-        "      StringBuilder result = new StringBuilder(\"partial Person{\");",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
         "      String separator = \"\";",
-        "      if (!_unsetProperties.contains(Person_Builder.Property.NAME)) {",
+        "      if ((_unsetProperties & (1 << 0)) == 0) {",
         "        result.append(\"name=\").append(name);",
         "        separator = \", \";",
         "      }",
-        "      if (!_unsetProperties.contains(Person_Builder.Property.AGE)) {",
+        "      if ((_unsetProperties & (1 << 1)) == 0) {",
         "        result.append(separator);",
         "        result.append(\"age=\").append(age);",
         "      }",
-        "      result.append(\"}\");",
-        "      return result.toString();",
+        "      return result.append(\"}\");",
+        "    }",
+        "",
+        "    @Override",
+        "    public String toString() {",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
@@ -853,26 +1040,37 @@ public class RequiredPropertiesSourceTest {
         "  }",
         "",
         "  private enum Property {",
-        "    NAME(\"name\"),",
-        "    AGE(\"age\"),",
+        "    NAME(\"name\", 0),",
+        "    AGE(\"age\", 1),",
         "    ;",
         "",
         "    private final String name;",
+        "    private final int bit;",
         "",
-        "    private Property(String name) {",
+        "    private Property(String name, int bit) {",
         "      this.name = name;",
+        "      this.bit = bit;",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
         "      return name;",
         "    }",
+        "",
+        "    private static List<Property> unset(int unsetProperties) {",
+        "      List<Property> result = new ArrayList<Property>();",
+        "      for (Property property : Property.values()) {",
+        "        if ((unsetProperties & (1 << property.bit)) != 0) {",
+        "          result.add(property);",
+        "        }",
+        "      }",
+        "      return result;",
+        "    }",
         "  }",
         "",
         "  private String name;",
         "  private int age;",
-        "  private final EnumSet<Person_Builder.Property> _unsetProperties =",
-        "      EnumSet.allOf(Person_Builder.Property.class);",
+        "  private int _unsetProperties = 0x3;",
         "",
         "  /**",
         "   * Sets the value to be returned by {@link Person#getName()}.",
@@ -882,7 +1080,7 @@ public class RequiredPropertiesSourceTest {
         "   */",
         "  public Person.Builder setName(String name) {",
         "    this.name = Objects.requireNonNull(name);",
-        "    _unsetProperties.remove(Person_Builder.Property.NAME);",
+        "    _unsetProperties &= ~(1 << 0);",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -892,7 +1090,7 @@ public class RequiredPropertiesSourceTest {
         "   * @throws IllegalStateException if the field has not been set",
         "   */",
         "  public String getName() {",
-        "    if (_unsetProperties.contains(Person_Builder.Property.NAME)) {",
+        "    if (!((_unsetProperties & (1 << 0)) == 0)) {",
         "      throw new IllegalStateException(\"name not set\");",
         "    }",
         "    return name;",
@@ -905,7 +1103,7 @@ public class RequiredPropertiesSourceTest {
         "   */",
         "  public Person.Builder setAge(int age) {",
         "    this.age = age;",
-        "    _unsetProperties.remove(Person_Builder.Property.AGE);",
+        "    _unsetProperties &= ~(1 << 1);",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -915,7 +1113,7 @@ public class RequiredPropertiesSourceTest {
         "   * @throws IllegalStateException if the field has not been set",
         "   */",
         "  public int getAge() {",
-        "    if (_unsetProperties.contains(Person_Builder.Property.AGE)) {",
+        "    if (!((_unsetProperties & (1 << 1)) == 0)) {",
         "      throw new IllegalStateException(\"age not set\");",
         "    }",
         "    return age;",
@@ -924,12 +1122,12 @@ public class RequiredPropertiesSourceTest {
         "  /** Sets all property values using the given {@code Person} as a template. */",
         "  public Person.Builder mergeFrom(Person value) {",
         "    Person_Builder _defaults = new Person.Builder();",
-        "    if (_defaults._unsetProperties.contains(Person_Builder.Property.NAME)",
+        "    if ((_defaults._unsetProperties & (1 << 0)) != 0",
         "        || !Objects.equals(value.getName(), _defaults.getName())) {",
         "      setName(value.getName());",
         "    }",
-        "    if (_defaults._unsetProperties.contains(Person_Builder.Property.AGE)",
-        "        || !Objects.equals(value.getAge(), _defaults.getAge())) {",
+        "    if ((_defaults._unsetProperties & (1 << 1)) != 0 || value.getAge() != "
+            + "_defaults.getAge()) {",
         "      setAge(value.getAge());",
         "    }",
         "    return (Person.Builder) this;",
@@ -944,14 +1142,14 @@ public class RequiredPropertiesSourceTest {
         "    // Upcast to access private fields; otherwise, oddly, we get an access violation.",
         "    Person_Builder base = (Person_Builder) template;",
         "    Person_Builder _defaults = new Person.Builder();",
-        "    if (!base._unsetProperties.contains(Person_Builder.Property.NAME)",
-        "        && (_defaults._unsetProperties.contains(Person_Builder.Property.NAME)",
+        "    if ((base._unsetProperties & (1 << 0)) == 0",
+        "        && ((_defaults._unsetProperties & (1 << 0)) != 0",
         "            || !Objects.equals(template.getName(), _defaults.getName()))) {",
         "      setName(template.getName());",
         "    }",
-        "    if (!base._unsetProperties.contains(Person_Builder.Property.AGE)",
-        "        && (_defaults._unsetProperties.contains(Person_Builder.Property.AGE)",
-        "            || !Objects.equals(template.getAge(), _defaults.getAge()))) {",
+        "    if ((base._unsetProperties & (1 << 1)) == 0",
+        "        && ((_defaults._unsetProperties & (1 << 1)) != 0",
+        "            || template.getAge() != _defaults.getAge())) {",
         "      setAge(template.getAge());",
         "    }",
         "    return (Person.Builder) this;",
@@ -962,8 +1160,7 @@ public class RequiredPropertiesSourceTest {
         "    Person_Builder _defaults = new Person.Builder();",
         "    name = _defaults.name;",
         "    age = _defaults.age;",
-        "    _unsetProperties.clear();",
-        "    _unsetProperties.addAll(_defaults._unsetProperties);",
+        "    _unsetProperties = _defaults._unsetProperties;",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -973,8 +1170,9 @@ public class RequiredPropertiesSourceTest {
         "   * @throws IllegalStateException if any field has not been set",
         "   */",
         "  public Person build() {",
-        "    if (!_unsetProperties.isEmpty()) {",
-        "      throw new IllegalStateException(\"Not set: \" + _unsetProperties);",
+        "    if (_unsetProperties != 0) {",
+        "      throw new IllegalStateException(",
+        "          \"Not set: \" + Person_Builder.Property.unset(_unsetProperties));",
         "    }",
         "    return new Person_Builder.Value(this);",
         "  }",
@@ -1018,38 +1216,54 @@ public class RequiredPropertiesSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
         "      Person_Builder.Value other = (Person_Builder.Value) obj;",
-        "      return Objects.equals(name, other.name) && Objects.equals(age, other.age);",
+        "      return age == other.age && Objects.equals(name, other.name);",
         "    }",
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name, age);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + age;",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      String separator = \"\";",
+        "      result.append(\"name=\").append(name);",
+        "      separator = \", \";",
+        "      result.append(separator);",
+        "      result.append(\"age=\").append(age);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{\" + \"name=\" + name + \", \" + \"age=\" + age + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
         "  private static final class Partial extends Person {",
         "    private final String name;",
         "    private final int age;",
-        "    private final EnumSet<Person_Builder.Property> _unsetProperties;",
+        "    private final int _unsetProperties;",
         "",
         "    Partial(Person_Builder builder) {",
         "      this.name = builder.name;",
         "      this.age = builder.age;",
-        "      this._unsetProperties = builder._unsetProperties.clone();",
+        "      this._unsetProperties = builder._unsetProperties;",
         "    }",
         "",
         "    @Override",
         "    public String getName() {",
-        "      if (_unsetProperties.contains(Person_Builder.Property.NAME)) {",
+        "      if ((_unsetProperties & (1 << 0)) != 0) {",
         "        throw new UnsupportedOperationException(\"name not set\");",
         "      }",
         "      return name;",
@@ -1057,7 +1271,7 @@ public class RequiredPropertiesSourceTest {
         "",
         "    @Override",
         "    public int getAge() {",
-        "      if (_unsetProperties.contains(Person_Builder.Property.AGE)) {",
+        "      if ((_unsetProperties & (1 << 1)) != 0) {",
         "        throw new UnsupportedOperationException(\"age not set\");",
         "      }",
         "      return age;",
@@ -1065,36 +1279,70 @@ public class RequiredPropertiesSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
         "      Person_Builder.Partial other = (Person_Builder.Partial) obj;",
-        "      return Objects.equals(name, other.name)",
-        "          && Objects.equals(age, other.age)",
-        "          && Objects.equals(_unsetProperties, other._unsetProperties);",
+        "      return age == other.age",
+        "          && Objects.equals(name, other.name)",
+        "          && _unsetProperties == other._unsetProperties;",
         "    }",
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name, age, _unsetProperties);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + Objects.hashCode(name);",
+        "      _hashCode = 31 * _hashCode + age;",
+        "      _hashCode = 31 * _hashCode + _unsetProperties;",
+        "      return _hashCode;",
         "    }",
         "",
-        "    @Override",
-        "    public String toString() {",
-        "      StringBuilder result = new StringBuilder(\"partial Person{\");",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
         "      String separator = \"\";",
-        "      if (!_unsetProperties.contains(Person_Builder.Property.NAME)) {",
+        "      if ((_unsetProperties & (1 << 0)) == 0) {",
         "        result.append(\"name=\").append(name);",
         "        separator = \", \";",
         "      }",
-        "      if (!_unsetProperties.contains(Person_Builder.Property.AGE)) {",
+        "      if ((_unsetProperties & (1 << 1)) == 0) {",
         "        result.append(separator);",
         "        result.append(\"age=\").append(age);",
         "      }",
-        "      result.append(\"}\");",
-        "      return result.toString();",
+        "      return result.append(\"}\");",
+        "    }",
+        "",
+        "    @Override",
+        "    public String toString() {",
+        "      return appendTo(new StringBuilder()).toString();",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
@@ -1113,29 +1361,38 @@ public class RequiredPropertiesSourceTest {
         "    return new Person.Builder().mergeFrom(value);",
         "  }",
         "",
-        "  private static final Joiner COMMA_JOINER = Joiner.on(\", \").skipNulls();",
-        "",
         "  private enum Property {",
-        "    NAME(\"name\"),",
-        "    AGE(\"age\"),",
+        "    NAME(\"name\", 0),",
+        "    AGE(\"age\", 1),",
         "    ;",
         "",
         "    private final String name;",
+        "    private final int bit;",
         "",
-        "    private Property(String name) {",
+        "    private Property(String name, int bit) {",
         "      this.name = name;",
+        "      this.bit = bit;",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
         "      return name;",
         "    }",
+        "",
+        "    private static List<Property> unset(int unsetProperties) {",
+        "      List<Property> result = new ArrayList<Property>();",
+        "      for (Property property : Property.values()) {",
+        "        if ((unsetProperties & (1 << property.bit)) != 0) {",
+        "          result.add(property);",
+        "        }",
+        "      }",
+        "      return result;",
+        "    }",
         "  }",
         "",
         "  private String name;",
         "  private int age;",
-        "  private final EnumSet<Person_Builder.Property> _unsetProperties =",
-        "      EnumSet.allOf(Person_Builder.Property.class);",
+        "  private int _unsetProperties = 0x3;",
         "",
         "  /**",
         "   * Sets the value to be returned by {@link Person#getName()}.",
@@ -1145,7 +1402,7 @@ public class RequiredPropertiesSourceTest {
         "   */",
         "  public Person.Builder setName(String name) {",
         "    this.name = Preconditions.checkNotNull(name);",
-        "    _unsetProperties.remove(Person_Builder.Property.NAME);",
+        "    _unsetProperties &= ~(1 << 0);",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -1169,8 +1426,7 @@ public class RequiredPropertiesSourceTest {
         "   * @throws IllegalStateException if the field has not been set",
         "   */",
         "  public String getName() {",
-        "    Preconditions.checkState(",
-        "        !_unsetProperties.contains(Person_Builder.Property.NAME), \"name not set\");",
+        "    Preconditions.checkState((_unsetProperties & (1 << 0)) == 0, \"name not set\");",
         "    return name;",
         "  }",
         "",
@@ -1181,7 +1437,7 @@ public class RequiredPropertiesSourceTest {
         "   */",
         "  public Person.Builder setAge(int age) {",
         "    this.age = age;",
-        "    _unsetProperties.remove(Person_Builder.Property.AGE);",
+        "    _unsetProperties &= ~(1 << 1);",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -1205,20 +1461,19 @@ public class RequiredPropertiesSourceTest {
         "   * @throws IllegalStateException if the field has not been set",
         "   */",
         "  public int getAge() {",
-        "    Preconditions.checkState(",
-        "        !_unsetProperties.contains(Person_Builder.Property.AGE), \"age not set\");",
+        "    Preconditions.checkState((_unsetProperties & (1 << 1)) == 0, \"age not set\");",
         "    return age;",
         "  }",
         "",
         "  /** Sets all property values using the given {@code Person} as a template. */",
         "  public Person.Builder mergeFrom(Person value) {",
         "    Person_Builder _defaults = new Person.Builder();",
-        "    if (_defaults._unsetProperties.contains(Person_Builder.Property.NAME)",
+        "    if ((_defaults._unsetProperties & (1 << 0)) != 0",
         "        || !Objects.equals(value.getName(), _defaults.getName())) {",
         "      setName(value.getName());",
         "    }",
-        "    if (_defaults._unsetProperties.contains(Person_Builder.Property.AGE)",
-        "        || !Objects.equals(value.getAge(), _defaults.getAge())) {",
+        "    if ((_defaults._unsetProperties & (1 << 1)) != 0 || value.getAge() != "
+            + "_defaults.getAge()) {",
         "      setAge(value.getAge());",
         "    }",
         "    return (Person.Builder) this;",
@@ -1233,14 +1488,14 @@ public class RequiredPropertiesSourceTest {
         "    // Upcast to access private fields; otherwise, oddly, we get an access violation.",
         "    Person_Builder base = (Person_Builder) template;",
         "    Person_Builder _defaults = new Person.Builder();",
-        "    if (!base._unsetProperties.contains(Person_Builder.Property.NAME)",
-        "        && (_defaults._unsetProperties.contains(Person_Builder.Property.NAME)",
+        "    if ((base._unsetProperties & (1 << 0)) == 0",
+        "        && ((_defaults._unsetProperties & (1 << 0)) != 0",
         "            || !Objects.equals(template.getName(), _defaults.getName()))) {",
         "      setName(template.getName());",
         "    }",
-        "    if (!base._unsetProperties.contains(Person_Builder.Property.AGE)",
-        "        && (_defaults._unsetProperties.contains(Person_Builder.Property.AGE)",
-        "            || !Objects.equals(template.getAge(), _defaults.getAge()))) {",
+        "    if ((base._unsetProperties & (1 << 1)) == 0",
+        "        && ((_defaults._unsetProperties & (1 << 1)) != 0",
+        "            || template.getAge() != _defaults.getAge())) {",
         "      setAge(template.getAge());",
         "    }",
         "    return (Person.Builder) this;",
@@ -1251,8 +1506,7 @@ public class RequiredPropertiesSourceTest {
         "    Person_Builder _defaults = new Person.Builder();",
         "    name = _defaults.name;",
         "    age = _defaults.age;",
-        "    _unsetProperties.clear();",
-        "    _unsetProperties.addAll(_defaults._unsetProperties);",
+        "    _unsetProperties = _defaults._unsetProperties;",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -1262,8 +1516,10 @@ public class RequiredPropertiesSourceTest {
         "   * @throws IllegalStateException if any field has not been set",
         "   */",
         "  public Person build() {",
-        "    Preconditions.checkState(_unsetProperties.isEmpty(),"
-            + " \"Not set: %s\", _unsetProperties);",
+        "    if (_unsetProperties != 0) {",
+        "      throw new IllegalStateException(",
+        "          \"Not set: \" + Person_Builder.Property.unset(_unsetProperties));",
+        "    }",
         "    return new Person_Builder.Value(this);",
         "  }",
         "",
@@ -1307,38 +1563,54 @@ public class RequiredPropertiesSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
         "      Person_Builder.Value other = (Person_Builder.Value) obj;",
-        "      return Objects.equals(name, other.name) && Objects.equals(age, other.age);",
+        "      return age == other.age && Objects.equals(name, other.name);",
         "    }",
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name, age);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + Integer.hashCode(age);",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      String separator = \"\";",
+        "      result.append(\"name=\").append(name);",
+        "      separator = \", \";",
+        "      result.append(separator);",
+        "      result.append(\"age=\").append(age);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{\" + \"name=\" + name + \", \" + \"age=\" + age + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
         "  private static final class Partial extends Person {",
         "    private final String name;",
         "    private final int age;",
-        "    private final EnumSet<Person_Builder.Property> _unsetProperties;",
+        "    private final int _unsetProperties;",
         "",
         "    Partial(Person_Builder builder) {",
         "      this.name = builder.name;",
         "      this.age = builder.age;",
-        "      this._unsetProperties = builder._unsetProperties.clone();",
+        "      this._unsetProperties = builder._unsetProperties;",
         "    }",
         "",
         "    @Override",
         "    public String getName() {",
-        "      if (_unsetProperties.contains(Person_Builder.Property.NAME)) {",
+        "      if ((_unsetProperties & (1 << 0)) != 0) {",
         "        throw new UnsupportedOperationException(\"name not set\");",
         "      }",
         "      return name;",
@@ -1346,7 +1618,7 @@ public class RequiredPropertiesSourceTest {
         "",
         "    @Override",
         "    public int getAge() {",
-        "      if (_unsetProperties.contains(Person_Builder.Property.AGE)) {",
+        "      if ((_unsetProperties & (1 << 1)) != 0) {",
         "        throw new UnsupportedOperationException(\"age not set\");",
         "      }",
         "      return age;",
@@ -1354,31 +1626,70 @@ public class RequiredPropertiesSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
         "      Person_Builder.Partial other = (Person_Builder.Partial) obj;",
-        "      return Objects.equals(name, other.name)",
-        "          && Objects.equals(age, other.age)",
-        "          && Objects.equals(_unsetProperties, other._unsetProperties);",
+        "      return age == other.age",
+        "          && Objects.equals(name, other.name)",
+        "          && _unsetProperties == other._unsetProperties;",
         "    }",
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name, age, _unsetProperties);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + Objects.hashCode(name);",
+        "      _hashCode = 31 * _hashCode + Integer.hashCode(age);",
+        "      _hashCode = 31 * _hashCode + _unsetProperties;",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      String separator = \"\";",
+        "      if ((_unsetProperties & (1 << 0)) == 0) {",
+        "        result.append(\"name=\").append(name);",
+        "        separator = \", \";",
+        "      }",
+        "      if ((_unsetProperties & (1 << 1)) == 0) {",
+        "        result.append(separator);",
+        "        result.append(\"age=\").append(age);",
+        "      }",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{\"",
-        "          + COMMA_JOINER.join(",
-        "              (!_unsetProperties.contains(Person_Builder.Property.NAME) "
-            + "? \"name=\" + name : null),",
-        "              (!_unsetProperties.contains(Person_Builder.Property.AGE) "
-            + "? \"age=\" + age : null))",
-        "          + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
@@ -1397,29 +1708,38 @@ public class RequiredPropertiesSourceTest {
         "    return new Person.Builder().mergeFrom(value);",
         "  }",
         "",
-        "  private static final Joiner COMMA_JOINER = Joiner.on(\", \").skipNulls();",
-        "",
         "  private enum Property {",
-        "    NAME(\"name\"),",
-        "    AGE(\"age\"),",
+        "    NAME(\"name\", 0),",
+        "    AGE(\"age\", 1),",
         "    ;",
         "",
         "    private final String name;",
+        "    private final int bit;",
         "",
-        "    private Property(String name) {",
+        "    private Property(String name, int bit) {",
         "      this.name = name;",
+        "      this.bit = bit;",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
         "      return name;",
         "    }",
+        "",
+        "    private static List<Property> unset(int unsetProperties) {",
+        "      List<Property> result = new ArrayList<Property>();",
+        "      for (Property property : Property.values()) {",
+        "        if ((unsetProperties & (1 << property.bit)) != 0) {",
+        "          result.add(property);",
+        "        }",
+        "      }",
+        "      return result;",
+        "    }",
         "  }",
         "",
         "  private String name;",
         "  private int age;",
-        "  private final EnumSet<Person_Builder.Property> _unsetProperties =",
-        "      EnumSet.allOf(Person_Builder.Property.class);",
+        "  private int _unsetProperties = 0x3;",
         "",
         "  /**",
         "   * Sets the value to be returned by {@link Person#name()}.",
@@ -1429,7 +1749,7 @@ public class RequiredPropertiesSourceTest {
         "   */",
         "  public Person.Builder name(String name) {",
         "    this.name = Preconditions.checkNotNull(name);",
-        "    _unsetProperties.remove(Person_Builder.Property.NAME);",
+        "    _unsetProperties &= ~(1 << 0);",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -1439,8 +1759,7 @@ public class RequiredPropertiesSourceTest {
         "   * @throws IllegalStateException if the field has not been set",
         "   */",
         "  public String name() {",
-        "    Preconditions.checkState(",
-        "        !_unsetProperties.contains(Person_Builder.Property.NAME), \"name not set\");",
+        "    Preconditions.checkState((_unsetProperties & (1 << 0)) == 0, \"name not set\");",
         "    return name;",
         "  }",
         "",
@@ -1451,7 +1770,7 @@ public class RequiredPropertiesSourceTest {
         "   */",
         "  public Person.Builder age(int age) {",
         "    this.age = age;",
-        "    _unsetProperties.remove(Person_Builder.Property.AGE);",
+        "    _unsetProperties &= ~(1 << 1);",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -1461,20 +1780,18 @@ public class RequiredPropertiesSourceTest {
         "   * @throws IllegalStateException if the field has not been set",
         "   */",
         "  public int age() {",
-        "    Preconditions.checkState(",
-        "        !_unsetProperties.contains(Person_Builder.Property.AGE), \"age not set\");",
+        "    Preconditions.checkState((_unsetProperties & (1 << 1)) == 0, \"age not set\");",
         "    return age;",
         "  }",
         "",
         "  /** Sets all property values using the given {@code Person} as a template. */",
         "  public Person.Builder mergeFrom(Person value) {",
         "    Person_Builder _defaults = new Person.Builder();",
-        "    if (_defaults._unsetProperties.contains(Person_Builder.Property.NAME)",
-        "        || !value.name().equals(_defaults.name())) {",
+        "    if ((_defaults._unsetProperties & (1 << 0)) != 0 || "
+            + "!value.name().equals(_defaults.name())) {",
         "      name(value.name());",
         "    }",
-        "    if (_defaults._unsetProperties.contains(Person_Builder.Property.AGE)",
-        "        || value.age() != _defaults.age()) {",
+        "    if ((_defaults._unsetProperties & (1 << 1)) != 0 || value.age() != _defaults.age()) {",
         "      age(value.age());",
         "    }",
         "    return (Person.Builder) this;",
@@ -1489,14 +1806,14 @@ public class RequiredPropertiesSourceTest {
         "    // Upcast to access private fields; otherwise, oddly, we get an access violation.",
         "    Person_Builder base = (Person_Builder) template;",
         "    Person_Builder _defaults = new Person.Builder();",
-        "    if (!base._unsetProperties.contains(Person_Builder.Property.NAME)",
-        "        && (_defaults._unsetProperties.contains(Person_Builder.Property.NAME)",
+        "    if ((base._unsetProperties & (1 << 0)) == 0",
+        "        && ((_defaults._unsetProperties & (1 << 0)) != 0",
         "            || !template.name().equals(_defaults.name()))) {",
         "      name(template.name());",
         "    }",
-        "    if (!base._unsetProperties.contains(Person_Builder.Property.AGE)",
-        "        && (_defaults._unsetProperties.contains(Person_Builder.Property.AGE)",
-        "            || template.age() != _defaults.age())) {",
+        "    if ((base._unsetProperties & (1 << 1)) == 0",
+        "        && ((_defaults._unsetProperties & (1 << 1)) != 0 || template.age() != "
+            + "_defaults.age())) {",
         "      age(template.age());",
         "    }",
         "    return (Person.Builder) this;",
@@ -1507,8 +1824,7 @@ public class RequiredPropertiesSourceTest {
         "    Person_Builder _defaults = new Person.Builder();",
         "    name = _defaults.name;",
         "    age = _defaults.age;",
-        "    _unsetProperties.clear();",
-        "    _unsetProperties.addAll(_defaults._unsetProperties);",
+        "    _unsetProperties = _defaults._unsetProperties;",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -1518,8 +1834,10 @@ public class RequiredPropertiesSourceTest {
         "   * @throws IllegalStateException if any field has not been set",
         "   */",
         "  public Person build() {",
-        "    Preconditions.checkState(_unsetProperties.isEmpty(),"
-            + " \"Not set: %s\", _unsetProperties);",
+        "    if (_unsetProperties != 0) {",
+        "      throw new IllegalStateException(",
+        "          \"Not set: \" + Person_Builder.Property.unset(_unsetProperties));",
+        "    }",
         "    return new Person_Builder.Value(this);",
         "  }",
         "",
@@ -1563,14 +1881,17 @@ public class RequiredPropertiesSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
         "      Person_Builder.Value other = (Person_Builder.Value) obj;",
-        "      if (!name.equals(other.name)) {",
+        "      if (age != other.age) {",
         "        return false;",
         "      }",
-        "      if (age != other.age) {",
+        "      if (!name.equals(other.name)) {",
         "        return false;",
         "      }",
         "      return true;",
@@ -1578,29 +1899,42 @@ public class RequiredPropertiesSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name, age});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      _hashCode = 31 * _hashCode + age;",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      String separator = \"\";",
+        "      result.append(\"name=\").append(name);",
+        "      separator = \", \";",
+        "      result.append(separator);",
+        "      result.append(\"age=\").append(age);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{\" + \"name=\" + name + \", \" + \"age=\" + age + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
         "  private static final class Partial extends Person {",
         "    private final String name;",
         "    private final int age;",
-        "    private final EnumSet<Person_Builder.Property> _unsetProperties;",
+        "    private final int _unsetProperties;",
         "",
         "    Partial(Person_Builder builder) {",
         "      this.name = builder.name;",
         "      this.age = builder.age;",
-        "      this._unsetProperties = builder._unsetProperties.clone();",
+        "      this._unsetProperties = builder._unsetProperties;",
         "    }",
         "",
         "    @Override",
         "    public String name() {",
-        "      if (_unsetProperties.contains(Person_Builder.Property.NAME)) {",
+        "      if ((_unsetProperties & (1 << 0)) != 0) {",
         "        throw new UnsupportedOperationException(\"name not set\");",
         "      }",
         "      return name;",
@@ -1608,7 +1942,7 @@ public class RequiredPropertiesSourceTest {
         "",
         "    @Override",
         "    public int age() {",
-        "      if (_unsetProperties.contains(Person_Builder.Property.AGE)) {",
+        "      if ((_unsetProperties & (1 << 1)) != 0) {",
         "        throw new UnsupportedOperationException(\"age not set\");",
         "      }",
         "      return age;",
@@ -1616,35 +1950,74 @@ public class RequiredPropertiesSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
         "      Person_Builder.Partial other = (Person_Builder.Partial) obj;",
-        "      if (name != other.name && (name == null || !name.equals(other.name))) {",
+        "      if (age != other.age) {",
         "        return false;",
         "      }",
-        "      if (age != other.age) {",
+        "      if (name != other.name && (name == null || !name.equals(other.name))) {",
         "        return false;",
         "      }",
-        "      return _unsetProperties.equals(other._unsetProperties);",
+        "      return _unsetProperties == other._unsetProperties;",
         "    }",
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name, age, _unsetProperties});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + (name == null ? 0 : name.hashCode());",
+        "      _hashCode = 31 * _hashCode + age;",
+        "      _hashCode = 31 * _hashCode + _unsetProperties;",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      String separator = \"\";",
+        "      if ((_unsetProperties & (1 << 0)) == 0) {",
+        "        result.append(\"name=\").append(name);",
+        "        separator = \", \";",
+        "      }",
+        "      if ((_unsetProperties & (1 << 1)) == 0) {",
+        "        result.append(separator);",
+        "        result.append(\"age=\").append(age);",
+        "      }",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{\"",
-        "          + COMMA_JOINER.join(",
-        "              (!_unsetProperties.contains(Person_Builder.Property.NAME) "
-            + "? \"name=\" + name : null),",
-        "              (!_unsetProperties.contains(Person_Builder.Property.AGE) "
-            + "? \"age=\" + age : null))",
-        "          + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
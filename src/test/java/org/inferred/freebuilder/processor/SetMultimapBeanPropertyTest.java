@@ -850,6 +850,25 @@ public class SetMultimapBeanPropertyTest {
         .runTest();
   }
 
+  @Test
+  public void testGet_returnsLiveView_afterBuilderClear() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(MULTIMAP_PROPERTY)
+        .with(testBuilder()
+            .addLine("DataType.Builder builder = new DataType.Builder();")
+            .addLine("%s<String, String> itemsView = builder.getItems();", SetMultimap.class)
+            .addLine("assertThat(itemsView).isEmpty();")
+            .addLine("builder.putItems(\"one\", \"A\");")
+            .addLine("assertThat(itemsView).contains(\"one\", \"A\").andNothingElse();")
+            .addLine("builder.clear();")
+            .addLine("assertThat(itemsView).isEmpty();")
+            .addLine("builder.putItems(\"three\", \"C\");")
+            .addLine("assertThat(itemsView).contains(\"three\", \"C\").andNothingElse();")
+            .build())
+        .runTest();
+  }
+
   @Test
   public void testGet_returnsUnmodifiableSetMultimap() {
     thrown.expect(UnsupportedOperationException.class);
@@ -810,6 +810,28 @@ public class SetMultimapPrefixlessPropertyTest {
         .runTest();
   }
 
+  @Test
+  public void testEnsureCapacity() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(MULTIMAP_PROPERTY)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .putItems(\"one\", \"A\")")
+            .addLine("    .ensureItemsCapacity(100)")
+            .addLine("    .putItems(\"two\", \"B\")")
+            .addLine("    .putItems(\"one\", \"C\")")
+            .addLine("    .build();")
+            .addLine("assertThat(value.items())")
+            .addLine("    .contains(\"one\", \"A\")")
+            .addLine("    .and(\"one\", \"C\")")
+            .addLine("    .and(\"two\", \"B\")")
+            .addLine("    .andNothingElse()")
+            .addLine("    .inOrder();")
+            .build())
+        .runTest();
+  }
+
   @Test
   public void testClear() {
     behaviorTester
@@ -850,6 +872,25 @@ public class SetMultimapPrefixlessPropertyTest {
         .runTest();
   }
 
+  @Test
+  public void testGet_returnsLiveView_afterBuilderClear() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(MULTIMAP_PROPERTY)
+        .with(testBuilder()
+            .addLine("DataType.Builder builder = new DataType.Builder();")
+            .addLine("%s<String, String> itemsView = builder.items();", SetMultimap.class)
+            .addLine("assertThat(itemsView).isEmpty();")
+            .addLine("builder.putItems(\"one\", \"A\");")
+            .addLine("assertThat(itemsView).contains(\"one\", \"A\").andNothingElse();")
+            .addLine("builder.clear();")
+            .addLine("assertThat(itemsView).isEmpty();")
+            .addLine("builder.putItems(\"three\", \"C\");")
+            .addLine("assertThat(itemsView).contains(\"three\", \"C\").andNothingElse();")
+            .build())
+        .runTest();
+  }
+
   @Test
   public void testGet_returnsUnmodifiableSetMultimap() {
     thrown.expect(UnsupportedOperationException.class);
@@ -885,6 +926,110 @@ public class SetMultimapPrefixlessPropertyTest {
         .runTest();
   }
 
+  @Test
+  public void testInterleavedPuts_groupedByKey() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(MULTIMAP_PROPERTY)
+        .with(testBuilder()
+            .addLine("DataType.Builder builder = DataType.builder()")
+            .addLine("    .putItems(\"one\", \"A\")")
+            .addLine("    .putItems(\"two\", \"B\")")
+            .addLine("    .putItems(\"one\", \"C\");")
+            .addLine("assertThat(builder.items())")
+            .addLine("    .contains(\"one\", \"A\")")
+            .addLine("    .and(\"one\", \"C\")")
+            .addLine("    .and(\"two\", \"B\")")
+            .addLine("    .andNothingElse()")
+            .addLine("    .inOrder();")
+            .addLine("assertThat(builder.build().items())")
+            .addLine("    .contains(\"one\", \"A\")")
+            .addLine("    .and(\"one\", \"C\")")
+            .addLine("    .and(\"two\", \"B\")")
+            .addLine("    .andNothingElse()")
+            .addLine("    .inOrder();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testManyValuesForOneKey_deduplicatedInOrder() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(MULTIMAP_PROPERTY)
+        .with(testBuilder()
+            .addLine("DataType.Builder builder = DataType.builder();")
+            .addLine("for (char c = 'A'; c <= 'L'; c++) {")
+            .addLine("  builder.putItems(\"one\", String.valueOf(c));")
+            .addLine("  builder.putItems(\"one\", \"A\");")
+            .addLine("}")
+            .addLine("builder.removeItems(\"one\", \"C\");")
+            .addLine("builder.putItems(\"one\", \"C\");")
+            .addLine("assertThat(builder.items().get(\"one\"))")
+            .addLine("    .containsExactly(\"A\", \"B\", \"D\", \"E\", \"F\", \"G\", \"H\", \"I\",")
+            .addLine("        \"J\", \"K\", \"L\", \"C\")")
+            .addLine("    .inOrder();")
+            .addLine("assertThat(builder.build().items().get(\"one\"))")
+            .addLine("    .containsExactly(\"A\", \"B\", \"D\", \"E\", \"F\", \"G\", \"H\", \"I\",")
+            .addLine("        \"J\", \"K\", \"L\", \"C\")")
+            .addLine("    .inOrder();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testMergeFromReusesImmutableMultimapInstance() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(MULTIMAP_PROPERTY)
+        .with(testBuilder()
+            .addLine("DataType value = DataType.builder()")
+            .addLine("    .putItems(\"one\", \"A\")")
+            .addLine("    .build();")
+            .addLine("DataType copy = DataType.builder().mergeFrom(value).build();")
+            .addLine("assertThat(copy.items()).isSameAs(value.items());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testMergeFromEmptyMultimapDoesNotPreventReuseOfImmutableMultimapInstance() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(MULTIMAP_PROPERTY)
+        .with(testBuilder()
+            .addLine("DataType value = DataType.builder()")
+            .addLine("    .putItems(\"one\", \"A\")")
+            .addLine("    .build();")
+            .addLine("DataType copy = DataType.builder()")
+            .addLine("    .mergeFrom(value)")
+            .addLine("    .mergeFrom(DataType.builder())")
+            .addLine("    .build();")
+            .addLine("assertThat(copy.items()).isSameAs(value.items());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testModifyAfterMergeFromDoesNotChangeSourceValue() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(MULTIMAP_PROPERTY)
+        .with(testBuilder()
+            .addLine("DataType value = DataType.builder()")
+            .addLine("    .putItems(\"one\", \"A\")")
+            .addLine("    .build();")
+            .addLine("DataType copy = DataType.builder()")
+            .addLine("    .mergeFrom(value)")
+            .addLine("    .putItems(\"two\", \"B\")")
+            .addLine("    .build();")
+            .addLine("assertThat(value.items()).contains(\"one\", \"A\").andNothingElse();")
+            .addLine("assertThat(copy.items())")
+            .addLine("    .contains(\"one\", \"A\").and(\"two\", \"B\").andNothingElse();")
+            .build())
+        .runTest();
+  }
+
   @Test
   public void testMergeFrom_builder() {
     behaviorTester
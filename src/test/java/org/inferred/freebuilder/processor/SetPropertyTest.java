@@ -21,6 +21,7 @@ import static org.junit.Assume.assumeTrue;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.testing.EqualsTester;
 
@@ -43,7 +44,10 @@ import org.junit.runners.Parameterized.Parameters;
 import org.junit.runners.Parameterized.UseParametersRunnerFactory;
 
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
@@ -356,6 +360,37 @@ public class SetPropertyTest {
         .runTest();
   }
 
+  @Test
+  public void testAddAllIntArrayRange() {
+    assumeTrue(elements == ElementFactory.INTEGERS);
+    assumeTrue(set == SetType.SET);
+    behaviorTester
+        .with(new Processor(features))
+        .with(setPropertyType)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .addAllItems(new int[] { 1, 2, 3, 2, 5 }, 1, 3)")
+            .addLine("    .build();")
+            .addLine("assertThat(value.%s).containsExactly(%s).inOrder();",
+                convention.getter(), set.intsInOrder(2, 3))
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testAddAllIntArrayRange_outOfBounds() {
+    assumeTrue(elements == ElementFactory.INTEGERS);
+    assumeTrue(set == SetType.SET);
+    thrown.expect(IndexOutOfBoundsException.class);
+    behaviorTester
+        .with(new Processor(features))
+        .with(setPropertyType)
+        .with(testBuilder()
+            .addLine("new DataType.Builder().addAllItems(new int[] { 1, 2, 3 }, -1, 2);")
+            .build())
+        .runTest();
+  }
+
   @Test
   public void testAddAllIntStream_duplicate() {
     assumeStreamsAvailable();
@@ -451,6 +486,96 @@ public class SetPropertyTest {
         .runTest();
   }
 
+  @Test
+  public void testEnsureCapacity() {
+    assumeTrue("Hash-based set", set == SetType.SET);
+    behaviorTester
+        .with(new Processor(features))
+        .with(setPropertyType)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .addItems(%s)", elements.examples(1, 0))
+            .addLine("    .ensureItemsCapacity(100)")
+            .addLine("    .addItems(%s)", elements.examples(2))
+            .addLine("    .build();")
+            .addLine("assertThat(value.%s).containsExactly(%s).inOrder();",
+                convention.getter(), elements.examples(set.inOrder(1, 0, 2)))
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testEnsureCapacity_emptyBuilderKeepsViewsLive() {
+    assumeTrue("Hash-based set", set == SetType.SET);
+    behaviorTester
+        .with(new Processor(features))
+        .with(setPropertyType)
+        .with(testBuilder()
+            .addLine("DataType.Builder builder = new DataType.Builder();")
+            .addLine("%s<%s> view = builder.%s;", Set.class, elements.type(), convention.getter())
+            .addLine("builder.ensureItemsCapacity(100).addItems(%s);", elements.examples(0, 1))
+            .addLine("assertThat(view).containsExactly(%s).inOrder();",
+                elements.examples(set.inOrder(0, 1)))
+            .addLine("assertThat(builder.ensureItemsCapacity(100).build().%s)",
+                convention.getter())
+            .addLine("    .containsExactly(%s).inOrder();", elements.examples(set.inOrder(0, 1)))
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testBuild_twoElementSet() {
+    assumeTrue(elements == ElementFactory.INTEGERS);
+    assumeTrue(set == SetType.SET);
+    behaviorTester
+        .with(new Processor(features))
+        .with(setPropertyType)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .addItems(7, 3)")
+            .addLine("    .build();")
+            .addLine("assertThat(value.%s).containsExactly(7, 3).inOrder();", convention.getter())
+            .addLine("assertThat(value.%s).isEqualTo(%s.of(3, 7));",
+                convention.getter(), ImmutableSet.class)
+            .addLine("assertThat(value.%s.hashCode()).isEqualTo(%s.of(3, 7).hashCode());",
+                convention.getter(), ImmutableSet.class)
+            .addLine("assertThat(value.%s.contains(3)).isTrue();", convention.getter())
+            .addLine("assertThat(value.%s.contains(5)).isFalse();", convention.getter())
+            .addLine("assertThat(value.%s.contains(null)).isFalse();", convention.getter())
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void testBuild_largeSet() {
+    assumeTrue(elements == ElementFactory.INTEGERS);
+    assumeTrue(set == SetType.SET);
+    behaviorTester
+        .with(new Processor(features))
+        .with(setPropertyType)
+        .with(testBuilder()
+            .addLine("DataType.Builder builder = new DataType.Builder();")
+            .addLine("%1$s<Integer> expected = new %1$s<Integer>();", LinkedHashSet.class)
+            .addLine("for (int i = 0; i < 50; i++) {")
+            .addLine("  builder.addItems(50 - i * 7);")
+            .addLine("  expected.add(50 - i * 7);")
+            .addLine("}")
+            .addLine("DataType value = builder.build();")
+            .addLine("assertThat(value.%s).containsExactlyElementsIn(expected).inOrder();",
+                convention.getter())
+            .addLine("assertThat(value.%s).isEqualTo(new %s<Integer>(expected));",
+                convention.getter(), HashSet.class)
+            .addLine("assertThat(value.%s.hashCode()).isEqualTo(expected.hashCode());",
+                convention.getter())
+            .addLine("for (int i = -350; i <= 50; i++) {")
+            .addLine("  assertThat(value.%s.contains(i)).isEqualTo(expected.contains(i));",
+                convention.getter())
+            .addLine("}")
+            .addLine("assertThat(value.%s.contains(null)).isFalse();", convention.getter())
+            .build())
+        .runTest();
+  }
+
   @Test
   public void testGet_returnsLiveView() {
     behaviorTester
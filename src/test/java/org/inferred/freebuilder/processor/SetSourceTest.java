@@ -70,8 +70,8 @@ public class SetSourceTest {
         "   * @throws NullPointerException if {@code element} is null",
         "   */",
         "  public Person.Builder addName(String element) {",
-        "    if (this.name instanceof ImmutableSet) {",
-        "      this.name = new LinkedHashSet<String>(this.name);",
+        "    if (name instanceof ImmutableSet) {",
+        "      name = new LinkedHashSet<String>(name);",
         "    }",
         "    this.name.add(Preconditions.checkNotNull(element));",
         "    return (Person.Builder) this;",
@@ -98,6 +98,14 @@ public class SetSourceTest {
         "   * @throws NullPointerException if {@code elements} is null or contains a null element",
         "   */",
         "  public Person.Builder addAllName(Iterable<? extends String> elements) {",
+        "    if (elements instanceof ImmutableCollection && !((ImmutableCollection<?>) "
+            + "elements).isEmpty()) {",
+        "      if (name instanceof ImmutableSet) {",
+        "        name = new LinkedHashSet<String>(name);",
+        "      }",
+        "      name.addAll((ImmutableCollection<? extends String>) elements);",
+        "      return (Person.Builder) this;",
+        "    }",
         "    for (String element : elements) {",
         "      addName(element);",
         "    }",
@@ -113,8 +121,8 @@ public class SetSourceTest {
         "   * @throws NullPointerException if {@code element} is null",
         "   */",
         "  public Person.Builder removeName(String element) {",
-        "    if (this.name instanceof ImmutableSet) {",
-        "      this.name = new LinkedHashSet<String>(this.name);",
+        "    if (name instanceof ImmutableSet) {",
+        "      name = new LinkedHashSet<String>(name);",
         "    }",
         "    this.name.remove(Preconditions.checkNotNull(element));",
         "    return (Person.Builder) this;",
@@ -135,6 +143,24 @@ public class SetSourceTest {
         "  }",
         "",
         "  /**",
+        "   * Hints that the set to be returned from {@link Person#getName()} will hold at least "
+            + "{@code",
+        "   * minCapacity} elements, so storage can be allocated for them up front. The hint has "
+            + "no effect",
+        "   * once storage has been allocated.",
+        "   *",
+        "   * @return this {@code Builder} object",
+        "   */",
+        "  public Person.Builder ensureNameCapacity(int minCapacity) {",
+        "    if (name instanceof ImmutableSet && minCapacity > name.size()) {",
+        "      Set<String> set = new LinkedHashSet<String>((int) (minCapacity / 0.75f + 1.0f));",
+        "      set.addAll(name);",
+        "      name = set;",
+        "    }",
+        "    return (Person.Builder) this;",
+        "  }",
+        "",
+        "  /**",
         "   * Returns an unmodifiable view of the set that will be returned by "
             + "{@link Person#getName()}.",
         "   * Changes to this builder will be reflected in the view.",
@@ -209,6 +235,9 @@ public class SetSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
@@ -221,12 +250,20 @@ public class SetSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{name=\" + name + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
@@ -244,6 +281,9 @@ public class SetSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
@@ -256,14 +296,46 @@ public class SetSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{name=\" + name + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
@@ -296,8 +368,8 @@ public class SetSourceTest {
         "   * @throws NullPointerException if {@code element} is null",
         "   */",
         "  public Person.Builder addName(String element) {",
-        "    if (this.name instanceof ImmutableSet) {",
-        "      this.name = new LinkedHashSet<>(this.name);",
+        "    if (name instanceof ImmutableSet) {",
+        "      name = new LinkedHashSet<>(name);",
         "    }",
         "    this.name.add(Preconditions.checkNotNull(element));",
         "    return (Person.Builder) this;",
@@ -324,6 +396,14 @@ public class SetSourceTest {
         "   * @throws NullPointerException if {@code elements} is null or contains a null element",
         "   */",
         "  public Person.Builder addAllName(Iterable<? extends String> elements) {",
+        "    if (elements instanceof ImmutableCollection && !((ImmutableCollection<?>) "
+            + "elements).isEmpty()) {",
+        "      if (name instanceof ImmutableSet) {",
+        "        name = new LinkedHashSet<>(name);",
+        "      }",
+        "      name.addAll((ImmutableCollection<? extends String>) elements);",
+        "      return (Person.Builder) this;",
+        "    }",
         "    for (String element : elements) {",
         "      addName(element);",
         "    }",
@@ -339,8 +419,8 @@ public class SetSourceTest {
         "   * @throws NullPointerException if {@code element} is null",
         "   */",
         "  public Person.Builder removeName(String element) {",
-        "    if (this.name instanceof ImmutableSet) {",
-        "      this.name = new LinkedHashSet<>(this.name);",
+        "    if (name instanceof ImmutableSet) {",
+        "      name = new LinkedHashSet<>(name);",
         "    }",
         "    this.name.remove(Preconditions.checkNotNull(element));",
         "    return (Person.Builder) this;",
@@ -361,6 +441,24 @@ public class SetSourceTest {
         "  }",
         "",
         "  /**",
+        "   * Hints that the set to be returned from {@link Person#getName()} will hold at least "
+            + "{@code",
+        "   * minCapacity} elements, so storage can be allocated for them up front. The hint has "
+            + "no effect",
+        "   * once storage has been allocated.",
+        "   *",
+        "   * @return this {@code Builder} object",
+        "   */",
+        "  public Person.Builder ensureNameCapacity(int minCapacity) {",
+        "    if (name instanceof ImmutableSet && minCapacity > name.size()) {",
+        "      Set<String> set = new LinkedHashSet<>((int) (minCapacity / 0.75f + 1.0f));",
+        "      set.addAll(name);",
+        "      name = set;",
+        "    }",
+        "    return (Person.Builder) this;",
+        "  }",
+        "",
+        "  /**",
         "   * Returns an unmodifiable view of the set that will be returned by "
             + "{@link Person#getName()}.",
         "   * Changes to this builder will be reflected in the view.",
@@ -435,6 +533,9 @@ public class SetSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
@@ -444,12 +545,20 @@ public class SetSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{name=\" + name + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
@@ -467,6 +576,9 @@ public class SetSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
@@ -476,14 +588,46 @@ public class SetSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{name=\" + name + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
@@ -515,8 +659,8 @@ public class SetSourceTest {
         "   * @throws NullPointerException if {@code element} is null",
         "   */",
         "  public Person.Builder addName(String element) {",
-        "    if (this.name instanceof ImmutableSet) {",
-        "      this.name = new LinkedHashSet<>(this.name);",
+        "    if (name instanceof ImmutableSet) {",
+        "      name = new LinkedHashSet<>(name);",
         "    }",
         "    this.name.add(Preconditions.checkNotNull(element));",
         "    return (Person.Builder) this;",
@@ -568,6 +712,14 @@ public class SetSourceTest {
         "   * @throws NullPointerException if {@code elements} is null or contains a null element",
         "   */",
         "  public Person.Builder addAllName(Iterable<? extends String> elements) {",
+        "    if (elements instanceof ImmutableCollection && !((ImmutableCollection<?>) "
+            + "elements).isEmpty()) {",
+        "      if (name instanceof ImmutableSet) {",
+        "        name = new LinkedHashSet<>(name);",
+        "      }",
+        "      name.addAll((ImmutableCollection<? extends String>) elements);",
+        "      return (Person.Builder) this;",
+        "    }",
         "    elements.forEach(this::addName);",
         "    return (Person.Builder) this;",
         "  }",
@@ -581,8 +733,8 @@ public class SetSourceTest {
         "   * @throws NullPointerException if {@code element} is null",
         "   */",
         "  public Person.Builder removeName(String element) {",
-        "    if (this.name instanceof ImmutableSet) {",
-        "      this.name = new LinkedHashSet<>(this.name);",
+        "    if (name instanceof ImmutableSet) {",
+        "      name = new LinkedHashSet<>(name);",
         "    }",
         "    this.name.remove(Preconditions.checkNotNull(element));",
         "    return (Person.Builder) this;",
@@ -624,6 +776,24 @@ public class SetSourceTest {
         "  }",
         "",
         "  /**",
+        "   * Hints that the set to be returned from {@link Person#getName()} will hold at least "
+            + "{@code",
+        "   * minCapacity} elements, so storage can be allocated for them up front. The hint has "
+            + "no effect",
+        "   * once storage has been allocated.",
+        "   *",
+        "   * @return this {@code Builder} object",
+        "   */",
+        "  public Person.Builder ensureNameCapacity(int minCapacity) {",
+        "    if (name instanceof ImmutableSet && minCapacity > name.size()) {",
+        "      Set<String> set = new LinkedHashSet<>((int) (minCapacity / 0.75f + 1.0f));",
+        "      set.addAll(name);",
+        "      name = set;",
+        "    }",
+        "    return (Person.Builder) this;",
+        "  }",
+        "",
+        "  /**",
         "   * Returns an unmodifiable view of the set that will be returned by "
             + "{@link Person#getName()}.",
         "   * Changes to this builder will be reflected in the view.",
@@ -698,6 +868,9 @@ public class SetSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
@@ -707,12 +880,20 @@ public class SetSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{name=\" + name + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
@@ -730,6 +911,9 @@ public class SetSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
@@ -739,14 +923,46 @@ public class SetSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{name=\" + name + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
@@ -765,7 +981,7 @@ public class SetSourceTest {
         "    return new Person.Builder().mergeFrom(value);",
         "  }",
         "",
-        "  private final LinkedHashSet<String> name = new LinkedHashSet<String>();",
+        "  private Set<String> name = Collections.emptySet();",
         "",
         "  /**",
         "   * Adds {@code element} to the set to be returned from {@link Person#getName()}. "
@@ -778,6 +994,9 @@ public class SetSourceTest {
         "   * @throws NullPointerException if {@code element} is null",
         "   */",
         "  public Person.Builder addName(String element) {",
+        "    if (name == Collections.<String>emptySet()) {",
+        "      name = new LinkedHashSet<String>();",
+        "    }",
         "    if (element == null) {",
         "      throw new NullPointerException();",
         "    }",
@@ -821,6 +1040,9 @@ public class SetSourceTest {
         "   * @throws NullPointerException if {@code element} is null",
         "   */",
         "  public Person.Builder removeName(String element) {",
+        "    if (name == Collections.<String>emptySet()) {",
+        "      name = new LinkedHashSet<String>();",
+        "    }",
         "    if (element == null) {",
         "      throw new NullPointerException();",
         "    }",
@@ -839,17 +1061,43 @@ public class SetSourceTest {
         "  }",
         "",
         "  /**",
+        "   * Hints that the set to be returned from {@link Person#getName()} will hold at least "
+            + "{@code",
+        "   * minCapacity} elements, so storage can be allocated for them up front. The hint has "
+            + "no effect",
+        "   * once storage has been allocated.",
+        "   *",
+        "   * @return this {@code Builder} object",
+        "   */",
+        "  public Person.Builder ensureNameCapacity(int minCapacity) {",
+        "    if (name == Collections.<String>emptySet() && minCapacity > 0) {",
+        "      name = new LinkedHashSet<String>((int) (minCapacity / 0.75f + 1.0f));",
+        "    }",
+        "    return (Person.Builder) this;",
+        "  }",
+        "",
+        "  /**",
         "   * Returns an unmodifiable view of the set that will be returned by "
             + "{@link Person#getName()}.",
         "   * Changes to this builder will be reflected in the view.",
         "   */",
         "  public Set<String> getName() {",
+        "    if (name == Collections.<String>emptySet()) {",
+        "      name = new LinkedHashSet<String>();",
+        "    }",
         "    return Collections.unmodifiableSet(name);",
         "  }",
         "",
         "  /** Sets all property values using the given {@code Person} as a template. */",
         "  public Person.Builder mergeFrom(Person value) {",
-        "    addAllName(value.getName());",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      if (name == Collections.<String>emptySet()) {",
+        "        name = new LinkedHashSet<String>();",
+        "      }",
+        "      name.addAll(value.getName());",
+        "    } else {",
+        "      addAllName(value.getName());",
+        "    }",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -859,7 +1107,10 @@ public class SetSourceTest {
         "   * input.",
         "   */",
         "  public Person.Builder mergeFrom(Person.Builder template) {",
-        "    addAllName(((Person_Builder) template).name);",
+        "    if (name == Collections.<String>emptySet()) {",
+        "      name = new LinkedHashSet<String>();",
+        "    }",
+        "    name.addAll(((Person_Builder) template).name);",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -905,6 +1156,9 @@ public class SetSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
@@ -917,12 +1171,20 @@ public class SetSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{name=\" + name + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
@@ -940,6 +1202,9 @@ public class SetSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
@@ -952,13 +1217,93 @@ public class SetSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{name=\" + name + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
+        "",
+        "  /**",
+        "   * Returns an open-addressed table of the positions (plus one) of {@code keys}, or null "
+            + "if there",
+        "   * are few enough to search linearly.",
+        "   */",
+        "  private static int[] compactIndex(Object[] keys) {",
+        "    if (keys.length <= 8) {",
+        "      return null;",
+        "    }",
+        "    int[] index = new int[Integer.highestOneBit(keys.length * 2 - 1) << 1];",
+        "    int mask = index.length - 1;",
+        "    for (int i = 0; i < keys.length; i++) {",
+        "      int slot = compactHash(keys[i]) & mask;",
+        "      while (index[slot] != 0) {",
+        "        slot = (slot + 1) & mask;",
+        "      }",
+        "      index[slot] = i + 1;",
         "    }",
+        "    return index;",
+        "  }",
+        "",
+        "  /** Returns the position of {@code key} in {@code keys}, or -1 if absent. */",
+        "  private static int compactIndexOf(Object[] keys, int[] index, Object key) {",
+        "    if (key == null) {",
+        "      return -1;",
+        "    }",
+        "    if (index == null) {",
+        "      for (int i = 0; i < keys.length; i++) {",
+        "        if (key.equals(keys[i])) {",
+        "          return i;",
+        "        }",
+        "      }",
+        "      return -1;",
+        "    }",
+        "    int mask = index.length - 1;",
+        "    for (int slot = compactHash(key) & mask; index[slot] != 0; slot = (slot + 1) & mask) {",
+        "      int i = index[slot] - 1;",
+        "      if (key.equals(keys[i])) {",
+        "        return i;",
+        "      }",
+        "    }",
+        "    return -1;",
+        "  }",
+        "",
+        "  private static int compactHash(Object key) {",
+        "    return 0x1b873593 * Integer.rotateLeft(key.hashCode() * 0xcc9e2d51, 15);",
         "  }",
         "",
         "  private static <E> Set<E> immutableSet(Set<E> elements) {",
@@ -967,8 +1312,109 @@ public class SetSourceTest {
         "        return Collections.emptySet();",
         "      case 1:",
         "        return Collections.singleton(elements.iterator().next());",
+        "      case 2:",
+        "        Iterator<E> iterator = elements.iterator();",
+        "        return new CompactImmutablePairSet<E>(iterator.next(), iterator.next());",
         "      default:",
-        "        return Collections.unmodifiableSet(new LinkedHashSet<E>(elements));",
+        "        return new CompactImmutableSet<E>(elements.toArray());",
+        "    }",
+        "  }",
+        "",
+        "  /** An immutable, insertion-ordered set of two distinct, non-null elements. */",
+        "  private static final class CompactImmutablePairSet<E> extends AbstractSet<E>",
+        "      implements Serializable {",
+        "",
+        "    private final E first;",
+        "    private final E second;",
+        "",
+        "    CompactImmutablePairSet(E first, E second) {",
+        "      this.first = first;",
+        "      this.second = second;",
+        "    }",
+        "",
+        "    @Override",
+        "    public int size() {",
+        "      return 2;",
+        "    }",
+        "",
+        "    @Override",
+        "    public boolean contains(Object o) {",
+        "      return first.equals(o) || second.equals(o);",
+        "    }",
+        "",
+        "    @Override",
+        "    public Iterator<E> iterator() {",
+        "      return new Iterator<E>() {",
+        "        private int next = 0;",
+        "",
+        "        @Override",
+        "        public boolean hasNext() {",
+        "          return next < 2;",
+        "        }",
+        "",
+        "        @Override",
+        "        public E next() {",
+        "          if (next >= 2) {",
+        "            throw new NoSuchElementException();",
+        "          }",
+        "          return (next++ == 0) ? first : second;",
+        "        }",
+        "",
+        "        @Override",
+        "        public void remove() {",
+        "          throw new UnsupportedOperationException();",
+        "        }",
+        "      };",
+        "    }",
+        "  }",
+        "",
+        "  /** An immutable, insertion-ordered set backed by an array of its distinct, non-null "
+            + "elements. */",
+        "  private static final class CompactImmutableSet<E> extends AbstractSet<E> implements "
+            + "Serializable {",
+        "",
+        "    private final Object[] elements;",
+        "    private final int[] index;",
+        "",
+        "    CompactImmutableSet(Object[] elements) {",
+        "      this.elements = elements;",
+        "      this.index = compactIndex(elements);",
+        "    }",
+        "",
+        "    @Override",
+        "    public int size() {",
+        "      return elements.length;",
+        "    }",
+        "",
+        "    @Override",
+        "    public boolean contains(Object o) {",
+        "      return compactIndexOf(elements, index, o) >= 0;",
+        "    }",
+        "",
+        "    @Override",
+        "    public Iterator<E> iterator() {",
+        "      return new Iterator<E>() {",
+        "        private int next = 0;",
+        "",
+        "        @Override",
+        "        public boolean hasNext() {",
+        "          return next < elements.length;",
+        "        }",
+        "",
+        "        @Override",
+        "        @SuppressWarnings(\"unchecked\")",
+        "        public E next() {",
+        "          if (next >= elements.length) {",
+        "            throw new NoSuchElementException();",
+        "          }",
+        "          return (E) elements[next++];",
+        "        }",
+        "",
+        "        @Override",
+        "        public void remove() {",
+        "          throw new UnsupportedOperationException();",
+        "        }",
+        "      };",
         "    }",
         "  }",
         "}\n"));
@@ -989,7 +1435,7 @@ public class SetSourceTest {
         "    return new Person.Builder().mergeFrom(value);",
         "  }",
         "",
-        "  private final LinkedHashSet<String> name = new LinkedHashSet<>();",
+        "  private Set<String> name = Collections.emptySet();",
         "",
         "  /**",
         "   * Adds {@code element} to the set to be returned from {@link Person#getName()}. "
@@ -1002,6 +1448,9 @@ public class SetSourceTest {
         "   * @throws NullPointerException if {@code element} is null",
         "   */",
         "  public Person.Builder addName(String element) {",
+        "    if (name == Collections.<String>emptySet()) {",
+        "      name = new LinkedHashSet<>();",
+        "    }",
         "    this.name.add(Objects.requireNonNull(element));",
         "    return (Person.Builder) this;",
         "  }",
@@ -1042,6 +1491,9 @@ public class SetSourceTest {
         "   * @throws NullPointerException if {@code element} is null",
         "   */",
         "  public Person.Builder removeName(String element) {",
+        "    if (name == Collections.<String>emptySet()) {",
+        "      name = new LinkedHashSet<>();",
+        "    }",
         "    this.name.remove(Objects.requireNonNull(element));",
         "    return (Person.Builder) this;",
         "  }",
@@ -1057,17 +1509,43 @@ public class SetSourceTest {
         "  }",
         "",
         "  /**",
+        "   * Hints that the set to be returned from {@link Person#getName()} will hold at least "
+            + "{@code",
+        "   * minCapacity} elements, so storage can be allocated for them up front. The hint has "
+            + "no effect",
+        "   * once storage has been allocated.",
+        "   *",
+        "   * @return this {@code Builder} object",
+        "   */",
+        "  public Person.Builder ensureNameCapacity(int minCapacity) {",
+        "    if (name == Collections.<String>emptySet() && minCapacity > 0) {",
+        "      name = new LinkedHashSet<>((int) (minCapacity / 0.75f + 1.0f));",
+        "    }",
+        "    return (Person.Builder) this;",
+        "  }",
+        "",
+        "  /**",
         "   * Returns an unmodifiable view of the set that will be returned by "
             + "{@link Person#getName()}.",
         "   * Changes to this builder will be reflected in the view.",
         "   */",
         "  public Set<String> getName() {",
+        "    if (name == Collections.<String>emptySet()) {",
+        "      name = new LinkedHashSet<>();",
+        "    }",
         "    return Collections.unmodifiableSet(name);",
         "  }",
         "",
         "  /** Sets all property values using the given {@code Person} as a template. */",
         "  public Person.Builder mergeFrom(Person value) {",
-        "    addAllName(value.getName());",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      if (name == Collections.<String>emptySet()) {",
+        "        name = new LinkedHashSet<>();",
+        "      }",
+        "      name.addAll(value.getName());",
+        "    } else {",
+        "      addAllName(value.getName());",
+        "    }",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -1077,7 +1555,10 @@ public class SetSourceTest {
         "   * input.",
         "   */",
         "  public Person.Builder mergeFrom(Person.Builder template) {",
-        "    addAllName(((Person_Builder) template).name);",
+        "    if (name == Collections.<String>emptySet()) {",
+        "      name = new LinkedHashSet<>();",
+        "    }",
+        "    name.addAll(((Person_Builder) template).name);",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -1123,6 +1604,9 @@ public class SetSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
@@ -1132,12 +1616,20 @@ public class SetSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{name=\" + name + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
@@ -1155,6 +1647,9 @@ public class SetSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
@@ -1164,23 +1659,204 @@ public class SetSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Objects.hash(name);",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{name=\" + name + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
+        "",
+        "  /**",
+        "   * Returns an open-addressed table of the positions (plus one) of {@code keys}, or null "
+            + "if there",
+        "   * are few enough to search linearly.",
+        "   */",
+        "  private static int[] compactIndex(Object[] keys) {",
+        "    if (keys.length <= 8) {",
+        "      return null;",
+        "    }",
+        "    int[] index = new int[Integer.highestOneBit(keys.length * 2 - 1) << 1];",
+        "    int mask = index.length - 1;",
+        "    for (int i = 0; i < keys.length; i++) {",
+        "      int slot = compactHash(keys[i]) & mask;",
+        "      while (index[slot] != 0) {",
+        "        slot = (slot + 1) & mask;",
+        "      }",
+        "      index[slot] = i + 1;",
+        "    }",
+        "    return index;",
+        "  }",
+        "",
+        "  /** Returns the position of {@code key} in {@code keys}, or -1 if absent. */",
+        "  private static int compactIndexOf(Object[] keys, int[] index, Object key) {",
+        "    if (key == null) {",
+        "      return -1;",
+        "    }",
+        "    if (index == null) {",
+        "      for (int i = 0; i < keys.length; i++) {",
+        "        if (key.equals(keys[i])) {",
+        "          return i;",
+        "        }",
+        "      }",
+        "      return -1;",
+        "    }",
+        "    int mask = index.length - 1;",
+        "    for (int slot = compactHash(key) & mask; index[slot] != 0; slot = (slot + 1) & mask) {",
+        "      int i = index[slot] - 1;",
+        "      if (key.equals(keys[i])) {",
+        "        return i;",
+        "      }",
+        "    }",
+        "    return -1;",
+        "  }",
+        "",
+        "  private static int compactHash(Object key) {",
+        "    return 0x1b873593 * Integer.rotateLeft(key.hashCode() * 0xcc9e2d51, 15);",
+        "  }",
+        "",
         "  private static <E> Set<E> immutableSet(Set<E> elements) {",
         "    switch (elements.size()) {",
         "      case 0:",
         "        return Collections.emptySet();",
         "      case 1:",
         "        return Collections.singleton(elements.iterator().next());",
+        "      case 2:",
+        "        Iterator<E> iterator = elements.iterator();",
+        "        return new CompactImmutablePairSet<E>(iterator.next(), iterator.next());",
         "      default:",
-        "        return Collections.unmodifiableSet(new LinkedHashSet<>(elements));",
+        "        return new CompactImmutableSet<E>(elements.toArray());",
+        "    }",
+        "  }",
+        "",
+        "  /** An immutable, insertion-ordered set of two distinct, non-null elements. */",
+        "  private static final class CompactImmutablePairSet<E> extends AbstractSet<E>",
+        "      implements Serializable {",
+        "",
+        "    private final E first;",
+        "    private final E second;",
+        "",
+        "    CompactImmutablePairSet(E first, E second) {",
+        "      this.first = first;",
+        "      this.second = second;",
+        "    }",
+        "",
+        "    @Override",
+        "    public int size() {",
+        "      return 2;",
+        "    }",
+        "",
+        "    @Override",
+        "    public boolean contains(Object o) {",
+        "      return first.equals(o) || second.equals(o);",
+        "    }",
+        "",
+        "    @Override",
+        "    public Iterator<E> iterator() {",
+        "      return new Iterator<E>() {",
+        "        private int next = 0;",
+        "",
+        "        @Override",
+        "        public boolean hasNext() {",
+        "          return next < 2;",
+        "        }",
+        "",
+        "        @Override",
+        "        public E next() {",
+        "          if (next >= 2) {",
+        "            throw new NoSuchElementException();",
+        "          }",
+        "          return (next++ == 0) ? first : second;",
+        "        }",
+        "",
+        "        @Override",
+        "        public void remove() {",
+        "          throw new UnsupportedOperationException();",
+        "        }",
+        "      };",
+        "    }",
+        "  }",
+        "",
+        "  /** An immutable, insertion-ordered set backed by an array of its distinct, non-null "
+            + "elements. */",
+        "  private static final class CompactImmutableSet<E> extends AbstractSet<E> implements "
+            + "Serializable {",
+        "",
+        "    private final Object[] elements;",
+        "    private final int[] index;",
+        "",
+        "    CompactImmutableSet(Object[] elements) {",
+        "      this.elements = elements;",
+        "      this.index = compactIndex(elements);",
+        "    }",
+        "",
+        "    @Override",
+        "    public int size() {",
+        "      return elements.length;",
+        "    }",
+        "",
+        "    @Override",
+        "    public boolean contains(Object o) {",
+        "      return compactIndexOf(elements, index, o) >= 0;",
+        "    }",
+        "",
+        "    @Override",
+        "    public Iterator<E> iterator() {",
+        "      return new Iterator<E>() {",
+        "        private int next = 0;",
+        "",
+        "        @Override",
+        "        public boolean hasNext() {",
+        "          return next < elements.length;",
+        "        }",
+        "",
+        "        @Override",
+        "        @SuppressWarnings(\"unchecked\")",
+        "        public E next() {",
+        "          if (next >= elements.length) {",
+        "            throw new NoSuchElementException();",
+        "          }",
+        "          return (E) elements[next++];",
+        "        }",
+        "",
+        "        @Override",
+        "        public void remove() {",
+        "          throw new UnsupportedOperationException();",
+        "        }",
+        "      };",
         "    }",
         "  }",
         "}\n"));
@@ -1214,8 +1890,8 @@ public class SetSourceTest {
         "   * @throws NullPointerException if {@code element} is null",
         "   */",
         "  public Person.Builder addName(String element) {",
-        "    if (this.name instanceof ImmutableSet) {",
-        "      this.name = new LinkedHashSet<String>(this.name);",
+        "    if (name instanceof ImmutableSet) {",
+        "      name = new LinkedHashSet<String>(name);",
         "    }",
         "    this.name.add(Preconditions.checkNotNull(element));",
         "    return (Person.Builder) this;",
@@ -1242,6 +1918,14 @@ public class SetSourceTest {
         "   * @throws NullPointerException if {@code elements} is null or contains a null element",
         "   */",
         "  public Person.Builder addAllName(Iterable<? extends String> elements) {",
+        "    if (elements instanceof ImmutableCollection && !((ImmutableCollection<?>) "
+            + "elements).isEmpty()) {",
+        "      if (name instanceof ImmutableSet) {",
+        "        name = new LinkedHashSet<String>(name);",
+        "      }",
+        "      name.addAll((ImmutableCollection<? extends String>) elements);",
+        "      return (Person.Builder) this;",
+        "    }",
         "    for (String element : elements) {",
         "      addName(element);",
         "    }",
@@ -1257,8 +1941,8 @@ public class SetSourceTest {
         "   * @throws NullPointerException if {@code element} is null",
         "   */",
         "  public Person.Builder removeName(String element) {",
-        "    if (this.name instanceof ImmutableSet) {",
-        "      this.name = new LinkedHashSet<String>(this.name);",
+        "    if (name instanceof ImmutableSet) {",
+        "      name = new LinkedHashSet<String>(name);",
         "    }",
         "    this.name.remove(Preconditions.checkNotNull(element));",
         "    return (Person.Builder) this;",
@@ -1279,6 +1963,24 @@ public class SetSourceTest {
         "  }",
         "",
         "  /**",
+        "   * Hints that the set to be returned from {@link Person#name()} will hold at least "
+            + "{@code",
+        "   * minCapacity} elements, so storage can be allocated for them up front. The hint has "
+            + "no effect",
+        "   * once storage has been allocated.",
+        "   *",
+        "   * @return this {@code Builder} object",
+        "   */",
+        "  public Person.Builder ensureNameCapacity(int minCapacity) {",
+        "    if (name instanceof ImmutableSet && minCapacity > name.size()) {",
+        "      Set<String> set = new LinkedHashSet<String>((int) (minCapacity / 0.75f + 1.0f));",
+        "      set.addAll(name);",
+        "      name = set;",
+        "    }",
+        "    return (Person.Builder) this;",
+        "  }",
+        "",
+        "  /**",
         "   * Returns an unmodifiable view of the set that will be returned by "
             + "{@link Person#name()}. Changes",
         "   * to this builder will be reflected in the view.",
@@ -1353,6 +2055,9 @@ public class SetSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Value)) {",
         "        return false;",
         "      }",
@@ -1365,12 +2070,20 @@ public class SetSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"Person{name=\" + name + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
         "",
@@ -1388,6 +2101,9 @@ public class SetSourceTest {
         "",
         "    @Override",
         "    public boolean equals(Object obj) {",
+        "      if (obj == this) {",
+        "        return true;",
+        "      }",
         "      if (!(obj instanceof Person_Builder.Partial)) {",
         "        return false;",
         "      }",
@@ -1400,14 +2116,46 @@ public class SetSourceTest {
         "",
         "    @Override",
         "    public int hashCode() {",
-        "      return Arrays.hashCode(new Object[] {name});",
+        "      int _hashCode = 1;",
+        "      _hashCode = 31 * _hashCode + name.hashCode();",
+        "      return _hashCode;",
+        "    }",
+        "",
+        "    StringBuilder appendTo(StringBuilder result) {",
+        "      result.append(\"partial Person{\");",
+        "      result.append(\"name=\").append(name);",
+        "      return result.append(\"}\");",
         "    }",
         "",
         "    @Override",
         "    public String toString() {",
-        "      return \"partial Person{name=\" + name + \"}\";",
+        "      return appendTo(new StringBuilder()).toString();",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Appends the string representation of {@code value} to {@code result}, without an "
+            + "intermediate",
+        "   * {@link String} if it was created by this builder.",
+        "   */",
+        "  static StringBuilder appendTo(StringBuilder result, Object value) {",
+        "    if (value instanceof Person_Builder.Value) {",
+        "      return ((Person_Builder.Value) value).appendTo(result);",
+        "    } else if (value instanceof Person_Builder.Partial) {",
+        "      return ((Person_Builder.Partial) value).appendTo(result);",
+        "    } else {",
+        "      return result.append(value);",
+        "    }",
+        "  }",
+        "",
+        "  /**",
+        "   * Returns whether {@code value} was built by this type's builder, and so is complete "
+            + "and",
+        "   * immutable.",
+        "   */",
+        "  static boolean isValue(Object value) {",
+        "    return value instanceof Person_Builder.Value;",
+        "  }",
         "}\n"));
   }
 
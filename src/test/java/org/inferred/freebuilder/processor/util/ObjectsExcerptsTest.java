@@ -29,6 +29,7 @@ public class ObjectsExcerptsTest {
   public enum ValueSet {
     BOOLEANS("boolean", "Boolean", TypeKind.BOOLEAN, "true", "false"),
     INTS("int", "Integer", TypeKind.INT, "0", "10"),
+    LONGS("long", "Long", TypeKind.LONG, "0L", "10L", "Long.MIN_VALUE"),
     FLOATS("float", "Float", TypeKind.FLOAT, "0.0F", "5.5F", "Float.NaN"),
     DOUBLES("double", "Double", TypeKind.DOUBLE, "0.0", "5.5", "Double.NaN"),
     STRINGS("String", "String", TypeKind.DECLARED, "\"\"", "\"hello\"");
@@ -141,4 +142,36 @@ public class ObjectsExcerptsTest {
     }
     behaviorTester.with(new TestBuilder().addLine("%s", code.toString()).build()).runTest();
   }
+
+  @Test
+  public void testHashCode_notNullable() {
+    SourceBuilder code = SourceStringBuilder.compilable(features);
+    int numValues = valueSet.values.size();
+    for (int i = 0; i < numValues; ++i) {
+      code.addLine("%s value%s = %s;", valueSet.notNullableType, i, valueSet.values.get(i));
+    }
+    for (int i = 0; i < numValues; ++i) {
+      code.addLine("assertEquals(%s.valueOf(value%s).hashCode(), %s);",
+          valueSet.nullableType,
+          i,
+          ObjectsExcerpts.hashCode("value" + i, valueSet.kind, Nullability.NOT_NULLABLE));
+    }
+    behaviorTester.with(new TestBuilder().addLine("%s", code.toString()).build()).runTest();
+  }
+
+  @Test
+  public void testHashCode_nullable() {
+    SourceBuilder code = SourceStringBuilder.compilable(features);
+    int numValues = valueSet.values.size();
+    for (int i = 0; i < numValues; ++i) {
+      code.addLine("%s value%s = %s;", valueSet.nullableType, i, valueSet.values.get(i));
+    }
+    code.addLine("%s value%s = null;", valueSet.nullableType, numValues);
+    for (int i = 0; i < numValues + 1; ++i) {
+      code.addLine("assertEquals(value%1$s == null ? 0 : value%1$s.hashCode(), %2$s);",
+          i,
+          ObjectsExcerpts.hashCode("value" + i, TypeKind.DECLARED, Nullability.NULLABLE));
+    }
+    behaviorTester.with(new TestBuilder().addLine("%s", code.toString()).build()).runTest();
+  }
 }